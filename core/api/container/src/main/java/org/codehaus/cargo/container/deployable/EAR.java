@@ -19,8 +19,11 @@
  */
 package org.codehaus.cargo.container.deployable;
 
+import java.io.File;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -35,6 +38,29 @@ import org.codehaus.cargo.module.application.EarArchive;
  */
 public class EAR extends AbstractDeployable
 {
+    /**
+     * Maximum number of EAR files for which the webapps are kept in {@link #WEBAPPS_CACHE}.
+     */
+    private static final int WEBAPPS_CACHE_SIZE = 256;
+
+    /**
+     * Webapps found in EAR files, shared by all instances of this class. The key is made of the
+     * EAR file's path, size and last modification date, so that a modified EAR gets parsed again.
+     */
+    private static final Map<String, Map<String, String>> WEBAPPS_CACHE =
+        Collections.synchronizedMap(new LinkedHashMap<String, Map<String, String>>(
+            WEBAPPS_CACHE_SIZE + 1, .75F, true)
+        {
+            /**
+             * {@inheritDoc}
+             */
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Map<String, String>> eldest)
+            {
+                return size() > WEBAPPS_CACHE_SIZE;
+            }
+        });
+
     /**
      * The name of this deployable (it can be anything, there's no special rule). If not specified
      * by user, it is computed from the EAR's file name (removing the filename extension).
@@ -79,48 +105,73 @@ public class EAR extends AbstractDeployable
     }
 
     /**
-     * Parse the EAR to find out the web apps it contains.
+     * Find out the web apps the EAR contains, parsing the EAR only if it has not already been
+     * parsed by another instance since it last changed.
      */
     private void parseWebApps()
     {
         if (this.webapps == null)
         {
-            Map<String, String> webapps = new HashMap<String, String>();
-            try
+            String cacheKey = null;
+            File file = new File(getFile());
+            if (file.isFile())
+            {
+                cacheKey = file.getAbsolutePath() + "|" + file.length() + "|"
+                    + file.lastModified();
+                this.webapps = WEBAPPS_CACHE.get(cacheKey);
+            }
+            if (this.webapps == null)
             {
-                EarArchive ear = new DefaultEarArchive(getFile());
-                ApplicationXml applicationXml = ear.getApplicationXml();
-                for (String webUri : applicationXml.getWebModuleUris())
+                this.webapps = readWebApps();
+                if (cacheKey != null)
                 {
-                    String context = applicationXml.getWebModuleContextRoot(webUri);
-
-                    if (context == null)
-                    {
-                        // The application.xml does not define a <context-root>
-                        // element. This is wrong!
-                        throw new ContainerException("Your application.xml must define a "
-                            + "<context-root> element in the <web> module definition.");
-                    }
-
-                    // Remove leading "/" if there is one.
-                    if (context.startsWith("/"))
-                    {
-                        context = context.substring(1);
-                    }
-
-                    getLogger().debug("Found Web URI [" + webUri + "], context [" + context + "]",
-                        this.getClass().getName());
-
-                    webapps.put(context, webUri);
+                    WEBAPPS_CACHE.put(cacheKey, this.webapps);
                 }
             }
-            catch (Exception e)
+        }
+    }
+
+    /**
+     * Parse the EAR to find out the web apps it contains.
+     * @return Map of web contexts to web URIs.
+     */
+    private Map<String, String> readWebApps()
+    {
+        Map<String, String> webapps = new HashMap<String, String>();
+        try
+        {
+            EarArchive ear = new DefaultEarArchive(getFile());
+            ApplicationXml applicationXml = ear.getApplicationXml();
+            for (String webUri : applicationXml.getWebModuleUris())
             {
-                throw new ContainerException("Failed to parse webapps from [" + getFile()
-                    + "] EAR.", e);
+                String context = applicationXml.getWebModuleContextRoot(webUri);
+
+                if (context == null)
+                {
+                    // The application.xml does not define a <context-root>
+                    // element. This is wrong!
+                    throw new ContainerException("Your application.xml must define a "
+                        + "<context-root> element in the <web> module definition.");
+                }
+
+                // Remove leading "/" if there is one.
+                if (context.startsWith("/"))
+                {
+                    context = context.substring(1);
+                }
+
+                getLogger().debug("Found Web URI [" + webUri + "], context [" + context + "]",
+                    this.getClass().getName());
+
+                webapps.put(context, webUri);
             }
-            this.webapps = webapps;
         }
+        catch (Exception e)
+        {
+            throw new ContainerException("Failed to parse webapps from [" + getFile()
+                + "] EAR.", e);
+        }
+        return Collections.unmodifiableMap(webapps);
     }
 
     /**
@@ -0,0 +1,139 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus CARGO, copyright 2004-2011 Vincent Massol, 2012-2016 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.container.deployer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.codehaus.cargo.util.log.Logger;
+
+/**
+ * Monitor combining several other monitors, where the first signal wins: the
+ * {@link org.codehaus.cargo.container.deployable.Deployable} is considered deployed as soon as
+ * any of the combined monitors reports it deployed. This allows, for example, to combine a
+ * {@link LogFileDeployableMonitor} which reacts as soon as the container logs it has started with
+ * a {@link URLDeployableMonitor} which still works if the log line is never printed.
+ */
+public class CompositeDeployableMonitor extends AbstractDeployableMonitor
+{
+    /**
+     * The combined monitors.
+     */
+    private List<DeployableMonitor> monitors;
+
+    /**
+     * Listener recording the status reported by the monitor being checked.
+     */
+    private StatusListener status = new StatusListener();
+
+    /**
+     * Listener recording the last status reported by a combined monitor.
+     */
+    private static class StatusListener implements DeployableMonitorListener
+    {
+        /**
+         * Whether the last reported status was deployed.
+         */
+        private boolean isDeployed;
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void deployed()
+        {
+            this.isDeployed = true;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void undeployed()
+        {
+            this.isDeployed = false;
+        }
+    }
+
+    /**
+     * @param timeout the timeout after which we stop monitoring the deployment
+     * @param monitors the monitors to combine
+     */
+    public CompositeDeployableMonitor(long timeout, DeployableMonitor... monitors)
+    {
+        super(timeout);
+        if (monitors.length == 0)
+        {
+            throw new IllegalArgumentException("At least one monitor is required");
+        }
+        this.monitors = new ArrayList<DeployableMonitor>(Arrays.asList(monitors));
+        for (DeployableMonitor monitor : this.monitors)
+        {
+            monitor.registerListener(this.status);
+        }
+    }
+
+    /**
+     * Sets the logger on this monitor and on all combined monitors. {@inheritDoc}
+     */
+    @Override
+    public void setLogger(Logger logger)
+    {
+        super.setLogger(logger);
+        for (DeployableMonitor monitor : this.monitors)
+        {
+            monitor.setLogger(logger);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getDeployableName()
+    {
+        return this.monitors.get(0).getDeployableName();
+    }
+
+    /**
+     * Checks the combined monitors in order, stopping at the first one that reports the
+     * {@link org.codehaus.cargo.container.deployable.Deployable} deployed. {@inheritDoc}
+     */
+    @Override
+    public void monitor()
+    {
+        boolean isDeployed = false;
+        for (DeployableMonitor monitor : this.monitors)
+        {
+            this.status.isDeployed = false;
+            monitor.monitor();
+            if (this.status.isDeployed)
+            {
+                getLogger().debug("Monitor [" + monitor.getDeployableName()
+                    + "] reported deployed", this.getClass().getName());
+                isDeployed = true;
+                break;
+            }
+        }
+
+        notifyListeners(isDeployed);
+    }
+}
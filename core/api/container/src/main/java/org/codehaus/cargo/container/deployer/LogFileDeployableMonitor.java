@@ -0,0 +1,233 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus CARGO, copyright 2004-2011 Vincent Massol, 2012-2016 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.container.deployer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * Monitor that verifies if a {@link org.codehaus.cargo.container.deployable.Deployable} (or a
+ * container) is deployed by tailing a log file until a given text, for example the line the
+ * container prints once it has started, appears in it. Only text written after the creation of
+ * the monitor is looked at, unless the offset is changed using {@link #setOffset(long)}. Each
+ * occurrence of the text is reported once: the check following the one which found it looks at
+ * the text written after it, so that a monitor reused for another watch waits for the text to be
+ * logged again.
+ */
+public class LogFileDeployableMonitor extends AbstractDeployableMonitor
+{
+    /**
+     * Size of the read buffer.
+     */
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * The log file to tail.
+     */
+    private File logFile;
+
+    /**
+     * The text that tells the deployable is deployed.
+     */
+    private String text;
+
+    /**
+     * The text, as bytes in the platform encoding (which is the one used by container logs).
+     */
+    private byte[] pattern;
+
+    /**
+     * Offset in the log file up to which the text has been looked for.
+     */
+    private long offset;
+
+    /**
+     * Last bytes read, which are looked at again in case the text spans two reads.
+     */
+    private byte[] carry = new byte[0];
+
+    /**
+     * @param logFile the log file to tail
+     * @param text the text that tells the
+     * {@link org.codehaus.cargo.container.deployable.Deployable} is deployed
+     */
+    public LogFileDeployableMonitor(File logFile, String text)
+    {
+        super();
+        init(logFile, text);
+    }
+
+    /**
+     * @param logFile the log file to tail
+     * @param text the text that tells the
+     * {@link org.codehaus.cargo.container.deployable.Deployable} is deployed
+     * @param timeout the timeout after which we stop monitoring the deployment
+     */
+    public LogFileDeployableMonitor(File logFile, String text, long timeout)
+    {
+        super(timeout);
+        init(logFile, text);
+    }
+
+    /**
+     * @param logFile the log file to tail
+     * @param text the text that tells the
+     * {@link org.codehaus.cargo.container.deployable.Deployable} is deployed
+     */
+    private void init(File logFile, String text)
+    {
+        if (text == null || text.length() == 0)
+        {
+            throw new IllegalArgumentException("The text to look for cannot be empty");
+        }
+        this.logFile = logFile;
+        this.text = text;
+        this.pattern = text.getBytes();
+        this.offset = logFile.length();
+    }
+
+    /**
+     * @param offset offset in the log file from which to look for the text, <code>0</code> to
+     * look at the whole file
+     */
+    public synchronized void setOffset(long offset)
+    {
+        this.offset = offset;
+        this.carry = new byte[0];
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getDeployableName()
+    {
+        return this.text + " in " + this.logFile;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void monitor()
+    {
+        boolean isDeployed;
+        try
+        {
+            isDeployed = tail();
+        }
+        catch (IOException e)
+        {
+            getLogger().debug("Cannot read log file [" + this.logFile + "]: " + e,
+                this.getClass().getName());
+            isDeployed = false;
+        }
+
+        getLogger().debug("Text [" + this.text + "] " + (isDeployed ? "found" : "not found yet")
+            + " in log file [" + this.logFile + "]", this.getClass().getName());
+
+        notifyListeners(isDeployed);
+    }
+
+    /**
+     * Reads what has been appended to the log file since the last call and looks for the text.
+     * When found, the next call starts right after it.
+     * @return <code>true</code> if the text has been found.
+     * @throws IOException If the log file cannot be read.
+     */
+    private synchronized boolean tail() throws IOException
+    {
+        if (!this.logFile.isFile())
+        {
+            return false;
+        }
+
+        boolean found = false;
+        RandomAccessFile file = new RandomAccessFile(this.logFile, "r");
+        try
+        {
+            long length = file.length();
+            if (length < this.offset)
+            {
+                // The log file has been truncated or rotated, start again from its beginning
+                this.offset = 0;
+                this.carry = new byte[0];
+            }
+            file.seek(this.offset);
+
+            byte[] buffer = new byte[this.pattern.length - 1 + BUFFER_SIZE];
+            while (this.offset < length)
+            {
+                System.arraycopy(this.carry, 0, buffer, 0, this.carry.length);
+                int read = file.read(buffer, this.carry.length,
+                    (int) Math.min(BUFFER_SIZE, length - this.offset));
+                if (read == -1)
+                {
+                    break;
+                }
+                this.offset += read;
+
+                int available = this.carry.length + read;
+                int index = indexOf(buffer, available);
+                if (index != -1)
+                {
+                    this.offset -= available - index - this.pattern.length;
+                    this.carry = new byte[0];
+                    found = true;
+                    break;
+                }
+
+                int kept = Math.min(available, this.pattern.length - 1);
+                byte[] newCarry = new byte[kept];
+                System.arraycopy(buffer, available - kept, newCarry, 0, kept);
+                this.carry = newCarry;
+            }
+        }
+        finally
+        {
+            file.close();
+        }
+
+        return found;
+    }
+
+    /**
+     * @param buffer buffer to search.
+     * @param length number of valid bytes in the buffer.
+     * @return index of the text in the buffer, <code>-1</code> if not found.
+     */
+    private int indexOf(byte[] buffer, int length)
+    {
+        for (int i = 0; i <= length - this.pattern.length; i++)
+        {
+            int j = 0;
+            while (j < this.pattern.length && buffer[i + j] == this.pattern[j])
+            {
+                j++;
+            }
+            if (j == this.pattern.length)
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
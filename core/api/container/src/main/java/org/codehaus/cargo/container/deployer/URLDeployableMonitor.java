@@ -35,7 +35,8 @@ public class URLDeployableMonitor extends AbstractDeployableMonitor
     private URL pingURL;
 
     /**
-     * Useful HTTP methods (specifically the ping method).
+     * Useful HTTP methods (specifically the ping method). Connections are kept alive, so that
+     * successive pings reuse the same connection.
      */
     private HttpUtils httpUtils = new HttpUtils();
 
@@ -52,6 +53,7 @@ public class URLDeployableMonitor extends AbstractDeployableMonitor
     {
         super();
         this.pingURL = pingURL;
+        this.httpUtils.setKeepAlive(true);
     }
 
     /**
@@ -61,8 +63,7 @@ public class URLDeployableMonitor extends AbstractDeployableMonitor
      */
     public URLDeployableMonitor(URL pingURL, long timeout)
     {
-        super(timeout);
-        this.pingURL = pingURL;
+        this(pingURL, timeout, null);
     }
 
     /**
@@ -76,6 +77,16 @@ public class URLDeployableMonitor extends AbstractDeployableMonitor
         super(timeout);
         this.pingURL = pingURL;
         this.contains = contains;
+        this.httpUtils.setKeepAlive(true);
+    }
+
+    /**
+     * @param keepAlive <code>false</code> to open a new connection on every ping, as opposed to
+     * the default behaviour of reusing a kept alive connection.
+     */
+    public void setKeepAlive(boolean keepAlive)
+    {
+        this.httpUtils.setKeepAlive(keepAlive);
     }
 
     /**
@@ -46,7 +46,8 @@ public class UrlPathDeployableMonitor extends AbstractDeployableMonitor
     private String pingUrlPath;
 
     /**
-     * Useful HTTP methods (specifically the ping method).
+     * Useful HTTP methods (specifically the ping method). Connections are kept alive, so that
+     * successive pings reuse the same connection.
      */
     private HttpUtils httpUtils = new HttpUtils();
 
@@ -60,6 +61,7 @@ public class UrlPathDeployableMonitor extends AbstractDeployableMonitor
         super();
         this.configuration = configuration;
         this.pingUrlPath = pingUrlPath;
+        this.httpUtils.setKeepAlive(true);
     }
 
     /**
@@ -73,6 +75,7 @@ public class UrlPathDeployableMonitor extends AbstractDeployableMonitor
         super(timeout);
         this.configuration = configuration;
         this.pingUrlPath = pingUrlPath;
+        this.httpUtils.setKeepAlive(true);
     }
 
     /**
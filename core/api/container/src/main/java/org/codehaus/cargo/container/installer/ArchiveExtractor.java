@@ -0,0 +1,644 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus CARGO, copyright 2004-2011 Vincent Massol, 2012-2016 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.container.installer;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.apache.tools.bzip2.CBZip2InputStream;
+import org.apache.tools.tar.TarEntry;
+import org.apache.tools.tar.TarInputStream;
+import org.codehaus.cargo.util.log.LoggedObject;
+
+/**
+ * Extracts container distributions (ZIP, TAR, TAR.GZ and TAR.BZ2 archives) using a bounded pool
+ * of worker threads.<br>
+ * <br>
+ * ZIP archives are read using random access on their central directory, each worker inflating
+ * and writing its own entries. TAR archives can only be read sequentially: the decompression is
+ * streamed on the calling thread while the writing of small entries is handed over to the
+ * workers, with the amount of buffered data being bounded.<br>
+ * <br>
+ * Once all entries are written, the extraction is verified by comparing the size of each written
+ * file with the size announced by the archive.
+ */
+public class ArchiveExtractor extends LoggedObject
+{
+    /**
+     * Default maximum number of worker threads.
+     */
+    public static final int DEFAULT_MAX_THREADS = 8;
+
+    /**
+     * Size of the I/O buffer used by each worker.
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * TAR entries larger than this are written directly by the reading thread.
+     */
+    private static final int MAX_BUFFERED_ENTRY_SIZE = 4 * 1024 * 1024;
+
+    /**
+     * Maximum number of TAR entry bytes held in memory waiting to be written.
+     */
+    private static final int MAX_BUFFERED_BYTES = 64 * 1024 * 1024;
+
+    /**
+     * Extensions of the archive types supported by this extractor.
+     */
+    private static final String[] SUPPORTED_EXTENSIONS =
+        new String[] {".zip", ".tar", ".tgz", ".tar.gz", ".bz2"};
+
+    /**
+     * Number of worker threads.
+     */
+    private int threads;
+
+    /**
+     * Creates an extractor with one worker per available processor, bounded to
+     * {@link #DEFAULT_MAX_THREADS}.
+     */
+    public ArchiveExtractor()
+    {
+        this(Math.min(DEFAULT_MAX_THREADS, Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * @param threads Number of worker threads to use for extracting.
+     */
+    public ArchiveExtractor(int threads)
+    {
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * @return Number of worker threads used for extracting.
+     */
+    public int getThreads()
+    {
+        return this.threads;
+    }
+
+    /**
+     * @param archiveName Name of the archive file.
+     * @return <code>true</code> if the archive type is supported by this extractor.
+     */
+    public static boolean isSupported(String archiveName)
+    {
+        String name = archiveName.toLowerCase();
+        for (String extension : SUPPORTED_EXTENSIONS)
+        {
+            if (name.endsWith(extension))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Extracts and verifies an archive.
+     *
+     * @param archive Archive to extract.
+     * @param targetDir Directory to extract to.
+     * @throws IOException If the archive is broken, cannot be extracted or if the extracted files
+     * do not match the archive's contents.
+     */
+    public void extract(File archive, File targetDir) throws IOException
+    {
+        String name = archive.getName().toLowerCase();
+        if (!isSupported(name))
+        {
+            String errorMessage = "Unsupported archive type: [" + name + "]";
+            getLogger().warn(errorMessage, getClass().getName());
+            throw new IllegalArgumentException(errorMessage);
+        }
+
+        mkdirs(targetDir);
+        File canonicalTargetDir = targetDir.getCanonicalFile();
+
+        long start = System.currentTimeMillis();
+        Map<File, Long> extracted;
+        ExecutorService executor = Executors.newFixedThreadPool(this.threads);
+        try
+        {
+            if (name.endsWith(".zip"))
+            {
+                extracted = extractZip(archive, canonicalTargetDir, executor);
+            }
+            else
+            {
+                extracted = extractTar(archive, canonicalTargetDir, executor);
+            }
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+
+        verify(archive, extracted);
+
+        getLogger().info("Extracted " + extracted.size() + " files from [" + archive + "] in "
+            + (System.currentTimeMillis() - start) + " ms using " + this.threads + " thread(s)",
+                getClass().getName());
+    }
+
+    /**
+     * Extracts a ZIP archive, all workers sharing the same random access {@link ZipFile}.
+     *
+     * @param archive ZIP archive.
+     * @param targetDir Canonical target directory.
+     * @param executor Executor to run the workers on.
+     * @return Extracted files, with their expected sizes.
+     * @throws IOException If extracting fails.
+     */
+    private Map<File, Long> extractZip(File archive, File targetDir, ExecutorService executor)
+        throws IOException
+    {
+        ZipFile zipFile = new ZipFile(archive);
+        try
+        {
+            List<ZipEntry> entries = new ArrayList<ZipEntry>();
+            List<File> files = new ArrayList<File>();
+            Map<File, Long> extracted = new ConcurrentHashMap<File, Long>();
+
+            // Directories are created up front so that workers never race on mkdirs
+            for (ZipEntry entry : Collections.list(zipFile.entries()))
+            {
+                File file = resolve(targetDir, entry.getName());
+                if (entry.isDirectory())
+                {
+                    mkdirs(file);
+                }
+                else
+                {
+                    mkdirs(file.getParentFile());
+                    entries.add(entry);
+                    files.add(file);
+                }
+            }
+
+            AtomicInteger nextEntry = new AtomicInteger();
+            List<Future<Object>> workers = new ArrayList<Future<Object>>();
+            for (int i = 0; i < this.threads; i++)
+            {
+                workers.add(executor.submit(
+                    new ZipWorker(zipFile, entries, files, nextEntry, extracted)));
+            }
+            waitFor(workers);
+
+            return extracted;
+        }
+        finally
+        {
+            zipFile.close();
+        }
+    }
+
+    /**
+     * Extracts a (possibly compressed) TAR archive. Decompression is streamed on the calling
+     * thread, small entries are buffered and written by the workers.
+     *
+     * @param archive TAR archive.
+     * @param targetDir Canonical target directory.
+     * @param executor Executor to run the writers on.
+     * @return Extracted files, with their expected sizes.
+     * @throws IOException If extracting fails.
+     */
+    private Map<File, Long> extractTar(File archive, File targetDir, ExecutorService executor)
+        throws IOException
+    {
+        Map<File, Long> extracted = new ConcurrentHashMap<File, Long>();
+        List<Future<Object>> writers = new ArrayList<Future<Object>>();
+        Semaphore bufferedBytes = new Semaphore(MAX_BUFFERED_BYTES);
+        byte[] buffer = new byte[BUFFER_SIZE];
+
+        TarInputStream tar = new TarInputStream(openTarStream(archive));
+        try
+        {
+            TarEntry entry;
+            while ((entry = tar.getNextEntry()) != null)
+            {
+                File file = resolve(targetDir, entry.getName());
+                if (entry.isDirectory())
+                {
+                    mkdirs(file);
+                    continue;
+                }
+                if (entry.getLinkName() != null && entry.getLinkName().length() > 0)
+                {
+                    getLogger().debug("Skipping TAR link entry [" + entry.getName() + "]",
+                        getClass().getName());
+                    continue;
+                }
+
+                mkdirs(file.getParentFile());
+                long size = entry.getSize();
+                long lastModified = entry.getModTime().getTime();
+                if (size <= MAX_BUFFERED_ENTRY_SIZE)
+                {
+                    byte[] content = new byte[(int) size];
+                    readFully(tar, content);
+                    acquire(bufferedBytes, content.length);
+                    writers.add(executor.submit(new TarWriter(
+                        file, content, lastModified, bufferedBytes)));
+                }
+                else
+                {
+                    OutputStream out = new FileOutputStream(file);
+                    try
+                    {
+                        copy(tar, out, buffer);
+                    }
+                    finally
+                    {
+                        out.close();
+                    }
+                    file.setLastModified(lastModified);
+                }
+                extracted.put(file, Long.valueOf(size));
+            }
+        }
+        finally
+        {
+            tar.close();
+        }
+
+        waitFor(writers);
+        return extracted;
+    }
+
+    /**
+     * Opens the decompressed stream of a TAR archive.
+     *
+     * @param archive TAR archive.
+     * @return Decompressed stream.
+     * @throws IOException If the archive cannot be opened.
+     */
+    private InputStream openTarStream(File archive) throws IOException
+    {
+        String name = archive.getName().toLowerCase();
+        InputStream in = new BufferedInputStream(new FileInputStream(archive), BUFFER_SIZE);
+        try
+        {
+            if (name.endsWith(".tgz") || name.endsWith(".tar.gz"))
+            {
+                in = new GZIPInputStream(in, BUFFER_SIZE);
+            }
+            else if (name.endsWith(".bz2"))
+            {
+                // The Ant BZip2 stream expects the magic bytes to have been consumed already
+                if (in.read() != 'B' || in.read() != 'Z')
+                {
+                    throw new IOException("Invalid BZip2 archive [" + archive + "]");
+                }
+                in = new CBZip2InputStream(in);
+            }
+            return in;
+        }
+        catch (IOException e)
+        {
+            in.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Checks that each extracted file has the size declared in the archive.
+     *
+     * @param archive Extracted archive, for the error messages.
+     * @param extracted Extracted files, with their expected sizes.
+     * @throws IOException If one of the files does not match.
+     */
+    private void verify(File archive, Map<File, Long> extracted) throws IOException
+    {
+        for (Map.Entry<File, Long> file : extracted.entrySet())
+        {
+            long expected = file.getValue().longValue();
+            if (!file.getKey().isFile()
+                || (expected >= 0 && file.getKey().length() != expected))
+            {
+                throw new IOException("Extracted file [" + file.getKey() + "] does not match "
+                    + "its entry in [" + archive + "], the archive is broken");
+            }
+        }
+    }
+
+    /**
+     * Resolves an archive entry within the target directory, refusing entries that would be
+     * written outside of it.
+     *
+     * @param targetDir Canonical target directory.
+     * @param entryName Name of the entry in the archive.
+     * @return File to extract the entry to.
+     * @throws IOException If the entry is outside of the target directory.
+     */
+    private File resolve(File targetDir, String entryName) throws IOException
+    {
+        File file = new File(targetDir, entryName);
+        String path = file.getCanonicalPath();
+        if (!path.equals(targetDir.getPath())
+            && !path.startsWith(targetDir.getPath() + File.separator))
+        {
+            throw new IOException("Archive entry [" + entryName + "] is outside of the target "
+                + "directory [" + targetDir + "]");
+        }
+        return file;
+    }
+
+    /**
+     * Waits for all tasks to complete, rethrowing the first failure.
+     *
+     * @param tasks Tasks to wait for.
+     * @throws IOException If one of the tasks failed.
+     */
+    private static void waitFor(List<Future<Object>> tasks) throws IOException
+    {
+        try
+        {
+            for (Future<Object> task : tasks)
+            {
+                task.get();
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while extracting: " + e.getMessage());
+        }
+        catch (ExecutionException e)
+        {
+            if (e.getCause() instanceof IOException)
+            {
+                throw (IOException) e.getCause();
+            }
+            IOException ioe = new IOException("Failed extracting: " + e.getCause());
+            ioe.initCause(e.getCause());
+            throw ioe;
+        }
+    }
+
+    /**
+     * Acquires permits, converting interruptions into an {@link IOException}.
+     *
+     * @param semaphore Semaphore to acquire from.
+     * @param permits Number of permits.
+     * @throws IOException If interrupted.
+     */
+    private static void acquire(Semaphore semaphore, int permits) throws IOException
+    {
+        try
+        {
+            semaphore.acquire(permits);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while extracting: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Creates a directory, tolerating concurrent creations.
+     *
+     * @param dir Directory to create.
+     * @throws IOException If the directory cannot be created.
+     */
+    private static void mkdirs(File dir) throws IOException
+    {
+        if (!dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory())
+        {
+            throw new IOException("Failed to create directory [" + dir + "]");
+        }
+    }
+
+    /**
+     * Reads exactly <code>content.length</code> bytes.
+     *
+     * @param in Stream to read from.
+     * @param content Buffer to fill.
+     * @throws IOException If the stream ends prematurely.
+     */
+    private static void readFully(InputStream in, byte[] content) throws IOException
+    {
+        int offset = 0;
+        while (offset < content.length)
+        {
+            int read = in.read(content, offset, content.length - offset);
+            if (read < 0)
+            {
+                throw new IOException("Unexpected end of archive");
+            }
+            offset += read;
+        }
+    }
+
+    /**
+     * Copies a stream using the given buffer.
+     *
+     * @param in Stream to read from.
+     * @param out Stream to write to.
+     * @param buffer Buffer to use.
+     * @throws IOException If copying fails.
+     */
+    private static void copy(InputStream in, OutputStream out, byte[] buffer) throws IOException
+    {
+        int read;
+        while ((read = in.read(buffer)) != -1)
+        {
+            out.write(buffer, 0, read);
+        }
+    }
+
+    /**
+     * Worker that extracts ZIP entries, picking the next entry not yet taken by another worker.
+     */
+    private static final class ZipWorker implements Callable<Object>
+    {
+        /**
+         * Shared ZIP file.
+         */
+        private final ZipFile zipFile;
+
+        /**
+         * File entries of the ZIP file.
+         */
+        private final List<ZipEntry> entries;
+
+        /**
+         * Files to extract the entries to, with the same indexes as {@link #entries}.
+         */
+        private final List<File> files;
+
+        /**
+         * Index of the next entry to extract.
+         */
+        private final AtomicInteger nextEntry;
+
+        /**
+         * Extracted files, with their expected sizes.
+         */
+        private final Map<File, Long> extracted;
+
+        /**
+         * @param zipFile Shared ZIP file.
+         * @param entries File entries of the ZIP file.
+         * @param files Files to extract the entries to.
+         * @param nextEntry Index of the next entry to extract.
+         * @param extracted Extracted files, with their expected sizes.
+         */
+        private ZipWorker(ZipFile zipFile, List<ZipEntry> entries, List<File> files,
+            AtomicInteger nextEntry, Map<File, Long> extracted)
+        {
+            this.zipFile = zipFile;
+            this.entries = entries;
+            this.files = files;
+            this.nextEntry = nextEntry;
+            this.extracted = extracted;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Object call() throws IOException
+        {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int index;
+            while ((index = nextEntry.getAndIncrement()) < entries.size())
+            {
+                ZipEntry entry = entries.get(index);
+                File file = files.get(index);
+
+                InputStream in = zipFile.getInputStream(entry);
+                try
+                {
+                    OutputStream out = new FileOutputStream(file);
+                    try
+                    {
+                        copy(in, out, buffer);
+                    }
+                    finally
+                    {
+                        out.close();
+                    }
+                }
+                finally
+                {
+                    in.close();
+                }
+
+                if (entry.getTime() != -1)
+                {
+                    file.setLastModified(entry.getTime());
+                }
+                extracted.put(file, Long.valueOf(entry.getSize()));
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Writer for a TAR entry that has been read in memory.
+     */
+    private static final class TarWriter implements Callable<Object>
+    {
+        /**
+         * File to write.
+         */
+        private final File file;
+
+        /**
+         * Contents of the file.
+         */
+        private final byte[] content;
+
+        /**
+         * Last modification time of the file.
+         */
+        private final long lastModified;
+
+        /**
+         * Semaphore to release the buffered bytes to once written.
+         */
+        private final Semaphore bufferedBytes;
+
+        /**
+         * @param file File to write.
+         * @param content Contents of the file.
+         * @param lastModified Last modification time of the file.
+         * @param bufferedBytes Semaphore to release the buffered bytes to once written.
+         */
+        private TarWriter(File file, byte[] content, long lastModified, Semaphore bufferedBytes)
+        {
+            this.file = file;
+            this.content = content;
+            this.lastModified = lastModified;
+            this.bufferedBytes = bufferedBytes;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Object call() throws IOException
+        {
+            try
+            {
+                OutputStream out = new FileOutputStream(file);
+                try
+                {
+                    out.write(content);
+                }
+                finally
+                {
+                    out.close();
+                }
+                file.setLastModified(lastModified);
+            }
+            finally
+            {
+                bufferedBytes.release(content.length);
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,731 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus CARGO, copyright 2004-2011 Vincent Massol, 2012-2016 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.container.installer;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.codehaus.cargo.util.Base64;
+import org.codehaus.cargo.util.log.LoggedObject;
+
+/**
+ * Downloads files, splitting HTTP downloads in several segments fetched in parallel using
+ * <code>Range</code> requests when the server supports them.<br>
+ * <br>
+ * The download is written into a preallocated <code>.part</code> file, next to which the progress
+ * of each segment is saved. If the download fails, the next download of the same URL to the same
+ * file resumes from where each segment stopped, as long as the remote file has not changed.
+ * Servers not supporting ranges are downloaded using a single connection, without resume.
+ */
+public class Downloader extends LoggedObject
+{
+    /**
+     * Default number of parallel connections.
+     */
+    public static final int DEFAULT_CONNECTIONS = 4;
+
+    /**
+     * Suffix of the file being downloaded.
+     */
+    public static final String PART_SUFFIX = ".part";
+
+    /**
+     * Suffix of the file saving the download progress.
+     */
+    public static final String STATE_SUFFIX = ".part.state";
+
+    /**
+     * Files smaller than this are not split.
+     */
+    private static final long MIN_SEGMENT_SIZE = 1024 * 1024;
+
+    /**
+     * Amount of bytes downloaded by a segment between two saves of the progress.
+     */
+    private static final long CHECKPOINT_SIZE = 4 * 1024 * 1024;
+
+    /**
+     * Size of the I/O buffer of each connection.
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Connection timeout, in milliseconds.
+     */
+    private static final int CONNECT_TIMEOUT = 30000;
+
+    /**
+     * Read timeout, in milliseconds.
+     */
+    private static final int READ_TIMEOUT = 60000;
+
+    /**
+     * Maximum number of parallel connections.
+     */
+    private int connections;
+
+    /**
+     * Creates a downloader using {@link #DEFAULT_CONNECTIONS} parallel connections.
+     */
+    public Downloader()
+    {
+        this(DEFAULT_CONNECTIONS);
+    }
+
+    /**
+     * @param connections Maximum number of parallel connections.
+     */
+    public Downloader(int connections)
+    {
+        this.connections = Math.max(1, connections);
+    }
+
+    /**
+     * @return Maximum number of parallel connections.
+     */
+    public int getConnections()
+    {
+        return this.connections;
+    }
+
+    /**
+     * Downloads a URL to a file, resuming any previously failed download of the same URL to the
+     * same file.
+     *
+     * @param url URL to download.
+     * @param target File to download to.
+     * @throws IOException If downloading fails.
+     */
+    public void download(URL url, File target) throws IOException
+    {
+        File part = new File(target.getPath() + PART_SUFFIX);
+        File state = new File(target.getPath() + STATE_SUFFIX);
+        long start = System.currentTimeMillis();
+        AtomicLong transferred = new AtomicLong();
+        int usedConnections = 1;
+
+        URLConnection connection = open(url);
+        if (connection instanceof HttpURLConnection)
+        {
+            HttpURLConnection httpConnection = (HttpURLConnection) connection;
+            httpConnection.setRequestProperty("Range", "bytes=0-0");
+            long length = -1;
+            if (httpConnection.getResponseCode() == HttpURLConnection.HTTP_PARTIAL)
+            {
+                length = parseLength(httpConnection.getHeaderField("Content-Range"));
+            }
+
+            if (length > 0)
+            {
+                String validator = getValidator(httpConnection);
+                close(httpConnection);
+                usedConnections = downloadSegments(url, part, state, length, validator,
+                    transferred);
+            }
+            else
+            {
+                state.delete();
+                if (httpConnection.getResponseCode() != HttpURLConnection.HTTP_OK)
+                {
+                    close(httpConnection);
+                    connection = open(url);
+                }
+                getLogger().debug("Server for [" + url + "] does not support ranges, "
+                    + "downloading using a single connection", this.getClass().getName());
+                downloadStream(connection, part, transferred);
+            }
+        }
+        else
+        {
+            downloadStream(connection, part, transferred);
+        }
+
+        target.delete();
+        if (!part.renameTo(target))
+        {
+            throw new IOException("Failed to move [" + part + "] to [" + target + "]");
+        }
+        state.delete();
+
+        long duration = Math.max(1, System.currentTimeMillis() - start);
+        getLogger().info("Downloaded " + transferred.get() + " bytes from [" + url + "] in "
+            + duration + " ms (" + transferred.get() * 1000 / 1024 / duration + " KB/s) using "
+                + usedConnections + " connection(s)", this.getClass().getName());
+    }
+
+    /**
+     * Downloads using parallel range requests into a preallocated file, resuming from the saved
+     * progress if it matches the remote file.
+     *
+     * @param url URL to download.
+     * @param part File to download to.
+     * @param stateFile File saving the download progress.
+     * @param length Length of the remote file.
+     * @param validator Validator of the remote file, <code>null</code> if none.
+     * @param transferred Counter of the downloaded bytes.
+     * @return Number of connections used.
+     * @throws IOException If downloading fails.
+     */
+    private int downloadSegments(URL url, File part, File stateFile, long length,
+        String validator, AtomicLong transferred) throws IOException
+    {
+        DownloadState state = DownloadState.load(stateFile, length, validator);
+        if (state != null && part.isFile() && part.length() == length)
+        {
+            getLogger().info("Resuming download of [" + url + "], " + state.getDownloaded()
+                + " of " + length + " bytes already downloaded", this.getClass().getName());
+        }
+        else
+        {
+            int segments = (int) Math.max(1, Math.min(this.connections,
+                length / MIN_SEGMENT_SIZE));
+            state = new DownloadState(stateFile, length, validator, segments);
+            RandomAccessFile file = new RandomAccessFile(part, "rw");
+            try
+            {
+                file.setLength(length);
+            }
+            finally
+            {
+                file.close();
+            }
+        }
+        state.save();
+
+        List<Segment> remaining = new ArrayList<Segment>();
+        for (Segment segment : state.getSegments())
+        {
+            if (!segment.isComplete())
+            {
+                remaining.add(segment);
+            }
+        }
+        if (remaining.isEmpty())
+        {
+            return 0;
+        }
+
+        // All segments are waited for even if one fails, so that the saved progress is complete
+        // and no worker keeps on writing once this method returns
+        Throwable failure = null;
+        ExecutorService executor = Executors.newFixedThreadPool(remaining.size());
+        try
+        {
+            List<Future<Object>> workers = new ArrayList<Future<Object>>();
+            for (Segment segment : remaining)
+            {
+                workers.add(executor.submit(
+                    new SegmentWorker(url, part, validator, segment, state, transferred)));
+            }
+            for (Future<Object> worker : workers)
+            {
+                try
+                {
+                    worker.get();
+                }
+                catch (ExecutionException e)
+                {
+                    if (failure == null)
+                    {
+                        failure = e.getCause();
+                    }
+                }
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            failure = e;
+        }
+        finally
+        {
+            executor.shutdownNow();
+            state.save();
+        }
+
+        if (failure instanceof IOException)
+        {
+            throw (IOException) failure;
+        }
+        else if (failure != null)
+        {
+            IOException ioe = new IOException("Failed downloading [" + url + "]");
+            ioe.initCause(failure);
+            throw ioe;
+        }
+        return remaining.size();
+    }
+
+    /**
+     * Downloads the whole response of a connection.
+     *
+     * @param connection Connection to download from.
+     * @param part File to download to.
+     * @param transferred Counter of the downloaded bytes.
+     * @throws IOException If downloading fails.
+     */
+    private void downloadStream(URLConnection connection, File part, AtomicLong transferred)
+        throws IOException
+    {
+        if (connection instanceof HttpURLConnection
+            && ((HttpURLConnection) connection).getResponseCode() != HttpURLConnection.HTTP_OK)
+        {
+            HttpURLConnection httpConnection = (HttpURLConnection) connection;
+            close(httpConnection);
+            throw new IOException("Server returned HTTP response code "
+                + httpConnection.getResponseCode() + " for [" + connection.getURL() + "]");
+        }
+
+        InputStream in = connection.getInputStream();
+        try
+        {
+            OutputStream out = new FileOutputStream(part);
+            try
+            {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                int read;
+                while ((read = in.read(buffer)) != -1)
+                {
+                    out.write(buffer, 0, read);
+                    transferred.addAndGet(read);
+                }
+            }
+            finally
+            {
+                out.close();
+            }
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    /**
+     * Opens a connection, with timeouts and authentication set.
+     *
+     * @param url URL to open.
+     * @return Connection, not yet connected.
+     * @throws IOException If opening the connection fails.
+     */
+    private static URLConnection open(URL url) throws IOException
+    {
+        URLConnection connection = url.openConnection();
+        connection.setConnectTimeout(CONNECT_TIMEOUT);
+        connection.setReadTimeout(READ_TIMEOUT);
+        connection.setUseCaches(false);
+        String userInfo = url.getUserInfo();
+        if (userInfo != null)
+        {
+            connection.setRequestProperty("Authorization", "Basic " + Base64.encode(userInfo));
+        }
+        return connection;
+    }
+
+    /**
+     * Consumes and closes the response of a connection, so that the underlying socket can be
+     * reused for the following requests.
+     *
+     * @param connection Connection to close.
+     */
+    private static void close(HttpURLConnection connection)
+    {
+        try
+        {
+            InputStream in = connection.getInputStream();
+            byte[] buffer = new byte[BUFFER_SIZE];
+            while (in.read(buffer) != -1)
+            {
+                // Discard the remaining response
+            }
+            in.close();
+        }
+        catch (IOException ignored)
+        {
+            // The socket will not be reused
+        }
+    }
+
+    /**
+     * @param connection Connection with a received response.
+     * @return Validator of the remote file (ETag or last modification date), <code>null</code> if
+     * none.
+     */
+    private static String getValidator(HttpURLConnection connection)
+    {
+        String validator = connection.getHeaderField("ETag");
+        if (validator == null || validator.startsWith("W/"))
+        {
+            validator = connection.getHeaderField("Last-Modified");
+        }
+        return validator;
+    }
+
+    /**
+     * @param contentRange Value of a <code>Content-Range</code> header.
+     * @return Complete length of the remote file, <code>-1</code> if unknown.
+     */
+    private static long parseLength(String contentRange)
+    {
+        if (contentRange != null)
+        {
+            int slash = contentRange.lastIndexOf('/');
+            if (slash != -1)
+            {
+                try
+                {
+                    return Long.parseLong(contentRange.substring(slash + 1).trim());
+                }
+                catch (NumberFormatException e)
+                {
+                    // Length is unknown, i.e. "*"
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Range of bytes of the remote file, downloaded using one connection.
+     */
+    private static final class Segment
+    {
+        /**
+         * Position of the last byte of the segment.
+         */
+        private final long end;
+
+        /**
+         * Position of the next byte to download.
+         */
+        private volatile long position;
+
+        /**
+         * @param position Position of the next byte to download.
+         * @param end Position of the last byte of the segment.
+         */
+        private Segment(long position, long end)
+        {
+            this.position = position;
+            this.end = end;
+        }
+
+        /**
+         * @return <code>true</code> if the whole segment has been downloaded.
+         */
+        private boolean isComplete()
+        {
+            return this.position > this.end;
+        }
+    }
+
+    /**
+     * Progress of a segmented download, saved next to the downloaded file.
+     */
+    private static final class DownloadState
+    {
+        /**
+         * File saving the progress.
+         */
+        private final File file;
+
+        /**
+         * Length of the remote file.
+         */
+        private final long length;
+
+        /**
+         * Validator of the remote file, <code>null</code> if none.
+         */
+        private final String validator;
+
+        /**
+         * Segments of the download.
+         */
+        private final List<Segment> segments = new ArrayList<Segment>();
+
+        /**
+         * Creates the progress of a new download.
+         *
+         * @param file File saving the progress.
+         * @param length Length of the remote file.
+         * @param validator Validator of the remote file, <code>null</code> if none.
+         * @param count Number of segments.
+         */
+        private DownloadState(File file, long length, String validator, int count)
+        {
+            this.file = file;
+            this.length = length;
+            this.validator = validator;
+            long segmentSize = (length + count - 1) / count;
+            for (long start = 0; start < length; start += segmentSize)
+            {
+                this.segments.add(new Segment(start, Math.min(length, start + segmentSize) - 1));
+            }
+        }
+
+        /**
+         * Loads the saved progress of a download.
+         *
+         * @param file File saving the progress.
+         * @param length Length of the remote file.
+         * @param validator Validator of the remote file, <code>null</code> if none.
+         * @return Saved progress, <code>null</code> if none or if it is for a different remote
+         * file.
+         */
+        private static DownloadState load(File file, long length, String validator)
+        {
+            if (validator == null || !file.isFile())
+            {
+                return null;
+            }
+
+            Properties properties = new Properties();
+            try
+            {
+                InputStream in = new FileInputStream(file);
+                try
+                {
+                    properties.load(in);
+                }
+                finally
+                {
+                    in.close();
+                }
+
+                if (!Long.toString(length).equals(properties.getProperty("length"))
+                    || !validator.equals(properties.getProperty("validator")))
+                {
+                    return null;
+                }
+                DownloadState state = new DownloadState(file, length, validator, 1);
+                state.segments.clear();
+                int count = Integer.parseInt(properties.getProperty("segments"));
+                for (int i = 0; i < count; i++)
+                {
+                    state.segments.add(new Segment(
+                        Long.parseLong(properties.getProperty("segment." + i + ".position")),
+                        Long.parseLong(properties.getProperty("segment." + i + ".end"))));
+                }
+                return state;
+            }
+            catch (IOException e)
+            {
+                return null;
+            }
+            catch (RuntimeException e)
+            {
+                return null;
+            }
+        }
+
+        /**
+         * @return Segments of the download.
+         */
+        private List<Segment> getSegments()
+        {
+            return this.segments;
+        }
+
+        /**
+         * @return Number of bytes already downloaded.
+         */
+        private long getDownloaded()
+        {
+            long downloaded = this.length;
+            for (Segment segment : this.segments)
+            {
+                downloaded -= segment.end - segment.position + 1;
+            }
+            return downloaded;
+        }
+
+        /**
+         * Saves the progress, writing to a temporary file first so that a crash never leaves a
+         * partially written progress file.
+         *
+         * @throws IOException If saving fails.
+         */
+        private synchronized void save() throws IOException
+        {
+            if (this.validator == null)
+            {
+                // Without validator, a download can not be safely resumed
+                return;
+            }
+
+            Properties properties = new Properties();
+            properties.setProperty("length", Long.toString(this.length));
+            properties.setProperty("validator", this.validator);
+            properties.setProperty("segments", Integer.toString(this.segments.size()));
+            for (int i = 0; i < this.segments.size(); i++)
+            {
+                Segment segment = this.segments.get(i);
+                properties.setProperty("segment." + i + ".position",
+                    Long.toString(segment.position));
+                properties.setProperty("segment." + i + ".end", Long.toString(segment.end));
+            }
+
+            File temporary = new File(this.file.getPath() + ".tmp");
+            OutputStream out = new FileOutputStream(temporary);
+            try
+            {
+                properties.store(out, "Codehaus Cargo download progress");
+            }
+            finally
+            {
+                out.close();
+            }
+            this.file.delete();
+            if (!temporary.renameTo(this.file))
+            {
+                throw new IOException("Failed to move [" + temporary + "] to [" + this.file + "]");
+            }
+        }
+    }
+
+    /**
+     * Downloads one segment using a range request.
+     */
+    private static final class SegmentWorker implements Callable<Object>
+    {
+        /**
+         * URL to download.
+         */
+        private final URL url;
+
+        /**
+         * File to download to.
+         */
+        private final File part;
+
+        /**
+         * Validator of the remote file, <code>null</code> if none.
+         */
+        private final String validator;
+
+        /**
+         * Segment to download.
+         */
+        private final Segment segment;
+
+        /**
+         * Progress of the download.
+         */
+        private final DownloadState state;
+
+        /**
+         * Counter of the downloaded bytes.
+         */
+        private final AtomicLong transferred;
+
+        /**
+         * @param url URL to download.
+         * @param part File to download to.
+         * @param validator Validator of the remote file, <code>null</code> if none.
+         * @param segment Segment to download.
+         * @param state Progress of the download.
+         * @param transferred Counter of the downloaded bytes.
+         */
+        private SegmentWorker(URL url, File part, String validator, Segment segment,
+            DownloadState state, AtomicLong transferred)
+        {
+            this.url = url;
+            this.part = part;
+            this.validator = validator;
+            this.segment = segment;
+            this.state = state;
+            this.transferred = transferred;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Object call() throws IOException
+        {
+            HttpURLConnection connection = (HttpURLConnection) open(this.url);
+            connection.setRequestProperty("Range",
+                "bytes=" + this.segment.position + "-" + this.segment.end);
+            if (this.validator != null)
+            {
+                connection.setRequestProperty("If-Range", this.validator);
+            }
+            if (connection.getResponseCode() != HttpURLConnection.HTTP_PARTIAL)
+            {
+                connection.disconnect();
+                throw new IOException("Server did not honour range request for [" + this.url
+                    + "], the remote file has probably changed");
+            }
+
+            RandomAccessFile file = new RandomAccessFile(this.part, "rw");
+            InputStream in = connection.getInputStream();
+            try
+            {
+                file.seek(this.segment.position);
+                byte[] buffer = new byte[BUFFER_SIZE];
+                long sinceCheckpoint = 0;
+                while (!this.segment.isComplete())
+                {
+                    int read = in.read(buffer, 0, (int) Math.min(buffer.length,
+                        this.segment.end - this.segment.position + 1));
+                    if (read == -1)
+                    {
+                        throw new IOException("Connection to [" + this.url + "] closed at byte "
+                            + this.segment.position + " while expecting bytes up to "
+                                + this.segment.end);
+                    }
+                    file.write(buffer, 0, read);
+                    this.segment.position += read;
+                    this.transferred.addAndGet(read);
+                    sinceCheckpoint += read;
+                    if (sinceCheckpoint >= CHECKPOINT_SIZE)
+                    {
+                        this.state.save();
+                        sinceCheckpoint = 0;
+                    }
+                }
+            }
+            finally
+            {
+                in.close();
+                file.close();
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,820 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus CARGO, copyright 2004-2011 Vincent Massol, 2012-2016 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.container.installer;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.codehaus.cargo.container.ContainerException;
+import org.codehaus.cargo.util.DigestUtils;
+import org.codehaus.cargo.util.FileHandler;
+import org.codehaus.cargo.util.FileHandlerFactory;
+import org.codehaus.cargo.util.log.LoggedObject;
+
+/**
+ * Machine-wide cache of container installations, shared by all processes (and hence all build
+ * workspaces) using the same cache directory.<br>
+ * <br>
+ * Extracted installations are keyed by the SHA-256 of their archive, and an index maps each
+ * download URL to the archive it last resolved to; so that two URLs serving the same bytes share
+ * one installation. Installations are shared between all containers and must hence be treated as
+ * read-only. All modifications of the cache are guarded by file locks, which also protect against
+ * other processes using the same cache directory. Once an installation has been added, the least
+ * recently used installations are evicted until the cache fits within its disk budget.<br>
+ * <br>
+ * An installation is in use from the moment it is returned by {@link #install(ZipURLInstaller)}
+ * until it is given back with {@link #release(ZipURLInstaller)}, or until the JVM which installed
+ * it exits. While in use, an installation holds a shared lock on its lease file and eviction skips
+ * every installation it cannot lock exclusively.
+ */
+public class InstallationCache extends LoggedObject
+{
+    /**
+     * System property for the directory of the default cache.
+     */
+    public static final String CACHE_DIRECTORY_PROPERTY = "cargo.installs.cache.directory";
+
+    /**
+     * System property for the disk budget of the default cache, in bytes.
+     */
+    public static final String CACHE_MAX_SIZE_PROPERTY = "cargo.installs.cache.maxSize";
+
+    /**
+     * Default disk budget, in bytes.
+     */
+    public static final long DEFAULT_MAX_SIZE = 4L * 1024 * 1024 * 1024;
+
+    /**
+     * Subdirectory with the extracted installations, one per archive digest.
+     */
+    private static final String ENTRIES = "entries";
+
+    /**
+     * Subdirectory with the URL index, one file per URL digest.
+     */
+    private static final String URLS = "urls";
+
+    /**
+     * Subdirectory with the downloaded archives, one directory per URL digest.
+     */
+    private static final String DOWNLOADS = "downloads";
+
+    /**
+     * Subdirectory with the lock files.
+     */
+    private static final String LOCKS = "locks";
+
+    /**
+     * Name of the file describing an installation. Its last modification time is the last time
+     * the installation has been used.
+     */
+    private static final String ENTRY_DESCRIPTOR = ".cache-entry";
+
+    /**
+     * In-process locks, as file locks are held on behalf of the whole JVM.
+     */
+    private static final ConcurrentMap<String, ReentrantLock> LOCKS_IN_JVM =
+        new ConcurrentHashMap<String, ReentrantLock>();
+
+    /**
+     * Leases held by this JVM, with the lease file as key. As a JVM can hold only one lock on a
+     * file, the leases are counted.
+     */
+    private static final Map<String, Lease> LEASES_IN_JVM = new HashMap<String, Lease>();
+
+    /**
+     * Cache directory.
+     */
+    private File cacheDir;
+
+    /**
+     * Disk budget, in bytes.
+     */
+    private long maxSize;
+
+    /**
+     * File utility class.
+     */
+    private FileHandler fileHandler = FileHandlerFactory.createFileHandler();
+
+    /**
+     * @param cacheDir Cache directory.
+     * @param maxSize Disk budget, in bytes.
+     */
+    public InstallationCache(File cacheDir, long maxSize)
+    {
+        this.cacheDir = cacheDir.getAbsoluteFile();
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @return The cache configured using the {@link #CACHE_DIRECTORY_PROPERTY} and
+     * {@link #CACHE_MAX_SIZE_PROPERTY} system properties, defaulting to a
+     * <code>cargo/installs-cache</code> directory in the system's temporary directory.
+     */
+    public static InstallationCache getDefault()
+    {
+        String directory = System.getProperty(CACHE_DIRECTORY_PROPERTY);
+        if (directory == null || directory.isEmpty())
+        {
+            directory = new File(new File(System.getProperty("java.io.tmpdir"), "cargo"),
+                "installs-cache").getPath();
+        }
+
+        long maxSize = DEFAULT_MAX_SIZE;
+        String maxSizeProperty = System.getProperty(CACHE_MAX_SIZE_PROPERTY);
+        if (maxSizeProperty != null && !maxSizeProperty.isEmpty())
+        {
+            maxSize = Long.parseLong(maxSizeProperty);
+        }
+
+        return new InstallationCache(new File(directory), maxSize);
+    }
+
+    /**
+     * @return Cache directory.
+     */
+    public File getCacheDir()
+    {
+        return this.cacheDir;
+    }
+
+    /**
+     * @return Disk budget, in bytes.
+     */
+    public long getMaxSize()
+    {
+        return this.maxSize;
+    }
+
+    /**
+     * Installs the container of an installer using this cache. Once this method returns, the
+     * download and extract directories of the installer point to the cache.
+     *
+     * @param installer Installer to install the container of.
+     */
+    public void install(ZipURLInstaller installer)
+    {
+        String url = installer.getRemoteLocation().toString();
+        String urlKey = DigestUtils.sha256Hex(url);
+        installer.setDownloadDir(new File(getDirectory(DOWNLOADS), urlKey).getPath());
+
+        CacheLock urlLock = lock(urlKey);
+        String leased = null;
+        try
+        {
+            String entryKey = lookup(urlKey);
+            if (entryKey != null && (installer.getChecksum() == null
+                || installer.getChecksum().equalsIgnoreCase(entryKey)))
+            {
+                // Lease before checking, so that the installation cannot be evicted in between
+                lease(entryKey);
+                leased = entryKey;
+                installer.setExtractDir(getEntry(entryKey).getPath());
+                if (installer.isAlreadyExtracted())
+                {
+                    getLogger().debug("Container [" + url + "] found in installation cache ["
+                        + this.cacheDir + "]", this.getClass().getName());
+                    touch(entryKey);
+                    leased = null;
+                    return;
+                }
+                release(entryKey);
+                leased = null;
+            }
+
+            entryKey = installer.downloadAndVerify();
+            lease(entryKey);
+            leased = entryKey;
+            File entry = getEntry(entryKey);
+            installer.setExtractDir(entry.getPath());
+            if (!installer.isAlreadyExtracted())
+            {
+                File staging = new File(getDirectory(ENTRIES), entryKey + "." + urlKey + ".tmp");
+                this.fileHandler.delete(staging.getPath());
+                installer.setExtractDir(staging.getPath());
+                installer.unpack();
+                installer.registerInstallation();
+                publish(staging, entry);
+                installer.setExtractDir(entry.getPath());
+            }
+
+            register(urlKey, url, entryKey, new File(installer.getDownloadFile()));
+            leased = null;
+        }
+        catch (IOException e)
+        {
+            throw new ContainerException("Failed to install [" + url + "] in installation cache ["
+                + this.cacheDir + "]", e);
+        }
+        finally
+        {
+            if (leased != null)
+            {
+                // The installation failed, hence is not in use
+                release(leased);
+            }
+            urlLock.release();
+        }
+    }
+
+    /**
+     * Gives back an installation installed with {@link #install(ZipURLInstaller)}, so that it can
+     * be evicted once no other installer nor process uses it anymore.
+     *
+     * @param installer Installer whose container has been installed using this cache.
+     */
+    public void release(ZipURLInstaller installer)
+    {
+        File entries = getDirectory(ENTRIES).getAbsoluteFile();
+        for (File entry = new File(installer.getExtractDir()).getAbsoluteFile(); entry != null;
+            entry = entry.getParentFile())
+        {
+            if (entries.equals(entry.getParentFile()))
+            {
+                release(entry.getName());
+                break;
+            }
+        }
+    }
+
+    /**
+     * Marks an installation as used by this JVM, waiting for any eviction of it to complete.
+     *
+     * @param entryKey Digest of the installation.
+     */
+    private void lease(String entryKey)
+    {
+        File leaseFile = getLeaseFile(entryKey);
+        synchronized (LEASES_IN_JVM)
+        {
+            Lease lease = LEASES_IN_JVM.get(leaseFile.getPath());
+            if (lease == null)
+            {
+                try
+                {
+                    lease = new Lease(new RandomAccessFile(leaseFile, "rw"), true);
+                }
+                catch (IOException e)
+                {
+                    throw new ContainerException("Failed to lease [" + leaseFile + "]", e);
+                }
+                LEASES_IN_JVM.put(leaseFile.getPath(), lease);
+            }
+            lease.count++;
+        }
+    }
+
+    /**
+     * Releases a lease taken with {@link #lease(String)}.
+     *
+     * @param entryKey Digest of the installation.
+     */
+    private void release(String entryKey)
+    {
+        String path = getLeaseFile(entryKey).getPath();
+        synchronized (LEASES_IN_JVM)
+        {
+            Lease lease = LEASES_IN_JVM.get(path);
+            if (lease != null && --lease.count == 0)
+            {
+                LEASES_IN_JVM.remove(path);
+                lease.release();
+            }
+        }
+    }
+
+    /**
+     * @param entryKey Digest of the installation.
+     * @return Lease file of the installation.
+     */
+    private File getLeaseFile(String entryKey)
+    {
+        return new File(getDirectory(LOCKS), entryKey + ".lease");
+    }
+
+    /**
+     * @param urlKey Digest of the URL.
+     * @return Digest of the archive the URL last resolved to, <code>null</code> if none.
+     * @throws IOException If reading the index fails.
+     */
+    private String lookup(String urlKey) throws IOException
+    {
+        File index = new File(getDirectory(URLS), urlKey);
+        CacheLock globalLock = lock(null);
+        try
+        {
+            if (!index.isFile())
+            {
+                return null;
+            }
+            return load(index).getProperty("entry");
+        }
+        finally
+        {
+            globalLock.release();
+        }
+    }
+
+    /**
+     * Moves a freshly extracted installation to its final place in the cache, unless another
+     * process was faster.
+     *
+     * @param staging Directory the installation was extracted to.
+     * @param entry Final directory of the installation.
+     * @throws IOException If moving the installation fails.
+     */
+    private void publish(File staging, File entry) throws IOException
+    {
+        CacheLock globalLock = lock(null);
+        try
+        {
+            if (new File(entry, ENTRY_DESCRIPTOR).isFile())
+            {
+                this.fileHandler.delete(staging.getPath());
+            }
+            else
+            {
+                this.fileHandler.delete(entry.getPath());
+                if (!staging.renameTo(entry))
+                {
+                    throw new IOException("Failed to move [" + staging + "] to [" + entry + "]");
+                }
+                Properties descriptor = new Properties();
+                descriptor.setProperty("size", Long.toString(getSize(entry)));
+                store(descriptor, new File(entry, ENTRY_DESCRIPTOR));
+            }
+        }
+        finally
+        {
+            globalLock.release();
+        }
+    }
+
+    /**
+     * Registers a URL as resolving to an installation, marks the installation as used and evicts
+     * the least recently used installations if the cache exceeds its disk budget.
+     *
+     * @param urlKey Digest of the URL.
+     * @param url URL.
+     * @param entryKey Digest of the archive.
+     * @param archive Downloaded archive.
+     * @throws IOException If updating the cache fails.
+     */
+    private void register(String urlKey, String url, String entryKey, File archive)
+        throws IOException
+    {
+        CacheLock globalLock = lock(null);
+        try
+        {
+            Properties index = new Properties();
+            index.setProperty("url", url);
+            index.setProperty("entry", entryKey);
+            index.setProperty("size", Long.toString(archive.length()));
+            store(index, new File(getDirectory(URLS), urlKey));
+            touch(entryKey);
+            evict(entryKey);
+        }
+        finally
+        {
+            globalLock.release();
+        }
+    }
+
+    /**
+     * Evicts the least recently used installations until the cache fits within its disk budget.
+     * Must be called with the global lock held.
+     *
+     * @param keep Digest of the installation not to evict.
+     * @throws IOException If reading the cache fails.
+     */
+    private void evict(String keep) throws IOException
+    {
+        List<File> descriptors = new ArrayList<File>();
+        long total = 0;
+        for (File entry : listFiles(getDirectory(ENTRIES)))
+        {
+            File descriptor = new File(entry, ENTRY_DESCRIPTOR);
+            if (descriptor.isFile())
+            {
+                descriptors.add(descriptor);
+                total += getEntrySize(entry.getName(), descriptor);
+            }
+        }
+        if (total <= this.maxSize)
+        {
+            return;
+        }
+
+        Collections.sort(descriptors, new Comparator<File>()
+        {
+            @Override
+            public int compare(File o1, File o2)
+            {
+                long difference = o1.lastModified() - o2.lastModified();
+                return difference < 0 ? -1 : difference > 0 ? 1 : 0;
+            }
+        });
+
+        for (File descriptor : descriptors)
+        {
+            String entryKey = descriptor.getParentFile().getName();
+            if (total <= this.maxSize)
+            {
+                break;
+            }
+            if (entryKey.equals(keep))
+            {
+                continue;
+            }
+
+            long size = getEntrySize(entryKey, descriptor);
+            if (evict(entryKey, descriptor))
+            {
+                total -= size;
+            }
+        }
+    }
+
+    /**
+     * Evicts an installation, unless it is in use. Must be called with the global lock held.
+     *
+     * @param entryKey Digest of the installation.
+     * @param descriptor Descriptor of the installation.
+     * @return <code>true</code> if the installation has been evicted, <code>false</code> if it is
+     * in use.
+     * @throws IOException If reading the cache fails.
+     */
+    private boolean evict(String entryKey, File descriptor) throws IOException
+    {
+        File leaseFile = getLeaseFile(entryKey);
+        synchronized (LEASES_IN_JVM)
+        {
+            if (LEASES_IN_JVM.containsKey(leaseFile.getPath()))
+            {
+                return false;
+            }
+
+            Lease lease = new Lease(new RandomAccessFile(leaseFile, "rw"), false);
+            try
+            {
+                if (lease.lock == null)
+                {
+                    getLogger().debug("Not evicting container installation ["
+                        + descriptor.getParent() + "], it is in use by another process",
+                            getClass().getName());
+                    return false;
+                }
+
+                getLogger().info("Evicting least recently used container installation ["
+                    + descriptor.getParent() + "] from installation cache", getClass().getName());
+                for (File index : listFiles(getDirectory(URLS)))
+                {
+                    if (entryKey.equals(load(index).getProperty("entry")))
+                    {
+                        this.fileHandler.delete(
+                            new File(getDirectory(DOWNLOADS), index.getName()).getPath());
+                        index.delete();
+                    }
+                }
+                this.fileHandler.delete(descriptor.getParent());
+                return true;
+            }
+            finally
+            {
+                lease.release();
+            }
+        }
+    }
+
+    /**
+     * @param entryKey Digest of the installation.
+     * @param descriptor Descriptor of the installation.
+     * @return Size of the installation, including all archives resolving to it.
+     * @throws IOException If reading the cache fails.
+     */
+    private long getEntrySize(String entryKey, File descriptor) throws IOException
+    {
+        long size = Long.parseLong(load(descriptor).getProperty("size", "0"));
+        for (File index : listFiles(getDirectory(URLS)))
+        {
+            Properties properties = load(index);
+            if (entryKey.equals(properties.getProperty("entry")))
+            {
+                size += Long.parseLong(properties.getProperty("size", "0"));
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Marks an installation as used now.
+     *
+     * @param entryKey Digest of the installation.
+     */
+    private void touch(String entryKey)
+    {
+        new File(getEntry(entryKey), ENTRY_DESCRIPTOR).setLastModified(System.currentTimeMillis());
+    }
+
+    /**
+     * @param entryKey Digest of the installation.
+     * @return Directory of the installation.
+     */
+    private File getEntry(String entryKey)
+    {
+        return new File(getDirectory(ENTRIES), entryKey);
+    }
+
+    /**
+     * @param name Name of the subdirectory.
+     * @return Subdirectory of the cache, created if needed.
+     */
+    private File getDirectory(String name)
+    {
+        File directory = new File(this.cacheDir, name);
+        if (!directory.isDirectory())
+        {
+            this.fileHandler.mkdirs(directory.getPath());
+        }
+        return directory;
+    }
+
+    /**
+     * @param directory Directory to list.
+     * @return Files in the directory, never <code>null</code>.
+     */
+    private static File[] listFiles(File directory)
+    {
+        File[] files = directory.listFiles();
+        if (files == null)
+        {
+            files = new File[0];
+        }
+        return files;
+    }
+
+    /**
+     * @param file File or directory.
+     * @return Size of the file, or total size of the files in the directory.
+     */
+    private static long getSize(File file)
+    {
+        long size = 0;
+        if (file.isDirectory())
+        {
+            for (File child : listFiles(file))
+            {
+                size += getSize(child);
+            }
+        }
+        else
+        {
+            size = file.length();
+        }
+        return size;
+    }
+
+    /**
+     * @param file Properties file to load.
+     * @return Loaded properties.
+     * @throws IOException If reading fails.
+     */
+    private static Properties load(File file) throws IOException
+    {
+        Properties properties = new Properties();
+        InputStream in = new FileInputStream(file);
+        try
+        {
+            properties.load(in);
+        }
+        finally
+        {
+            in.close();
+        }
+        return properties;
+    }
+
+    /**
+     * Stores properties, writing to a temporary file first so that readers never see a partially
+     * written file.
+     *
+     * @param properties Properties to store.
+     * @param file Properties file to write.
+     * @throws IOException If writing fails.
+     */
+    private static void store(Properties properties, File file) throws IOException
+    {
+        File temporary = new File(file.getPath() + ".tmp");
+        OutputStream out = new FileOutputStream(temporary);
+        try
+        {
+            properties.store(out, "Codehaus Cargo installation cache");
+        }
+        finally
+        {
+            out.close();
+        }
+        file.delete();
+        if (!temporary.renameTo(file))
+        {
+            throw new IOException("Failed to move [" + temporary + "] to [" + file + "]");
+        }
+    }
+
+    /**
+     * Acquires a lock, blocking until it is available both within this JVM and across processes.
+     *
+     * @param key Key of the lock, <code>null</code> for the lock guarding the cache's indexes.
+     * @return Acquired lock.
+     */
+    private CacheLock lock(String key)
+    {
+        String name;
+        if (key == null)
+        {
+            name = "cache.lock";
+        }
+        else
+        {
+            name = key + ".lock";
+        }
+        File lockFile = new File(getDirectory(LOCKS), name);
+
+        ReentrantLock jvmLock = LOCKS_IN_JVM.get(lockFile.getPath());
+        if (jvmLock == null)
+        {
+            LOCKS_IN_JVM.putIfAbsent(lockFile.getPath(), new ReentrantLock());
+            jvmLock = LOCKS_IN_JVM.get(lockFile.getPath());
+        }
+        jvmLock.lock();
+
+        try
+        {
+            RandomAccessFile file = new RandomAccessFile(lockFile, "rw");
+            try
+            {
+                return new CacheLock(jvmLock, file, file.getChannel().lock());
+            }
+            catch (IOException e)
+            {
+                file.close();
+                throw e;
+            }
+        }
+        catch (IOException e)
+        {
+            jvmLock.unlock();
+            throw new ContainerException("Failed to lock [" + lockFile + "]", e);
+        }
+    }
+
+    /**
+     * Lock held both within the JVM and on a file.
+     */
+    private static final class CacheLock
+    {
+        /**
+         * Lock within the JVM.
+         */
+        private final ReentrantLock jvmLock;
+
+        /**
+         * Lock file.
+         */
+        private final RandomAccessFile file;
+
+        /**
+         * Lock on the file.
+         */
+        private final FileLock fileLock;
+
+        /**
+         * @param jvmLock Lock within the JVM.
+         * @param file Lock file.
+         * @param fileLock Lock on the file.
+         */
+        private CacheLock(ReentrantLock jvmLock, RandomAccessFile file, FileLock fileLock)
+        {
+            this.jvmLock = jvmLock;
+            this.file = file;
+            this.fileLock = fileLock;
+        }
+
+        /**
+         * Releases the lock.
+         */
+        private void release()
+        {
+            try
+            {
+                this.fileLock.release();
+                this.file.close();
+            }
+            catch (IOException ignored)
+            {
+                // Closing the file releases the lock in all cases
+            }
+            finally
+            {
+                this.jvmLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Lock on the lease file of an installation.
+     */
+    private static final class Lease
+    {
+        /**
+         * Lease file.
+         */
+        private final RandomAccessFile file;
+
+        /**
+         * Lock on the lease file, <code>null</code> if it could not be acquired.
+         */
+        private final FileLock lock;
+
+        /**
+         * Number of users of the lease within this JVM.
+         */
+        private int count;
+
+        /**
+         * @param file Lease file, closed if locking fails.
+         * @param shared <code>true</code> to wait for a shared lock, <code>false</code> to try to
+         * acquire an exclusive lock.
+         * @throws IOException If locking fails.
+         */
+        private Lease(RandomAccessFile file, boolean shared) throws IOException
+        {
+            this.file = file;
+            try
+            {
+                if (shared)
+                {
+                    this.lock = file.getChannel().lock(0, Long.MAX_VALUE, true);
+                }
+                else
+                {
+                    this.lock = file.getChannel().tryLock();
+                }
+            }
+            catch (IOException e)
+            {
+                file.close();
+                throw e;
+            }
+        }
+
+        /**
+         * Releases the lock and closes the lease file.
+         */
+        private void release()
+        {
+            try
+            {
+                this.file.close();
+            }
+            catch (IOException ignored)
+            {
+                // Closing the file releases the lock in all cases
+            }
+        }
+    }
+}
@@ -25,15 +25,11 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.net.URL;
 
-import org.apache.tools.ant.taskdefs.Expand;
-import org.apache.tools.ant.taskdefs.Get;
-import org.apache.tools.ant.taskdefs.Untar;
-import org.apache.tools.ant.taskdefs.Untar.UntarCompressionMethod;
 import org.codehaus.cargo.container.ContainerException;
 import org.codehaus.cargo.util.AntTaskFactory;
-import org.codehaus.cargo.util.AntUtils;
-import org.codehaus.cargo.util.DefaultFileHandler;
+import org.codehaus.cargo.util.DigestUtils;
 import org.codehaus.cargo.util.FileHandler;
+import org.codehaus.cargo.util.FileHandlerFactory;
 import org.codehaus.cargo.util.log.LoggedObject;
 
 /**
@@ -73,15 +69,25 @@ public class ZipURLInstaller extends LoggedObject implements Installer
     private Proxy proxy;
 
     /**
-     * Ant utility class.
+     * Downloader used for fetching the zipped container.
      */
-    private AntUtils antUtils;
+    private Downloader downloader;
 
     /**
      * File utility class.
      */
     private FileHandler fileHandler;
 
+    /**
+     * Expected SHA-256 checksum of the zipped container, <code>null</code> if unknown.
+     */
+    private String checksum;
+
+    /**
+     * Shared installation cache to install into, <code>null</code> for none.
+     */
+    private InstallationCache installationCache;
+
     /**
      * @param remoteLocation URL where the zipped container is located
      */
@@ -100,8 +106,8 @@ public class ZipURLInstaller extends LoggedObject implements Installer
         this.remoteLocation = remoteLocation;
         this.downloadDir = downloadDir;
         this.extractDir = extractDir;
-        this.fileHandler = new DefaultFileHandler();
-        this.antUtils = new AntUtils();
+        this.fileHandler = FileHandlerFactory.createFileHandler();
+        this.downloader = new Downloader();
     }
 
     /**
@@ -177,14 +183,33 @@ public class ZipURLInstaller extends LoggedObject implements Installer
     }
 
     /**
-     * Convenience method used for testing in isolation. Test cases can use it for introducing a
-     * custom {@link AntTaskFactory} that returns a custom test-made Ant task.
+     * @return the downloader used for fetching the zipped container.
+     */
+    public Downloader getDownloader()
+    {
+        return this.downloader;
+    }
+
+    /**
+     * @param downloader the downloader to use for fetching the zipped container.
+     */
+    public void setDownloader(Downloader downloader)
+    {
+        this.downloader = downloader;
+    }
+
+    /**
+     * Convenience method used for testing in isolation. Archives are no longer extracted nor
+     * downloaded with Ant tasks, hence the Ant task factory is not used anymore.
      * 
-     * @param antTaskFactory the test-provided {@link AntTaskFactory}
+     * @param antTaskFactory the test-provided {@link AntTaskFactory}, ignored.
+     * @deprecated Archives are extracted with {@link ArchiveExtractor} and downloaded with
+     * {@link Downloader}, use {@link #setDownloader(Downloader)} to replace the download.
      */
+    @Deprecated
     protected void setAntTaskFactory(AntTaskFactory antTaskFactory)
     {
-        this.antUtils = new AntUtils(antTaskFactory);
+        // Nothing to do, kept for subclasses compiled against previous versions
     }
 
     /**
@@ -203,51 +228,81 @@ public class ZipURLInstaller extends LoggedObject implements Installer
         this.fileHandler = fileHandler;
     }
 
+    /**
+     * @return URL where the zipped container is located.
+     */
+    public URL getRemoteLocation()
+    {
+        return this.remoteLocation;
+    }
+
+    /**
+     * @return Expected SHA-256 checksum of the zipped container, <code>null</code> if unknown.
+     */
+    public String getChecksum()
+    {
+        return this.checksum;
+    }
+
+    /**
+     * @param checksum Expected SHA-256 checksum of the zipped container, <code>null</code> if
+     * unknown. When set, each download is verified against it.
+     */
+    public void setChecksum(String checksum)
+    {
+        this.checksum = checksum;
+    }
+
+    /**
+     * @return Shared installation cache to install into, <code>null</code> for none.
+     */
+    public InstallationCache getInstallationCache()
+    {
+        return this.installationCache;
+    }
+
+    /**
+     * @param installationCache Shared installation cache to install into, <code>null</code> for
+     * none. When set, the download and extract directories are managed by the cache.
+     */
+    public void setInstallationCache(InstallationCache installationCache)
+    {
+        this.installationCache = installationCache;
+    }
+
     /**
      * @see Installer#install()
      */
     @Override
     public void install()
     {
-        if (!isAlreadyExtracted())
+        if (this.installationCache != null)
+        {
+            this.installationCache.setLogger(getLogger());
+            this.installationCache.install(this);
+        }
+        else if (!isAlreadyExtracted())
         {
             getLogger().debug("Container [" + getSourceFileName() + "] is not yet installed.",
                 this.getClass().getName());
 
-            if (!isAlreadyDownloaded())
-            {
-                getLogger().debug("Container [" + getSourceFileName() + "] is not yet downloaded.",
-                    this.getClass().getName());
-
-                download();
-            }
-
-            try
-            {
-                getLogger().debug("Container [" + getSourceFileName()
-                    + "] is downloaded, now unpacking.", this.getClass().getName());
-
-                unpack();
-            }
-            catch (Exception e)
+            if (this.checksum != null)
             {
-                getLogger().debug("Container [" + getSourceFileName() + "] is broken.",
-                    this.getClass().getName());
-
-                File sourceFile = new File(getDownloadDir(), getSourceFileName());
-                sourceFile.delete();
-
-                download();
+                downloadAndVerify();
                 try
                 {
                     unpack();
                 }
-                catch (Exception ee)
+                catch (IOException e)
                 {
                     throw new ContainerException(
-                        "Failed to unpack [" + getSourceFileName() + "]", ee);
+                        "Failed to unpack [" + getSourceFileName() + "]", e);
                 }
             }
+            else
+            {
+                downloadAndUnpack();
+            }
 
             getLogger().debug("Container [" + getSourceFileName()
                 + "] is unpacked, now registering.", this.getClass().getName());
@@ -263,6 +318,100 @@ public class ZipURLInstaller extends LoggedObject implements Installer
         }
     }
 
+    /**
+     * Downloads and unpacks the container when no checksum is known: if unpacking fails, the
+     * downloaded file is considered broken and downloaded again.
+     */
+    private void downloadAndUnpack()
+    {
+        if (!isAlreadyDownloaded())
+        {
+            getLogger().debug("Container [" + getSourceFileName() + "] is not yet downloaded.",
+                this.getClass().getName());
+
+            download();
+        }
+
+        try
+        {
+            getLogger().debug("Container [" + getSourceFileName()
+                + "] is downloaded, now unpacking.", this.getClass().getName());
+
+            unpack();
+        }
+        catch (Exception e)
+        {
+            getLogger().debug("Container [" + getSourceFileName() + "] is broken.",
+                this.getClass().getName());
+
+            File sourceFile = new File(getDownloadDir(), getSourceFileName());
+            sourceFile.delete();
+
+            download();
+            try
+            {
+                unpack();
+            }
+            catch (Exception ee)
+            {
+                throw new ContainerException(
+                    "Failed to unpack [" + getSourceFileName() + "]", ee);
+            }
+        }
+    }
+
+    /**
+     * Downloads the zipped container unless already downloaded and verifies it against the
+     * expected checksum, if any. A previously downloaded file not matching the checksum is
+     * downloaded again.
+     *
+     * @return SHA-256 checksum of the downloaded file.
+     */
+    String downloadAndVerify()
+    {
+        if (isAlreadyDownloaded() && this.checksum != null
+            && !this.checksum.equalsIgnoreCase(computeChecksum()))
+        {
+            getLogger().debug("Container [" + getSourceFileName() + "] does not match checksum ["
+                + this.checksum + "], downloading again.", this.getClass().getName());
+            new File(getDownloadFile()).delete();
+        }
+
+        if (!isAlreadyDownloaded())
+        {
+            getLogger().debug("Container [" + getSourceFileName() + "] is not yet downloaded.",
+                this.getClass().getName());
+
+            download();
+        }
+
+        String actualChecksum = computeChecksum();
+        if (this.checksum != null && !this.checksum.equalsIgnoreCase(actualChecksum))
+        {
+            new File(getDownloadFile()).delete();
+            throw new ContainerException("Downloaded file [" + this.remoteLocation
+                + "] has SHA-256 checksum [" + actualChecksum + "] instead of the expected ["
+                + this.checksum + "]");
+        }
+        return actualChecksum;
+    }
+
+    /**
+     * @return SHA-256 checksum of the downloaded file.
+     */
+    private String computeChecksum()
+    {
+        try
+        {
+            return DigestUtils.sha256Hex(new File(getDownloadFile()));
+        }
+        catch (IOException e)
+        {
+            throw new ContainerException("Failed to compute checksum of [" + getDownloadFile()
+                + "]", e);
+        }
+    }
+
     /**
      * Create timestamp file to register that the installation has been successful. This allows to
      * prevent installing again next time. If the remote URL changes, then the container will be
@@ -356,10 +505,11 @@ public class ZipURLInstaller extends LoggedObject implements Installer
     }
 
     /**
-     * Unpacks the zip file containing the container files.
+     * Unpacks the zip file containing the container files. The extraction is verified before
+     * returning, so that the installation only gets registered if all files are in place.
      * @throws IOException If the ZIP file is broken
      */
-    private void unpack() throws IOException
+    void unpack() throws IOException
     {
         File targetDir = new File(getExtractDir());
         File sourceFile = new File(getDownloadDir(), getSourceFileName());
@@ -368,10 +518,9 @@ public class ZipURLInstaller extends LoggedObject implements Installer
             "Installing container [" + sourceFile + "] in [" + targetDir.getPath() + "]",
                 getClass().getName());
 
-        Expand expandTask = createExpandTask();
-        expandTask.setSrc(sourceFile);
-        expandTask.setDest(targetDir);
-        expandTask.execute();
+        ArchiveExtractor extractor = new ArchiveExtractor();
+        extractor.setLogger(getLogger());
+        extractor.extract(sourceFile, targetDir);
 
         if (!targetDir.isDirectory())
         {
@@ -379,48 +528,6 @@ public class ZipURLInstaller extends LoggedObject implements Installer
         }
     }
 
-    /**
-     * Create an ant Expand task.
-     * @return The expand task
-     */
-    private Expand createExpandTask()
-    {
-        String archivename = getSourceFileName().toLowerCase();
-        Expand expand = null;
-        if (archivename.endsWith(".zip"))
-        {
-            expand = (Expand) this.antUtils.createAntTask("unzip");
-        }
-        else if (archivename.endsWith(".tar"))
-        {
-            expand = (Expand) this.antUtils.createAntTask("untar");
-        }
-        else if (archivename.endsWith(".tgz") || archivename.endsWith(".tar.gz"))
-        {
-            Untar untar = (Untar) this.antUtils.createAntTask("untar");
-            UntarCompressionMethod compressionMethod = new Untar.UntarCompressionMethod();
-            compressionMethod.setValue("gzip");
-            untar.setCompression(compressionMethod);
-            expand = untar;
-        }
-        else if (archivename.endsWith(".bz2"))
-        {
-            Untar untar = (Untar) this.antUtils.createAntTask("untar");
-            UntarCompressionMethod compressionMethod = new Untar.UntarCompressionMethod();
-            compressionMethod.setValue("bzip2");
-            untar.setCompression(compressionMethod);
-            expand = untar;
-        }
-        else
-        {
-            String errorMessage = "Unsupported archive type: [" + archivename + "]";
-            getLogger().warn(errorMessage, getClass().getName());
-            throw new IllegalArgumentException(errorMessage);
-        }
-
-        return expand;
-    }
-
     /**
      * Downloads the zip file containing the container files.
      */
@@ -460,9 +567,10 @@ public class ZipURLInstaller extends LoggedObject implements Installer
     }
 
     /**
-     * Perform the actual HTTP download.
+     * Perform the actual HTTP download. A download that failed previously is resumed.
+     * @throws IOException If the download fails.
      */
-    private void doDownload()
+    private void doDownload() throws IOException
     {
         String downloadDir = getDownloadDir();
         if (!getFileHandler().exists(downloadDir))
@@ -474,28 +582,8 @@ public class ZipURLInstaller extends LoggedObject implements Installer
         getLogger().info("Downloading container from [" + this.remoteLocation + "] to ["
             + targetFile + "]", getClass().getName());
 
-        Get getTask = (Get) this.antUtils.createAntTask("get");
-        getTask.setUseTimestamp(true);
-        getTask.setSrc(this.remoteLocation);
-        String userInfo = this.remoteLocation.getUserInfo();
-        if (userInfo != null)
-        {
-            int separator = userInfo.indexOf(":");
-            if (separator > 0)
-            {
-                String username = userInfo.substring(0, separator);
-                getTask.setUsername(username);
-                String password = userInfo.substring(separator + 1);
-                getTask.setPassword(password);
-            }
-            else
-            {
-                getTask.setUsername(userInfo);
-            }
-        }
-
-        getTask.setDest(targetFile);
-        getTask.execute();
+        this.downloader.setLogger(getLogger());
+        this.downloader.download(this.remoteLocation, targetFile);
     }
 
     /**
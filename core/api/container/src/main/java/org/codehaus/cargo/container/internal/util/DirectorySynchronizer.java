@@ -0,0 +1,353 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus CARGO, copyright 2004-2011 Vincent Massol, 2012-2016 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.container.internal.util;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.codehaus.cargo.util.DigestUtils;
+import org.codehaus.cargo.util.FileHandler;
+
+/**
+ * Synchronizes a target directory with a source directory by only copying the files that have
+ * changed since the last synchronization and deleting the ones that have been removed. The size,
+ * modification date and hash of each file are kept in a manifest file between synchronizations.
+ */
+public class DirectorySynchronizer
+{
+    /**
+     * Encoding of the manifest file.
+     */
+    private static final String ENCODING = "UTF-8";
+
+    /**
+     * File handler used to copy the files.
+     */
+    private FileHandler fileHandler;
+
+    /**
+     * Number of files copied by the last synchronization.
+     */
+    private int copiedFiles;
+
+    /**
+     * Number of bytes copied by the last synchronization.
+     */
+    private long copiedBytes;
+
+    /**
+     * Number of files deleted by the last synchronization.
+     */
+    private int deletedFiles;
+
+    /**
+     * Number of files left untouched by the last synchronization.
+     */
+    private int unchangedFiles;
+
+    /**
+     * State of a file as recorded in the manifest.
+     */
+    private static class FileState
+    {
+        /**
+         * Size of the source file.
+         */
+        private long size;
+
+        /**
+         * Last modification date of the source file.
+         */
+        private long lastModified;
+
+        /**
+         * SHA-256 hash of the file.
+         */
+        private String hash;
+
+        /**
+         * Saves all attributes.
+         * @param size Size of the source file.
+         * @param lastModified Last modification date of the source file.
+         * @param hash SHA-256 hash of the file.
+         */
+        public FileState(long size, long lastModified, String hash)
+        {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.hash = hash;
+        }
+    }
+
+    /**
+     * @param fileHandler File handler used to copy the files.
+     */
+    public DirectorySynchronizer(FileHandler fileHandler)
+    {
+        this.fileHandler = fileHandler;
+    }
+
+    /**
+     * Synchronizes the target directory with the source directory.
+     * @param source Source directory.
+     * @param target Target directory, created if needed.
+     * @param manifest Manifest file, which must not be inside the target directory.
+     * @return <code>true</code> if any file in the target directory has been modified.
+     * @throws IOException If anything goes wrong.
+     */
+    public synchronized boolean synchronize(File source, File target, File manifest)
+        throws IOException
+    {
+        this.copiedFiles = 0;
+        this.copiedBytes = 0;
+        this.deletedFiles = 0;
+        this.unchangedFiles = 0;
+
+        Map<String, FileState> previous = readManifest(manifest);
+        Map<String, File> sources = new TreeMap<String, File>();
+        listFiles(source, "", sources);
+
+        Map<String, FileState> current = new TreeMap<String, FileState>();
+        for (Map.Entry<String, File> entry : sources.entrySet())
+        {
+            File sourceFile = entry.getValue();
+            File targetFile = new File(target, entry.getKey());
+            FileState state = previous.get(entry.getKey());
+            long size = sourceFile.length();
+            long lastModified = sourceFile.lastModified();
+
+            if (state != null && state.size == size && state.lastModified == lastModified
+                && targetFile.isFile())
+            {
+                current.put(entry.getKey(), state);
+                this.unchangedFiles++;
+                continue;
+            }
+
+            String hash = DigestUtils.sha256Hex(sourceFile);
+            if (targetFile.isFile() && targetFile.length() == size
+                && hash.equals(getTargetHash(state, targetFile)))
+            {
+                this.unchangedFiles++;
+            }
+            else
+            {
+                this.fileHandler.mkdirs(targetFile.getParent());
+                this.fileHandler.copyFile(sourceFile.getPath(), targetFile.getPath(), true);
+                this.copiedFiles++;
+                this.copiedBytes += size;
+            }
+            current.put(entry.getKey(), new FileState(size, lastModified, hash));
+        }
+
+        for (String path : previous.keySet())
+        {
+            if (!sources.containsKey(path))
+            {
+                File targetFile = new File(target, path);
+                if (targetFile.delete())
+                {
+                    this.deletedFiles++;
+                }
+                deleteEmptyParents(targetFile.getParentFile(), target, source, path);
+            }
+        }
+
+        writeManifest(manifest, current);
+        return this.copiedFiles > 0 || this.deletedFiles > 0;
+    }
+
+    /**
+     * @return Number of files copied by the last synchronization.
+     */
+    public int getCopiedFiles()
+    {
+        return this.copiedFiles;
+    }
+
+    /**
+     * @return Number of bytes copied by the last synchronization.
+     */
+    public long getCopiedBytes()
+    {
+        return this.copiedBytes;
+    }
+
+    /**
+     * @return Number of files deleted by the last synchronization.
+     */
+    public int getDeletedFiles()
+    {
+        return this.deletedFiles;
+    }
+
+    /**
+     * @return Number of files left untouched by the last synchronization.
+     */
+    public int getUnchangedFiles()
+    {
+        return this.unchangedFiles;
+    }
+
+    /**
+     * @param state State of the file in the manifest, <code>null</code> if unknown.
+     * @param targetFile Target file.
+     * @return Hash of the target file, read from the manifest when known.
+     * @throws IOException If the target file cannot be read.
+     */
+    private static String getTargetHash(FileState state, File targetFile) throws IOException
+    {
+        if (state != null)
+        {
+            return state.hash;
+        }
+        return DigestUtils.sha256Hex(targetFile);
+    }
+
+    /**
+     * Lists all files in a directory, recursively.
+     * @param directory Directory to list.
+     * @param prefix Relative path of <code>directory</code>, ending with a slash.
+     * @param files Map of relative paths to files to add the files to.
+     */
+    private static void listFiles(File directory, String prefix, Map<String, File> files)
+    {
+        File[] children = directory.listFiles();
+        if (children == null)
+        {
+            return;
+        }
+        for (File child : children)
+        {
+            if (child.isDirectory())
+            {
+                listFiles(child, prefix + child.getName() + "/", files);
+            }
+            else
+            {
+                files.put(prefix + child.getName(), child);
+            }
+        }
+    }
+
+    /**
+     * Deletes the directories of a deleted file which no longer exist in the source directory and
+     * are empty.
+     * @param directory Directory of the deleted file.
+     * @param target Target directory, which is never deleted.
+     * @param source Source directory.
+     * @param path Relative path of the deleted file.
+     */
+    private static void deleteEmptyParents(File directory, File target, File source, String path)
+    {
+        File current = directory;
+        String relativePath = path;
+        while (!current.equals(target))
+        {
+            relativePath = relativePath.substring(0, relativePath.lastIndexOf('/'));
+            String[] children = current.list();
+            if (new File(source, relativePath).exists() || children == null
+                || children.length > 0)
+            {
+                return;
+            }
+            current.delete();
+            current = current.getParentFile();
+        }
+    }
+
+    /**
+     * @param manifest Manifest file.
+     * @return File states read from the manifest, empty if there is no manifest.
+     * @throws IOException If the manifest cannot be read.
+     */
+    private static Map<String, FileState> readManifest(File manifest) throws IOException
+    {
+        Map<String, FileState> states = new HashMap<String, FileState>();
+        if (!manifest.isFile())
+        {
+            return states;
+        }
+
+        BufferedReader reader =
+            new BufferedReader(new InputStreamReader(new FileInputStream(manifest), ENCODING));
+        try
+        {
+            String line;
+            while ((line = reader.readLine()) != null)
+            {
+                String[] fields = line.split("\t", 4);
+                if (fields.length == 4)
+                {
+                    states.put(fields[3], new FileState(Long.parseLong(fields[0]),
+                        Long.parseLong(fields[1]), fields[2]));
+                }
+            }
+        }
+        finally
+        {
+            reader.close();
+        }
+        return states;
+    }
+
+    /**
+     * Writes the manifest, replacing the previous one only once fully written.
+     * @param manifest Manifest file.
+     * @param states File states to write.
+     * @throws IOException If the manifest cannot be written.
+     */
+    private static void writeManifest(File manifest, Map<String, FileState> states)
+        throws IOException
+    {
+        File temporary = new File(manifest.getPath() + ".tmp");
+        Writer writer = new OutputStreamWriter(new FileOutputStream(temporary), ENCODING);
+        try
+        {
+            for (Map.Entry<String, FileState> entry : states.entrySet())
+            {
+                FileState state = entry.getValue();
+                writer.write(state.size + "\t" + state.lastModified + "\t" + state.hash + "\t"
+                    + entry.getKey() + "\n");
+            }
+        }
+        finally
+        {
+            writer.close();
+        }
+        if (manifest.exists() && !manifest.delete())
+        {
+            throw new IOException("Cannot delete previous manifest [" + manifest + "]");
+        }
+        if (!temporary.renameTo(manifest))
+        {
+            throw new IOException("Cannot write manifest [" + manifest + "]");
+        }
+    }
+}
@@ -34,6 +34,7 @@ import javax.net.ssl.HostnameVerifier;
 import javax.net.ssl.HttpsURLConnection;
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSocketFactory;
 import javax.net.ssl.TrustManager;
 import javax.net.ssl.X509TrustManager;
 
@@ -66,6 +67,39 @@ public class HttpUtils extends LoggedObject
         public String responseBody;
     }
 
+    /**
+     * Whether connections should be kept alive between successive calls.
+     */
+    private boolean keepAlive;
+
+    /**
+     * Permissive SSL socket factory, created on first use and then reused so that kept alive
+     * HTTPS connections can be reused as well.
+     */
+    private SSLSocketFactory sslSocketFactory;
+
+    /**
+     * @return <code>true</code> if connections are kept alive between successive calls.
+     */
+    public boolean isKeepAlive()
+    {
+        return this.keepAlive;
+    }
+
+    /**
+     * Sets whether connections should be kept alive between successive calls. When kept alive,
+     * the underlying socket is handed back to the JVM's connection cache once the response has
+     * been read, so that a monitor pinging the same URL again and again reuses one connection
+     * instead of opening (and closing) a new one on every call.
+     * 
+     * @param keepAlive <code>true</code> to keep connections alive, <code>false</code> (the
+     * default) to send a <code>Connection: close</code> header and disconnect after each call.
+     */
+    public void setKeepAlive(boolean keepAlive)
+    {
+        this.keepAlive = keepAlive;
+    }
+
     /**
      * @param pingURL the URL to ping
      * @return true if the URL can be ping or false otherwise
@@ -151,10 +185,14 @@ public class HttpUtils extends LoggedObject
             HttpURLConnection connection;
             if (url.getProtocol().equalsIgnoreCase("https"))
             {
-                TrustManager[] trustAll = {new PermissiveTrustManager()};
-                SSLContext sc = SSLContext.getInstance("SSL");
-                sc.init(null, trustAll, new java.security.SecureRandom());
-                HttpsURLConnection.setDefaultSSLSocketFactory(sc.getSocketFactory());
+                if (this.sslSocketFactory == null)
+                {
+                    TrustManager[] trustAll = {new PermissiveTrustManager()};
+                    SSLContext sc = SSLContext.getInstance("SSL");
+                    sc.init(null, trustAll, new java.security.SecureRandom());
+                    this.sslSocketFactory = sc.getSocketFactory();
+                }
+                HttpsURLConnection.setDefaultSSLSocketFactory(this.sslSocketFactory);
 
                 connection = (HttpsURLConnection) url.openConnection();
 
@@ -173,7 +211,10 @@ public class HttpUtils extends LoggedObject
                 connection.setRequestProperty("Authorization", "Basic " + userInfo);
             }
 
-            connection.setRequestProperty("Connection", "close");
+            if (!this.keepAlive)
+            {
+                connection.setRequestProperty("Connection", "close");
+            }
             if (timeout != 0)
             {
                 connection.setReadTimeout((int) timeout);
@@ -197,7 +238,10 @@ public class HttpUtils extends LoggedObject
 
             connection.connect();
             result.responseBody = readFully(connection);
-            connection.disconnect();
+            if (!this.keepAlive)
+            {
+                connection.disconnect();
+            }
             result.responseCode = connection.getResponseCode();
             result.responseMessage = connection.getResponseMessage();
         }
@@ -300,11 +344,19 @@ public class HttpUtils extends LoggedObject
         StringBuilder body = new StringBuilder();
         byte[] buf = new byte[256];
 
-        // Make sure we read all the data in the stream
-        int n;
-        while ((n = stream.read(buf)) != -1)
+        // Make sure we read all the data in the stream; closing it then allows the JVM to reuse
+        // the underlying connection when it is kept alive
+        try
+        {
+            int n;
+            while ((n = stream.read(buf)) != -1)
+            {
+                body.append(new String(buf, 0, n));
+            }
+        }
+        finally
         {
-            body.append(new String(buf, 0, n));
+            stream.close();
         }
 
         return body.toString();
@@ -0,0 +1,86 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus CARGO, copyright 2004-2011 Vincent Massol, 2012-2016 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.container.internal.util;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Cache of the public methods an embedded container looks up in the classes loaded from the
+ * container's class loader. Each embedded container has its own cache, which therefore does not
+ * keep the container's class loader in memory once the container is not used anymore.
+ */
+public class MethodCache
+{
+    /**
+     * Methods already looked up, per class and by signature.
+     */
+    private final ConcurrentMap<Class<?>, ConcurrentMap<String, Method>> methods =
+        new ConcurrentHashMap<Class<?>, ConcurrentMap<String, Method>>();
+
+    /**
+     * Returns a public method of a class, like {@link Class#getMethod(String, Class[])} does. The
+     * method is only looked up once per class, which saves a lot of time when the same method is
+     * called for each deployable of an embedded container.
+     * 
+     * @param type Class to look the method up in.
+     * @param name Name of the method.
+     * @param parameterTypes Parameter types of the method, <code>null</code> meaning none.
+     * @return The method.
+     * @throws NoSuchMethodException If there is no such method.
+     */
+    public Method getMethod(Class<?> type, String name, Class<?>... parameterTypes)
+        throws NoSuchMethodException
+    {
+        StringBuilder signature = new StringBuilder(name);
+        signature.append('(');
+        if (parameterTypes != null)
+        {
+            for (Class<?> parameterType : parameterTypes)
+            {
+                signature.append(parameterType.getName());
+                signature.append(',');
+            }
+        }
+        signature.append(')');
+        String key = signature.toString();
+
+        ConcurrentMap<String, Method> typeMethods = this.methods.get(type);
+        if (typeMethods == null)
+        {
+            typeMethods = new ConcurrentHashMap<String, Method>();
+            ConcurrentMap<String, Method> existing = this.methods.putIfAbsent(type, typeMethods);
+            if (existing != null)
+            {
+                typeMethods = existing;
+            }
+        }
+
+        Method method = typeMethods.get(key);
+        if (method == null)
+        {
+            // Looking the same method up twice concurrently does no harm
+            method = type.getMethod(name, parameterTypes);
+            typeMethods.put(key, method);
+        }
+        return method;
+    }
+}
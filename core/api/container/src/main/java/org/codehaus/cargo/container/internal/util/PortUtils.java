@@ -0,0 +1,235 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus CARGO, copyright 2004-2011 Vincent Massol, 2012-2016 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.container.internal.util;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.codehaus.cargo.util.log.LoggedObject;
+
+/**
+ * Set of port probing utility methods. All ports are probed at once, using non-blocking
+ * connections, so that the time taken does not grow with the number of ports.
+ */
+public class PortUtils extends LoggedObject
+{
+    /**
+     * Timeout of each probe when waiting for ports to be shut down, in milliseconds.
+     */
+    private static final long SHUTDOWN_PROBE_TIMEOUT = 250L;
+
+    /**
+     * Host on which the ports are probed.
+     */
+    private String host;
+
+    /**
+     * Creates port utilities probing ports on <code>localhost</code>.
+     */
+    public PortUtils()
+    {
+        this("localhost");
+    }
+
+    /**
+     * @param host host on which the ports are probed
+     */
+    public PortUtils(String host)
+    {
+        this.host = host;
+    }
+
+    /**
+     * Probes ports by connecting to all of them at once.
+     * 
+     * @param ports the ports to probe
+     * @param timeout the timeout in milliseconds, after which a port that has neither accepted nor
+     * refused the connection is considered not to be in use
+     * @return the status of each probed port, <code>true</code> if it is in use (i.e., it has
+     * accepted the connection) and <code>false</code> otherwise
+     */
+    public Map<Integer, Boolean> probe(Collection<Integer> ports, long timeout)
+    {
+        Map<Integer, Boolean> result = new TreeMap<Integer, Boolean>();
+        for (Integer port : ports)
+        {
+            result.put(port, Boolean.FALSE);
+        }
+        if (result.isEmpty())
+        {
+            return result;
+        }
+
+        Selector selector = null;
+        try
+        {
+            selector = Selector.open();
+            int pending = 0;
+            for (Integer port : result.keySet())
+            {
+                SocketChannel channel = SocketChannel.open();
+                try
+                {
+                    channel.configureBlocking(false);
+                    if (channel.connect(new InetSocketAddress(this.host, port)))
+                    {
+                        result.put(port, Boolean.TRUE);
+                        close(channel);
+                    }
+                    else
+                    {
+                        channel.register(selector, SelectionKey.OP_CONNECT, port);
+                        pending++;
+                    }
+                }
+                catch (IOException e)
+                {
+                    // Connection refused right away, port is not in use
+                    close(channel);
+                }
+            }
+
+            long deadline = System.currentTimeMillis() + timeout;
+            while (pending > 0)
+            {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0)
+                {
+                    break;
+                }
+                selector.select(remaining);
+
+                Iterator<SelectionKey> selected = selector.selectedKeys().iterator();
+                while (selected.hasNext())
+                {
+                    SelectionKey key = selected.next();
+                    selected.remove();
+
+                    SocketChannel channel = (SocketChannel) key.channel();
+                    Integer port = (Integer) key.attachment();
+                    try
+                    {
+                        if (channel.finishConnect())
+                        {
+                            result.put(port, Boolean.TRUE);
+                        }
+                    }
+                    catch (IOException e)
+                    {
+                        // Connection refused, port is not in use
+                    }
+                    key.cancel();
+                    close(channel);
+                    pending--;
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            getLogger().debug("Failed to probe ports " + result.keySet() + ": " + e,
+                this.getClass().getName());
+        }
+        finally
+        {
+            if (selector != null)
+            {
+                for (SelectionKey key : selector.keys())
+                {
+                    close((SocketChannel) key.channel());
+                }
+                try
+                {
+                    selector.close();
+                }
+                catch (IOException ignored)
+                {
+                    // Ignored
+                }
+            }
+        }
+
+        getLogger().debug("Probed ports on " + this.host + ": " + result,
+            this.getClass().getName());
+        return result;
+    }
+
+    /**
+     * Waits for ports to be shut down, probing them all at once until none is in use anymore or
+     * the deadline is reached.
+     * 
+     * @param ports the ports to wait for
+     * @param deadline the deadline for the ports to be shut down
+     * @param interval the interval between two probes, in milliseconds
+     * @return the ports still in use when the deadline was reached, empty if all ports have been
+     * shut down
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public Set<Integer> waitForShutdown(Collection<Integer> ports, long deadline, long interval)
+        throws InterruptedException
+    {
+        Set<Integer> inUse = new TreeSet<Integer>(ports);
+        while (!inUse.isEmpty())
+        {
+            long timeout = Math.min(SHUTDOWN_PROBE_TIMEOUT, deadline - System.currentTimeMillis());
+            Map<Integer, Boolean> statuses = probe(inUse, Math.max(1L, timeout));
+            for (Map.Entry<Integer, Boolean> status : statuses.entrySet())
+            {
+                if (!status.getValue())
+                {
+                    getLogger().debug("\tPort " + status.getKey() + " is shutdown",
+                        this.getClass().getName());
+                    inUse.remove(status.getKey());
+                }
+            }
+
+            if (inUse.isEmpty() || System.currentTimeMillis() > deadline)
+            {
+                break;
+            }
+            Thread.sleep(interval);
+        }
+        return inUse;
+    }
+
+    /**
+     * Closes a channel, ignoring errors.
+     * @param channel the channel to close
+     */
+    private void close(SocketChannel channel)
+    {
+        try
+        {
+            channel.close();
+        }
+        catch (IOException ignored)
+        {
+            // Ignored
+        }
+    }
+}
@@ -38,8 +38,8 @@ import java.util.Vector;
 import org.apache.tools.ant.filters.util.ChainReaderHelper;
 import org.apache.tools.ant.types.FilterChain;
 import org.codehaus.cargo.util.CargoException;
-import org.codehaus.cargo.util.DefaultFileHandler;
 import org.codehaus.cargo.util.FileHandler;
+import org.codehaus.cargo.util.FileHandlerFactory;
 import org.codehaus.cargo.util.log.LoggedObject;
 
 /**
@@ -51,7 +51,7 @@ public final class ResourceUtils extends LoggedObject
      * Default file handler for the @link{ResourceUtils#copyResource(String, File)} and
      * @link{ResourceUtils#copyResource(String, File, FilterChain)} methods.
      */
-    private static FileHandler defaultFileHandler = new DefaultFileHandler();
+    private static FileHandler defaultFileHandler = FileHandlerFactory.createFileHandler();
 
     /**
      * Class loader used for the <code>getResourceAsStream</code> calls.
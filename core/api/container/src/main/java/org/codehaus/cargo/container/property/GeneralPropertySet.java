@@ -85,4 +85,17 @@ public interface GeneralPropertySet
      * The port offset to apply to the container ports.
      */
     String PORT_OFFSET = "cargo.port.offset";
+
+    /**
+     * Specify if the copying deployers should redeploy expanded deployables by only copying the
+     * files that have changed since the previous deployment.
+     */
+    String DELTA_REDEPLOY = "cargo.deployer.delta";
+
+    /**
+     * How directory trees are copied on Linux when the NIO file handler is used: <code>none</code>
+     * (the default), <code>reflink</code> or <code>hardlink</code>. Hard links must only be used
+     * for trees whose files are never modified other than through Cargo.
+     */
+    String FILE_HANDLER_LINKS = "cargo.filehandler.links";
 }
@@ -26,7 +26,6 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
-import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -49,6 +48,9 @@ import org.codehaus.cargo.container.spi.jvm.DefaultJvmLauncherFactory;
 import org.codehaus.cargo.container.spi.jvm.JvmLauncher;
 import org.codehaus.cargo.container.spi.jvm.JvmLauncherFactory;
 import org.codehaus.cargo.container.spi.jvm.JvmLauncherRequest;
+import org.codehaus.cargo.container.spi.jvm.JvmMetadata;
+import org.codehaus.cargo.container.spi.jvm.JvmMetadataCache;
+import org.codehaus.cargo.container.spi.jvm.WaitableJvmLauncher;
 import org.codehaus.cargo.util.AntUtils;
 import org.codehaus.cargo.util.log.Logger;
 
@@ -105,9 +107,9 @@ public abstract class AbstractInstalledLocalContainer extends AbstractLocalConta
     private JvmLauncher jvmStartLauncher;
 
     /**
-     * Major JVM version
+     * Metadata of the JVM the container runs in.
      */
-    private int jvmMajorVersion = -1;
+    private JvmMetadata jvmMetadata;
 
     /**
      * Default constructor.
@@ -317,6 +319,23 @@ public abstract class AbstractInstalledLocalContainer extends AbstractLocalConta
         }
     }
 
+    /**
+     * Waits for the JVM the container has been started in to exit. When the container has been
+     * started over SSH, the local JVM is only the local end of the SSH connection, hence ports
+     * are probed instead. {@inheritDoc}
+     */
+    @Override
+    protected boolean waitForContainerExit(long deadline) throws InterruptedException
+    {
+        long remaining = deadline - System.currentTimeMillis();
+        if (!(jvmStartLauncher instanceof WaitableJvmLauncher) || remaining <= 0
+            || getConfiguration().getPropertyValue(SSHPropertySet.HOST) != null)
+        {
+            return false;
+        }
+        return ((WaitableJvmLauncher) jvmStartLauncher).waitFor(remaining);
+    }
+
     /**
      * Creates a preinitialized instance of a JVM launcher to be used for starting, stopping and
      * controlling the container.
@@ -329,72 +348,9 @@ public abstract class AbstractInstalledLocalContainer extends AbstractLocalConta
     {
         boolean ssh = getConfiguration().getPropertyValue(SSHPropertySet.HOST) != null;
 
-        if (jvmMajorVersion == -1)
+        if (jvmMetadata == null)
         {
-            JvmLauncherRequest request = new JvmLauncherRequest(false, this, ssh);
-            JvmLauncher java = jvmLauncherFactory.createJvmLauncher(request);
-            if (ssh)
-            {
-                addSshProperties(java);
-            }
-            setJvmToLaunchContainerIn(java);
-
-            // Read the real JVM version
-            BufferedReader br = null;
-            String jvmVersion;
-            try
-            {
-                File jvmVersionFile = File.createTempFile("cargo-jvm-version-", ".txt");
-                java.setOutputFile(jvmVersionFile);
-                java.setAppendOutput(true);
-                java.setMainClass("-version");
-
-                // We need to use java.start and not java.execute since the latter, which calls
-                // org.apache.tools.ant.taskdefs.Java.executeJava() method, doesn't set up
-                // stderr / stdout properly
-                java.start();
-
-                // Give 15 seconds to read the version
-                for (int i = 0; i < 150; i++)
-                {
-                    if (jvmVersionFile.length() > 0)
-                    {
-                        break;
-                    }
-                    Thread.sleep(100);
-                }
-                br = new BufferedReader(new FileReader(jvmVersionFile));
-                jvmVersion = br.readLine();
-                if (jvmVersion != null && jvmVersion.startsWith("java version \""))
-                {
-                    jvmVersion = jvmVersion.substring(jvmVersion.indexOf('"') + 1);
-                }
-                else
-                {
-                    throw new IOException("Can't read JVM version from line: " + jvmVersion);
-                }
-            }
-            catch (Throwable t)
-            {
-                jvmVersion = System.getProperty("java.version");
-            }
-            finally
-            {
-                if (br != null)
-                {
-                    try
-                    {
-                        br.close();
-                    }
-                    catch (IOException ignored)
-                    {
-                        // Ignored
-                    }
-                    br = null;
-                    System.gc();
-                }
-            }
-            jvmMajorVersion = JdkUtils.parseMajorJavaVersion(jvmVersion);
+            jvmMetadata = getJvmMetadata(ssh);
         }
 
         JvmLauncherRequest request = new JvmLauncherRequest(server, this, ssh);
@@ -451,6 +407,107 @@ public abstract class AbstractInstalledLocalContainer extends AbstractLocalConta
         return java;
     }
 
+    /**
+     * Gets the metadata of the JVM the container runs in. For local JVMs, this comes from the
+     * {@link JvmMetadataCache} and hence only launches the JVM if its metadata cannot be read
+     * otherwise, and never more than once per process.
+     * 
+     * @param ssh {@code true} if the container runs in a remote JVM, over SSH.
+     * @return Metadata of the JVM the container runs in.
+     */
+    private JvmMetadata getJvmMetadata(final boolean ssh)
+    {
+        JvmMetadataCache.Detector detector = new JvmMetadataCache.Detector()
+        {
+            @Override
+            public JvmMetadata detect() throws Exception
+            {
+                return detectJvmMetadata(ssh);
+            }
+        };
+
+        try
+        {
+            if (ssh)
+            {
+                return detector.detect();
+            }
+            JvmMetadataCache cache = JvmMetadataCache.getDefault();
+            cache.setLogger(getLogger());
+            return cache.get(getJavaHome(), detector);
+        }
+        catch (Throwable t)
+        {
+            getLogger().debug("Cannot detect the JVM version, assuming the current one: " + t,
+                this.getClass().getName());
+            return JvmMetadata.getCurrent();
+        }
+    }
+
+    /**
+     * Detects the metadata of the JVM the container runs in, by launching it with
+     * <code>-version</code>.
+     * 
+     * @param ssh {@code true} if the container runs in a remote JVM, over SSH.
+     * @return Metadata of the JVM.
+     * @throws Exception If the metadata cannot be detected.
+     */
+    private JvmMetadata detectJvmMetadata(boolean ssh) throws Exception
+    {
+        JvmLauncherRequest request = new JvmLauncherRequest(false, this, ssh);
+        JvmLauncher java = jvmLauncherFactory.createJvmLauncher(request);
+        if (ssh)
+        {
+            addSshProperties(java);
+        }
+        setJvmToLaunchContainerIn(java);
+
+        File jvmVersionFile = File.createTempFile("cargo-jvm-version-", ".txt");
+        try
+        {
+            java.setOutputFile(jvmVersionFile);
+            java.setAppendOutput(true);
+            java.setMainClass("-version");
+
+            // We need to use java.start and not java.execute since the latter, which calls
+            // org.apache.tools.ant.taskdefs.Java.executeJava() method, doesn't set up
+            // stderr / stdout properly
+            java.start();
+
+            // Give 15 seconds to read the version; if the launcher cannot tell when the JVM has
+            // exited, wait for its output instead
+            long deadline = System.currentTimeMillis() + 15000L;
+            if (!(java instanceof WaitableJvmLauncher)
+                || !((WaitableJvmLauncher) java).waitFor(15000L))
+            {
+                while (jvmVersionFile.length() == 0 && System.currentTimeMillis() < deadline)
+                {
+                    Thread.sleep(100);
+                }
+            }
+
+            StringBuilder output = new StringBuilder();
+            BufferedReader br = new BufferedReader(new FileReader(jvmVersionFile));
+            try
+            {
+                String line;
+                while ((line = br.readLine()) != null)
+                {
+                    output.append(line).append('\n');
+                }
+            }
+            finally
+            {
+                br.close();
+            }
+            return JvmMetadata.parseVersionOutput(output.toString());
+        }
+        finally
+        {
+            jvmVersionFile.delete();
+        }
+    }
+
     /**
      * Adds in parameters necessary to identify this as a cargo-launched container.
      * 
@@ -546,8 +603,9 @@ public abstract class AbstractInstalledLocalContainer extends AbstractLocalConta
     protected final void addToolsJarToClasspath(JvmLauncher java) throws FileNotFoundException
     {
         // On OSX, the tools.jar classes are included in the classes.jar so there is no need to
-        // include any tools.jar file to the cp. On Java 9, there is no more tools.jar.
-        if (!JdkUtils.isOSX() && jvmMajorVersion < 9)
+        // include any tools.jar file to the cp. On Java 9, there is no more tools.jar. If the JVM
+        // has not been probed yet, assume an older JVM as the JVM version used to be -1 then.
+        if (!JdkUtils.isOSX() && (jvmMetadata == null || jvmMetadata.hasToolsJar()))
         {
             java.addClasspathEntries(JdkUtils.getToolsJar(getJavaHome()));
         }
@@ -645,7 +703,7 @@ public abstract class AbstractInstalledLocalContainer extends AbstractLocalConta
         }
 
         // CARGO-1294: Warning when starting containers on Java 8
-        if (jvmMajorVersion < 8)
+        if (jvmMetadata == null || jvmMetadata.hasPermGen())
         {
             if (jvmArgs == null || !jvmArgs.contains("-XX:PermSize"))
             {
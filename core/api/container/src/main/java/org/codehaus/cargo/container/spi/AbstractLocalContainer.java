@@ -19,10 +19,13 @@
  */
 package org.codehaus.cargo.container.spi;
 
-import java.io.IOException;
-import java.net.InetSocketAddress;
-import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
 
 import org.codehaus.cargo.container.ContainerException;
 import org.codehaus.cargo.container.LocalContainer;
@@ -30,18 +33,34 @@ import org.codehaus.cargo.container.State;
 import org.codehaus.cargo.container.configuration.LocalConfiguration;
 import org.codehaus.cargo.container.deployer.DeployableMonitor;
 import org.codehaus.cargo.container.deployer.URLDeployableMonitor;
+import org.codehaus.cargo.container.internal.util.PortUtils;
 import org.codehaus.cargo.container.property.ServletPropertySet;
 import org.codehaus.cargo.container.spi.deployer.DeployerWatchdog;
 import org.codehaus.cargo.container.spi.util.ContainerUtils;
 import org.codehaus.cargo.util.CargoException;
-import org.codehaus.cargo.util.DefaultFileHandler;
 import org.codehaus.cargo.util.FileHandler;
+import org.codehaus.cargo.util.FileHandlerFactory;
 
 /**
  * Default container implementation that all local container implementations must extend.
  */
 public abstract class AbstractLocalContainer extends AbstractContainer implements LocalContainer
 {
+    /**
+     * Interval between two checks of a port being shut down, in milliseconds.
+     */
+    private static final long PORT_SHUTDOWN_INTERVAL = 50L;
+
+    /**
+     * Longest time waited for the container to exit at once, in milliseconds.
+     */
+    private static final long CONTAINER_EXIT_SLICE = 500L;
+
+    /**
+     * Timeout for checking that ports are free before starting, in milliseconds.
+     */
+    private static final long PORT_PROBE_TIMEOUT = 1000L;
+
     /**
      * The file to which output of the container should be written.
      */
@@ -73,6 +92,11 @@ public abstract class AbstractLocalContainer extends AbstractContainer implement
      */
     private FileHandler fileHandler;
 
+    /**
+     * Port probing utility methods.
+     */
+    private PortUtils portUtils;
+
     /**
      * Default constructor.
      * @param configuration the configuration to associate to this container. It can be changed
@@ -82,7 +106,8 @@ public abstract class AbstractLocalContainer extends AbstractContainer implement
     {
         this.append = false;
         this.configuration = configuration;
-        this.fileHandler = new DefaultFileHandler();
+        this.fileHandler = FileHandlerFactory.createFileHandler();
+        this.portUtils = new PortUtils();
     }
 
     /**
@@ -155,6 +180,22 @@ public abstract class AbstractLocalContainer extends AbstractContainer implement
         // No implementation defined here
     }
 
+    /**
+     * Waits for the container to exit, using what the container implementation knows about it:
+     * the process it has been launched in, or the lifecycle state of an embedded server. This
+     * method should be overridden for containers that can track their exit; the default
+     * implementation cannot and returns immediately, ports then being probed instead.
+     * 
+     * @param deadline the deadline for the container to exit
+     * @return <code>true</code> if the container is known to have exited, <code>false</code> if its
+     * exit cannot be tracked or it did not exit before the deadline
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    protected boolean waitForContainerExit(long deadline) throws InterruptedException
+    {
+        return false;
+    }
+
     /**
      * Some containers may require some extra steps after startup.
      * 
@@ -197,28 +238,31 @@ public abstract class AbstractLocalContainer extends AbstractContainer implement
             getConfiguration().configure(this);
 
             // CARGO-365: Check if ports are in use
-            for (Map.Entry<String, String> property
-                : getConfiguration().getProperties().entrySet())
+            this.portUtils.setLogger(getLogger());
+            Map<String, Integer> ports = getConfiguredPorts();
+            Map<Integer, Boolean> portsInUse =
+                this.portUtils.probe(ports.values(), PORT_PROBE_TIMEOUT);
+            List<String> conflicts = new ArrayList<String>();
+            for (Map.Entry<String, Integer> port : ports.entrySet())
             {
-                if (property.getKey().endsWith(".port") && property.getValue() != null)
+                if (portsInUse.get(port.getValue()))
                 {
-                    try
-                    {
-                        int port = Integer.parseInt(property.getValue());
-                        if (!isPortShutdown(port, 0))
-                        {
-                            throw new ContainerException("Port number " + property.getValue()
-                                + " (defined with the property " + property.getKey() + ") is "
-                                    + "in use. Please free it on the system or set it to a "
-                                        + "different port in the container configuration.");
-                        }
-                    }
-                    catch (NumberFormatException e) 
-                    {
-                        // We do nothing
-                    }
+                    conflicts.add(port.getValue() + " (defined with the property "
+                        + port.getKey() + ")");
                 }
             }
+            if (conflicts.size() == 1)
+            {
+                throw new ContainerException("Port number " + conflicts.get(0) + " is in use. "
+                    + "Please free it on the system or set it to a different port in the "
+                        + "container configuration.");
+            }
+            else if (!conflicts.isEmpty())
+            {
+                throw new ContainerException("Port numbers " + conflicts + " are in use. Please "
+                    + "free them on the system or set them to different ports in the container "
+                        + "configuration.");
+            }
 
             startInternal();
 
@@ -278,7 +322,9 @@ public abstract class AbstractLocalContainer extends AbstractContainer implement
             // CARGO-520: Always set append to "true" when stopping
             setAppend(true);
 
+            long stopTime = System.currentTimeMillis();
             stopInternal();
+            long waitTime = System.currentTimeMillis();
 
             // CARGO-712: If timeout is 0, don't wait at all
             if (getTimeout() != 0)
@@ -286,14 +332,18 @@ public abstract class AbstractLocalContainer extends AbstractContainer implement
                 // Wait until the container is fully stopped
                 waitForCompletion(false);
             }
+            long forceStopTime = System.currentTimeMillis();
 
             // Force the container to stop, should it not already be stopped.
             // At this point, the container should already be stopped,
             // so this should have no effect if the container was properly stopped.
             forceStopInternal();
+            long stoppedTime = System.currentTimeMillis();
 
             setState(State.STOPPED);
-            getLogger().info(getName() + " is stopped", this.getClass().getName());
+            getLogger().info(getName() + " is stopped (stop: " + (waitTime - stopTime)
+                + " ms, wait for completion: " + (forceStopTime - waitTime) + " ms, force stop: "
+                    + (stoppedTime - forceStopTime) + " ms)", this.getClass().getName());
         }
         catch (Exception e)
         {
@@ -352,39 +402,50 @@ public abstract class AbstractLocalContainer extends AbstractContainer implement
         }
         else
         {
-            long deadline = System.currentTimeMillis() + getTimeout();
+            long startTime = System.currentTimeMillis();
+            long deadline = startTime + getTimeout();
 
-            int connectTimeout = 0;
-            for (Map.Entry<String, String> property : getConfiguration().getProperties().entrySet())
-            {
-                if (!property.getKey().endsWith(".port") || property.getValue() == null)
-                {
-                    continue;
-                }
-                int port;
-                try
-                {
-                    port = Integer.parseInt(property.getValue());
-                }
-                catch (NumberFormatException e)
-                {
-                    continue;
-                }
-                if (port < 1 || port > 65535)
-                {
-                    continue;
-                }
+            // When the container's exit can be tracked, this returns the moment it has exited and
+            // the ports below are then all found closed on the first check
+            Set<Integer> ports = new TreeSet<Integer>(getConfiguredPorts().values());
+            boolean exited = awaitContainerExit(deadline);
+            long exitTime = System.currentTimeMillis();
 
-                waitForPortShutdown(port, connectTimeout, deadline);
-                getLogger().debug("\tPort " + port + " is shutdown", this.getClass().getName());
+            waitForPortsShutdown(ports, deadline);
 
-                connectTimeout = 250;
-                continue;
+            getLogger().debug("Container " + (exited ? "exited after " + (exitTime - startTime)
+                + " ms" : "exit not detected") + ", ports shut down after "
+                    + (System.currentTimeMillis() - exitTime) + " ms", this.getClass().getName());
+        }
+    }
+
+    /**
+     * Waits for the container to exit in slices of at most {@link #CONTAINER_EXIT_SLICE}, until
+     * it has exited or the deadline has passed. Closed ports do not end the wait, as a container
+     * still shutting down cleanly would otherwise get killed by {@link #forceStopInternal()}.
+     * 
+     * @param deadline The deadline for the container to exit.
+     * @return <code>true</code> if the container has exited, <code>false</code> if its exit cannot
+     * be tracked or it did not exit before the deadline, its ports then having to be probed.
+     * @throws InterruptedException If the thread was interrupted while waiting.
+     */
+    private boolean awaitContainerExit(long deadline) throws InterruptedException
+    {
+        while (true)
+        {
+            long sliceDeadline =
+                Math.min(deadline, System.currentTimeMillis() + CONTAINER_EXIT_SLICE);
+            if (waitForContainerExit(sliceDeadline))
+            {
+                return true;
             }
 
-            // Many container do not fully stop even after having destroyed all their sockets;
-            // as a result wait 5 more seconds
-            Thread.sleep(5000);
+            // Returning before the end of the slice means the exit cannot be tracked
+            long now = System.currentTimeMillis();
+            if (now < sliceDeadline || now >= deadline)
+            {
+                return false;
+            }
         }
     }
 
@@ -392,31 +453,45 @@ public abstract class AbstractLocalContainer extends AbstractContainer implement
      * Waits for the shutdown of the specified server port.
      * 
      * @param port The port number.
-     * @param connectTimeout The connect timeout.
+     * @param connectTimeout The connect timeout, ignored.
      * @param deadline The deadline for the port to shutdown.
      * @throws InterruptedException If the thread was interrupted while waiting for the port
      *             shutdown.
+     * @deprecated Use {@link #waitForPortsShutdown(Set, long)}, which probes all ports at once.
      */
+    @Deprecated
     protected void waitForPortShutdown(int port, int connectTimeout, long deadline)
         throws InterruptedException
     {
-        getLogger().debug("Waiting for port " + port + " to shutdown, deadline " + deadline,
+        waitForPortsShutdown(Collections.singleton(port), deadline);
+    }
+
+    /**
+     * Waits for the shutdown of the specified server ports, which are all probed at once.
+     * 
+     * @param ports The port numbers.
+     * @param deadline The deadline for the ports to shutdown.
+     * @throws InterruptedException If the thread was interrupted while waiting for the ports
+     *             shutdown.
+     */
+    protected void waitForPortsShutdown(Set<Integer> ports, long deadline)
+        throws InterruptedException
+    {
+        getLogger().debug("Waiting for ports " + ports + " to shutdown, deadline " + deadline,
             this.getClass().getName());
+        this.portUtils.setLogger(getLogger());
 
-        while (true)
+        Set<Integer> portsInUse =
+            this.portUtils.waitForShutdown(ports, deadline, PORT_SHUTDOWN_INTERVAL);
+        if (portsInUse.size() == 1)
         {
-            if (isPortShutdown(port, connectTimeout))
-            {
-                break;
-            }
-
-            if (System.currentTimeMillis() > deadline)
-            {
-                throw new ContainerException("Server port " + port
-                    + " did not shutdown within the timeout period [" + getTimeout() + "]");
-            }
-
-            Thread.sleep(1000);
+            throw new ContainerException("Server port " + portsInUse.iterator().next()
+                + " did not shutdown within the timeout period [" + getTimeout() + "]");
+        }
+        else if (!portsInUse.isEmpty())
+        {
+            throw new ContainerException("Server ports " + portsInUse
+                + " did not shutdown within the timeout period [" + getTimeout() + "]");
         }
     }
 
@@ -493,80 +568,33 @@ public abstract class AbstractLocalContainer extends AbstractContainer implement
         this.fileHandler = fileHandler;
     }
 
-
     /**
-     * Checks if the specified server port is shutdown.
-     * 
-     * @param port The port number.
-     * @param connectTimeout The connect timeout.
-     * @return <code>true</code> if <code>port</code> is shut down, <code>false</code> otherwise.
+     * @return The ports defined in the configuration, i.e. the valid port numbers of all
+     * properties ending with <code>.port</code>, indexed by property name.
      */
-    private boolean isPortShutdown(int port, int connectTimeout)
+    private Map<String, Integer> getConfiguredPorts()
     {
-        Socket s = new Socket();
-        try
+        Map<String, Integer> ports = new TreeMap<String, Integer>();
+        for (Map.Entry<String, String> property : getConfiguration().getProperties().entrySet())
         {
-            getLogger().debug("\tConnection attempt with socket " + s + ", current time is "
-                + System.currentTimeMillis(), this.getClass().getName());
-
-            s.bind(null);
-
-            // If the remote port is closed, s.connect will throw an exception
-            s.connect(new InetSocketAddress("localhost", port), connectTimeout);
-            getLogger().debug("\tSocket " + s + " for port " + port + " managed to connect",
-                this.getClass().getName());
-
-            try
+            if (!property.getKey().endsWith(".port") || property.getValue() == null)
             {
-                s.shutdownOutput();
-            }
-            catch (IOException e)
-            {
-                // ignored, irrelevant
-                getLogger().debug("\tFailed to shutdown output for socket " + s + ": " + e,
-                    this.getClass().getName());
+                continue;
             }
+            int port;
             try
             {
-                s.shutdownInput();
+                port = Integer.parseInt(property.getValue());
             }
-            catch (IOException e)
+            catch (NumberFormatException e)
             {
-                // ignored, irrelevant
-                getLogger().debug("\tFailed to shutdown input for socket " + s + ": " + e,
-                    this.getClass().getName());
-            }
-
-            getLogger().debug("\tSocket " + s + " for port " + port + " shutdown",
-                this.getClass().getName());
-        }
-        catch (IOException ignored)
-        {
-            // If an IOException has occured, this means port is shut down
-            return true;
-        }
-        finally
-        {
-            try
-            {
-                s.close();
-            }
-            catch (IOException e)
-            {
-                // ignored, irrelevant
-                getLogger().debug("\tFailed to close socket " + s + ": " + e,
-                    this.getClass().getName());
+                continue;
             }
-            finally
+            if (port >= 1 && port <= 65535)
             {
-                getLogger().debug("\tSocket " + s + " for port " + port + " closed",
-                    this.getClass().getName());
-
-                s = null;
-                System.gc();
+                ports.put(property.getKey(), port);
             }
         }
-
-        return false;
+        return ports;
     }
 }
@@ -19,12 +19,23 @@
  */
 package org.codehaus.cargo.container.spi.configuration;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import org.apache.tools.ant.types.FilterChain;
 
 import org.codehaus.cargo.container.ContainerException;
@@ -46,8 +57,11 @@ import org.codehaus.cargo.container.property.TransactionSupport;
 import org.codehaus.cargo.container.property.User;
 import org.codehaus.cargo.util.AntUtils;
 import org.codehaus.cargo.util.CargoException;
-import org.codehaus.cargo.util.DefaultFileHandler;
 import org.codehaus.cargo.util.FileHandler;
+import org.codehaus.cargo.util.FileHandlerFactory;
+import org.codehaus.cargo.util.NioFileHandler;
+import org.codehaus.cargo.util.TokenFilterChain;
+import org.codehaus.cargo.util.TokenReplacer;
 import org.codehaus.cargo.util.log.Logger;
 
 /**
@@ -134,7 +148,7 @@ public abstract class AbstractLocalConfiguration extends AbstractConfiguration i
         super();
 
         this.deployables = new ArrayList<Deployable>();
-        this.fileHandler = new DefaultFileHandler();
+        this.fileHandler = FileHandlerFactory.createFileHandler();
         this.antUtils = new AntUtils();
         this.resourceUtils = new ResourceUtils();
         this.resources = new ArrayList<Resource>();
@@ -266,6 +280,13 @@ public abstract class AbstractLocalConfiguration extends AbstractConfiguration i
         parsePropertiesForPendingConfiguration();
         verify();
 
+        String linkMode = getPropertyValue(GeneralPropertySet.FILE_HANDLER_LINKS);
+        if (linkMode != null)
+        {
+            setLinkMode(getFileHandler(), linkMode);
+            setLinkMode(container.getFileHandler(), linkMode);
+        }
+
         try
         {
             doConfigure(container);
@@ -279,6 +300,27 @@ public abstract class AbstractLocalConfiguration extends AbstractConfiguration i
         configureFiles(getFilterChain(), container);
     }
 
+    /**
+     * Sets how a file handler copies directory trees, see
+     * {@link GeneralPropertySet#FILE_HANDLER_LINKS}.
+     * 
+     * @param fileHandler File handler, ignored unless it is a {@link NioFileHandler}.
+     * @param linkMode Link mode.
+     */
+    private void setLinkMode(FileHandler fileHandler, String linkMode)
+    {
+        if (fileHandler instanceof NioFileHandler)
+        {
+            ((NioFileHandler) fileHandler).setLinkMode(linkMode);
+        }
+        else
+        {
+            getLogger().debug("Ignoring link mode [" + linkMode + "] for file handler ["
+                + fileHandler + "], links are only supported by the NIO file handler",
+                    this.getClass().getName());
+        }
+    }
+
     /**
      * Creates the default filter chain that should be applied while copying container configuration
      * files to the working directory from which the container is started.
@@ -287,7 +329,7 @@ public abstract class AbstractLocalConfiguration extends AbstractConfiguration i
      */
     protected final FilterChain createFilterChain()
     {
-        this.filterChain = new FilterChain();
+        this.filterChain = new TokenFilterChain();
 
         // add all the token specified in the containers configuration into the filterchain
         getAntUtils().addTokensToFilterChain(filterChain, getProperties());
@@ -312,65 +354,350 @@ public abstract class AbstractLocalConfiguration extends AbstractConfiguration i
     }
 
     /**
-     * Copy the customized configuration files into the cargo home directory.
+     * Copy the customized configuration files into the cargo home directory. Files which neither
+     * read nor write each other's destinations are copied in parallel. When the filter chain is a
+     * {@link TokenFilterChain} which only replaces tokens, configuration files are filtered as
+     * bytes using a {@link TokenReplacer}, which keeps their line endings, and configuration files
+     * without any token are copied as is.
      * @param filterChain the filter chain to use during the copy
      * @param container local container
      */
-    protected void configureFiles(FilterChain filterChain, LocalContainer container)
+    protected void configureFiles(final FilterChain filterChain, LocalContainer container)
     {
-        List<FileConfig> files = this.files;
+        List<List<FileConfig>> lanes = createFileConfigLanes(this.files);
 
-        for (FileConfig fileConfig : files)
+        Map<String, String> tokens = null;
+        if (filterChain instanceof TokenFilterChain)
         {
-            boolean isDirectory = false;
+            tokens = ((TokenFilterChain) filterChain).getTokens();
+        }
+        final Map<String, String> filterTokens = tokens;
+        final Map<String, TokenReplacer> tokenReplacers = new HashMap<String, TokenReplacer>();
 
-            if (fileConfig.getFile() == null)
+        if (lanes.size() <= 1)
+        {
+            for (List<FileConfig> lane : lanes)
             {
-                throw new RuntimeException("File cannot be null");
+                for (FileConfig fileConfig : lane)
+                {
+                    configureFile(fileConfig, filterChain, filterTokens, tokenReplacers);
+                }
             }
+            return;
+        }
 
-            File origFile = new File(fileConfig.getFile());
-            if (origFile.isDirectory())
+        getLogger().debug("Copying " + this.files.size() + " configuration files in "
+            + lanes.size() + " parallel lanes", this.getClass().getName());
+        ExecutorService executor = Executors.newFixedThreadPool(
+            Math.min(lanes.size(), Runtime.getRuntime().availableProcessors()));
+        try
+        {
+            List<Future<Void>> copies = new ArrayList<Future<Void>>();
+            for (final List<FileConfig> lane : lanes)
+            {
+                copies.add(executor.submit(new Callable<Void>()
+                {
+                    @Override
+                    public Void call()
+                    {
+                        for (FileConfig fileConfig : lane)
+                        {
+                            configureFile(fileConfig, filterChain, filterTokens, tokenReplacers);
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> copy : copies)
+            {
+                copy.get();
+            }
+        }
+        catch (ExecutionException e)
+        {
+            if (e.getCause() instanceof RuntimeException)
             {
-                isDirectory = true;
+                throw (RuntimeException) e.getCause();
             }
+            throw new ContainerException("Failed to copy configuration files", e.getCause());
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new ContainerException("Interrupted while copying configuration files", e);
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
 
+    /**
+     * Copy one customized configuration file or directory into the cargo home directory.
+     * @param fileConfig File configuration.
+     * @param filterChain the filter chain to use during the copy
+     * @param tokens Tokens of the filter chain, <code>null</code> if the filter chain cannot be
+     * replaced by a {@link TokenReplacer}.
+     * @param tokenReplacers Token replacers already created, by encoding.
+     */
+    private void configureFile(FileConfig fileConfig, FilterChain filterChain,
+        Map<String, String> tokens, Map<String, TokenReplacer> tokenReplacers)
+    {
+        File origFile = new File(fileConfig.getFile());
+        boolean isDirectory = origFile.isDirectory();
+
+        // we don't want to do anything if the file exists and overwrite is false
+        if (origFile.exists() && !fileConfig.getOverwrite())
+        {
+            return;
+        }
+
+        TokenReplacer tokenReplacer = null;
+        if (fileConfig.getConfigfile() && tokens != null
+            && TokenReplacer.isSupported(fileConfig.getEncoding()))
+        {
+            synchronized (tokenReplacers)
+            {
+                tokenReplacer = tokenReplacers.get(fileConfig.getEncoding());
+                if (tokenReplacer == null)
+                {
+                    tokenReplacer = new TokenReplacer(tokens, fileConfig.getEncoding());
+                    tokenReplacers.put(fileConfig.getEncoding(), tokenReplacer);
+                }
+            }
+        }
+
+        if (isDirectory)
+        {
+            String destDir = getDestDirectoryLocation(fileConfig.getFile(), fileConfig
+                    .getToDir());
+
+            if (fileConfig.getConfigfile())
+            {
+                copyConfigDirectory(fileConfig.getFile(), destDir, filterChain, tokenReplacer,
+                    fileConfig.getEncoding());
+            }
+            else
+            {
+                getFileHandler().copyDirectory(fileConfig.getFile(), destDir);
+            }
+        }
+        else
+        {
             String destFile = getDestFileLocation(fileConfig.getFile(),
                     fileConfig.getToDir(), fileConfig.getToFile());
 
-            // we don't want to do anything if the file exists and overwrite is false
-            if (!origFile.exists() || fileConfig.getOverwrite())
+            if (fileConfig.getConfigfile())
             {
-                if (isDirectory)
-                {
-                    String destDir = getDestDirectoryLocation(fileConfig.getFile(), fileConfig
-                            .getToDir());
+                copyConfigFile(fileConfig.getFile(), destFile, filterChain, tokenReplacer,
+                    fileConfig.getEncoding());
+            }
+            else
+            {
+                getFileHandler().copyFile(fileConfig.getFile(), destFile,
+                        fileConfig.getOverwrite());
+            }
+        }
+    }
 
-                    if (fileConfig.getConfigfile())
-                    {
-                        getFileHandler().copyDirectory(fileConfig.getFile(), destDir, filterChain,
-                            fileConfig.getEncoding());
-                    }
-                    else
-                    {
-                        getFileHandler().copyDirectory(fileConfig.getFile(), destDir);
-                    }
-                }
-                else
+    /**
+     * Copy a configuration directory, filtering all its files.
+     * @param source Source directory.
+     * @param target Target directory.
+     * @param filterChain the filter chain to use during the copy
+     * @param tokenReplacer Token replacer to use instead of the filter chain, <code>null</code>
+     * to use the filter chain.
+     * @param encoding Encoding of the files.
+     */
+    private void copyConfigDirectory(String source, String target, FilterChain filterChain,
+        TokenReplacer tokenReplacer, String encoding)
+    {
+        FileHandler fileHandler = getFileHandler();
+        if (tokenReplacer == null)
+        {
+            fileHandler.copyDirectory(source, target, filterChain, encoding);
+            return;
+        }
+
+        fileHandler.mkdirs(target);
+        for (String child : fileHandler.getChildren(source))
+        {
+            String targetChild = fileHandler.append(target, fileHandler.getName(child));
+            if (fileHandler.isDirectory(child))
+            {
+                copyConfigDirectory(child, targetChild, filterChain, tokenReplacer, encoding);
+            }
+            else
+            {
+                copyConfigFile(child, targetChild, filterChain, tokenReplacer, encoding);
+            }
+        }
+    }
+
+    /**
+     * Copy a configuration file, filtering it.
+     * @param source Source file.
+     * @param target Target file.
+     * @param filterChain the filter chain to use during the copy
+     * @param tokenReplacer Token replacer to use instead of the filter chain, <code>null</code>
+     * to use the filter chain.
+     * @param encoding Encoding of the file.
+     */
+    private void copyConfigFile(String source, String target, FilterChain filterChain,
+        TokenReplacer tokenReplacer, String encoding)
+    {
+        FileHandler fileHandler = getFileHandler();
+        if (tokenReplacer == null)
+        {
+            fileHandler.copyFile(source, target, filterChain, encoding);
+            return;
+        }
+
+        try
+        {
+            replaceTokens(source, target, tokenReplacer);
+        }
+        catch (IOException e)
+        {
+            throw new CargoException("Failed to copy source file [" + source + "] to [" + target
+                + "] with FilterChain", e);
+        }
+    }
+
+    /**
+     * Copy a configuration file using a token replacer, or as is if it does not contain tokens.
+     * @param source Source file.
+     * @param target Target file.
+     * @param tokenReplacer Token replacer to use.
+     * @throws IOException If reading or writing fails.
+     */
+    private void replaceTokens(String source, String target, TokenReplacer tokenReplacer)
+        throws IOException
+    {
+        FileHandler fileHandler = getFileHandler();
+        boolean hasTokens;
+        InputStream in = fileHandler.getInputStream(source);
+        try
+        {
+            hasTokens = tokenReplacer.containsTokens(in);
+        }
+        finally
+        {
+            in.close();
+        }
+
+        if (!hasTokens)
+        {
+            fileHandler.copyFile(source, target, true);
+            return;
+        }
+
+        in = fileHandler.getInputStream(source);
+        try
+        {
+            OutputStream out = new BufferedOutputStream(fileHandler.getOutputStream(target));
+            try
+            {
+                tokenReplacer.replace(in, out);
+            }
+            finally
+            {
+                out.close();
+            }
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    /**
+     * Groups the file configurations in lanes, so that file configurations reading or writing the
+     * destination of another one are in the same lane and keep their order, whereas different
+     * lanes can be copied in parallel.
+     * @param fileConfigs File configurations.
+     * @return Lanes of file configurations.
+     */
+    private List<List<FileConfig>> createFileConfigLanes(List<FileConfig> fileConfigs)
+    {
+        int size = fileConfigs.size();
+        String[] sources = new String[size];
+        String[] destinations = new String[size];
+        for (int i = 0; i < size; i++)
+        {
+            FileConfig fileConfig = fileConfigs.get(i);
+            if (fileConfig.getFile() == null)
+            {
+                throw new RuntimeException("File cannot be null");
+            }
+            sources[i] = normalizePath(fileConfig.getFile());
+            if (new File(fileConfig.getFile()).isDirectory())
+            {
+                destinations[i] = normalizePath(getDestDirectoryLocation(fileConfig.getFile(),
+                    fileConfig.getToDir()));
+            }
+            else
+            {
+                destinations[i] = normalizePath(getDestFileLocation(fileConfig.getFile(),
+                    fileConfig.getToDir(), fileConfig.getToFile()));
+            }
+        }
+
+        // Each file configuration starts in its own lane, conflicting lanes are then merged
+        int[] lane = new int[size];
+        for (int i = 0; i < size; i++)
+        {
+            lane[i] = i;
+            for (int j = 0; j < i; j++)
+            {
+                if (lane[i] != lane[j] && (overlaps(destinations[i], destinations[j])
+                    || overlaps(destinations[i], sources[j])
+                    || overlaps(sources[i], destinations[j])))
                 {
-                    if (fileConfig.getConfigfile())
+                    int merged = lane[i];
+                    for (int k = 0; k <= i; k++)
                     {
-                        getFileHandler().copyFile(fileConfig.getFile(), destFile, filterChain,
-                            fileConfig.getEncoding());
-                    }
-                    else
-                    {
-                        getFileHandler().copyFile(fileConfig.getFile(), destFile,
-                                fileConfig.getOverwrite());
+                        if (lane[k] == merged)
+                        {
+                            lane[k] = lane[j];
+                        }
                     }
                 }
             }
         }
+
+        Map<Integer, List<FileConfig>> lanes = new LinkedHashMap<Integer, List<FileConfig>>();
+        for (int i = 0; i < size; i++)
+        {
+            List<FileConfig> fileConfigsInLane = lanes.get(lane[i]);
+            if (fileConfigsInLane == null)
+            {
+                fileConfigsInLane = new ArrayList<FileConfig>();
+                lanes.put(lane[i], fileConfigsInLane);
+            }
+            fileConfigsInLane.add(fileConfigs.get(i));
+        }
+        return new ArrayList<List<FileConfig>>(lanes.values());
+    }
+
+    /**
+     * @param path Path.
+     * @return Absolute path, using forward slashes.
+     */
+    private static String normalizePath(String path)
+    {
+        return new File(path).getAbsolutePath().replace('\\', '/');
+    }
+
+    /**
+     * @param path1 Normalized path.
+     * @param path2 Normalized path.
+     * @return <code>true</code> if one of the paths is equal to or inside the other one.
+     */
+    private static boolean overlaps(String path1, String path2)
+    {
+        return path1.equals(path2) || path1.startsWith(path2 + "/")
+            || path2.startsWith(path1 + "/");
     }
 
     /**
@@ -20,8 +20,8 @@
 package org.codehaus.cargo.container.spi.deployable;
 
 import org.codehaus.cargo.container.deployable.Deployable;
-import org.codehaus.cargo.util.DefaultFileHandler;
 import org.codehaus.cargo.util.FileHandler;
+import org.codehaus.cargo.util.FileHandlerFactory;
 import org.codehaus.cargo.util.log.LoggedObject;
 
 /**
@@ -45,7 +45,7 @@ public abstract class AbstractDeployable extends LoggedObject implements Deploya
     public AbstractDeployable(String file)
     {
         this.file = file;
-        this.fileHandler = new DefaultFileHandler();
+        this.fileHandler = FileHandlerFactory.createFileHandler();
     }
 
     /**
@@ -19,11 +19,14 @@
  */
 package org.codehaus.cargo.container.spi.deployer;
 
-import java.util.ArrayList;
+import java.io.File;
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.codehaus.cargo.container.ContainerException;
@@ -33,6 +36,8 @@ import org.codehaus.cargo.container.deployable.DeployableType;
 import org.codehaus.cargo.container.deployable.EAR;
 import org.codehaus.cargo.container.deployable.RAR;
 import org.codehaus.cargo.container.deployable.WAR;
+import org.codehaus.cargo.container.internal.util.DirectorySynchronizer;
+import org.codehaus.cargo.container.property.GeneralPropertySet;
 import org.codehaus.cargo.util.CargoException;
 
 /**
@@ -51,9 +56,9 @@ public abstract class AbstractCopyingInstalledLocalDeployer extends
     private Set<DeployableType> doNotDeployExpanded = new HashSet<DeployableType>();
 
     /**
-     * Deployed Deployables.
+     * Deployed Deployables, indexed by the web contexts they use.
      */
-    private List<Deployable> deployedDeployables;
+    private Map<String, Deployable> deployedWebContexts;
 
     /**
      * {@inheritDoc}
@@ -63,7 +68,7 @@ public abstract class AbstractCopyingInstalledLocalDeployer extends
     {
         super(container);
 
-        this.deployedDeployables = new ArrayList<Deployable>();
+        this.deployedWebContexts = new HashMap<String, Deployable>();
     }
 
     /**
@@ -103,6 +108,157 @@ public abstract class AbstractCopyingInstalledLocalDeployer extends
      */
     @Override
     public synchronized void deploy(Deployable deployable)
+    {
+        checkDeployable(deployable);
+        copyDeployable(deployable);
+        registerWebContexts(deployable);
+    }
+
+    /**
+     * {@inheritDoc}. If the deployer supports concurrent deployments, all deployables are checked
+     * before any of them gets copied and the copies then run in parallel; the deployables copied
+     * before a failure remain deployed.
+     */
+    @Override
+    public synchronized void deploy(List<Deployable> deployables)
+    {
+        if (!isConcurrentDeploymentSupported())
+        {
+            super.deploy(deployables);
+            return;
+        }
+
+        Set<String> batchWebContexts = new HashSet<String>();
+        for (Deployable deployable : deployables)
+        {
+            checkDeployable(deployable);
+            for (String webContext : getWebContexts(deployable))
+            {
+                if (!batchWebContexts.add(webContext))
+                {
+                    throw new ContainerException("Failed to deploy [" + deployable.getFile()
+                        + "] to [" + getDeployableDir(deployable) + "]. The required web context"
+                        + " is already in use by another application.");
+                }
+            }
+        }
+
+        deployConcurrently(deployables, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Copies one deployable of a batch and registers its web contexts. {@inheritDoc}
+     */
+    @Override
+    protected void deployInBatch(Deployable deployable)
+    {
+        copyDeployable(deployable);
+        registerWebContexts(deployable);
+    }
+
+    /**
+     * Registers the web contexts of a deployable that has been copied.
+     * @param deployable Deployable.
+     */
+    private void registerWebContexts(Deployable deployable)
+    {
+        synchronized (this.deployedWebContexts)
+        {
+            for (String webContext : getWebContexts(deployable))
+            {
+                this.deployedWebContexts.put(webContext, deployable);
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}. When redeploying expanded deployables with
+     * {@link GeneralPropertySet#DELTA_REDEPLOY} enabled, the deployable is not undeployed first;
+     * only its changed files get copied.
+     */
+    @Override
+    public synchronized void redeploy(Deployable deployable)
+    {
+        if (deployable.isExpanded() && isDeltaRedeploy())
+        {
+            for (String webContext : getWebContexts(deployable))
+            {
+                this.deployedWebContexts.remove(webContext);
+            }
+            deploy(deployable);
+        }
+        else
+        {
+            super.redeploy(deployable);
+        }
+    }
+
+    /**
+     * @return <code>true</code> if expanded deployables should be redeployed by only copying the
+     * files that have changed.
+     * @see GeneralPropertySet#DELTA_REDEPLOY
+     */
+    protected boolean isDeltaRedeploy()
+    {
+        return Boolean.parseBoolean(
+            getContainer().getConfiguration().getPropertyValue(GeneralPropertySet.DELTA_REDEPLOY));
+    }
+
+    /**
+     * Gets the descriptor to touch so that the container reloads an expanded deployable whose
+     * files have been synchronized.
+     * @param deployable Deployable.
+     * @return Path of the descriptor relative to the expanded deployable, <code>null</code> if
+     * none.
+     */
+    protected String getReloadDescriptor(Deployable deployable)
+    {
+        if (deployable.getType() == DeployableType.WAR)
+        {
+            return "WEB-INF/web.xml";
+        }
+        else if (deployable.getType() == DeployableType.EAR)
+        {
+            return "META-INF/application.xml";
+        }
+        return null;
+    }
+
+    /**
+     * Synchronizes an expanded deployable with its deployed copy, keeping the state of the deployed
+     * files in a manifest next to the deployed copy.
+     * @param deployable Expanded deployable.
+     * @param target Deployed copy.
+     * @throws IOException If anything goes wrong.
+     */
+    private void synchronizeDeployable(Deployable deployable, File target) throws IOException
+    {
+        File manifest = new File(target.getParentFile(), "." + target.getName() + ".cargo-delta");
+        DirectorySynchronizer synchronizer = new DirectorySynchronizer(getFileHandler());
+        boolean changed = synchronizer.synchronize(new File(deployable.getFile()), target,
+            manifest);
+
+        getLogger().info("Synchronized [" + deployable.getFile() + "] to [" + target + "]: "
+            + synchronizer.getCopiedFiles() + " files (" + synchronizer.getCopiedBytes()
+            + " bytes) copied, " + synchronizer.getDeletedFiles() + " deleted, "
+            + synchronizer.getUnchangedFiles() + " unchanged", this.getClass().getName());
+
+        String descriptor = getReloadDescriptor(deployable);
+        if (changed && descriptor != null)
+        {
+            File descriptorFile = new File(target, descriptor);
+            if (descriptorFile.isFile())
+            {
+                descriptorFile.setLastModified(System.currentTimeMillis());
+            }
+        }
+    }
+
+    /**
+     * Checks that a deployable can be deployed.
+     * @param deployable Deployable to check.
+     */
+    private void checkDeployable(Deployable deployable)
     {
         if (!canBeDeployed(deployable))
         {
@@ -118,7 +274,14 @@ public abstract class AbstractCopyingInstalledLocalDeployer extends
                 + " archives are not supported for deployment in [" + getContainer().getId()
                 + "]. Got [" + deployable.getFile() + "]");
         }
+    }
 
+    /**
+     * Copies a deployable to its deployable directory.
+     * @param deployable Deployable to copy.
+     */
+    private void copyDeployable(Deployable deployable)
+    {
         String deployableDir = getDeployableDir(deployable);
 
         try
@@ -145,8 +308,6 @@ public abstract class AbstractCopyingInstalledLocalDeployer extends
             throw new ContainerException("Failed to deploy [" + deployable.getFile() + "] to ["
                 + deployableDir + "]", e);
         }
-
-        this.deployedDeployables.add(deployable);
     }
 
     /**
@@ -158,15 +319,11 @@ public abstract class AbstractCopyingInstalledLocalDeployer extends
      */
     protected boolean canBeDeployed(Deployable newDeployable)
     {
-        final Set<String> newDeployableContextSet = getWebContextsSet(newDeployable);
-        for (Deployable deployedDeployable : this.deployedDeployables)
+        for (String webContext : getWebContexts(newDeployable))
         {
-            for (String webContext : getWebContexts(deployedDeployable))
+            if (this.deployedWebContexts.containsKey(webContext))
             {
-                if (newDeployableContextSet.contains(webContext))
-                {
-                    return false;
-                }
+                return false;
             }
         }
         return true;
@@ -197,22 +354,6 @@ public abstract class AbstractCopyingInstalledLocalDeployer extends
         return webContexts;
     }
 
-    /**
-     * Create a set of all web contexts for a Deployable.
-     * 
-     * @param deployable Deployable
-     * @return a set of all web contexts contained in this deployable.
-     */
-    private static Set<String> getWebContextsSet(Deployable deployable)
-    {
-        final Set<String> webContextSet = new HashSet<String>();
-        for (String webContext : getWebContexts(deployable))
-        {
-            webContextSet.add(webContext);
-        }
-        return webContextSet;
-    }
-
     /**
      * Specifies the directory {@link org.codehaus.cargo.container.deployable.Deployable}s should be
      * copied to.
@@ -248,7 +389,22 @@ public abstract class AbstractCopyingInstalledLocalDeployer extends
                 getFileHandler().delete(target);
             }
 
-            getFileHandler().copyDirectory(deployable.getFile(), target);
+            if (isDeltaRedeploy() && new File(deployable.getFile()).isDirectory())
+            {
+                try
+                {
+                    synchronizeDeployable(deployable, new File(target));
+                }
+                catch (IOException e)
+                {
+                    throw new ContainerException("Failed to synchronize [" + deployable.getFile()
+                        + "] with [" + target + "]", e);
+                }
+            }
+            else
+            {
+                getFileHandler().copyDirectory(deployable.getFile(), target);
+            }
         }
         else
         {
@@ -22,7 +22,14 @@ package org.codehaus.cargo.container.spi.deployer;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.io.Writer;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.codehaus.cargo.container.Container;
 import org.codehaus.cargo.container.ContainerException;
@@ -46,8 +53,11 @@ public abstract class AbstractDeployer extends LoggedObject implements Deployer
     }
 
     /**
-     * Helper method to deploy multiple deployables at a time.
+     * Helper method to deploy multiple deployables at a time. This implementation deploys the
+     * deployables one after the other; deployers supporting concurrent deployments may process
+     * them at the same time. The deployment fails if any of the deployables cannot be deployed.
      * @see Deployer#deploy(Deployable)
+     * @see #isConcurrentDeploymentSupported()
      * @param deployables Deployables to deploy.
      */
     public void deploy(List<Deployable> deployables)
@@ -58,6 +68,106 @@ public abstract class AbstractDeployer extends LoggedObject implements Deployer
         }
     }
 
+    /**
+     * @return <code>true</code> if this deployer can deploy several deployables at the same time.
+     * This implementation returns <code>false</code>.
+     * @see #deploy(List)
+     */
+    protected boolean isConcurrentDeploymentSupported()
+    {
+        return false;
+    }
+
+    /**
+     * Calls {@link #deployInBatch(Deployable)} for each of the deployables, using up to
+     * <code>threads</code> threads. When a deployable fails, the deployables not yet started are
+     * skipped and the failure is thrown once the running ones have completed.
+     * @param deployables Deployables to deploy.
+     * @param threads Maximum number of deployables to deploy at the same time.
+     */
+    protected void deployConcurrently(List<Deployable> deployables, int threads)
+    {
+        if (threads <= 1 || deployables.size() <= 1)
+        {
+            for (Deployable deployable : deployables)
+            {
+                deployInBatch(deployable);
+            }
+            return;
+        }
+
+        ExecutorService executor =
+            Executors.newFixedThreadPool(Math.min(threads, deployables.size()));
+        try
+        {
+            List<Future<Void>> futures = new ArrayList<Future<Void>>(deployables.size());
+            for (final Deployable deployable : deployables)
+            {
+                futures.add(executor.submit(new Callable<Void>()
+                {
+                    @Override
+                    public Void call()
+                    {
+                        deployInBatch(deployable);
+                        return null;
+                    }
+                }));
+            }
+
+            Throwable failure = null;
+            for (Future<Void> future : futures)
+            {
+                try
+                {
+                    future.get();
+                }
+                catch (CancellationException e)
+                {
+                    // Skipped after an earlier failure
+                }
+                catch (ExecutionException e)
+                {
+                    if (failure == null)
+                    {
+                        failure = e.getCause();
+                        for (Future<Void> other : futures)
+                        {
+                            other.cancel(false);
+                        }
+                    }
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    throw new ContainerException("Interrupted while deploying", e);
+                }
+            }
+
+            if (failure instanceof RuntimeException)
+            {
+                throw (RuntimeException) failure;
+            }
+            else if (failure != null)
+            {
+                throw new ContainerException("Failed to deploy", failure);
+            }
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Deploys one deployable of a batch started by {@link #deployConcurrently(List, int)}. This
+     * implementation calls {@link #deploy(Deployable)}.
+     * @param deployable Deployable to deploy.
+     */
+    protected void deployInBatch(Deployable deployable)
+    {
+        deploy(deployable);
+    }
+
     /**
      * {@inheritDoc}
      */
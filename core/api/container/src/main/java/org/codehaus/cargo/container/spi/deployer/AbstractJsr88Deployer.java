@@ -41,8 +41,8 @@ import org.codehaus.cargo.container.deployable.EAR;
 import org.codehaus.cargo.container.deployable.WAR;
 import org.codehaus.cargo.container.property.RemotePropertySet;
 import org.codehaus.cargo.util.CargoException;
-import org.codehaus.cargo.util.DefaultFileHandler;
 import org.codehaus.cargo.util.FileHandler;
+import org.codehaus.cargo.util.FileHandlerFactory;
 
 /**
  * JSR-88 remote deployer.
@@ -74,7 +74,7 @@ public abstract class AbstractJsr88Deployer extends AbstractRemoteDeployer
     {
         super(container);
         this.configuration = container.getConfiguration();
-        this.fileHandler = new DefaultFileHandler();
+        this.fileHandler = FileHandlerFactory.createFileHandler();
 
         // Set a timeout in order to avoid CARGO-1299
         String portStr = configuration.getPropertyValue(RemotePropertySet.TIMEOUT);
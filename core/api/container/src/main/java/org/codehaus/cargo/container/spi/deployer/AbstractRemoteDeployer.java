@@ -19,7 +19,10 @@
  */
 package org.codehaus.cargo.container.spi.deployer;
 
+import java.util.List;
+
 import org.codehaus.cargo.container.Container;
+import org.codehaus.cargo.container.deployable.Deployable;
 import org.codehaus.cargo.container.deployer.DeployerType;
 
 /**
@@ -28,6 +31,12 @@ import org.codehaus.cargo.container.deployer.DeployerType;
  */
 public abstract class AbstractRemoteDeployer extends AbstractDeployer
 {
+    /**
+     * Number of uploads running at the same time when deploying a batch of deployables, so that
+     * the next deployable gets uploaded while the server processes the previous one.
+     */
+    private static final int UPLOAD_PIPELINE_DEPTH = 2;
+
     /**
      * @param container the remote container into which to perform deployment operations
      */
@@ -44,4 +53,22 @@ public abstract class AbstractRemoteDeployer extends AbstractDeployer
     {
         return DeployerType.REMOTE;
     }
+
+    /**
+     * {@inheritDoc}. If the deployer supports concurrent deployments, the uploads of the
+     * deployables are pipelined.
+     * @see #isConcurrentDeploymentSupported()
+     */
+    @Override
+    public void deploy(List<Deployable> deployables)
+    {
+        if (isConcurrentDeploymentSupported())
+        {
+            deployConcurrently(deployables, UPLOAD_PIPELINE_DEPTH);
+        }
+        else
+        {
+            super.deploy(deployables);
+        }
+    }
 }
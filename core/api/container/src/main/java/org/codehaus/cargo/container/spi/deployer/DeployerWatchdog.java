@@ -25,7 +25,10 @@ import org.codehaus.cargo.container.deployer.DeployableMonitorListener;
 import org.codehaus.cargo.util.log.LoggedObject;
 
 /**
- * Wait for a deployable to be deployed.
+ * Wait for a deployable to be deployed. The monitor is checked right away and then with an
+ * adaptive backoff: checks are tight at first, so that quick deployments are detected without
+ * delay, and get further apart as time goes by, up to the 100 ms the watchdog always waited
+ * between two checks.
  */
 public class DeployerWatchdog extends LoggedObject implements DeployableMonitorListener
 {
@@ -39,7 +42,17 @@ public class DeployerWatchdog extends LoggedObject implements DeployableMonitorL
      * Status flag set to true when the {@link org.codehaus.cargo.container.deployable.Deployable}
      * is deployed.
      */
-    private boolean isDeployed;
+    private volatile boolean isDeployed;
+
+    /**
+     * Delay before the second check of the monitor, in milliseconds.
+     */
+    private long initialInterval = 10L;
+
+    /**
+     * Maximum delay between two checks of the monitor, in milliseconds.
+     */
+    private long maximumInterval = 100L;
 
     /**
      * @param monitor the monitor to use to monitor the
@@ -69,6 +82,25 @@ public class DeployerWatchdog extends LoggedObject implements DeployableMonitorL
         this.isDeployed = false;
     }
 
+    /**
+     * Sets the backoff between two checks of the monitor: the first delay is
+     * <code>initialInterval</code>, which then doubles after each check up to
+     * <code>maximumInterval</code>.
+     * 
+     * @param initialInterval delay before the second check of the monitor, in milliseconds
+     * @param maximumInterval maximum delay between two checks of the monitor, in milliseconds
+     */
+    public void setPollInterval(long initialInterval, long maximumInterval)
+    {
+        if (initialInterval <= 0 || maximumInterval < initialInterval)
+        {
+            throw new IllegalArgumentException("Invalid poll interval [" + initialInterval
+                + "] to [" + maximumInterval + "]");
+        }
+        this.initialInterval = initialInterval;
+        this.maximumInterval = maximumInterval;
+    }
+
     /**
      * Wait till the monitored Deployable is made available or throw an exception if the timeout
      * period is reached. Equivalent to <code>watch(true)</code>.
@@ -93,14 +125,23 @@ public class DeployerWatchdog extends LoggedObject implements DeployableMonitorL
      */
     public void watch(boolean shouldWatchForAvailability)
     {
-        boolean exitCondition;
-
         try
         {
             long startTime = System.currentTimeMillis();
-            do
+            long interval = this.initialInterval;
+            int checks = 0;
+            while (true)
             {
-                if (System.currentTimeMillis() - startTime > this.monitor.getTimeout())
+                this.monitor.monitor();
+                checks++;
+
+                if (this.isDeployed == shouldWatchForAvailability)
+                {
+                    break;
+                }
+
+                long elapsed = System.currentTimeMillis() - startTime;
+                if (elapsed > this.monitor.getTimeout())
                 {
                     String message = "Deployable [" + this.monitor.getDeployableName()
                         + "] failed to finish "
@@ -111,14 +152,15 @@ public class DeployerWatchdog extends LoggedObject implements DeployableMonitorL
                     throw new ContainerException(message);
                 }
 
-                Thread.sleep(100);
-
-                this.monitor.monitor();
-
-                exitCondition = shouldWatchForAvailability ? !this.isDeployed : this.isDeployed;
-
+                Thread.sleep(Math.max(1L, Math.min(interval,
+                    this.monitor.getTimeout() - elapsed + 1)));
+                interval = Math.min(interval * 2, this.maximumInterval);
             }
-            while (exitCondition);
+
+            getLogger().debug("Deployable [" + this.monitor.getDeployableName() + "] "
+                + (shouldWatchForAvailability ? "deployed" : "undeployed") + " after "
+                + (System.currentTimeMillis() - startTime) + " ms and " + checks + " check(s)",
+                this.getClass().getName());
         }
         catch (InterruptedException e)
         {
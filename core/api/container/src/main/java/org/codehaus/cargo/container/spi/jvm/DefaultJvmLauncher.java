@@ -32,7 +32,7 @@ import org.codehaus.cargo.container.internal.AntContainerExecutorThread;
 /**
  * The default JVM launcher.
  */
-class DefaultJvmLauncher implements JvmLauncher
+class DefaultJvmLauncher implements WaitableJvmLauncher
 {
 
     /**
@@ -45,6 +45,11 @@ class DefaultJvmLauncher implements JvmLauncher
      */
     private boolean spawn;
 
+    /**
+     * Thread running the JVM launched by {@link #start()}, which finishes when that JVM exits.
+     */
+    private Thread runner;
+
     /**
      * List of extra environment variables. Ant's Java task doesn't offer a getter for the
      * environment variable, forcing us to keep track of them ourselves.
@@ -339,8 +344,8 @@ class DefaultJvmLauncher implements JvmLauncher
     @Override
     public void start() throws JvmLauncherException
     {
-        Thread runner = new AntContainerExecutorThread(this.java, this.spawn);
-        runner.start();
+        this.runner = new AntContainerExecutorThread(this.java, this.spawn);
+        this.runner.start();
     }
 
     /**
@@ -359,4 +364,19 @@ class DefaultJvmLauncher implements JvmLauncher
         }
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean waitFor(long millis) throws InterruptedException
+    {
+        // A spawned JVM is detached from the thread that launched it
+        if (this.runner == null || this.spawn)
+        {
+            return false;
+        }
+        this.runner.join(millis);
+        return !this.runner.isAlive();
+    }
+
 }
@@ -0,0 +1,231 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus CARGO, copyright 2004-2011 Vincent Massol, 2012-2016 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.container.spi.jvm;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.util.Properties;
+
+import org.codehaus.cargo.container.internal.util.JdkUtils;
+
+/**
+ * Metadata of a JVM, i.e. its version, vendor and the features derived from its version.
+ */
+public class JvmMetadata
+{
+    /**
+     * Full version of the JVM, for example <code>1.8.0_292</code> or <code>11.0.2</code>.
+     */
+    private String version;
+
+    /**
+     * Vendor of the JVM, <code>null</code> if unknown.
+     */
+    private String vendor;
+
+    /**
+     * Major version of the JVM, for example <code>8</code> or <code>11</code>.
+     */
+    private int majorVersion;
+
+    /**
+     * Creates JVM metadata.
+     * 
+     * @param version Full version of the JVM, must not be {@code null}.
+     * @param vendor Vendor of the JVM, may be {@code null} if unknown.
+     */
+    public JvmMetadata(String version, String vendor)
+    {
+        this.version = version;
+        this.vendor = vendor;
+        this.majorVersion = JdkUtils.parseMajorJavaVersion(version);
+    }
+
+    /**
+     * @return Metadata of the JVM this code is running in.
+     */
+    public static JvmMetadata getCurrent()
+    {
+        return new JvmMetadata(System.getProperty("java.version"),
+            System.getProperty("java.vendor"));
+    }
+
+    /**
+     * Reads the metadata of a JVM from the <code>release</code> file of its installation, which
+     * avoids launching it.
+     * 
+     * @param javaHome Installation directory of the JRE/JDK.
+     * @return Metadata of the JVM, {@code null} if there is no (readable) <code>release</code>
+     * file in the installation.
+     */
+    public static JvmMetadata readReleaseFile(File javaHome)
+    {
+        File releaseFile = new File(javaHome, "release");
+        if (!releaseFile.isFile() && "jre".equals(javaHome.getName()))
+        {
+            releaseFile = new File(javaHome.getParentFile(), "release");
+        }
+        if (!releaseFile.isFile())
+        {
+            return null;
+        }
+
+        Properties release = new Properties();
+        try
+        {
+            InputStream in = new FileInputStream(releaseFile);
+            try
+            {
+                release.load(in);
+            }
+            finally
+            {
+                in.close();
+            }
+        }
+        catch (IOException e)
+        {
+            return null;
+        }
+
+        String version = unquote(release.getProperty("JAVA_VERSION"));
+        if (version == null)
+        {
+            return null;
+        }
+        try
+        {
+            return new JvmMetadata(version, unquote(release.getProperty("IMPLEMENTOR")));
+        }
+        catch (NumberFormatException e)
+        {
+            return null;
+        }
+    }
+
+    /**
+     * Parses the metadata of a JVM from the output of <code>java -version</code>, whose first line
+     * is for example <code>java version "1.8.0_292"</code> or
+     * <code>openjdk version "11.0.2" 2019-01-15</code>.
+     * 
+     * @param output Output of <code>java -version</code>.
+     * @return Metadata of the JVM.
+     * @throws IOException If the version cannot be found in the output.
+     */
+    public static JvmMetadata parseVersionOutput(String output) throws IOException
+    {
+        BufferedReader reader = new BufferedReader(new StringReader(output));
+        String line = reader.readLine();
+        if (line != null)
+        {
+            int start = line.indexOf(" version \"");
+            if (start != -1)
+            {
+                start += " version \"".length();
+                int end = line.indexOf('"', start);
+                if (end > start)
+                {
+                    String vendor = null;
+                    String runtime = reader.readLine();
+                    if (runtime != null && runtime.contains("OpenJDK"))
+                    {
+                        vendor = "OpenJDK";
+                    }
+                    try
+                    {
+                        return new JvmMetadata(line.substring(start, end), vendor);
+                    }
+                    catch (NumberFormatException e)
+                    {
+                        // Handled below
+                    }
+                }
+            }
+        }
+        throw new IOException("Can't read JVM version from line: " + line);
+    }
+
+    /**
+     * @param value Value, possibly between double quotes.
+     * @return Value without its double quotes.
+     */
+    private static String unquote(String value)
+    {
+        if (value != null && value.length() >= 2 && value.startsWith("\"") && value.endsWith("\""))
+        {
+            return value.substring(1, value.length() - 1);
+        }
+        return value;
+    }
+
+    /**
+     * @return Full version of the JVM, for example <code>1.8.0_292</code> or <code>11.0.2</code>.
+     */
+    public String getVersion()
+    {
+        return this.version;
+    }
+
+    /**
+     * @return Vendor of the JVM, {@code null} if unknown.
+     */
+    public String getVendor()
+    {
+        return this.vendor;
+    }
+
+    /**
+     * @return Major version of the JVM, for example <code>8</code> or <code>11</code>.
+     */
+    public int getMajorVersion()
+    {
+        return this.majorVersion;
+    }
+
+    /**
+     * @return {@code true} if the JDK tools are in a separate <code>tools.jar</code> file, which is
+     * the case before Java 9 (except on Mac OSX, where they are in <code>classes.jar</code>).
+     */
+    public boolean hasToolsJar()
+    {
+        return this.majorVersion < 9;
+    }
+
+    /**
+     * @return {@code true} if the JVM has a permanent generation, which is the case before Java 8.
+     */
+    public boolean hasPermGen()
+    {
+        return this.majorVersion < 8;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString()
+    {
+        return this.version + (this.vendor == null ? "" : " (" + this.vendor + ")");
+    }
+}
@@ -0,0 +1,267 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus CARGO, copyright 2004-2011 Vincent Massol, 2012-2016 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.container.spi.jvm;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import org.codehaus.cargo.util.log.LoggedObject;
+
+/**
+ * Process-wide cache of {@link JvmMetadata}, keyed by the path of the <code>java</code> executable
+ * and its last modification time, so that each JVM is inspected once. The metadata of the JVM this
+ * code runs in, and of any JVM with a <code>release</code> file, is read without launching it;
+ * other JVMs are launched with <code>-version</code>, once. The cache can also be persisted to a
+ * file, given using the {@link #FILE_PROPERTY} system property, so that it survives the process.
+ */
+public class JvmMetadataCache extends LoggedObject
+{
+    /**
+     * System property giving the file in which the default cache is persisted.
+     */
+    public static final String FILE_PROPERTY = "cargo.jvm.metadata.cache.file";
+
+    /**
+     * Separator between version and vendor in the persisted cache.
+     */
+    private static final char SEPARATOR = '|';
+
+    /**
+     * Default, process-wide, cache.
+     */
+    private static JvmMetadataCache defaultCache;
+
+    /**
+     * Detects the metadata of a JVM when it cannot be read without launching that JVM.
+     */
+    public interface Detector
+    {
+        /**
+         * @return Metadata of the JVM.
+         * @throws Exception If the metadata cannot be detected.
+         */
+        JvmMetadata detect() throws Exception;
+    }
+
+    /**
+     * Cached metadata, indexed by key.
+     */
+    private Map<String, JvmMetadata> entries = new HashMap<String, JvmMetadata>();
+
+    /**
+     * File in which the cache is persisted, {@code null} to keep it in memory only.
+     */
+    private File file;
+
+    /**
+     * @param file File in which the cache is persisted, {@code null} to keep it in memory only.
+     */
+    public JvmMetadataCache(File file)
+    {
+        this.file = file;
+    }
+
+    /**
+     * @return The default, process-wide, cache.
+     */
+    public static synchronized JvmMetadataCache getDefault()
+    {
+        if (defaultCache == null)
+        {
+            String file = System.getProperty(FILE_PROPERTY);
+            defaultCache = new JvmMetadataCache(file == null ? null : new File(file));
+        }
+        return defaultCache;
+    }
+
+    /**
+     * Gets the metadata of a JVM, from the cache if possible.
+     * 
+     * @param javaHome Installation directory of the JVM.
+     * @param detector Detector to use when the metadata can only be known by launching the JVM.
+     * @return Metadata of the JVM.
+     * @throws Exception If the detector fails.
+     */
+    public synchronized JvmMetadata get(String javaHome, Detector detector) throws Exception
+    {
+        File home = new File(javaHome).getAbsoluteFile();
+        File executable = new File(new File(home, "bin"), "java");
+        if (!executable.isFile())
+        {
+            executable = new File(new File(home, "bin"), "java.exe");
+        }
+        String key = executable.getCanonicalPath() + SEPARATOR + executable.lastModified();
+
+        JvmMetadata metadata = this.entries.get(key);
+        if (metadata == null)
+        {
+            if (isCurrent(home))
+            {
+                metadata = JvmMetadata.getCurrent();
+            }
+            else
+            {
+                metadata = JvmMetadata.readReleaseFile(home);
+            }
+            if (metadata == null)
+            {
+                metadata = load(key);
+            }
+            if (metadata == null)
+            {
+                long start = System.currentTimeMillis();
+                metadata = detector.detect();
+                getLogger().debug("Launched the JVM in [" + home + "] to detect its version "
+                    + metadata + " in " + (System.currentTimeMillis() - start) + " ms",
+                        this.getClass().getName());
+                store(key, metadata);
+            }
+            this.entries.put(key, metadata);
+        }
+        return metadata;
+    }
+
+    /**
+     * @param home Installation directory of a JVM.
+     * @return {@code true} if it is the installation of the JVM this code runs in.
+     * @throws IOException If the paths cannot be resolved.
+     */
+    private boolean isCurrent(File home) throws IOException
+    {
+        File current = new File(System.getProperty("java.home")).getCanonicalFile();
+        File canonicalHome = home.getCanonicalFile();
+        return canonicalHome.equals(current) || new File(canonicalHome, "jre").equals(current);
+    }
+
+    /**
+     * @param key Key of the metadata.
+     * @return Metadata from the persisted cache, {@code null} if not found.
+     */
+    private JvmMetadata load(String key)
+    {
+        String value = readFile().getProperty(key);
+        if (value != null)
+        {
+            int separator = value.indexOf(SEPARATOR);
+            try
+            {
+                if (separator == -1)
+                {
+                    return new JvmMetadata(value, null);
+                }
+                return new JvmMetadata(value.substring(0, separator),
+                    value.substring(separator + 1));
+            }
+            catch (NumberFormatException e)
+            {
+                getLogger().debug("Ignoring invalid cached JVM metadata [" + value + "]",
+                    this.getClass().getName());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Persists metadata, if the cache is persisted.
+     * @param key Key of the metadata.
+     * @param metadata Metadata to persist.
+     */
+    private void store(String key, JvmMetadata metadata)
+    {
+        if (this.file == null)
+        {
+            return;
+        }
+
+        // Re-read the file, which other processes may have updated in the meantime
+        Properties properties = readFile();
+        properties.setProperty(key, metadata.getVersion()
+            + (metadata.getVendor() == null ? "" : SEPARATOR + metadata.getVendor()));
+
+        File temp = new File(this.file.getPath() + ".tmp");
+        try
+        {
+            File parent = this.file.getAbsoluteFile().getParentFile();
+            if (parent != null)
+            {
+                parent.mkdirs();
+            }
+            OutputStream out = new FileOutputStream(temp);
+            try
+            {
+                properties.store(out, "Cargo JVM metadata cache");
+            }
+            finally
+            {
+                out.close();
+            }
+            if (!temp.renameTo(this.file))
+            {
+                this.file.delete();
+                if (!temp.renameTo(this.file))
+                {
+                    throw new IOException("Cannot rename " + temp + " to " + this.file);
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            getLogger().warn("Cannot persist JVM metadata cache [" + this.file + "]: " + e,
+                this.getClass().getName());
+            temp.delete();
+        }
+    }
+
+    /**
+     * @return Contents of the persisted cache, empty if the cache is not persisted.
+     */
+    private Properties readFile()
+    {
+        Properties properties = new Properties();
+        if (this.file != null && this.file.isFile())
+        {
+            try
+            {
+                InputStream in = new FileInputStream(this.file);
+                try
+                {
+                    properties.load(in);
+                }
+                finally
+                {
+                    in.close();
+                }
+            }
+            catch (IOException e)
+            {
+                getLogger().debug("Cannot read JVM metadata cache [" + this.file + "]: " + e,
+                    this.getClass().getName());
+            }
+        }
+        return properties;
+    }
+}
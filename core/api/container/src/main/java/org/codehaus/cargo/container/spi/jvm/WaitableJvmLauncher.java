@@ -0,0 +1,38 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus CARGO, copyright 2004-2011 Vincent Massol, 2012-2016 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.container.spi.jvm;
+
+/**
+ * A JVM launcher which can tell when the JVM it has started terminates. This is optional: callers
+ * check that a {@link JvmLauncher} implements this interface, and otherwise fall back to other
+ * means of detecting the termination of the JVM.
+ */
+public interface WaitableJvmLauncher extends JvmLauncher
+{
+    /**
+     * Waits for the JVM launched by {@link #start()} to terminate.
+     * 
+     * @param millis The maximum time to wait, in milliseconds.
+     * @return {@code true} if the JVM is known to have terminated, {@code false} if it is still
+     * running after the given time or if this launcher cannot track it (for example when spawned).
+     * @throws InterruptedException If the thread is interrupted while waiting.
+     */
+    boolean waitFor(long millis) throws InterruptedException;
+}
@@ -24,8 +24,8 @@ import java.util.List;
 
 import org.codehaus.cargo.container.InstalledLocalContainer;
 import org.codehaus.cargo.container.packager.Packager;
-import org.codehaus.cargo.util.DefaultFileHandler;
 import org.codehaus.cargo.util.FileHandler;
+import org.codehaus.cargo.util.FileHandlerFactory;
 import org.codehaus.cargo.util.log.LoggedObject;
 
 /**
@@ -49,7 +49,7 @@ public abstract class AbstractDirectoryPackager extends LoggedObject implements
      */
     public AbstractDirectoryPackager(String targetDirectory)
     {
-        this.fileHandler = new DefaultFileHandler();
+        this.fileHandler = FileHandlerFactory.createFileHandler();
         this.targetDirectory = targetDirectory;
     }
 
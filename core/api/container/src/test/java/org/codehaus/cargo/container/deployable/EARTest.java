@@ -19,6 +19,13 @@
  */
 package org.codehaus.cargo.container.deployable;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.UUID;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
 import junit.framework.TestCase;
 
 /**
@@ -53,4 +60,51 @@ public class EARTest extends TestCase
         ear.setName("name");
         assertEquals("name", ear.getName());
     }
+
+    /**
+     * Test that the web contexts of a modified EAR are parsed again.
+     * @throws Exception If anything goes wrong.
+     */
+    public void testGetWebContextsWhenEarIsModified() throws Exception
+    {
+        File file = new File("target/" + UUID.randomUUID().toString() + ".ear");
+        try
+        {
+            createEar(file, "/first");
+            assertEquals("first", new EAR(file.getPath()).getWebContexts().get(0));
+            assertEquals("first.war", new EAR(file.getPath()).getWebUri("first"));
+
+            createEar(file, "/second-context");
+            assertEquals("second-context", new EAR(file.getPath()).getWebContexts().get(0));
+        }
+        finally
+        {
+            file.delete();
+        }
+    }
+
+    /**
+     * Creates an EAR with a single web module.
+     * @param file EAR file to create.
+     * @param context Context root of the web module.
+     * @throws IOException If anything goes wrong.
+     */
+    private void createEar(File file, String context) throws IOException
+    {
+        ZipOutputStream ear = new ZipOutputStream(new FileOutputStream(file));
+        try
+        {
+            ear.putNextEntry(new ZipEntry("META-INF/application.xml"));
+            ear.write(("<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+                + "<application xmlns=\"http://java.sun.com/xml/ns/javaee\" version=\"5\">"
+                + "<display-name>test</display-name><module><web><web-uri>first.war</web-uri>"
+                + "<context-root>" + context + "</context-root></web></module>"
+                + "</application>").getBytes("UTF-8"));
+            ear.closeEntry();
+        }
+        finally
+        {
+            ear.close();
+        }
+    }
 }
@@ -0,0 +1,189 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus CARGO, copyright 2004-2011 Vincent Massol, 2012-2016 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.container.deployer;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.codehaus.cargo.util.AbstractTemporaryDirectoryTest;
+
+/**
+ * Unit tests for {@link LogFileDeployableMonitor} and {@link CompositeDeployableMonitor}.
+ */
+public class LogFileDeployableMonitorTest extends AbstractTemporaryDirectoryTest
+{
+    /**
+     * Log file.
+     */
+    private File logFile;
+
+    /**
+     * Listener recording the last reported status.
+     */
+    private static class StatusListener implements DeployableMonitorListener
+    {
+        /**
+         * Last reported status, <code>null</code> if none.
+         */
+        private Boolean isDeployed;
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void deployed()
+        {
+            this.isDeployed = Boolean.TRUE;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void undeployed()
+        {
+            this.isDeployed = Boolean.FALSE;
+        }
+    }
+
+    /**
+     * Chooses the log file to monitor. {@inheritDoc}
+     * @throws Exception If anything goes wrong.
+     */
+    @Override
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        this.logFile = getTemporaryFile("container.log");
+    }
+
+    /**
+     * Test that the started line is detected once appended to the log file.
+     * @throws Exception If anything goes wrong.
+     */
+    public void testStartedLineIsDetected() throws Exception
+    {
+        LogFileDeployableMonitor monitor =
+            new LogFileDeployableMonitor(this.logFile, "Server startup in");
+        StatusListener listener = new StatusListener();
+        monitor.registerListener(listener);
+
+        monitor.monitor();
+        assertEquals(Boolean.FALSE, listener.isDeployed);
+
+        append("INFO: Initializing\n");
+        monitor.monitor();
+        assertEquals(Boolean.FALSE, listener.isDeployed);
+
+        append("INFO: Server start");
+        monitor.monitor();
+        assertEquals(Boolean.FALSE, listener.isDeployed);
+
+        append("up in 1234 ms\n");
+        monitor.monitor();
+        assertEquals(Boolean.TRUE, listener.isDeployed);
+    }
+
+    /**
+     * Test that each occurrence of the text is reported once, so that a monitor reused for
+     * another watch waits for the text to be logged again.
+     * @throws Exception If anything goes wrong.
+     */
+    public void testFoundTextIsReportedOnce() throws Exception
+    {
+        LogFileDeployableMonitor monitor =
+            new LogFileDeployableMonitor(this.logFile, "Server startup in");
+        StatusListener listener = new StatusListener();
+        monitor.registerListener(listener);
+
+        append("INFO: Server startup in 1234 ms\nINFO: Stopping\n");
+        monitor.monitor();
+        assertEquals(Boolean.TRUE, listener.isDeployed);
+
+        monitor.monitor();
+        assertEquals(Boolean.FALSE, listener.isDeployed);
+
+        append("INFO: Server startup in 567 ms\n");
+        monitor.monitor();
+        assertEquals(Boolean.TRUE, listener.isDeployed);
+    }
+
+    /**
+     * Test that text logged before the creation of the monitor is ignored.
+     * @throws Exception If anything goes wrong.
+     */
+    public void testPreviousRunIsIgnored() throws Exception
+    {
+        append("INFO: Server startup in 1234 ms\n");
+
+        LogFileDeployableMonitor monitor =
+            new LogFileDeployableMonitor(this.logFile, "Server startup in");
+        StatusListener listener = new StatusListener();
+        monitor.registerListener(listener);
+        monitor.monitor();
+        assertEquals(Boolean.FALSE, listener.isDeployed);
+
+        monitor.setOffset(0);
+        monitor.monitor();
+        assertEquals(Boolean.TRUE, listener.isDeployed);
+    }
+
+    /**
+     * Test that the first monitor reporting deployed wins.
+     * @throws Exception If anything goes wrong.
+     */
+    public void testFirstSignalWins() throws Exception
+    {
+        LogFileDeployableMonitor first =
+            new LogFileDeployableMonitor(this.logFile, "first", 1000L);
+        LogFileDeployableMonitor second =
+            new LogFileDeployableMonitor(this.logFile, "second", 1000L);
+        CompositeDeployableMonitor monitor =
+            new CompositeDeployableMonitor(1000L, first, second);
+        StatusListener listener = new StatusListener();
+        monitor.registerListener(listener);
+
+        monitor.monitor();
+        assertEquals(Boolean.FALSE, listener.isDeployed);
+
+        append("second\n");
+        monitor.monitor();
+        assertEquals(Boolean.TRUE, listener.isDeployed);
+    }
+
+    /**
+     * @param text Text to append to the log file.
+     * @throws IOException If anything goes wrong.
+     */
+    private void append(String text) throws IOException
+    {
+        OutputStream out = new FileOutputStream(this.logFile, true);
+        try
+        {
+            out.write(text.getBytes());
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+}
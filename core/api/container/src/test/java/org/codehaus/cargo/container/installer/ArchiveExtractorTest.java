@@ -0,0 +1,285 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus CARGO, copyright 2004-2011 Vincent Massol, 2012-2016 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.container.installer;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.UUID;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import junit.framework.TestCase;
+
+import org.apache.tools.bzip2.CBZip2OutputStream;
+import org.apache.tools.tar.TarEntry;
+import org.apache.tools.tar.TarOutputStream;
+import org.codehaus.cargo.util.DefaultFileHandler;
+import org.codehaus.cargo.util.FileHandler;
+
+/**
+ * Unit tests for {@link ArchiveExtractor}.
+ */
+public class ArchiveExtractorTest extends TestCase
+{
+    /**
+     * Number of files in the test archives.
+     */
+    private static final int FILES = 200;
+
+    /**
+     * File handler.
+     */
+    private FileHandler fileHandler;
+
+    /**
+     * Working directory for the test.
+     */
+    private File workDir;
+
+    /**
+     * Extractor.
+     */
+    private ArchiveExtractor extractor;
+
+    /**
+     * Creates the working directory and the extractor. {@inheritDoc}
+     * @throws Exception If anything goes wrong.
+     */
+    @Override
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        this.fileHandler = new DefaultFileHandler();
+        this.workDir = new File("target/" + UUID.randomUUID().toString()).getAbsoluteFile();
+        this.fileHandler.mkdirs(this.workDir.getPath());
+        this.extractor = new ArchiveExtractor(4);
+    }
+
+    /**
+     * Deletes the working directory. {@inheritDoc}
+     * @throws Exception If anything goes wrong.
+     */
+    @Override
+    protected void tearDown() throws Exception
+    {
+        this.fileHandler.delete(this.workDir.getPath());
+        super.tearDown();
+    }
+
+    /**
+     * Test extracting a ZIP archive.
+     * @throws Exception If anything goes wrong.
+     */
+    public void testExtractZip() throws Exception
+    {
+        File archive = new File(this.workDir, "container.zip");
+        ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(archive));
+        try
+        {
+            zip.putNextEntry(new ZipEntry("container/"));
+            zip.closeEntry();
+            for (int i = 0; i < FILES; i++)
+            {
+                zip.putNextEntry(new ZipEntry("container/lib/file" + i + ".txt"));
+                zip.write(getContent(i));
+                zip.closeEntry();
+            }
+        }
+        finally
+        {
+            zip.close();
+        }
+
+        File target = new File(this.workDir, "container");
+        this.extractor.extract(archive, target);
+
+        assertExtracted(target);
+    }
+
+    /**
+     * Test extracting a TAR.GZ archive.
+     * @throws Exception If anything goes wrong.
+     */
+    public void testExtractTarGz() throws Exception
+    {
+        File archive = new File(this.workDir, "container.tar.gz");
+        createTar(new GZIPOutputStream(new FileOutputStream(archive)));
+
+        File target = new File(this.workDir, "container");
+        this.extractor.extract(archive, target);
+
+        assertExtracted(target);
+    }
+
+    /**
+     * Test extracting a TAR.BZ2 archive.
+     * @throws Exception If anything goes wrong.
+     */
+    public void testExtractTarBz2() throws Exception
+    {
+        File archive = new File(this.workDir, "container.tar.bz2");
+        OutputStream out = new FileOutputStream(archive);
+        out.write('B');
+        out.write('Z');
+        createTar(new CBZip2OutputStream(out));
+
+        File target = new File(this.workDir, "container");
+        this.extractor.extract(archive, target);
+
+        assertExtracted(target);
+    }
+
+    /**
+     * Test that entries outside of the target directory are refused.
+     * @throws Exception If anything goes wrong.
+     */
+    public void testExtractRefusesEntriesOutsideOfTarget() throws Exception
+    {
+        File archive = new File(this.workDir, "evil.zip");
+        ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(archive));
+        try
+        {
+            zip.putNextEntry(new ZipEntry("../evil.txt"));
+            zip.write(getContent(0));
+            zip.closeEntry();
+        }
+        finally
+        {
+            zip.close();
+        }
+
+        try
+        {
+            this.extractor.extract(archive, new File(this.workDir, "evil"));
+            fail("Extracting an entry outside of the target directory should fail");
+        }
+        catch (IOException expected)
+        {
+            assertTrue(expected.getMessage().contains("outside of the target directory"));
+        }
+        assertFalse(new File(this.workDir, "evil.txt").exists());
+    }
+
+    /**
+     * Test that a broken archive fails the extraction.
+     * @throws Exception If anything goes wrong.
+     */
+    public void testExtractBrokenArchive() throws Exception
+    {
+        File archive = new File(this.workDir, "broken.tar.gz");
+        OutputStream out = new FileOutputStream(archive);
+        try
+        {
+            out.write(getContent(FILES));
+        }
+        finally
+        {
+            out.close();
+        }
+
+        try
+        {
+            this.extractor.extract(archive, new File(this.workDir, "broken"));
+            fail("Extracting a broken archive should fail");
+        }
+        catch (IOException expected)
+        {
+            // Expected
+        }
+    }
+
+    /**
+     * Test that unsupported archive types are refused.
+     * @throws Exception If anything goes wrong.
+     */
+    public void testExtractUnsupportedArchive() throws Exception
+    {
+        try
+        {
+            this.extractor.extract(new File(this.workDir, "container.rar"),
+                new File(this.workDir, "container"));
+            fail("Extracting an unsupported archive should fail");
+        }
+        catch (IllegalArgumentException expected)
+        {
+            assertEquals("Unsupported archive type: [container.rar]", expected.getMessage());
+        }
+    }
+
+    /**
+     * Writes the test TAR archive.
+     * @param out Stream to write the archive to, will be closed.
+     * @throws IOException If anything goes wrong.
+     */
+    private void createTar(OutputStream out) throws IOException
+    {
+        TarOutputStream tar = new TarOutputStream(out);
+        try
+        {
+            TarEntry directory = new TarEntry("container/");
+            tar.putNextEntry(directory);
+            tar.closeEntry();
+            for (int i = 0; i < FILES; i++)
+            {
+                byte[] content = getContent(i);
+                TarEntry entry = new TarEntry("container/lib/file" + i + ".txt");
+                entry.setSize(content.length);
+                tar.putNextEntry(entry);
+                tar.write(content);
+                tar.closeEntry();
+            }
+        }
+        finally
+        {
+            tar.close();
+        }
+    }
+
+    /**
+     * @param index Index of the test file.
+     * @return Contents of the test file.
+     */
+    private byte[] getContent(int index)
+    {
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i <= index; i++)
+        {
+            content.append("Content of file ").append(index).append('\n');
+        }
+        return content.toString().getBytes();
+    }
+
+    /**
+     * Asserts that all test files have been extracted.
+     * @param target Directory the archive was extracted to.
+     */
+    private void assertExtracted(File target)
+    {
+        for (int i = 0; i < FILES; i++)
+        {
+            File file = new File(target, "container/lib/file" + i + ".txt");
+            assertTrue("File " + file + " not extracted", file.isFile());
+            assertEquals(getContent(i).length, file.length());
+        }
+    }
+}
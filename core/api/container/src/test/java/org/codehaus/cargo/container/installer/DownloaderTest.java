@@ -0,0 +1,285 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus CARGO, copyright 2004-2011 Vincent Massol, 2012-2016 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.container.installer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import junit.framework.TestCase;
+
+import org.codehaus.cargo.util.DefaultFileHandler;
+import org.codehaus.cargo.util.FileHandler;
+
+/**
+ * Unit tests for {@link Downloader}, using a local HTTP server.
+ */
+public class DownloaderTest extends TestCase
+{
+    /**
+     * Size of the test file.
+     */
+    private static final int SIZE = 3 * 1024 * 1024 + 17;
+
+    /**
+     * File handler.
+     */
+    private FileHandler fileHandler;
+
+    /**
+     * Working directory for the test.
+     */
+    private File workDir;
+
+    /**
+     * Test file served by the HTTP server.
+     */
+    private byte[] content;
+
+    /**
+     * Local HTTP server.
+     */
+    private HttpServer server;
+
+    /**
+     * Threads of the local HTTP server, so that segments are served in parallel.
+     */
+    private ExecutorService serverExecutor;
+
+    /**
+     * Handler serving the test file.
+     */
+    private FileHandlerStub handler;
+
+    /**
+     * HTTP handler serving the test file, with or without range support.
+     */
+    private class FileHandlerStub implements HttpHandler
+    {
+        /**
+         * Whether ranges are supported.
+         */
+        private boolean supportRanges = true;
+
+        /**
+         * Number of range requests still to be broken in the middle of the response.
+         */
+        private int failures;
+
+        /**
+         * Requested ranges.
+         */
+        private List<String> ranges = new ArrayList<String>();
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void handle(HttpExchange exchange) throws IOException
+        {
+            String range = exchange.getRequestHeaders().getFirst("Range");
+            int start = 0;
+            int end = content.length - 1;
+            boolean partial = this.supportRanges && range != null;
+            if (partial)
+            {
+                synchronized (this)
+                {
+                    this.ranges.add(range);
+                }
+                String[] bounds = range.substring("bytes=".length()).split("-");
+                start = Integer.parseInt(bounds[0]);
+                end = Integer.parseInt(bounds[1]);
+                exchange.getResponseHeaders().add("Content-Range",
+                    "bytes " + start + "-" + end + "/" + content.length);
+            }
+            exchange.getResponseHeaders().add("ETag", "\"v1\"");
+            exchange.sendResponseHeaders(partial ? 206 : 200, end - start + 1);
+
+            OutputStream out = exchange.getResponseBody();
+            int length = end - start + 1;
+            if (partial && length > 1 && fail())
+            {
+                length = length / 2;
+            }
+            out.write(content, start, length);
+            out.flush();
+            exchange.close();
+        }
+
+        /**
+         * @return <code>true</code> if the current response has to be broken.
+         */
+        private synchronized boolean fail()
+        {
+            return this.failures-- > 0;
+        }
+    }
+
+    /**
+     * Creates the test file and starts the HTTP server. {@inheritDoc}
+     * @throws Exception If anything goes wrong.
+     */
+    @Override
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        this.fileHandler = new DefaultFileHandler();
+        this.workDir = new File("target/" + UUID.randomUUID().toString()).getAbsoluteFile();
+        this.fileHandler.mkdirs(this.workDir.getPath());
+
+        this.content = new byte[SIZE];
+        new Random(1).nextBytes(this.content);
+
+        this.handler = new FileHandlerStub();
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        this.server.createContext("/container.zip", this.handler);
+        this.serverExecutor = Executors.newFixedThreadPool(4);
+        this.server.setExecutor(this.serverExecutor);
+        this.server.start();
+    }
+
+    /**
+     * Stops the HTTP server and deletes the working directory. {@inheritDoc}
+     * @throws Exception If anything goes wrong.
+     */
+    @Override
+    protected void tearDown() throws Exception
+    {
+        this.server.stop(0);
+        this.serverExecutor.shutdownNow();
+        this.fileHandler.delete(this.workDir.getPath());
+        super.tearDown();
+    }
+
+    /**
+     * Test downloading from a server supporting ranges.
+     * @throws Exception If anything goes wrong.
+     */
+    public void testDownloadWithRanges() throws Exception
+    {
+        File target = new File(this.workDir, "container.zip");
+        new Downloader(3).download(getURL(), target);
+
+        assertDownloaded(target);
+        // One probe and three segments
+        assertEquals(4, this.handler.ranges.size());
+    }
+
+    /**
+     * Test downloading from a server not supporting ranges.
+     * @throws Exception If anything goes wrong.
+     */
+    public void testDownloadWithoutRanges() throws Exception
+    {
+        this.handler.supportRanges = false;
+
+        File target = new File(this.workDir, "container.zip");
+        new Downloader(3).download(getURL(), target);
+
+        assertDownloaded(target);
+    }
+
+    /**
+     * Test that a failed download is resumed.
+     * @throws Exception If anything goes wrong.
+     */
+    public void testResumeFailedDownload() throws Exception
+    {
+        this.handler.failures = 3;
+
+        File target = new File(this.workDir, "container.zip");
+        Downloader downloader = new Downloader(3);
+        try
+        {
+            downloader.download(getURL(), target);
+            fail("The download should have failed");
+        }
+        catch (IOException expected)
+        {
+            // Expected
+        }
+        assertFalse(target.exists());
+        assertTrue(new File(target.getPath() + Downloader.PART_SUFFIX).isFile());
+        assertTrue(new File(target.getPath() + Downloader.STATE_SUFFIX).isFile());
+
+        this.handler.ranges.clear();
+        downloader.download(getURL(), target);
+
+        assertDownloaded(target);
+        assertFalse(new File(target.getPath() + Downloader.PART_SUFFIX).exists());
+        assertFalse(new File(target.getPath() + Downloader.STATE_SUFFIX).exists());
+        for (String range : this.handler.ranges)
+        {
+            assertFalse("Range " + range + " was downloaded again from its start",
+                "bytes=0-1048581".equals(range) || range.startsWith("bytes=1048582-")
+                    || range.startsWith("bytes=2097164-"));
+        }
+    }
+
+    /**
+     * @return URL of the test file.
+     * @throws Exception If anything goes wrong.
+     */
+    private URL getURL() throws Exception
+    {
+        return new URL("http://127.0.0.1:" + this.server.getAddress().getPort()
+            + "/container.zip");
+    }
+
+    /**
+     * Asserts that the test file has been downloaded.
+     * @param target Downloaded file.
+     * @throws IOException If anything goes wrong.
+     */
+    private void assertDownloaded(File target) throws IOException
+    {
+        assertEquals(SIZE, target.length());
+        byte[] downloaded = new byte[SIZE];
+        InputStream in = this.fileHandler.getInputStream(target.getPath());
+        try
+        {
+            int offset = 0;
+            while (offset < SIZE)
+            {
+                offset += in.read(downloaded, offset, SIZE - offset);
+            }
+        }
+        finally
+        {
+            in.close();
+        }
+        assertTrue(Arrays.equals(this.content, downloaded));
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus CARGO, copyright 2004-2011 Vincent Massol, 2012-2016 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.container.installer;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.codehaus.cargo.container.ContainerException;
+import org.codehaus.cargo.util.AbstractTemporaryDirectoryTest;
+import org.codehaus.cargo.util.DigestUtils;
+
+/**
+ * Unit tests for {@link InstallationCache}.
+ */
+public class InstallationCacheTest extends AbstractTemporaryDirectoryTest
+{
+    /**
+     * Number of downloads performed.
+     */
+    private int downloads;
+
+    /**
+     * {@link Downloader} implementation that "downloads" the test archive from the working
+     * directory.
+     */
+    private class CopyingDownloader extends Downloader
+    {
+        /**
+         * Archive to copy.
+         */
+        private File source;
+
+        /**
+         * @param source Archive to copy.
+         */
+        public CopyingDownloader(File source)
+        {
+            this.source = source;
+        }
+
+        /**
+         * Copies the archive. {@inheritDoc}
+         */
+        @Override
+        public void download(URL url, File target)
+        {
+            downloads++;
+            getFileHandler().copyFile(this.source.getPath(), target.getPath(), true);
+        }
+    }
+
+    /**
+     * Resets the number of downloads. {@inheritDoc}
+     * @throws Exception If anything goes wrong.
+     */
+    @Override
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        this.downloads = 0;
+    }
+
+    /**
+     * Test that a second installer of the same URL reuses the cached installation.
+     * @throws Exception If anything goes wrong.
+     */
+    public void testInstallationIsReused() throws Exception
+    {
+        File archive = createArchive("container-1.zip", 1000);
+        InstallationCache cache =
+            new InstallationCache(getTemporaryFile("cache"), Long.MAX_VALUE);
+
+        ZipURLInstaller first = createInstaller(archive, cache);
+        first.install();
+        ZipURLInstaller second = createInstaller(archive, cache);
+        second.install();
+
+        assertEquals(1, this.downloads);
+        assertEquals(first.getHome(), second.getHome());
+        assertTrue(new File(second.getHome(), "bin/run.sh").isFile());
+        assertTrue(second.getHome().startsWith(new File(getTemporaryFile("cache"),
+            "entries").getPath()));
+    }
+
+    /**
+     * Test that a download not matching the expected checksum is refused.
+     * @throws Exception If anything goes wrong.
+     */
+    public void testChecksumMismatch() throws Exception
+    {
+        File archive = createArchive("container-1.zip", 1000);
+        InstallationCache cache =
+            new InstallationCache(getTemporaryFile("cache"), Long.MAX_VALUE);
+
+        ZipURLInstaller installer = createInstaller(archive, cache);
+        installer.setChecksum(DigestUtils.sha256Hex("something else"));
+        try
+        {
+            installer.install();
+            fail("Installing an archive with a wrong checksum should fail");
+        }
+        catch (ContainerException expected)
+        {
+            assertTrue(expected.getMessage().contains("instead of the expected"));
+        }
+        assertEquals(1, this.downloads);
+        assertFalse(installer.isAlreadyDownloaded());
+    }
+
+    /**
+     * Test that a download matching the expected checksum is installed.
+     * @throws Exception If anything goes wrong.
+     */
+    public void testChecksumMatch() throws Exception
+    {
+        File archive = createArchive("container-1.zip", 1000);
+        InstallationCache cache =
+            new InstallationCache(getTemporaryFile("cache"), Long.MAX_VALUE);
+
+        ZipURLInstaller installer = createInstaller(archive, cache);
+        installer.setChecksum(DigestUtils.sha256Hex(archive).toUpperCase());
+        installer.install();
+
+        assertTrue(installer.isAlreadyExtracted());
+        assertTrue(installer.getExtractDir().contains(DigestUtils.sha256Hex(archive)));
+    }
+
+    /**
+     * Test that the least recently used installation gets evicted when exceeding the budget.
+     * @throws Exception If anything goes wrong.
+     */
+    public void testLeastRecentlyUsedInstallationIsEvicted() throws Exception
+    {
+        File archive1 = createArchive("container-1.zip", 100000);
+        File archive2 = createArchive("container-2.zip", 100001);
+        InstallationCache cache = new InstallationCache(getTemporaryFile("cache"),
+            archive1.length() + 110000);
+
+        ZipURLInstaller first = createInstaller(archive1, cache);
+        first.install();
+        String firstExtractDir = first.getExtractDir();
+        assertTrue(first.isAlreadyExtracted());
+        cache.release(first);
+
+        ZipURLInstaller second = createInstaller(archive2, cache);
+        second.install();
+
+        assertTrue(second.isAlreadyExtracted());
+        assertFalse(new File(firstExtractDir).exists());
+        assertFalse(first.isAlreadyDownloaded());
+    }
+
+    /**
+     * Test that an installation still in use is not evicted, even when over budget.
+     * @throws Exception If anything goes wrong.
+     */
+    public void testInstallationInUseIsNotEvicted() throws Exception
+    {
+        File archive1 = createArchive("container-1.zip", 100000);
+        File archive2 = createArchive("container-2.zip", 100001);
+        InstallationCache cache = new InstallationCache(getTemporaryFile("cache"),
+            archive1.length() + 110000);
+
+        ZipURLInstaller first = createInstaller(archive1, cache);
+        first.install();
+
+        ZipURLInstaller second = createInstaller(archive2, cache);
+        second.install();
+
+        assertTrue(first.isAlreadyExtracted());
+        assertTrue(first.isAlreadyDownloaded());
+        assertTrue(second.isAlreadyExtracted());
+    }
+
+    /**
+     * @param archive Test archive.
+     * @param cache Installation cache.
+     * @return Installer for the test archive.
+     * @throws Exception If anything goes wrong.
+     */
+    private ZipURLInstaller createInstaller(File archive, InstallationCache cache)
+        throws Exception
+    {
+        ZipURLInstaller installer =
+            new ZipURLInstaller(new URL("http://some/url/" + archive.getName()));
+        installer.setInstallationCache(cache);
+        installer.setDownloader(new CopyingDownloader(archive));
+        return installer;
+    }
+
+    /**
+     * @param name Name of the archive.
+     * @param size Size of the container file in the archive.
+     * @return Test archive.
+     * @throws IOException If anything goes wrong.
+     */
+    private File createArchive(String name, int size) throws IOException
+    {
+        File archive = getTemporaryFile(name);
+        ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(archive));
+        try
+        {
+            zip.setLevel(0);
+            zip.putNextEntry(new ZipEntry("container/bin/run.sh"));
+            zip.write(new byte[size]);
+            zip.closeEntry();
+        }
+        finally
+        {
+            zip.close();
+        }
+        return archive;
+    }
+}
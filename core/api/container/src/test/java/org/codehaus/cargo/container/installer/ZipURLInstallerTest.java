@@ -19,16 +19,14 @@
  */
 package org.codehaus.cargo.container.installer;
 
+import java.io.File;
+import java.io.IOException;
 import java.net.URL;
 
 import junit.framework.TestCase;
 
 import org.apache.commons.vfs.impl.StandardFileSystemManager;
-import org.apache.tools.ant.BuildException;
-import org.apache.tools.ant.Task;
-import org.apache.tools.ant.taskdefs.Get;
 import org.codehaus.cargo.container.ContainerException;
-import org.codehaus.cargo.util.AntTaskFactory;
 import org.codehaus.cargo.util.FileHandler;
 import org.codehaus.cargo.util.VFSFileHandler;
 
@@ -53,34 +51,49 @@ public class ZipURLInstallerTest extends TestCase
     private FileHandler fileHandler;
 
     /**
-     * Dummy {@link Get} implementation that doesn't do anything.
+     * Dummy {@link Downloader} implementation that doesn't do anything.
      */
-    private class HarmlessGet extends Get
+    private class HarmlessDownloader extends Downloader
     {
         /**
          * Doesn't do anything. {@inheritDoc}
-         * @throws BuildException Never thrown.
          */
         @Override
-        public void execute() throws BuildException
+        public void download(URL url, File target)
         {
             // Do nothing
         }
     }
 
     /**
-     * Dummy {@link Get} implementation that always fails.
+     * Dummy {@link Downloader} implementation that fails the given number of times.
      */
-    private class FailingGet extends Get
+    private class FailingDownloader extends Downloader
     {
         /**
-         * Fails. {@inheritDoc}
-         * @throws BuildException Always thrown.
+         * Number of downloads that still have to fail.
+         */
+        private int failures;
+
+        /**
+         * @param failures Number of downloads that have to fail.
+         */
+        public FailingDownloader(int failures)
+        {
+            this.failures = failures;
+        }
+
+        /**
+         * Fails as long as there are failures left. {@inheritDoc}
+         * @throws IOException If there are failures left.
          */
         @Override
-        public void execute() throws BuildException
+        public void download(URL url, File target) throws IOException
         {
-            throw new BuildException("Failed to download file...");
+            if (this.failures-- > 0)
+            {
+                throw new IOException("Failed to download file...");
+            }
         }
     }
 
@@ -140,15 +153,7 @@ public class ZipURLInstallerTest extends TestCase
      */
     public void testSuccessfulDownloadWhenProxySet() throws Exception
     {
-        this.installer.setAntTaskFactory(
-            new AntTaskFactory()
-            {
-                @Override
-                public Task createTask(String taskName)
-                {
-                    return new HarmlessGet();
-                }
-            });
+        this.installer.setDownloader(new HarmlessDownloader());
         Proxy proxy = new Proxy();
         proxy.setHost("proxyhost");
         this.installer.setProxy(proxy);
@@ -167,15 +172,7 @@ public class ZipURLInstallerTest extends TestCase
         // Clear any proxy setting
         new Proxy().clear();
 
-        this.installer.setAntTaskFactory(
-            new AntTaskFactory()
-            {
-                @Override
-                public Task createTask(String taskName)
-                {
-                    return new HarmlessGet();
-                }
-            });
+        this.installer.setDownloader(new HarmlessDownloader());
 
         this.installer.download();
 
@@ -188,26 +185,7 @@ public class ZipURLInstallerTest extends TestCase
      */
     public void testFailureWithProxySetButSuccessOnSecondTryWithoutProxy() throws Exception
     {
-        this.installer.setAntTaskFactory(
-            new AntTaskFactory()
-            {
-                private int count = 0;
-
-                @Override
-                public Task createTask(String taskName)
-                {
-                    Task result;
-                    if (this.count++ == 0)
-                    {
-                        result = new FailingGet();
-                    }
-                    else
-                    {
-                        result = new HarmlessGet();
-                    }
-                    return result;
-                }
-            });
+        this.installer.setDownloader(new FailingDownloader(1));
         Proxy proxy = new Proxy();
         proxy.setHost("proxyhost");
         this.installer.setProxy(proxy);
@@ -0,0 +1,107 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus CARGO, copyright 2004-2011 Vincent Massol, 2012-2016 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.container.internal.util;
+
+import java.io.File;
+
+import org.codehaus.cargo.util.AbstractTemporaryDirectoryTest;
+
+/**
+ * Unit tests for {@link DirectorySynchronizer}.
+ */
+public class DirectorySynchronizerTest extends AbstractTemporaryDirectoryTest
+{
+    /**
+     * Test that only changed files get copied and removed files get deleted.
+     * @throws Exception If anything goes wrong.
+     */
+    public void testSynchronize() throws Exception
+    {
+        File source = getTemporaryFile("source");
+        File target = getTemporaryFile("target");
+        File manifest = getTemporaryFile("manifest");
+        write(source, "WEB-INF/web.xml", "<web-app/>");
+        write(source, "WEB-INF/classes/A.class", "A");
+        write(source, "WEB-INF/classes/old/B.class", "B");
+        write(source, "index.html", "index");
+
+        DirectorySynchronizer synchronizer = new DirectorySynchronizer(getFileHandler());
+        assertTrue(synchronizer.synchronize(source, target, manifest));
+        assertEquals(4, synchronizer.getCopiedFiles());
+        assertEquals("index", read(target, "index.html"));
+
+        assertFalse(synchronizer.synchronize(source, target, manifest));
+        assertEquals(0, synchronizer.getCopiedFiles());
+        assertEquals(4, synchronizer.getUnchangedFiles());
+
+        write(source, "WEB-INF/classes/A.class", "A2");
+        getFileHandler().delete(new File(source, "WEB-INF/classes/old").getPath());
+        assertTrue(synchronizer.synchronize(source, target, manifest));
+        assertEquals(1, synchronizer.getCopiedFiles());
+        assertEquals(2, synchronizer.getCopiedBytes());
+        assertEquals(1, synchronizer.getDeletedFiles());
+        assertEquals(2, synchronizer.getUnchangedFiles());
+        assertEquals("A2", read(target, "WEB-INF/classes/A.class"));
+        assertFalse(new File(target, "WEB-INF/classes/old").exists());
+        assertTrue(new File(target, "WEB-INF/classes").isDirectory());
+    }
+
+    /**
+     * Test that identical files already in the target are not copied when there is no manifest.
+     * @throws Exception If anything goes wrong.
+     */
+    public void testSynchronizeWithoutManifest() throws Exception
+    {
+        File source = getTemporaryFile("source");
+        File target = getTemporaryFile("target");
+        write(source, "index.html", "index");
+        write(source, "other.html", "other");
+        write(target, "index.html", "index");
+        write(target, "other.html", "OTHER");
+
+        DirectorySynchronizer synchronizer = new DirectorySynchronizer(getFileHandler());
+        synchronizer.synchronize(source, target, getTemporaryFile("manifest"));
+        assertEquals(1, synchronizer.getCopiedFiles());
+        assertEquals(1, synchronizer.getUnchangedFiles());
+        assertEquals("other", read(target, "other.html"));
+    }
+
+    /**
+     * @param directory Directory.
+     * @param path Relative path of the file.
+     * @param content Content of the file.
+     */
+    private void write(File directory, String path, String content)
+    {
+        File file = new File(directory, path);
+        getFileHandler().mkdirs(file.getParent());
+        getFileHandler().writeTextFile(file.getPath(), content, "UTF-8");
+    }
+
+    /**
+     * @param directory Directory.
+     * @param path Relative path of the file.
+     * @return Content of the file.
+     */
+    private String read(File directory, String path)
+    {
+        return getFileHandler().readTextFile(new File(directory, path).getPath(), "UTF-8");
+    }
+}
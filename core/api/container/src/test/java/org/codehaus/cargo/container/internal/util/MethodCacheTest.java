@@ -0,0 +1,107 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus CARGO, copyright 2004-2011 Vincent Massol, 2012-2016 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.container.internal.util;
+
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link MethodCache}.
+ */
+public class MethodCacheTest extends TestCase
+{
+    /**
+     * Test that methods are only looked up once, even after a garbage collection.
+     * @throws Exception If anything goes wrong.
+     */
+    public void testGetMethodIsCached() throws Exception
+    {
+        MethodCache methods = new MethodCache();
+        Method method = methods.getMethod(StringBuilder.class, "append", String.class);
+
+        assertEquals(StringBuilder.class.getMethod("append", String.class), method);
+        assertSame(method, methods.getMethod(StringBuilder.class, "append", String.class));
+        assertNotSame(method, methods.getMethod(StringBuilder.class, "append", Object.class));
+        assertEquals("ab", method.invoke(new StringBuilder("a"), "b").toString());
+
+        System.gc();
+        assertSame(method, methods.getMethod(StringBuilder.class, "append", String.class));
+    }
+
+    /**
+     * Test looking up a method that does not exist.
+     */
+    public void testGetMissingMethod()
+    {
+        try
+        {
+            new MethodCache().getMethod(StringBuilder.class, "missing");
+            fail("Should have received an exception for the missing method");
+        }
+        catch (NoSuchMethodException expected)
+        {
+            assertTrue(expected.getMessage().contains("missing"));
+        }
+    }
+
+    /**
+     * Test that a cache which is not used anymore does not keep the class loader of the classes
+     * it has looked methods up in in memory.
+     * @throws Exception If anything goes wrong.
+     */
+    public void testClassLoaderIsNotKeptInMemory() throws Exception
+    {
+        URL classes = MethodCacheTest.class.getProtectionDomain().getCodeSource().getLocation();
+        ClassLoader classLoader = new URLClassLoader(new URL[] {classes}, null);
+        Class<?> type = classLoader.loadClass(Sample.class.getName());
+        assertNotSame(Sample.class, type);
+        MethodCache methods = new MethodCache();
+        assertEquals("sample", methods.getMethod(type, "getName").invoke(type.newInstance()));
+
+        WeakReference<ClassLoader> reference = new WeakReference<ClassLoader>(classLoader);
+        classLoader = null;
+        type = null;
+        methods = null;
+        for (int i = 0; i < 20 && reference.get() != null; i++)
+        {
+            System.gc();
+            Thread.sleep(50);
+        }
+        assertNull("The class loader has not been garbage collected", reference.get());
+    }
+
+    /**
+     * Class loaded from another class loader.
+     */
+    public static class Sample
+    {
+        /**
+         * @return Name of the sample.
+         */
+        public String getName()
+        {
+            return "sample";
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus CARGO, copyright 2004-2011 Vincent Massol, 2012-2016 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.container.internal.util;
+
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link PortUtils}.
+ */
+public class PortUtilsTest extends TestCase
+{
+    /**
+     * Port utilities.
+     */
+    private PortUtils portUtils = new PortUtils("127.0.0.1");
+
+    /**
+     * Test that all ports in use are reported at once.
+     * @throws Exception If anything goes wrong.
+     */
+    public void testProbe() throws Exception
+    {
+        ServerSocket first = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        ServerSocket second = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        int free = getFreePort();
+        try
+        {
+            Map<Integer, Boolean> status = this.portUtils.probe(
+                Arrays.asList(first.getLocalPort(), free, second.getLocalPort()), 1000L);
+
+            assertEquals(3, status.size());
+            assertEquals(Boolean.TRUE, status.get(first.getLocalPort()));
+            assertEquals(Boolean.TRUE, status.get(second.getLocalPort()));
+            assertEquals(Boolean.FALSE, status.get(free));
+        }
+        finally
+        {
+            first.close();
+            second.close();
+        }
+    }
+
+    /**
+     * Test waiting for ports to be shut down.
+     * @throws Exception If anything goes wrong.
+     */
+    public void testWaitForShutdown() throws Exception
+    {
+        final ServerSocket socket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        int port = socket.getLocalPort();
+
+        Set<Integer> inUse = this.portUtils.waitForShutdown(Arrays.asList(port),
+            System.currentTimeMillis() + 200L, 50L);
+        assertEquals(1, inUse.size());
+        assertTrue(inUse.contains(port));
+
+        Thread closer = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    Thread.sleep(200);
+                    socket.close();
+                }
+                catch (Exception e)
+                {
+                    // Ignored
+                }
+            }
+        };
+        closer.start();
+        inUse = this.portUtils.waitForShutdown(Arrays.asList(port, getFreePort()),
+            System.currentTimeMillis() + 20000L, 50L);
+        closer.join();
+        assertTrue(inUse.isEmpty());
+    }
+
+    /**
+     * @return A port which is not in use.
+     * @throws Exception If anything goes wrong.
+     */
+    private int getFreePort() throws Exception
+    {
+        ServerSocket socket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        int port = socket.getLocalPort();
+        socket.close();
+        return port;
+    }
+}
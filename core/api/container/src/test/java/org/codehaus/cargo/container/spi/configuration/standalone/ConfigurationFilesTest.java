@@ -20,6 +20,7 @@
 package org.codehaus.cargo.container.spi.configuration.standalone;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.util.Collections;
 import java.util.Map;
@@ -374,6 +375,56 @@ public class ConfigurationFilesTest extends TestCase
         assertEquals("Hello world ", readFile(copiedFile));
     }
 
+    /**
+     * Test copying several configuration files and directories, which get copied in parallel
+     * when they do not depend on each other.
+     * @throws Exception If anything goes wrong.
+     */
+    public void testCopySeveralConfigFiles() throws Exception
+    {
+        File directory = createDirectory(configFileDirectory, "conf");
+        createFile(directory, "server.xml", "<port>@port@</port>\r\n<host>@host@</host>\r\n");
+        createFile(directory, "notoken.txt", "no token\r\n");
+        File file = createFile(configFileDirectory, "file.properties", "port=@port@");
+        File override = createFile(configFileDirectory, "override.xml", "<port/>");
+
+        FileConfig directoryConfig = new FileConfig();
+        directoryConfig.setFile(getAbsolutePath(directory));
+        directoryConfig.setToDir("conf");
+        directoryConfig.setConfigfile(true);
+        configuration.setFileProperty(directoryConfig);
+        FileConfig fileConfig = new FileConfig();
+        fileConfig.setFile(getAbsolutePath(file));
+        fileConfig.setToDir("other");
+        fileConfig.setConfigfile(true);
+        configuration.setFileProperty(fileConfig);
+        FileConfig overrideConfig = new FileConfig();
+        overrideConfig.setFile(getAbsolutePath(override));
+        overrideConfig.setToDir("conf");
+        overrideConfig.setToFile("server.xml");
+        overrideConfig.setOverwrite(true);
+        configuration.setFileProperty(overrideConfig);
+
+        configuration.setProperty("port", "8080");
+        configuration.setProperty("host", "localhost");
+        configuration.doConfigure(null);
+
+        // The last file configuration writes into the directory of the first one, so it is
+        // copied after it
+        assertEquals("<port/>", readBytes(new File(configuration.getHome(), "conf/server.xml")));
+        assertEquals("no token\r\n",
+            readBytes(new File(configuration.getHome(), "conf/notoken.txt")));
+        assertEquals("port=8080",
+            readBytes(new File(configuration.getHome(), "other/file.properties")));
+
+        configuration.getFileHandler().delete(
+            getAbsolutePath(new File(configuration.getHome(), "conf/server.xml")));
+        configuration.getFileProperties().remove(overrideConfig);
+        configuration.doConfigure(null);
+        assertEquals("<port>8080</port>\r\n<host>localhost</host>\r\n",
+            readBytes(new File(configuration.getHome(), "conf/server.xml")));
+    }
+
     /**
      * Create a directory.
      * @param directoryName Directory name.
@@ -429,6 +480,31 @@ public class ConfigurationFilesTest extends TestCase
         return configuration.getFileHandler().readTextFile(getAbsolutePath(file), "UTF-8");
     }
 
+    /**
+     * Read a file without changing its line endings.
+     * @param file File to read.
+     * @return Contents of <code>file</code>.
+     * @throws Exception If anything goes wrong.
+     */
+    protected String readBytes(File file) throws Exception
+    {
+        byte[] contents = new byte[(int) file.length()];
+        FileInputStream inputStream = new FileInputStream(file);
+        try
+        {
+            int read = 0;
+            while (read < contents.length)
+            {
+                read += inputStream.read(contents, read, contents.length - read);
+            }
+        }
+        finally
+        {
+            inputStream.close();
+        }
+        return new String(contents, "UTF-8");
+    }
+
     /**
      * Get the absolute path of a file.
      * @param file Name of file.
@@ -19,6 +19,9 @@
  */
 package org.codehaus.cargo.container.spi.deployer;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.apache.commons.vfs.impl.StandardFileSystemManager;
 import org.codehaus.cargo.container.ContainerCapability;
 import org.codehaus.cargo.container.ContainerException;
@@ -103,6 +106,16 @@ public class CopyingDeployerTest extends MockObjectTestCase
         {
             return "ram:///webapps";
         }
+
+        /**
+         * {@inheritDoc}
+         * @return <code>true</code>
+         */
+        @Override
+        protected boolean isConcurrentDeploymentSupported()
+        {
+            return true;
+        }
     }
 
     /**
@@ -182,6 +195,109 @@ public class CopyingDeployerTest extends MockObjectTestCase
         }
     }
 
+    /**
+     * Test deploying a batch of WARs.
+     * @throws Exception If anything goes wrong.
+     */
+    public void testDeployBatch() throws Exception
+    {
+        AbstractCopyingInstalledLocalDeployer deployer = new TestableCopyingDeployer(
+            createContainer(createContainerCapability(DeployableType.WAR), null));
+
+        List<Deployable> wars = new ArrayList<Deployable>();
+        for (int i = 0; i < 10; i++)
+        {
+            WAR war = new WAR("ram:///some/warfile" + i + ".war");
+            this.fsManager.resolveFile(war.getFile()).createFile();
+            wars.add(war);
+        }
+        deployer.deploy(wars);
+
+        for (int i = 0; i < 10; i++)
+        {
+            assertTrue(this.fsManager.resolveFile("ram:///webapps/warfile" + i + ".war").exists());
+        }
+
+        try
+        {
+            deployer.deploy(wars.get(0));
+            fail("Expected ContainerException because the WAR context is already in use");
+        }
+        catch (ContainerException expected)
+        {
+            assertTrue(expected.getMessage().contains("already in use"));
+        }
+    }
+
+    /**
+     * Test that the WARs of a batch copied before a failure are registered as deployed.
+     * @throws Exception If anything goes wrong.
+     */
+    public void testDeployBatchRegistersCopiedWARsOnFailure() throws Exception
+    {
+        AbstractCopyingInstalledLocalDeployer deployer = new TestableCopyingDeployer(
+            createContainer(createContainerCapability(DeployableType.WAR), null));
+
+        List<Deployable> wars = new ArrayList<Deployable>();
+        for (int i = 0; i < 10; i++)
+        {
+            WAR war = new WAR("ram:///some/warfile" + i + ".war");
+            if (i != 5)
+            {
+                this.fsManager.resolveFile(war.getFile()).createFile();
+            }
+            wars.add(war);
+        }
+
+        try
+        {
+            deployer.deploy(wars);
+            fail("Expected ContainerException because a WAR file is missing");
+        }
+        catch (ContainerException expected)
+        {
+            assertTrue(expected.getMessage().contains("warfile5.war"));
+        }
+
+        for (int i = 0; i < 10; i++)
+        {
+            boolean copied =
+                this.fsManager.resolveFile("ram:///webapps/warfile" + i + ".war").exists();
+            assertEquals("WAR " + i + " copied and registered", copied,
+                !deployer.canBeDeployed(wars.get(i)));
+        }
+        assertFalse(deployer.canBeDeployed(wars.get(0)));
+    }
+
+    /**
+     * Test that a batch of WARs using the same context is refused before anything gets copied.
+     * @throws Exception If anything goes wrong.
+     */
+    public void testDeployBatchWhenTwoWARsInSameWebContext() throws Exception
+    {
+        AbstractCopyingInstalledLocalDeployer deployer = new TestableCopyingDeployer(
+            createContainer(createContainerCapability(DeployableType.WAR), null));
+
+        WAR war1 = new WAR("ram:///path1/warfile.war");
+        this.fsManager.resolveFile(war1.getFile()).createFile();
+        WAR war2 = new WAR("ram:///path2/warfile.war");
+        this.fsManager.resolveFile(war2.getFile()).createFile();
+        List<Deployable> wars = new ArrayList<Deployable>();
+        wars.add(war1);
+        wars.add(war2);
+
+        try
+        {
+            deployer.deploy(wars);
+            fail("Expected ContainerException because we deployed two WARs with the same context "
+                + "name.");
+        }
+        catch (ContainerException expected)
+        {
+            assertFalse(this.fsManager.resolveFile("ram:///webapps/warfile.war").exists());
+        }
+    }
+
     /**
      * Test deployment when the container does not support a given deployable type.
      */
@@ -338,6 +454,7 @@ public class CopyingDeployerTest extends MockObjectTestCase
         Mock mockContainer = mock(InstalledLocalContainer.class);
 
         mockConfiguration.stubs().method("getHome").will(returnValue("ram:///" + homeString));
+        mockConfiguration.stubs().method("getPropertyValue").will(returnValue(null));
         mockContainer.stubs().method("getConfiguration").will(
             returnValue(mockConfiguration.proxy()));
 
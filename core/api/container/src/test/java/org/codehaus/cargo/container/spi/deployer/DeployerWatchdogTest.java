@@ -0,0 +1,129 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus CARGO, copyright 2004-2011 Vincent Massol, 2012-2016 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.container.spi.deployer;
+
+import junit.framework.TestCase;
+
+import org.codehaus.cargo.container.ContainerException;
+import org.codehaus.cargo.container.deployer.AbstractDeployableMonitor;
+
+/**
+ * Unit tests for {@link DeployerWatchdog}.
+ */
+public class DeployerWatchdogTest extends TestCase
+{
+    /**
+     * Monitor reporting the deployable deployed after a given number of checks.
+     */
+    private static class CountingDeployableMonitor extends AbstractDeployableMonitor
+    {
+        /**
+         * Number of checks after which the deployable is deployed.
+         */
+        private int deployedAfter;
+
+        /**
+         * Number of checks performed.
+         */
+        private int checks;
+
+        /**
+         * @param deployedAfter Number of checks after which the deployable is deployed.
+         * @param timeout Timeout.
+         */
+        public CountingDeployableMonitor(int deployedAfter, long timeout)
+        {
+            super(timeout);
+            this.deployedAfter = deployedAfter;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String getDeployableName()
+        {
+            return "counting";
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void monitor()
+        {
+            this.checks++;
+            notifyListeners(this.checks >= this.deployedAfter);
+        }
+    }
+
+    /**
+     * Test that an already deployed deployable is detected on the first check.
+     */
+    public void testAlreadyDeployedDeployableIsDetectedImmediately()
+    {
+        CountingDeployableMonitor monitor = new CountingDeployableMonitor(1, 20000L);
+        DeployerWatchdog watchdog = new DeployerWatchdog(monitor);
+
+        long start = System.currentTimeMillis();
+        watchdog.watchForAvailability();
+
+        assertEquals(1, monitor.checks);
+        assertTrue(System.currentTimeMillis() - start < 100);
+    }
+
+    /**
+     * Test that checks get further apart with time.
+     */
+    public void testBackoff()
+    {
+        CountingDeployableMonitor monitor = new CountingDeployableMonitor(6, 20000L);
+        DeployerWatchdog watchdog = new DeployerWatchdog(monitor);
+        watchdog.setPollInterval(20L, 80L);
+
+        long start = System.currentTimeMillis();
+        watchdog.watchForAvailability();
+        long duration = System.currentTimeMillis() - start;
+
+        // 20 + 40 + 80 + 80 + 80
+        assertEquals(6, monitor.checks);
+        assertTrue("Watching took " + duration + " ms", duration >= 300);
+    }
+
+    /**
+     * Test that the watchdog gives up after the monitor's timeout.
+     */
+    public void testTimeout()
+    {
+        CountingDeployableMonitor monitor =
+            new CountingDeployableMonitor(Integer.MAX_VALUE, 300L);
+        DeployerWatchdog watchdog = new DeployerWatchdog(monitor);
+
+        try
+        {
+            watchdog.watchForAvailability();
+            fail("The watchdog should have timed out");
+        }
+        catch (ContainerException expected)
+        {
+            assertTrue(expected.getMessage().contains("timeout period [300]"));
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus CARGO, copyright 2004-2011 Vincent Massol, 2012-2016 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.container.spi.jvm;
+
+import java.io.File;
+
+import junit.framework.TestCase;
+
+import org.apache.tools.ant.taskdefs.Java;
+import org.codehaus.cargo.util.AntUtils;
+
+/**
+ * Unit tests for {@link DefaultJvmLauncher}.
+ */
+public class DefaultJvmLauncherTest extends TestCase
+{
+    /**
+     * Test that waiting for a JVM which has not been started returns immediately.
+     * @throws Exception If anything goes wrong.
+     */
+    public void testWaitForNotStartedJvm() throws Exception
+    {
+        DefaultJvmLauncher launcher = createLauncher();
+        assertFalse(launcher.waitFor(10000L));
+    }
+
+    /**
+     * Test that waiting for a started JVM returns as soon as it exits.
+     * @throws Exception If anything goes wrong.
+     */
+    public void testWaitForStartedJvm() throws Exception
+    {
+        File output = File.createTempFile("cargo-jvm-launcher-", ".txt");
+        output.deleteOnExit();
+
+        DefaultJvmLauncher launcher = createLauncher();
+        launcher.setJvm(new File(new File(System.getProperty("java.home"), "bin"), "java")
+            .getPath());
+        launcher.setOutputFile(output);
+        launcher.setAppendOutput(true);
+        launcher.setMainClass("-version");
+        launcher.start();
+
+        assertTrue(launcher.waitFor(60000L));
+        assertTrue(output.length() > 0);
+    }
+
+    /**
+     * @return JVM launcher forking a new JVM.
+     */
+    private DefaultJvmLauncher createLauncher()
+    {
+        Java java = (Java) new AntUtils().createAntTask("java");
+        java.setFork(true);
+        return new DefaultJvmLauncher(java);
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus CARGO, copyright 2004-2011 Vincent Massol, 2012-2016 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.container.spi.jvm;
+
+import java.io.File;
+
+import org.codehaus.cargo.util.AbstractTemporaryDirectoryTest;
+
+/**
+ * Unit tests for {@link JvmMetadataCache}.
+ */
+public class JvmMetadataCacheTest extends AbstractTemporaryDirectoryTest
+{
+    /**
+     * Detector returning fixed metadata and counting its calls.
+     */
+    private static class CountingDetector implements JvmMetadataCache.Detector
+    {
+        /**
+         * Number of detections.
+         */
+        private int detections;
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public JvmMetadata detect()
+        {
+            this.detections++;
+            return new JvmMetadata("1.7.0_80", null);
+        }
+    }
+
+    /**
+     * Test that the current JVM is not launched.
+     * @throws Exception If anything goes wrong.
+     */
+    public void testCurrentJvm() throws Exception
+    {
+        CountingDetector detector = new CountingDetector();
+        JvmMetadata metadata = new JvmMetadataCache(null).get(System.getProperty("java.home"),
+            detector);
+
+        assertEquals(0, detector.detections);
+        assertEquals(System.getProperty("java.version"), metadata.getVersion());
+    }
+
+    /**
+     * Test that a JVM with a <code>release</code> file is not launched.
+     * @throws Exception If anything goes wrong.
+     */
+    public void testReleaseFile() throws Exception
+    {
+        String javaHome = createJavaHome("jdk", true);
+        CountingDetector detector = new CountingDetector();
+        JvmMetadata metadata = new JvmMetadataCache(null).get(javaHome, detector);
+
+        assertEquals(0, detector.detections);
+        assertEquals("11.0.2", metadata.getVersion());
+        assertEquals("Oracle Corporation", metadata.getVendor());
+        assertEquals(11, metadata.getMajorVersion());
+    }
+
+    /**
+     * Test that a JVM without <code>release</code> file is launched once, including across
+     * processes when the cache is persisted.
+     * @throws Exception If anything goes wrong.
+     */
+    public void testDetectionIsCached() throws Exception
+    {
+        String javaHome = createJavaHome("jre", false);
+        File file = getTemporaryFile("jvm-metadata.properties");
+        CountingDetector detector = new CountingDetector();
+
+        JvmMetadataCache cache = new JvmMetadataCache(file);
+        assertEquals(7, cache.get(javaHome, detector).getMajorVersion());
+        assertEquals(7, cache.get(javaHome, detector).getMajorVersion());
+        assertEquals(1, detector.detections);
+        assertTrue(file.isFile());
+
+        JvmMetadata metadata = new JvmMetadataCache(file).get(javaHome, detector);
+        assertEquals(1, detector.detections);
+        assertEquals("1.7.0_80", metadata.getVersion());
+        assertTrue(metadata.hasPermGen());
+    }
+
+    /**
+     * @param name Name of the Java home.
+     * @param withReleaseFile Whether to create a <code>release</code> file.
+     * @return Path of a fake Java home.
+     */
+    private String createJavaHome(String name, boolean withReleaseFile)
+    {
+        String javaHome = getFileHandler().append(getTemporaryDirectory().getPath(), name);
+        getFileHandler().mkdirs(getFileHandler().append(javaHome, "bin"));
+        getFileHandler().writeTextFile(getFileHandler().append(javaHome, "bin/java"), "", null);
+        if (withReleaseFile)
+        {
+            getFileHandler().writeTextFile(getFileHandler().append(javaHome, "release"),
+                "IMPLEMENTOR=\"Oracle Corporation\"\nJAVA_VERSION=\"11.0.2\"\n", null);
+        }
+        return javaHome;
+    }
+}
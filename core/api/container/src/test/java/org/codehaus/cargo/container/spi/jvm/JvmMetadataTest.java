@@ -0,0 +1,73 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus CARGO, copyright 2004-2011 Vincent Massol, 2012-2016 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.container.spi.jvm;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link JvmMetadata}.
+ */
+public class JvmMetadataTest extends TestCase
+{
+    /**
+     * Test parsing the output of an Oracle Java 8 <code>java -version</code>.
+     * @throws Exception If anything goes wrong.
+     */
+    public void testParseJava8VersionOutput() throws Exception
+    {
+        JvmMetadata metadata = JvmMetadata.parseVersionOutput("java version \"1.8.0_292\"\n"
+            + "Java(TM) SE Runtime Environment (build 1.8.0_292-b10)\n");
+        assertEquals("1.8.0_292", metadata.getVersion());
+        assertEquals(8, metadata.getMajorVersion());
+        assertFalse(metadata.hasPermGen());
+        assertTrue(metadata.hasToolsJar());
+    }
+
+    /**
+     * Test parsing the output of an OpenJDK 11 <code>java -version</code>.
+     * @throws Exception If anything goes wrong.
+     */
+    public void testParseOpenJdk11VersionOutput() throws Exception
+    {
+        JvmMetadata metadata = JvmMetadata.parseVersionOutput(
+            "openjdk version \"11.0.2\" 2019-01-15\n"
+                + "OpenJDK Runtime Environment 18.9 (build 11.0.2+9)\n");
+        assertEquals("11.0.2", metadata.getVersion());
+        assertEquals("OpenJDK", metadata.getVendor());
+        assertEquals(11, metadata.getMajorVersion());
+        assertFalse(metadata.hasToolsJar());
+    }
+
+    /**
+     * Test that unexpected output is refused.
+     */
+    public void testParseInvalidVersionOutput()
+    {
+        try
+        {
+            JvmMetadata.parseVersionOutput("Error: could not find libjava.so\n");
+            fail("Invalid output should be refused");
+        }
+        catch (Exception expected)
+        {
+            assertTrue(expected.getMessage().contains("could not find libjava.so"));
+        }
+    }
+}
@@ -19,15 +19,16 @@
  */
 package org.codehaus.cargo.generic;
 
+import java.io.IOException;
+import java.net.URL;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Enumeration;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import org.apache.commons.discovery.jdk.JDKHooks;
-import org.apache.commons.discovery.resource.ClassLoaders;
-import org.apache.commons.discovery.tools.SPInterface;
-import org.apache.commons.discovery.tools.Service;
+import org.codehaus.cargo.container.ContainerException;
 import org.codehaus.cargo.container.internal.util.ResourceUtils;
 import org.codehaus.cargo.generic.configuration.ConfigurationCapabilityFactory;
 import org.codehaus.cargo.generic.configuration.ConfigurationFactory;
@@ -50,6 +51,10 @@ import org.codehaus.cargo.generic.packager.PackagerFactory;
  * <p>
  * Container implementors should override the 1-arg {@code register} methods to register its
  * implementations to the given factory.
+ * 
+ * <p>
+ * Registries that come with a {@link FactoryRegistryIndex} generated at build time are not loaded:
+ * their registrations are read from the index instead.
  */
 public abstract class AbstractFactoryRegistry
 {
@@ -220,57 +225,93 @@ public abstract class AbstractFactoryRegistry
      */
     private static List<AbstractFactoryRegistry> list(ClassLoader classLoader)
     {
-        ClassLoader cl;
-        ClassLoaders loaders = new ClassLoaders();
+        List<ClassLoader> loaders = new ArrayList<ClassLoader>();
+        addClassLoader(loaders, classLoader);
+        addClassLoader(loaders, Thread.currentThread().getContextClassLoader());
+        addClassLoader(loaders, AbstractFactoryRegistry.class.getClassLoader());
+        addClassLoader(loaders, ResourceUtils.getResourceLoader());
+        addClassLoader(loaders, JDKHooks.getJDKHooks().getSystemClassLoader());
 
-        cl = classLoader;
-        if (cl != null)
+        if (loaders.isEmpty())
         {
-            loaders.put(cl);
+            // this is not our day. bail out.
+            return Collections.emptyList();
         }
 
-        cl = Thread.currentThread().getContextClassLoader();
-        if (cl != null)
+        List<AbstractFactoryRegistry> registries = new ArrayList<AbstractFactoryRegistry>();
+        Set<String> urls = new HashSet<String>();
+        Set<String> registryClassNames = new HashSet<String>();
+        try
         {
-            loaders.put(cl);
-        }
+            for (ClassLoader loader : loaders)
+            {
+                for (URL url : Collections.list(loader.getResources(FactoryRegistryIndex.INDEX)))
+                {
+                    if (urls.add(url.toString()))
+                    {
+                        FactoryRegistryIndex index = FactoryRegistryIndex.get(url);
+                        registryClassNames.addAll(index.getRegistries());
+                        registries.add(new IndexedFactoryRegistry(index, loader));
+                    }
+                }
+            }
 
-        cl = AbstractFactoryRegistry.class.getClassLoader();
-        if (cl != null)
-        {
-            loaders.put(cl);
+            // Registries without an index, for example the ones of container implementations
+            // not built with Cargo's build
+            for (ClassLoader loader : loaders)
+            {
+                for (URL url : Collections.list(
+                    loader.getResources(FactoryRegistryIndex.SERVICES)))
+                {
+                    if (urls.add(url.toString()))
+                    {
+                        for (String registryClassName : FactoryRegistryIndex.getProviders(url))
+                        {
+                            if (registryClassNames.add(registryClassName))
+                            {
+                                registries.add(newInstance(loader, registryClassName));
+                            }
+                        }
+                    }
+                }
+            }
         }
-
-        cl = ResourceUtils.getResourceLoader();
-        if (cl != null)
+        catch (IOException e)
         {
-            loaders.put(cl);
+            throw new ContainerException("Failed to discover the factory registries", e);
         }
 
-        cl = JDKHooks.getJDKHooks().getSystemClassLoader();
-        if (cl != null)
+        return registries;
+    }
+
+    /**
+     * @param loaders Class loaders to search the registries in.
+     * @param classLoader Class loader to add, ignored if <code>null</code> or already added.
+     */
+    private static void addClassLoader(List<ClassLoader> loaders, ClassLoader classLoader)
+    {
+        if (classLoader != null && !loaders.contains(classLoader))
         {
-            loaders.put(cl);
+            loaders.add(classLoader);
         }
+    }
 
-        if (loaders.size() == 0)
+    /**
+     * @param loader Class loader the registry has been discovered in.
+     * @param registryClassName Registry class name.
+     * @return New instance of the registry.
+     */
+    private static AbstractFactoryRegistry newInstance(ClassLoader loader,
+        String registryClassName)
+    {
+        try
         {
-            // this is not our day. bail out.
-            return Collections.EMPTY_LIST;
+            return (AbstractFactoryRegistry) loader.loadClass(registryClassName).newInstance();
         }
-
-        List<AbstractFactoryRegistry> registries = new ArrayList<AbstractFactoryRegistry>();
-        Enumeration providers = Service.providers(
-                new SPInterface(AbstractFactoryRegistry.class), loaders);
-        while (providers.hasMoreElements())
+        catch (Exception e)
         {
-            Object provider = providers.nextElement();
-            if (provider instanceof AbstractFactoryRegistry)
-            {
-                registries.add((AbstractFactoryRegistry) provider);
-            }
+            throw new ContainerException("Failed to instantiate the factory registry ["
+                + registryClassName + "]", e);
         }
-
-        return registries;
     }
 }
@@ -51,7 +51,7 @@ public class DefaultContainerCapabilityFactory extends
      */
     public DefaultContainerCapabilityFactory(ClassLoader classLoader)
     {
-        super();
+        super(classLoader);
 
         AbstractFactoryRegistry.register(classLoader, this);
     }
@@ -69,7 +69,7 @@ public class DefaultContainerFactory extends AbstractIntrospectionGenericHintFac
      */
     public DefaultContainerFactory(ClassLoader classLoader)
     {
-        super();
+        super(classLoader);
 
         AbstractFactoryRegistry.register(classLoader, this);
     }
@@ -0,0 +1,333 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus CARGO, copyright 2004-2011 Vincent Massol, 2012-2016 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.generic;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.codehaus.cargo.generic.configuration.ConfigurationCapabilityFactory;
+import org.codehaus.cargo.generic.configuration.ConfigurationFactory;
+import org.codehaus.cargo.generic.deployable.DeployableFactory;
+import org.codehaus.cargo.generic.deployer.DeployerFactory;
+import org.codehaus.cargo.generic.packager.PackagerFactory;
+
+/**
+ * Compact index of the implementations registered by the {@link AbstractFactoryRegistry}s of a
+ * container implementation jar.
+ * 
+ * <p>
+ * The index is generated at build time by {@link #main(String[])}, which runs the registries
+ * listed in the jar's <tt>META-INF/services</tt> file and writes down each registration (the
+ * name of the factory method, the container id, the types and the implementation class name) in
+ * {@link #INDEX}. At runtime, the discovery reads the index instead of loading the registries and
+ * the implementation classes they refer to, and registers the class names so that they only get
+ * loaded when used. Parsed indexes are shared by all factories in the JVM.
+ */
+public final class FactoryRegistryIndex
+{
+    /**
+     * Location of the index within a container implementation jar.
+     */
+    public static final String INDEX = "META-INF/cargo/factory-registry.index";
+
+    /**
+     * Location of the service provider configuration file listing the registries.
+     */
+    static final String SERVICES = "META-INF/services/" + AbstractFactoryRegistry.class.getName();
+
+    /**
+     * Key of the index lines listing the registries the index has been generated from.
+     */
+    private static final String REGISTRY = "registry";
+
+    /**
+     * Separator of the fields of an index line.
+     */
+    private static final String SEPARATOR = "\t";
+
+    /**
+     * Parsed indexes, per URL.
+     */
+    private static final Map<String, FactoryRegistryIndex> INDEXES =
+        new HashMap<String, FactoryRegistryIndex>();
+
+    /**
+     * Registries listed in service provider configuration files, per URL.
+     */
+    private static final Map<String, List<String>> PROVIDERS = new HashMap<String, List<String>>();
+
+    /**
+     * Registries the index has been generated from.
+     */
+    private List<String> registries = new ArrayList<String>();
+
+    /**
+     * Registrations, per factory method name. Each registration holds the arguments of the
+     * factory method, the implementation class name being the last one.
+     */
+    private Map<String, List<String[]>> registrations = new HashMap<String, List<String[]>>();
+
+    /**
+     * Records the registrations of a registry as index lines.
+     */
+    private static class Recorder implements InvocationHandler
+    {
+        /**
+         * Index lines.
+         */
+        private List<String> lines;
+
+        /**
+         * @param lines Index lines to add the registrations to.
+         */
+        public Recorder(List<String> lines)
+        {
+            this.lines = lines;
+        }
+
+        /**
+         * @param <T> Factory type.
+         * @param factoryType Factory interface.
+         * @return Factory recording the registrations.
+         */
+        public <T> T createFactory(Class<T> factoryType)
+        {
+            return factoryType.cast(Proxy.newProxyInstance(factoryType.getClassLoader(),
+                new Class[] {factoryType}, this));
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args)
+        {
+            if (!method.getName().startsWith("register"))
+            {
+                throw new UnsupportedOperationException("Factory registries can only call "
+                    + "register methods while being indexed, called: " + method);
+            }
+
+            StringBuilder line = new StringBuilder(method.getName());
+            for (Object arg : args)
+            {
+                line.append(SEPARATOR);
+                if (arg instanceof Class)
+                {
+                    line.append(((Class<?>) arg).getName());
+                }
+                else
+                {
+                    line.append(arg);
+                }
+            }
+            this.lines.add(line.toString());
+            return null;
+        }
+    }
+
+    /**
+     * Parses an index.
+     * 
+     * @param lines Index lines.
+     */
+    private FactoryRegistryIndex(List<String> lines)
+    {
+        for (String line : lines)
+        {
+            String[] fields = line.split(SEPARATOR);
+            if (REGISTRY.equals(fields[0]))
+            {
+                this.registries.add(fields[1]);
+            }
+            else
+            {
+                List<String[]> methodRegistrations = this.registrations.get(fields[0]);
+                if (methodRegistrations == null)
+                {
+                    methodRegistrations = new ArrayList<String[]>();
+                    this.registrations.put(fields[0], methodRegistrations);
+                }
+                String[] arguments = new String[fields.length - 1];
+                System.arraycopy(fields, 1, arguments, 0, arguments.length);
+                methodRegistrations.add(arguments);
+            }
+        }
+    }
+
+    /**
+     * @return Class names of the registries the index has been generated from.
+     */
+    List<String> getRegistries()
+    {
+        return this.registries;
+    }
+
+    /**
+     * @param methodName Name of the factory method, for example <code>registerContainer</code>.
+     * @return Arguments of the registrations made using that method, the implementation class name
+     * being the last one.
+     */
+    List<String[]> getRegistrations(String methodName)
+    {
+        List<String[]> methodRegistrations = this.registrations.get(methodName);
+        if (methodRegistrations == null)
+        {
+            return Collections.emptyList();
+        }
+        return methodRegistrations;
+    }
+
+    /**
+     * @param url URL of an index.
+     * @return Parsed index, read only once per URL.
+     * @throws IOException If the index cannot be read.
+     */
+    static FactoryRegistryIndex get(URL url) throws IOException
+    {
+        synchronized (INDEXES)
+        {
+            FactoryRegistryIndex index = INDEXES.get(url.toString());
+            if (index == null)
+            {
+                index = new FactoryRegistryIndex(readLines(url));
+                INDEXES.put(url.toString(), index);
+            }
+            return index;
+        }
+    }
+
+    /**
+     * @param url URL of a service provider configuration file.
+     * @return Class names of the registries listed in the file, read only once per URL.
+     * @throws IOException If the file cannot be read.
+     */
+    static List<String> getProviders(URL url) throws IOException
+    {
+        synchronized (PROVIDERS)
+        {
+            List<String> providers = PROVIDERS.get(url.toString());
+            if (providers == null)
+            {
+                providers = readLines(url);
+                PROVIDERS.put(url.toString(), providers);
+            }
+            return providers;
+        }
+    }
+
+    /**
+     * Generates the index of the registries of a container implementation.
+     * 
+     * @param args The directory containing the compiled classes and the <tt>META-INF/services</tt>
+     * file of the container implementation. Nothing is generated if there is no such file.
+     * @throws Exception If a registry cannot be instantiated or the index cannot be written.
+     */
+    public static void main(String[] args) throws Exception
+    {
+        File services = new File(args[0], SERVICES);
+        if (!services.isFile())
+        {
+            return;
+        }
+
+        List<String> lines = new ArrayList<String>();
+        Recorder recorder = new Recorder(lines);
+        for (String registryClassName : readLines(services.toURI().toURL()))
+        {
+            AbstractFactoryRegistry registry =
+                (AbstractFactoryRegistry) Class.forName(registryClassName).newInstance();
+            lines.add(REGISTRY + SEPARATOR + registryClassName);
+            registry.register(recorder.createFactory(DeployableFactory.class));
+            registry.register(recorder.createFactory(ConfigurationCapabilityFactory.class));
+            registry.register(recorder.createFactory(ConfigurationFactory.class));
+            registry.register(recorder.createFactory(DeployerFactory.class));
+            registry.register(recorder.createFactory(PackagerFactory.class));
+            registry.register(recorder.createFactory(ContainerFactory.class));
+            registry.register(recorder.createFactory(ContainerCapabilityFactory.class));
+        }
+
+        File index = new File(args[0], INDEX);
+        index.getParentFile().mkdirs();
+        Writer writer = new OutputStreamWriter(new FileOutputStream(index), "UTF-8");
+        try
+        {
+            writer.write("# Generated from " + SERVICES + ", do not edit\n");
+            for (String line : lines)
+            {
+                writer.write(line);
+                writer.write('\n');
+            }
+        }
+        finally
+        {
+            writer.close();
+        }
+    }
+
+    /**
+     * @param url URL of the file to read.
+     * @return The lines of the file, without comments and blank lines.
+     * @throws IOException If the file cannot be read.
+     */
+    private static List<String> readLines(URL url) throws IOException
+    {
+        List<String> lines = new ArrayList<String>();
+        InputStream in = url.openStream();
+        try
+        {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+            String line;
+            while ((line = reader.readLine()) != null)
+            {
+                int comment = line.indexOf('#');
+                if (comment != -1)
+                {
+                    line = line.substring(0, comment);
+                }
+                line = line.trim();
+                if (line.length() > 0)
+                {
+                    lines.add(line);
+                }
+            }
+        }
+        finally
+        {
+            in.close();
+        }
+        return lines;
+    }
+}
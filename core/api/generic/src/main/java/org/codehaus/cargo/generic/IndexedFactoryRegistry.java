@@ -0,0 +1,238 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus CARGO, copyright 2004-2011 Vincent Massol, 2012-2016 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.generic;
+
+import org.codehaus.cargo.container.Container;
+import org.codehaus.cargo.container.ContainerCapability;
+import org.codehaus.cargo.container.ContainerException;
+import org.codehaus.cargo.container.ContainerType;
+import org.codehaus.cargo.container.configuration.Configuration;
+import org.codehaus.cargo.container.configuration.ConfigurationCapability;
+import org.codehaus.cargo.container.configuration.ConfigurationType;
+import org.codehaus.cargo.container.deployable.Deployable;
+import org.codehaus.cargo.container.deployable.DeployableType;
+import org.codehaus.cargo.container.deployer.Deployer;
+import org.codehaus.cargo.container.deployer.DeployerType;
+import org.codehaus.cargo.container.packager.Packager;
+import org.codehaus.cargo.container.packager.PackagerType;
+import org.codehaus.cargo.generic.configuration.ConfigurationCapabilityFactory;
+import org.codehaus.cargo.generic.configuration.ConfigurationFactory;
+import org.codehaus.cargo.generic.configuration.DefaultConfigurationCapabilityFactory;
+import org.codehaus.cargo.generic.configuration.DefaultConfigurationFactory;
+import org.codehaus.cargo.generic.deployable.DefaultDeployableFactory;
+import org.codehaus.cargo.generic.deployable.DeployableFactory;
+import org.codehaus.cargo.generic.deployer.DefaultDeployerFactory;
+import org.codehaus.cargo.generic.deployer.DeployerFactory;
+import org.codehaus.cargo.generic.packager.DefaultPackagerFactory;
+import org.codehaus.cargo.generic.packager.PackagerFactory;
+
+/**
+ * Registry replaying the registrations of a {@link FactoryRegistryIndex}. The default factories
+ * get the implementation class names, so that the classes are only loaded when used; other
+ * factories get the implementation classes loaded from the class loader the index was found in.
+ */
+class IndexedFactoryRegistry extends AbstractFactoryRegistry
+{
+    /**
+     * Index to replay.
+     */
+    private FactoryRegistryIndex index;
+
+    /**
+     * Class loader the index was found in.
+     */
+    private ClassLoader classLoader;
+
+    /**
+     * @param index Index to replay.
+     * @param classLoader Class loader the index was found in.
+     */
+    public IndexedFactoryRegistry(FactoryRegistryIndex index, ClassLoader classLoader)
+    {
+        this.index = index;
+        this.classLoader = classLoader;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void register(DeployableFactory factory)
+    {
+        for (String[] args : this.index.getRegistrations("registerDeployable"))
+        {
+            DeployableType type = DeployableType.toType(args[1]);
+            if (factory instanceof DefaultDeployableFactory)
+            {
+                ((DefaultDeployableFactory) factory).registerDeployable(args[0], type, args[2]);
+            }
+            else
+            {
+                factory.registerDeployable(args[0], type, loadClass(args[2], Deployable.class));
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void register(ConfigurationCapabilityFactory factory)
+    {
+        for (String[] args : this.index.getRegistrations("registerConfigurationCapability"))
+        {
+            ContainerType containerType = ContainerType.toType(args[1]);
+            ConfigurationType configurationType = ConfigurationType.toType(args[2]);
+            if (factory instanceof DefaultConfigurationCapabilityFactory)
+            {
+                ((DefaultConfigurationCapabilityFactory) factory).registerConfigurationCapability(
+                    args[0], containerType, configurationType, args[3]);
+            }
+            else
+            {
+                factory.registerConfigurationCapability(args[0], containerType, configurationType,
+                    loadClass(args[3], ConfigurationCapability.class));
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void register(ConfigurationFactory factory)
+    {
+        for (String[] args : this.index.getRegistrations("registerConfiguration"))
+        {
+            ContainerType containerType = ContainerType.toType(args[1]);
+            ConfigurationType configurationType = ConfigurationType.toType(args[2]);
+            if (factory instanceof DefaultConfigurationFactory)
+            {
+                ((DefaultConfigurationFactory) factory).registerConfiguration(args[0],
+                    containerType, configurationType, args[3]);
+            }
+            else
+            {
+                factory.registerConfiguration(args[0], containerType, configurationType,
+                    loadClass(args[3], Configuration.class));
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void register(DeployerFactory factory)
+    {
+        for (String[] args : this.index.getRegistrations("registerDeployer"))
+        {
+            DeployerType type = DeployerType.toType(args[1]);
+            if (factory instanceof DefaultDeployerFactory)
+            {
+                ((DefaultDeployerFactory) factory).registerDeployer(args[0], type, args[2]);
+            }
+            else
+            {
+                factory.registerDeployer(args[0], type, loadClass(args[2], Deployer.class));
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void register(PackagerFactory factory)
+    {
+        for (String[] args : this.index.getRegistrations("registerPackager"))
+        {
+            PackagerType type = PackagerType.toType(args[1]);
+            if (factory instanceof DefaultPackagerFactory)
+            {
+                ((DefaultPackagerFactory) factory).registerPackager(args[0], type, args[2]);
+            }
+            else
+            {
+                factory.registerPackager(args[0], type, loadClass(args[2], Packager.class));
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void register(ContainerFactory factory)
+    {
+        for (String[] args : this.index.getRegistrations("registerContainer"))
+        {
+            ContainerType type = ContainerType.toType(args[1]);
+            if (factory instanceof DefaultContainerFactory)
+            {
+                ((DefaultContainerFactory) factory).registerContainer(args[0], type, args[2]);
+            }
+            else
+            {
+                factory.registerContainer(args[0], type, loadClass(args[2], Container.class));
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void register(ContainerCapabilityFactory factory)
+    {
+        for (String[] args : this.index.getRegistrations("registerContainerCapability"))
+        {
+            if (factory instanceof DefaultContainerCapabilityFactory)
+            {
+                ((DefaultContainerCapabilityFactory) factory).registerContainerCapability(
+                    args[0], args[1]);
+            }
+            else
+            {
+                factory.registerContainerCapability(args[0],
+                    loadClass(args[1], ContainerCapability.class));
+            }
+        }
+    }
+
+    /**
+     * @param <T> Implementation type.
+     * @param className Implementation class name.
+     * @param type Implementation type.
+     * @return Implementation class, loaded from the class loader the index was found in.
+     */
+    private <T> Class<? extends T> loadClass(String className, Class<T> type)
+    {
+        try
+        {
+            return Class.forName(className, false, this.classLoader).asSubclass(type);
+        }
+        catch (ClassNotFoundException e)
+        {
+            throw new ContainerException("Cannot load class [" + className
+                + "] listed in the factory registry index", e);
+        }
+    }
+}
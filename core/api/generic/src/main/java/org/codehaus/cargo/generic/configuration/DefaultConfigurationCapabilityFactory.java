@@ -55,7 +55,7 @@ public class DefaultConfigurationCapabilityFactory extends
      */
     public DefaultConfigurationCapabilityFactory(ClassLoader classLoader)
     {
-        super();
+        super(classLoader);
 
         AbstractFactoryRegistry.register(classLoader, this);
     }
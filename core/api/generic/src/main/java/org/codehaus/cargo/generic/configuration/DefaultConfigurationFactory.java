@@ -29,8 +29,8 @@ import org.codehaus.cargo.generic.AbstractFactoryRegistry;
 import org.codehaus.cargo.generic.internal.util.FullContainerIdentity;
 import org.codehaus.cargo.generic.internal.util.RegistrationKey;
 import org.codehaus.cargo.generic.spi.AbstractIntrospectionGenericHintFactory;
-import org.codehaus.cargo.util.DefaultFileHandler;
 import org.codehaus.cargo.util.FileHandler;
+import org.codehaus.cargo.util.FileHandlerFactory;
 
 /**
  * Default {@link ConfigurationFactory} implementation that has all the known container
@@ -43,7 +43,7 @@ public class DefaultConfigurationFactory extends
     /**
      * File utility class.
      */
-    private FileHandler fileHandler = new DefaultFileHandler();
+    private FileHandler fileHandler = FileHandlerFactory.createFileHandler();
 
     /**
      * @see GenericParameters
@@ -73,7 +73,7 @@ public class DefaultConfigurationFactory extends
      */
     public DefaultConfigurationFactory(ClassLoader classLoader)
     {
-        super();
+        super(classLoader);
 
         AbstractFactoryRegistry.register(classLoader, this);
     }
@@ -79,6 +79,8 @@ public class DefaultDeployableFactory extends AbstractIntrospectionGenericHintFa
      */
     public DefaultDeployableFactory(ClassLoader classLoader)
     {
+        super(classLoader);
+
         // The default implementation of every Cargo supported deployable is registered here.
         // In order not to have to individually register against each container id we
         // create a fictitious default container id.
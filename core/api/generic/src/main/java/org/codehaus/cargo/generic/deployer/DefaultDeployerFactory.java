@@ -68,7 +68,7 @@ public class DefaultDeployerFactory extends AbstractIntrospectionGenericHintFact
      */
     public DefaultDeployerFactory(ClassLoader classLoader)
     {
-        super();
+        super(classLoader);
 
         AbstractFactoryRegistry.register(classLoader, this);
     }
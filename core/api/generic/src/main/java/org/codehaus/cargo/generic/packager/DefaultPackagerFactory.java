@@ -65,7 +65,7 @@ public class DefaultPackagerFactory extends AbstractIntrospectionGenericHintFact
      */
     public DefaultPackagerFactory(ClassLoader classLoader)
     {
-        super();
+        super(classLoader);
 
         AbstractFactoryRegistry.register(classLoader, this);
     }
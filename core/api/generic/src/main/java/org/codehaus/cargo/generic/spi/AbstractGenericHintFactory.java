@@ -65,7 +65,7 @@ public abstract class AbstractGenericHintFactory<T> extends LoggedObject
      */
     protected boolean hasMapping(RegistrationKey key)
     {
-        return getMappings().containsKey(key);
+        return this.mappings.containsKey(key);
     }
 
     /**
@@ -74,7 +74,7 @@ public abstract class AbstractGenericHintFactory<T> extends LoggedObject
      */
     protected Class<? extends T> getMapping(RegistrationKey key)
     {
-        return getMappings().get(key);
+        return this.mappings.get(key);
     }
 
     /**
@@ -94,7 +94,7 @@ public abstract class AbstractGenericHintFactory<T> extends LoggedObject
     protected void registerImplementation(RegistrationKey key,
         Class<? extends T> implementationClass)
     {
-        getMappings().put(key, implementationClass);
+        this.mappings.put(key, implementationClass);
     }
 
     /**
@@ -110,7 +110,7 @@ public abstract class AbstractGenericHintFactory<T> extends LoggedObject
     protected T createImplementation(RegistrationKey key, GenericParameters parameters,
         String implementationConceptName)
     {
-        if (!getMappings().containsKey(key))
+        if (!this.mappings.containsKey(key))
         {
             String message =
                 "Cannot create " + implementationConceptName + ". There's no registered "
@@ -138,7 +138,7 @@ public abstract class AbstractGenericHintFactory<T> extends LoggedObject
             throw new ContainerException(message);
         }
 
-        Class<? extends T> implementationClass = getMappings().get(key);
+        Class<? extends T> implementationClass = this.mappings.get(key);
 
         T implementation;
         try
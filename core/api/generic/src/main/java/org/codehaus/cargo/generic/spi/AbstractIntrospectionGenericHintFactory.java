@@ -19,10 +19,14 @@
  */
 package org.codehaus.cargo.generic.spi;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.codehaus.cargo.container.ContainerException;
+import org.codehaus.cargo.container.internal.util.ResourceUtils;
 import org.codehaus.cargo.generic.internal.util.RegistrationKey;
 
 /**
@@ -31,6 +35,11 @@ import org.codehaus.cargo.generic.internal.util.RegistrationKey;
  * load the registration fails silently. This is to cover the user case where a specific container's
  * implementation jar may not be present in the classpath if it's not used by the user. This allows
  * users to only put the container implementation jars the require in the classpath.
+ * 
+ * <p>
+ * Implementation classes specified as String are only loaded when they are first looked up, so
+ * that registering the hundreds of implementations listed in the factory registry indexes does
+ * not load any of them until a container actually gets created.
  */
 public abstract class AbstractIntrospectionGenericHintFactory<T> extends
     AbstractGenericHintFactory<T>
@@ -44,6 +53,45 @@ public abstract class AbstractIntrospectionGenericHintFactory<T> extends
     private Map<RegistrationKey, String> rejectedMappings =
         new HashMap<RegistrationKey, String>();
 
+    /**
+     * Implementation classes registered as String and not loaded yet.
+     */
+    private Map<RegistrationKey, String> pendingMappings =
+        new LinkedHashMap<RegistrationKey, String>();
+
+    /**
+     * Class loaders implementation classes registered as String are loaded from, in order.
+     */
+    private List<ClassLoader> classLoaders;
+
+    /**
+     * Load implementation classes using the class loader of the factory, the thread context class
+     * loader and the {@link ResourceUtils#getResourceLoader() resource loader}.
+     */
+    protected AbstractIntrospectionGenericHintFactory()
+    {
+        this(null);
+    }
+
+    /**
+     * Load implementation classes using the class loader of the factory, the given class loader,
+     * the thread context class loader and the {@link ResourceUtils#getResourceLoader() resource
+     * loader}.
+     * 
+     * @param classLoader Additional class loader to load implementation classes from, can be
+     * <code>null</code>.
+     */
+    protected AbstractIntrospectionGenericHintFactory(ClassLoader classLoader)
+    {
+        super();
+
+        this.classLoaders = new ArrayList<ClassLoader>();
+        addClassLoader(this.getClass().getClassLoader());
+        addClassLoader(classLoader);
+        addClassLoader(Thread.currentThread().getContextClassLoader());
+        addClassLoader(ResourceUtils.getResourceLoader());
+    }
+
     /**
      * Allow registering container objects using introspection so that at build time and runtime the
      * user can handpick the container implementation jars that he want to use. If we were not using
@@ -53,27 +101,57 @@ public abstract class AbstractIntrospectionGenericHintFactory<T> extends
      * @param key the key under which to register the class name
      * @param objectClassName the object to register
      */
-    @SuppressWarnings("unchecked")
-    protected void registerImplementation(RegistrationKey key, String objectClassName)
+    protected synchronized void registerImplementation(RegistrationKey key,
+        String objectClassName)
     {
-        try
-        {
-            Class<T> objectClass =
-                (Class<T>) this.getClass().getClassLoader().loadClass(objectClassName);
-            registerImplementation(key, objectClass);
-        }
-        catch (Exception e)
-        {
-            // We record the rejected mapping to provide a nice error message if the user tries
-            // to use this mapping later on.
-            this.rejectedMappings.put(key, objectClassName);
+        // The class gets loaded the first time the mapping is used, see resolve.
+        this.rejectedMappings.remove(key);
+        this.pendingMappings.put(key, objectClassName);
+    }
 
-            // We do not rethrow an exception because we want to allow registering only container
-            // implementation classes that are in the classloader.
-            getLogger().warn(
-                "Not registering class [" + objectClassName + "] as there was an error: ["
-                    + e.getMessage() + "]", this.getClass().getName());
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected synchronized void registerImplementation(RegistrationKey key,
+        Class<? extends T> implementationClass)
+    {
+        this.rejectedMappings.remove(key);
+        this.pendingMappings.remove(key);
+        super.registerImplementation(key, implementationClass);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected synchronized boolean hasMapping(RegistrationKey key)
+    {
+        resolve(key);
+        return super.hasMapping(key);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected synchronized Class<? extends T> getMapping(RegistrationKey key)
+    {
+        resolve(key);
+        return super.getMapping(key);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected synchronized Map<RegistrationKey, Class<? extends T>> getMappings()
+    {
+        for (RegistrationKey key : new ArrayList<RegistrationKey>(this.pendingMappings.keySet()))
+        {
+            resolve(key);
         }
+        return super.getMappings();
     }
 
     /**
@@ -83,6 +161,11 @@ public abstract class AbstractIntrospectionGenericHintFactory<T> extends
     protected T createImplementation(RegistrationKey key, GenericParameters parameters,
         String implementationConceptName)
     {
+        synchronized (this)
+        {
+            resolve(key);
+        }
+
         T object;
         try
         {
@@ -90,7 +173,12 @@ public abstract class AbstractIntrospectionGenericHintFactory<T> extends
         }
         catch (ContainerException e)
         {
-            if (this.rejectedMappings.containsKey(key))
+            boolean rejected;
+            synchronized (this)
+            {
+                rejected = this.rejectedMappings.containsKey(key);
+            }
+            if (rejected)
             {
                 String message =
                     "Failed to create a "
@@ -112,4 +200,78 @@ public abstract class AbstractIntrospectionGenericHintFactory<T> extends
 
         return object;
     }
+
+    /**
+     * Loads the implementation class registered as String for the given key, if any. If the
+     * implementation fails to load the registration fails silently, see the class comment.
+     * 
+     * @param key the key under which the class name has been registered
+     */
+    private void resolve(RegistrationKey key)
+    {
+        String objectClassName = this.pendingMappings.remove(key);
+        if (objectClassName == null)
+        {
+            return;
+        }
+
+        try
+        {
+            super.registerImplementation(key, loadClass(objectClassName));
+        }
+        catch (Exception e)
+        {
+            // We record the rejected mapping to provide a nice error message if the user tries
+            // to use this mapping later on.
+            this.rejectedMappings.put(key, objectClassName);
+
+            // We do not rethrow an exception because we want to allow registering only container
+            // implementation classes that are in the classloader.
+            getLogger().warn(
+                "Not registering class [" + objectClassName + "] as there was an error: ["
+                    + e.getMessage() + "]", this.getClass().getName());
+        }
+    }
+
+    /**
+     * @param objectClassName the class to load
+     * @return the class, loaded from the first class loader that can load it
+     * @throws ClassNotFoundException if none of the class loaders can load the class
+     */
+    @SuppressWarnings("unchecked")
+    private Class<? extends T> loadClass(String objectClassName) throws ClassNotFoundException
+    {
+        ClassNotFoundException notFound = null;
+        for (ClassLoader classLoader : this.classLoaders)
+        {
+            try
+            {
+                return (Class<? extends T>) classLoader.loadClass(objectClassName);
+            }
+            catch (ClassNotFoundException e)
+            {
+                if (notFound == null)
+                {
+                    notFound = e;
+                }
+            }
+        }
+        if (notFound == null)
+        {
+            notFound = new ClassNotFoundException(objectClassName);
+        }
+        throw notFound;
+    }
+
+    /**
+     * @param classLoader class loader to add to the class loaders implementation classes are loaded
+     * from, ignored if <code>null</code> or already added
+     */
+    private void addClassLoader(ClassLoader classLoader)
+    {
+        if (classLoader != null && !this.classLoaders.contains(classLoader))
+        {
+            this.classLoaders.add(classLoader);
+        }
+    }
 }
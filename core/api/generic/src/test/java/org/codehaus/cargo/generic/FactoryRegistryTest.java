@@ -19,16 +19,29 @@
  */
 package org.codehaus.cargo.generic;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.UUID;
+
 import junit.framework.TestCase;
 
+import org.codehaus.cargo.container.ContainerException;
 import org.codehaus.cargo.container.ContainerType;
 import org.codehaus.cargo.container.configuration.ConfigurationCapability;
 import org.codehaus.cargo.container.configuration.ConfigurationType;
 import org.codehaus.cargo.container.deployable.Deployable;
 import org.codehaus.cargo.container.deployable.DeployableType;
+import org.codehaus.cargo.container.stub.InstalledLocalContainerStub;
 import org.codehaus.cargo.generic.configuration.ConfigurationCapabilityFactory;
 import org.codehaus.cargo.generic.configuration.DefaultConfigurationCapabilityFactory;
 import org.codehaus.cargo.generic.deployable.DefaultDeployableFactory;
+import org.codehaus.cargo.util.DefaultFileHandler;
+import org.codehaus.cargo.util.FileHandler;
 
 /**
  * Tests the discovery behavior.
@@ -37,6 +50,40 @@ import org.codehaus.cargo.generic.deployable.DefaultDeployableFactory;
  */
 public class FactoryRegistryTest extends TestCase
 {
+    /**
+     * File handler.
+     */
+    private FileHandler fileHandler;
+
+    /**
+     * Working directory for the test.
+     */
+    private File workDir;
+
+    /**
+     * Creates the working directory. {@inheritDoc}
+     * @throws Exception If anything goes wrong.
+     */
+    @Override
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        this.fileHandler = new DefaultFileHandler();
+        this.workDir = new File("target/" + UUID.randomUUID().toString()).getAbsoluteFile();
+        this.fileHandler.mkdirs(this.workDir.getPath());
+    }
+
+    /**
+     * Deletes the working directory. {@inheritDoc}
+     * @throws Exception If anything goes wrong.
+     */
+    @Override
+    protected void tearDown() throws Exception
+    {
+        this.fileHandler.delete(this.workDir.getPath());
+        super.tearDown();
+    }
+
     /**
      * Test the {@link DefaultDeployableFactory}.
      */
@@ -58,4 +105,72 @@ public class FactoryRegistryTest extends TestCase
             ContainerType.INSTALLED, ConfigurationType.STANDALONE);
         assertTrue(cc instanceof SuperConfigurationCapability);
     }
+
+    /**
+     * Test the generation of the index of a registry.
+     * @throws Exception If anything goes wrong.
+     */
+    public void testGenerateIndex() throws Exception
+    {
+        write(FactoryRegistryIndex.SERVICES, TestFactoryRegistry.class.getName());
+
+        FactoryRegistryIndex.main(new String[] {this.workDir.getPath()});
+
+        String index = this.fileHandler.readTextFile(
+            new File(this.workDir, FactoryRegistryIndex.INDEX).getPath(), "UTF-8");
+        assertTrue(index, index.contains("registry\t" + TestFactoryRegistry.class.getName()));
+        assertTrue(index, index.contains("registerDeployable\tsuper-container\twar\t"
+            + SuperContainerWar.class.getName()));
+        assertTrue(index, index.contains("registerConfigurationCapability\tsuper-container\t"
+            + "installed\tstandalone\t" + SuperConfigurationCapability.class.getName()));
+    }
+
+    /**
+     * Test that the implementations listed in an index are registered, and only loaded when used.
+     * @throws Exception If anything goes wrong.
+     */
+    public void testIndexedImplementations() throws Exception
+    {
+        write(FactoryRegistryIndex.INDEX, "registry\torg.codehaus.cargo.MissingFactoryRegistry\n"
+            + "registerContainer\tindexed-container\tinstalled\t"
+            + InstalledLocalContainerStub.class.getName() + "\n"
+            + "registerContainer\tindexed-container\tremote\torg.codehaus.cargo.Missing\n");
+        ClassLoader classLoader = new URLClassLoader(new URL[] {this.workDir.toURI().toURL()});
+
+        DefaultContainerFactory factory = new DefaultContainerFactory(classLoader);
+
+        assertTrue(factory.isContainerRegistered("indexed-container", ContainerType.INSTALLED));
+        assertEquals(InstalledLocalContainerStub.class,
+            factory.getContainerClass("indexed-container", ContainerType.INSTALLED));
+        try
+        {
+            factory.createContainer("indexed-container", ContainerType.REMOTE, null);
+            fail("Should have received an exception for the missing container class");
+        }
+        catch (ContainerException expected)
+        {
+            assertTrue(expected.getMessage().contains("could not been loaded"));
+        }
+        assertFalse(factory.isContainerRegistered("indexed-container", ContainerType.REMOTE));
+    }
+
+    /**
+     * @param path Path of the file to write, relative to the working directory.
+     * @param content Content of the file.
+     * @throws IOException If anything goes wrong.
+     */
+    private void write(String path, String content) throws IOException
+    {
+        File file = new File(this.workDir, path);
+        file.getParentFile().mkdirs();
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try
+        {
+            writer.write(content);
+        }
+        finally
+        {
+            writer.close();
+        }
+    }
 }
@@ -300,7 +300,7 @@ public abstract class AbstractDescriptor extends Document implements Descriptor
         int idx = parent.getContent().indexOf(refNode);
         if (idx == -1)
         {
-            if (!containsElement(parent.getChildren(), importedNode))
+            if (!containsElement(parent, importedNode))
             {
                 parent.addContent(importedNode);
             }
@@ -313,7 +313,7 @@ public abstract class AbstractDescriptor extends Document implements Descriptor
                 idx--;
             }
 
-            if (!containsElement(parent.getChildren(), importedNode))
+            if (!containsElement(parent, importedNode))
             {
                 parent.addContent(idx, importedNode);
             }
@@ -322,6 +322,35 @@ public abstract class AbstractDescriptor extends Document implements Descriptor
         return importedNode;
     }
 
+    /**
+     * Replaces an element of the descriptor with another element, at the same position.
+     * 
+     * @param existing The element to replace
+     * @param replacement The element to put in its place
+     * @return the inserted element
+     */
+    public Element replaceElement(Element existing, Element replacement)
+    {
+        Element importedNode = (Element) replacement.detach();
+
+        Element parent = existing.getParentElement();
+        parent.setContent(parent.indexOf(existing), importedNode);
+
+        return importedNode;
+    }
+
+    /**
+     * Checks if <code>parent</code> has a child element that is the same as <code>child</code>.
+     * @param parent Parent element to look into.
+     * @param child Element to look for.
+     * @return Whether <code>parent</code> has a child element that is the same as
+     * <code>child</code>.
+     */
+    protected boolean containsElement(Element parent, Element child)
+    {
+        return containsElement(parent.getChildren(), child);
+    }
+
     /**
      * Checks if <code>haystack</code> contains <code>needle</code>.
      * @param haystack List of element to look into.
@@ -450,12 +479,10 @@ public abstract class AbstractDescriptor extends Document implements Descriptor
                 for (int j = i + 1; j < elementOrder.size(); j++)
                 {
                     DescriptorTag theTag = elementOrder.get(j);
-                    List<Element> elements =
-                        getRootElement().getChildren(
-                            theTag.getTagName(), theTag.getTagNamespace());
-                    if (elements.size() > 0)
+                    Element result =
+                        getRootElement().getChild(theTag.getTagName(), theTag.getTagNamespace());
+                    if (result != null)
                     {
-                        Element result = elements.get(0);
                         return result;
                     }
                 }
@@ -30,15 +30,24 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.jar.JarFile;
 import java.util.jar.JarInputStream;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
 import org.codehaus.cargo.util.DefaultFileHandler;
 import org.codehaus.cargo.util.FileHandler;
+import org.codehaus.cargo.util.FileHandlerFactory;
 
 /**
- * Provide convenient methods to read information from a Jar archive.
+ * Provide convenient methods to read information from a Jar archive.<br>
+ * The entries of the archive are indexed the first time they are needed. Archives which are local
+ * files are then read using random access; archives constructed from a stream are kept in memory.
  */
 public class DefaultJarArchive implements JarArchive
 {
@@ -55,7 +64,27 @@ public class DefaultJarArchive implements JarArchive
     /**
      * File utility class to use for performing all file I/O.
      */
-    private FileHandler fileHandler = new DefaultFileHandler();
+    private FileHandler fileHandler = FileHandlerFactory.createFileHandler();
+
+    /**
+     * Entries of the archive, by path and in archive order. <code>null</code> until indexed.
+     */
+    private Map<String, ZipEntry> entries;
+
+    /**
+     * Paths of the entries of the archive, by file name (the part after the last slash).
+     */
+    private Map<String, List<String>> entriesByName;
+
+    /**
+     * Last modification date of the archive file when it was indexed.
+     */
+    private long indexedLastModified;
+
+    /**
+     * Length of the archive file when it was indexed.
+     */
+    private long indexedLength;
 
     /**
      * Constructor.
@@ -96,9 +125,10 @@ public class DefaultJarArchive implements JarArchive
     /**
      * @param fileHandler the file utility class to use for performing all file I/O.
      */
-    public void setFileHandler(FileHandler fileHandler)
+    public synchronized void setFileHandler(FileHandler fileHandler)
     {
         this.fileHandler = fileHandler;
+        this.entries = null;
     }
 
     /**
@@ -108,7 +138,7 @@ public class DefaultJarArchive implements JarArchive
     public boolean containsClass(String className) throws IOException
     {
         String resourceName = className.replace('.', '/') + ".class";
-        return getResource(resourceName) != null;
+        return getEntries().containsKey(resourceName);
     }
 
     /**
@@ -117,24 +147,12 @@ public class DefaultJarArchive implements JarArchive
     @Override
     public String findResource(String name) throws IOException
     {
-        String result = null;
-        for (String entryPath : getResources(""))
+        List<String> paths = getEntriesByName().get(name);
+        if (paths == null)
         {
-            String entryName = entryPath;
-
-            int lastSlashIndex = entryName.lastIndexOf('/');
-            if (lastSlashIndex >= 0)
-            {
-                entryName = entryName.substring(lastSlashIndex + 1);
-            }
-
-            if (entryName.equals(name))
-            {
-                result = entryPath;
-                break;
-            }
+            return null;
         }
-        return result;
+        return paths.get(0);
     }
 
     /**
@@ -143,6 +161,30 @@ public class DefaultJarArchive implements JarArchive
     @Override
     public InputStream getResource(String path) throws IOException
     {
+        if (!getEntries().containsKey(path))
+        {
+            return null;
+        }
+
+        if (isLocalFile())
+        {
+            ZipFile zipFile = new ZipFile(this.sourceFile);
+            try
+            {
+                ZipEntry zipEntry = zipFile.getEntry(path);
+                if (zipEntry == null)
+                {
+                    return null;
+                }
+                return new ByteArrayInputStream(streamToByteArray(
+                    zipFile.getInputStream(zipEntry)));
+            }
+            finally
+            {
+                zipFile.close();
+            }
+        }
+
         JarInputStream in = null;
         try
         {
@@ -186,28 +228,143 @@ public class DefaultJarArchive implements JarArchive
         }
 
         List<String> resources = new ArrayList<String>();
-        JarInputStream in = null;
-        try
+        for (String entryName : getEntries().keySet())
         {
-            in = getContentAsStream();
-            ZipEntry zipEntry;
-            while ((zipEntry = in.getNextEntry()) != null)
+            if (entryName.startsWith(normalizedPath) && !entryName.equals(normalizedPath))
             {
-                if (zipEntry.getName().startsWith(normalizedPath)
-                    && !zipEntry.getName().equals(normalizedPath))
-                {
-                    resources.add(zipEntry.getName());
-                }
+                resources.add(entryName);
             }
         }
-        finally
+        return resources;
+    }
+
+    /**
+     * @return Entries of the archive, by path and in archive order. The index is built the first
+     * time and rebuilt if the archive file has changed since.
+     * @throws IOException If an exception occurred reading the archive
+     */
+    protected final synchronized Map<String, ZipEntry> getEntries() throws IOException
+    {
+        boolean localFile = isLocalFile();
+        if (this.entries != null && localFile)
         {
-            if (in != null)
+            File file = new File(this.sourceFile);
+            if (file.lastModified() != this.indexedLastModified
+                || file.length() != this.indexedLength)
             {
-                in.close();
+                this.entries = null;
             }
         }
-        return resources;
+
+        if (this.entries == null)
+        {
+            Map<String, ZipEntry> newEntries = new LinkedHashMap<String, ZipEntry>();
+            if (localFile)
+            {
+                File file = new File(this.sourceFile);
+                this.indexedLastModified = file.lastModified();
+                this.indexedLength = file.length();
+
+                ZipFile zipFile = new ZipFile(file);
+                try
+                {
+                    // Skip the leading manifest as JarInputStream does, so that the entries do
+                    // not depend on how the archive is read
+                    boolean leading = true;
+                    Enumeration<? extends ZipEntry> zipEntries = zipFile.entries();
+                    while (zipEntries.hasMoreElements())
+                    {
+                        ZipEntry zipEntry = zipEntries.nextElement();
+                        String name = zipEntry.getName();
+                        if (leading && "META-INF/".equalsIgnoreCase(name))
+                        {
+                            continue;
+                        }
+                        boolean manifest = leading && JarFile.MANIFEST_NAME.equalsIgnoreCase(name);
+                        leading = false;
+                        if (!manifest)
+                        {
+                            newEntries.put(name, zipEntry);
+                        }
+                    }
+                }
+                finally
+                {
+                    zipFile.close();
+                }
+            }
+            else
+            {
+                JarInputStream in = getContentAsStream();
+                try
+                {
+                    ZipEntry zipEntry;
+                    while ((zipEntry = in.getNextEntry()) != null)
+                    {
+                        newEntries.put(zipEntry.getName(), zipEntry);
+                    }
+                }
+                finally
+                {
+                    in.close();
+                }
+            }
+
+            Map<String, List<String>> newEntriesByName = new HashMap<String, List<String>>();
+            for (String entryPath : newEntries.keySet())
+            {
+                String entryName = entryPath;
+                int lastSlashIndex = entryName.lastIndexOf('/');
+                if (lastSlashIndex >= 0)
+                {
+                    entryName = entryName.substring(lastSlashIndex + 1);
+                }
+
+                List<String> paths = newEntriesByName.get(entryName);
+                if (paths == null)
+                {
+                    paths = new ArrayList<String>(1);
+                    newEntriesByName.put(entryName, paths);
+                }
+                paths.add(entryPath);
+            }
+
+            this.entries = newEntries;
+            this.entriesByName = newEntriesByName;
+        }
+        return this.entries;
+    }
+
+    /**
+     * @return Paths of the entries of the archive, by file name.
+     * @throws IOException If an exception occurred reading the archive
+     */
+    private synchronized Map<String, List<String>> getEntriesByName() throws IOException
+    {
+        getEntries();
+        return this.entriesByName;
+    }
+
+    /**
+     * @return The archive file if it is a local file which can be read using random access,
+     * <code>null</code> otherwise (for example if the archive has been constructed from a stream).
+     */
+    public File getLocalFile()
+    {
+        if (isLocalFile())
+        {
+            return new File(this.sourceFile);
+        }
+        return null;
+    }
+
+    /**
+     * @return <code>true</code> if the archive is a file which can be read using random access.
+     */
+    private boolean isLocalFile()
+    {
+        return this.content == null && getFileHandler() instanceof DefaultFileHandler
+            && new File(this.sourceFile).isFile();
     }
 
     /**
@@ -25,6 +25,7 @@ import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import org.codehaus.cargo.module.AbstractDescriptor;
 import org.codehaus.cargo.module.Descriptor;
 import org.codehaus.cargo.module.DescriptorElement;
 import org.codehaus.cargo.module.DescriptorType;
@@ -80,12 +81,18 @@ public class NodeMergeStrategy implements MergeStrategy
     public int inBoth(Descriptor target, DescriptorElement left, DescriptorElement right)
     {
         // Merge common items by overwriting them
-        int idx = target.getDocument().getRootElement().getContent().indexOf(left);
-        target.getDocument().getRootElement().removeContent(left);
-
         Element newElement = (Element) this.template.clone();
         applyValues(newElement, left, right);
-        target.getRootElement().addContent(idx, newElement);
+        if (target instanceof AbstractDescriptor)
+        {
+            ((AbstractDescriptor) target).replaceElement(left, newElement);
+        }
+        else
+        {
+            int idx = target.getDocument().getRootElement().getContent().indexOf(left);
+            target.getDocument().getRootElement().removeContent(left);
+            target.getRootElement().addContent(idx, newElement);
+        }
 
         return 1;
     }
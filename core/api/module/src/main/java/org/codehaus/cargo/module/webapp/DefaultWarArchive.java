@@ -47,8 +47,8 @@ import org.codehaus.cargo.module.webapp.weblogic.WeblogicXmlIo;
 import org.codehaus.cargo.module.webapp.websphere.IbmWebBndXmi;
 import org.codehaus.cargo.module.webapp.websphere.IbmWebBndXmiIo;
 import org.codehaus.cargo.util.CargoException;
-import org.codehaus.cargo.util.DefaultFileHandler;
 import org.codehaus.cargo.util.FileHandler;
+import org.codehaus.cargo.util.FileHandlerFactory;
 import org.jdom.JDOMException;
 
 /**
@@ -136,7 +136,7 @@ public class DefaultWarArchive extends DefaultJarArchive implements WarArchive
     @Override
     public void store(File warFile) throws IOException, JDOMException
     {
-        FileHandler fileHandler = new DefaultFileHandler();
+        FileHandler fileHandler = FileHandlerFactory.createFileHandler();
         JarInputStream in = getContentAsStream();
         JarOutputStream out = new JarOutputStream(new FileOutputStream(warFile));
 
@@ -23,29 +23,72 @@
 package org.codehaus.cargo.module.webapp;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 import org.codehaus.cargo.module.AbstractDescriptor;
 import org.codehaus.cargo.module.Descriptor;
 import org.codehaus.cargo.module.DescriptorElement;
+import org.codehaus.cargo.module.DescriptorTag;
 import org.codehaus.cargo.module.DescriptorType;
 import org.codehaus.cargo.module.Identifier;
 import org.codehaus.cargo.module.J2eeDescriptor;
 import org.jdom.DocType;
+import org.jdom.Document;
 import org.jdom.Element;
 import org.jdom.Namespace;
 
 /**
  * Encapsulates the DOM representation of a web deployment descriptor <code>web.xml</code> to
- * provide convenience methods for easy access and manipulation.
+ * provide convenience methods for easy access and manipulation.<br>
+ * <br>
+ * The children of the root element that are identified by a nested element, for example servlets
+ * by their <code>servlet-name</code>, are indexed so that looking them up does not require going
+ * through the whole descriptor. The indexes are updated as elements get added using
+ * {@link #addElement(DescriptorTag, Element, Element)} or {@link #addTag(DescriptorElement)},
+ * replaced using {@link #replaceElement(Element, Element)} or moved to another descriptor. Elements
+ * removed from the root element or whose identifying element has been changed are left out of
+ * lookups; elements added to the root element directly or renamed in place are however not
+ * indexed, use the methods of the descriptor to add or replace them.
  */
 public class WebXml extends AbstractDescriptor implements J2eeDescriptor
 {
+    /**
+     * Indexed tags, with the path to the nested elements identifying them.
+     */
+    private static final Map<String, String[]> INDEXED_TAGS = new HashMap<String, String[]>();
+
+    static
+    {
+        INDEXED_TAGS.put(WebXmlType.CONTEXT_PARAM, new String[] {WebXmlType.PARAM_NAME});
+        INDEXED_TAGS.put(WebXmlType.FILTER, new String[] {WebXmlType.FILTER_NAME});
+        INDEXED_TAGS.put(WebXmlType.FILTER_MAPPING, new String[] {WebXmlType.FILTER_NAME});
+        INDEXED_TAGS.put(WebXmlType.SERVLET, new String[] {WebXmlType.SERVLET_NAME});
+        INDEXED_TAGS.put(WebXmlType.SERVLET_MAPPING, new String[] {WebXmlType.SERVLET_NAME});
+        INDEXED_TAGS.put(WebXmlType.MIME_MAPPING, new String[] {WebXmlType.EXTENSION});
+        INDEXED_TAGS.put(WebXmlType.SECURITY_ROLE, new String[] {WebXmlType.ROLE_NAME});
+        INDEXED_TAGS.put(WebXmlType.SECURITY_CONSTRAINT,
+            new String[] {WebXmlType.WEB_RESOURCE_COLLECTION, WebXmlType.URL_PATTERN});
+    }
+
     /**
      * List of vendor specific descriptors associated with this web.xml.
      */
     private List<Descriptor> vendorDescriptors = new ArrayList<Descriptor>();
 
+    /**
+     * Indexed children of the root element, by tag name and by identifier. The elements for each
+     * identifier are in document order.
+     */
+    private Map<String, Map<String, List<Element>>> indexes;
+
+    /**
+     * Root element the indexes have been built for.
+     */
+    private Element indexedRoot;
+
     /**
      * Constructor.
      */
@@ -162,4 +205,366 @@ public class WebXml extends AbstractDescriptor implements J2eeDescriptor
         return items.get(0);
     }
 
+    /**
+     * Get the children of the root element with a given tag name and identified by a given value,
+     * for example the servlet mappings of a servlet. The tag must be one of the indexed tags:
+     * <ul>
+     * <li><code>context-param</code>, identified by its <code>param-name</code></li>
+     * <li><code>filter</code> and <code>filter-mapping</code>, identified by their
+     * <code>filter-name</code></li>
+     * <li><code>servlet</code> and <code>servlet-mapping</code>, identified by their
+     * <code>servlet-name</code></li>
+     * <li><code>mime-mapping</code>, identified by its <code>extension</code></li>
+     * <li><code>security-role</code>, identified by its <code>role-name</code></li>
+     * <li><code>security-constraint</code>, identified by the <code>url-pattern</code> of each of
+     * its <code>web-resource-collection</code> elements</li>
+     * </ul>
+     * 
+     * @param tagName Name of the tag.
+     * @param value Value identifying the elements.
+     * @return Matching elements, in document order.
+     */
+    public List<Element> getTagsByKey(String tagName, String value)
+    {
+        if (tagName == null || value == null)
+        {
+            throw new NullPointerException();
+        }
+        if (!INDEXED_TAGS.containsKey(tagName))
+        {
+            throw new IllegalArgumentException("Tag [" + tagName + "] is not indexed");
+        }
+
+        List<Element> elements = getIndex(tagName).get(value);
+        if (elements == null)
+        {
+            return new ArrayList<Element>(0);
+        }
+        List<Element> result = new ArrayList<Element>(elements.size());
+        for (Iterator<Element> i = elements.iterator(); i.hasNext();)
+        {
+            Element element = i.next();
+            if (element.getParent() == this.indexedRoot && getKeys(element).contains(value))
+            {
+                result.add(element);
+            }
+            else
+            {
+                // Removed from the root element or renamed since indexed
+                i.remove();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Element getTagByIdentifier(DescriptorTag tag, String value)
+    {
+        if (value == null || tag == null)
+        {
+            throw new NullPointerException();
+        }
+        if (!isIndexedIdentifier(tag))
+        {
+            return super.getTagByIdentifier(tag, value);
+        }
+
+        String namespaceURI =
+            tag.getTagNamespace() == null ? "" : tag.getTagNamespace().getURI();
+        for (Element element : getTagsByKey(tag.getTagName(), value))
+        {
+            if (namespaceURI.equals(element.getNamespaceURI()))
+            {
+                return element;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Element getTagByIdentifier(String tagName, String value)
+    {
+        if (value == null || tagName == null)
+        {
+            throw new NullPointerException();
+        }
+        DescriptorTag tag = getDescriptorType().getTagByName(tagName);
+        if (tag == null || !isIndexedIdentifier(tag))
+        {
+            return super.getTagByIdentifier(tagName, value);
+        }
+
+        List<Element> elements = getTagsByKey(tagName, value);
+        if (elements.isEmpty())
+        {
+            return null;
+        }
+        return elements.get(0);
+    }
+
+    /**
+     * Adds an element of the specified tag to the descriptor, updating the indexes. {@inheritDoc}
+     */
+    @Override
+    public Element addElement(DescriptorTag tag, Element child, Element parent)
+    {
+        detach(child);
+        if (parent != getRootElement())
+        {
+            return super.addElement(tag, child, parent);
+        }
+
+        buildIndexes();
+        Element added = super.addElement(tag, child, parent);
+        if (added.getParent() == parent)
+        {
+            index(added);
+        }
+        return added;
+    }
+
+    /**
+     * Replaces an element of the descriptor, updating the indexes. {@inheritDoc}
+     */
+    @Override
+    public Element replaceElement(Element existing, Element replacement)
+    {
+        if (existing.getParent() != getRootElement())
+        {
+            return super.replaceElement(existing, replacement);
+        }
+
+        detach(replacement);
+        buildIndexes();
+        unindex(existing);
+        Element replaced = super.replaceElement(existing, replacement);
+        index(replaced);
+        return replaced;
+    }
+
+    /**
+     * Appends an element at the end of the root element, updating the indexes.
+     * 
+     * @param element Element to append.
+     */
+    void appendTag(Element element)
+    {
+        detach(element);
+        buildIndexes();
+        getRootElement().addContent(element);
+        index(element);
+    }
+
+    /**
+     * Checks, using the indexes, if the root element already has a child element that is the same
+     * as the element to add. {@inheritDoc}
+     */
+    @Override
+    protected boolean containsElement(Element parent, Element child)
+    {
+        if (parent == getRootElement() && INDEXED_TAGS.containsKey(child.getName()))
+        {
+            List<String> keys = getKeys(child);
+            if (!keys.isEmpty())
+            {
+                return containsElement(getTagsByKey(child.getName(), keys.get(0)), child);
+            }
+        }
+        return super.containsElement(parent, child);
+    }
+
+    /**
+     * @param tag Descriptor tag.
+     * @return Whether the identifier of the tag is the nested element the tag is indexed by.
+     */
+    private boolean isIndexedIdentifier(DescriptorTag tag)
+    {
+        String[] path = INDEXED_TAGS.get(tag.getTagName());
+        return tag.getIdentifier() != null && path != null && path.length == 1;
+    }
+
+    /**
+     * Get the index of a tag.
+     * 
+     * @param tagName Name of the tag.
+     * @return Index of the tag.
+     */
+    private Map<String, List<Element>> getIndex(String tagName)
+    {
+        buildIndexes();
+        return this.indexes.get(tagName);
+    }
+
+    /**
+     * Builds the indexes, unless they have already been built for the root element.
+     */
+    private void buildIndexes()
+    {
+        if (this.indexes == null || this.indexedRoot != getRootElement())
+        {
+            this.indexes = new HashMap<String, Map<String, List<Element>>>();
+            for (String indexedTag : INDEXED_TAGS.keySet())
+            {
+                this.indexes.put(indexedTag, new HashMap<String, List<Element>>());
+            }
+            this.indexedRoot = getRootElement();
+            for (Element child : (List<Element>) this.indexedRoot.getChildren())
+            {
+                Map<String, List<Element>> index = this.indexes.get(child.getName());
+                if (index != null)
+                {
+                    for (String key : getKeys(child))
+                    {
+                        List<Element> elements = index.get(key);
+                        if (elements == null)
+                        {
+                            elements = new ArrayList<Element>(1);
+                            index.put(key, elements);
+                        }
+                        elements.add(child);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds an element to the indexes, keeping the elements of each identifier in document order.
+     * 
+     * @param element Child of the root element to index.
+     */
+    private void index(Element element)
+    {
+        Map<String, List<Element>> index = this.indexes.get(element.getName());
+        if (index == null)
+        {
+            return;
+        }
+
+        int position = -1;
+        for (String key : getKeys(element))
+        {
+            List<Element> elements = index.get(key);
+            if (elements == null)
+            {
+                elements = new ArrayList<Element>(1);
+                index.put(key, elements);
+            }
+            for (Iterator<Element> i = elements.iterator(); i.hasNext();)
+            {
+                if (i.next().getParent() != this.indexedRoot)
+                {
+                    i.remove();
+                }
+            }
+            if (position == -1 && !elements.isEmpty())
+            {
+                position = this.indexedRoot.indexOf(element);
+            }
+            int i = elements.size();
+            while (i > 0 && this.indexedRoot.indexOf(elements.get(i - 1)) > position)
+            {
+                i--;
+            }
+            elements.add(i, element);
+        }
+    }
+
+    /**
+     * Removes an element from the indexes.
+     * 
+     * @param element Child of the root element to remove from the indexes.
+     */
+    private void unindex(Element element)
+    {
+        Map<String, List<Element>> index = this.indexes.get(element.getName());
+        if (index != null)
+        {
+            for (String key : getKeys(element))
+            {
+                List<Element> elements = index.get(key);
+                if (elements != null)
+                {
+                    elements.remove(element);
+                }
+            }
+        }
+    }
+
+    /**
+     * Detaches an element from its parent, removing it from the indexes of the descriptor it is
+     * the child of the root element of, if any.
+     * 
+     * @param element Element to detach.
+     */
+    private static void detach(Element element)
+    {
+        Document document = element.getDocument();
+        if (document instanceof WebXml && element.getParent() == document.getRootElement())
+        {
+            WebXml webXml = (WebXml) document;
+            if (webXml.indexes != null && webXml.indexedRoot == element.getParent())
+            {
+                webXml.unindex(element);
+            }
+        }
+        element.detach();
+    }
+
+    /**
+     * Get the values identifying an element of an indexed tag, that is the text of the nested
+     * elements at the path the tag is indexed by.
+     * 
+     * @param element Element of an indexed tag.
+     * @return Values identifying the element.
+     */
+    private static List<String> getKeys(Element element)
+    {
+        String[] path = INDEXED_TAGS.get(element.getName());
+        List<String> keys = new ArrayList<String>(1);
+        if (path.length == 1)
+        {
+            // Same as the tag's identifier, which is empty if there is no nested element
+            Element child = getFirstChild(element, path[0]);
+            keys.add(child == null ? "" : child.getValue());
+        }
+        else
+        {
+            for (Element child : (List<Element>) element.getChildren())
+            {
+                if (child.getName().equals(path[0]))
+                {
+                    Element keyElement = getFirstChild(child, path[1]);
+                    if (keyElement != null)
+                    {
+                        keys.add(keyElement.getText());
+                    }
+                }
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * @param parent Parent element.
+     * @param name Name of the child element, in any namespace.
+     * @return First child element with the given name, <code>null</code> if none.
+     */
+    private static Element getFirstChild(Element parent, String name)
+    {
+        for (Element child : (List<Element>) parent.getChildren())
+        {
+            if (child.getName().equals(name))
+            {
+                return child;
+            }
+        }
+        return null;
+    }
 }
@@ -88,16 +88,12 @@ public final class WebXmlUtils
             throw new NullPointerException();
         }
         List<String> filterMappings = new ArrayList<String>();
-        for (Element element : webXml.getTags(WebXmlType.FILTER_MAPPING))
+        for (Element element : webXml.getTagsByKey(WebXmlType.FILTER_MAPPING, theFilterName))
         {
-            FilterMapping filterMappingElement = (FilterMapping) element;
-            if (theFilterName.equals(filterMappingElement.getFilterName()))
+            String urlPattern = ((FilterMapping) element).getUrlPattern();
+            if (urlPattern != null)
             {
-                String urlPattern = filterMappingElement.getUrlPattern();
-                if (urlPattern != null)
-                {
-                    filterMappings.add(urlPattern);
-                }
+                filterMappings.add(urlPattern);
             }
         }
         return filterMappings;
@@ -119,13 +115,9 @@ public final class WebXmlUtils
             throw new NullPointerException();
         }
         List<FilterMapping> filterMappings = new ArrayList<FilterMapping>();
-        for (Element element : webXml.getTags(WebXmlType.FILTER_MAPPING))
+        for (Element element : webXml.getTagsByKey(WebXmlType.FILTER_MAPPING, theFilterName))
         {
-            FilterMapping filterMappingElement = (FilterMapping) element;
-            if (theFilterName.equals(filterMappingElement.getFilterName()))
-            {
-                filterMappings.add(filterMappingElement);
-            }
+            filterMappings.add((FilterMapping) element);
         }
         return filterMappings;
     }
@@ -362,20 +354,17 @@ public final class WebXmlUtils
             throw new NullPointerException();
         }
         List<String> servletMappings = new ArrayList<String>();
-        List<Element> servletMappingElements = webXml.getElements(WebXmlType.SERVLET_MAPPING);
+        List<Element> servletMappingElements =
+            webXml.getTagsByKey(WebXmlType.SERVLET_MAPPING, theServletName);
         for (Element servletMappingElement : servletMappingElements)
         {
-            if (theServletName.equals(servletMappingElement.getChild(
-                WebXmlType.SERVLET_NAME, servletMappingElement.getNamespace()).getText()))
+            String urlPattern =
+                servletMappingElement.getChild(WebXmlType.URL_PATTERN,
+                    servletMappingElement.getNamespace())
+                    .getText();
+            if (urlPattern != null)
             {
-                String urlPattern =
-                    servletMappingElement.getChild(WebXmlType.URL_PATTERN,
-                        servletMappingElement.getNamespace())
-                        .getText();
-                if (urlPattern != null)
-                {
-                    servletMappings.add(urlPattern);
-                }
+                servletMappings.add(urlPattern);
             }
         }
         return servletMappings;
@@ -637,34 +626,19 @@ public final class WebXmlUtils
         {
             throw new NullPointerException();
         }
-        List<Element> securityConstraintElements = webXml.getTags(WebXmlType.SECURITY_CONSTRAINT);
-        SecurityConstraint result = null;
-        for (Element securityConstraintElement : securityConstraintElements)
+        // Security constraints are indexed once per matching web resource collection
+        List<Element> securityConstraintElements =
+            webXml.getTagsByKey(WebXmlType.SECURITY_CONSTRAINT, theUrlPattern);
+        if (securityConstraintElements.isEmpty())
         {
-            List<Element> webResourceCollectionElements = securityConstraintElement.getChildren(
-                    WebXmlType.WEB_RESOURCE_COLLECTION, securityConstraintElement.getNamespace());
-            if (!webResourceCollectionElements.isEmpty())
-            {
-                for (Element webResourceCollectionElement : webResourceCollectionElements)
-                {
-                    String url =
-                        webResourceCollectionElement.getChildText(WebXmlType.URL_PATTERN,
-                            securityConstraintElement.getNamespace());
-
-                    if (theUrlPattern.equals(url))
-                    {
-                        if (result != null)
-                        {
-                            throw new IllegalStateException("Security constraint for URL pattern '"
-                                + theUrlPattern + "' is defined twice");
-                        }
-
-                        result = (SecurityConstraint) securityConstraintElement;
-                    }
-                }
-            }
+            return null;
         }
-        return result;
+        else if (securityConstraintElements.size() > 1)
+        {
+            throw new IllegalStateException("Security constraint for URL pattern '"
+                + theUrlPattern + "' is defined twice");
+        }
+        return (SecurityConstraint) securityConstraintElements.get(0);
     }
 
     /**
@@ -716,17 +690,13 @@ public final class WebXmlUtils
         {
             throw new NullPointerException();
         }
-        List<Element> securityRoleElements = webXml.getTags(WebXmlType.SECURITY_ROLE);
-        for (Element element : securityRoleElements)
+        List<Element> securityRoleElements =
+            webXml.getTagsByKey(WebXmlType.SECURITY_ROLE, theRoleName);
+        if (securityRoleElements.isEmpty())
         {
-            DescriptorElement securityRoleElement = (DescriptorElement) element;
-            if (theRoleName.equals(securityRoleElement.getChildText(
-                WebXmlType.ROLE_NAME, securityRoleElement.getNamespace())))
-            {
-                return securityRoleElement;
-            }
+            return null;
         }
-        return null;
+        return securityRoleElements.get(0);
     }
 
     /**
@@ -810,7 +780,7 @@ public final class WebXmlUtils
                 .getTagByName(WebXmlType.ROLE_NAME).create()
             .setText(theRoleName));
 
-        webXml.getRootElement().addContent(securityRoleElement);
+        webXml.appendTag(securityRoleElement);
 
     }
 
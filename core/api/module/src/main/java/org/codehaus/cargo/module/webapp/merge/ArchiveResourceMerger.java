@@ -82,6 +82,25 @@ public class ArchiveResourceMerger
 
     }
 
+    /**
+     * @return the path of the resource being merged
+     */
+    public String getResource()
+    {
+        return this.resource;
+    }
+
+    /**
+     * Execute the merge in memory.
+     * 
+     * @return the merged resource, <code>null</code> if none of the merge items had it
+     * @throws MergeException if a problem
+     */
+    public InputStream merge() throws MergeException
+    {
+        return (InputStream) this.next.performMerge();
+    }
+
     /**
      * Execute the merge into the assembly directory.
      * 
@@ -90,7 +109,7 @@ public class ArchiveResourceMerger
      */
     public void execute(File assembleDir) throws MergeException
     {
-        InputStream is = (InputStream) this.next.performMerge();
+        InputStream is = merge();
 
         // If we get back nothing, then none of the source files
         // had this resource to do the merge.
@@ -19,21 +19,34 @@
  */
 package org.codehaus.cargo.module.webapp.merge;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileFilter;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipException;
 
 import org.codehaus.cargo.module.AbstractDescriptorIo;
+import org.codehaus.cargo.module.DefaultJarArchive;
+import org.codehaus.cargo.module.Descriptor;
 import org.codehaus.cargo.module.merge.MergeException;
 import org.codehaus.cargo.module.merge.MergeProcessor;
 import org.codehaus.cargo.module.webapp.WarArchive;
 import org.codehaus.cargo.module.webapp.WebXml;
-import org.codehaus.cargo.util.DefaultFileHandler;
 import org.codehaus.cargo.util.FileHandler;
+import org.codehaus.cargo.util.FileHandlerFactory;
 import org.codehaus.cargo.util.JarUtils;
+import org.codehaus.cargo.util.RawZipFile;
+import org.codehaus.cargo.util.RawZipOutputStream;
 import org.jdom.JDOMException;
 
 /**
@@ -41,6 +54,12 @@ import org.jdom.JDOMException;
  */
 public class MergedWarArchive implements WarArchive
 {
+    /**
+     * Largest number of entries of a merged WAR file written without a temporary directory, as
+     * the streamed WAR file cannot use ZIP64 extensions.
+     */
+    private static final int MAX_STREAMED_ENTRIES = 0xFFFF;
+
     /**
      * War files making up this merged war, or type MergeWarFileDetails.
      */
@@ -180,24 +199,303 @@ public class MergedWarArchive implements WarArchive
     }
 
     /**
-     * Here we do actual merge and store resulting war file into the new location. {@inheritDoc}
+     * Here we do actual merge and store resulting war file into the new location.<br>
+     * The entries of the merged WAR files are copied to the new WAR file as they are stored,
+     * without expanding the WAR files in a temporary directory; only the merged deployment
+     * descriptors and the outputs of the merge processors are generated. Merged WAR files which
+     * would need ZIP64 extensions are created from a temporary directory instead. {@inheritDoc}
      */
     @Override
     public void store(File warFile) throws MergeException, IOException, JDOMException
     {
-        DefaultFileHandler fileHandler = new DefaultFileHandler();
+        // 1: Build the entries of the merged WAR file, later ones taking precedence
+        Map<String, Object> entries = new LinkedHashMap<String, Object>();
+        for (MergeWarFileDetails details : this.warFiles)
+        {
+            for (String path : details.getWarFile().getResources(""))
+            {
+                if (!path.endsWith("/"))
+                {
+                    entries.put(path, details);
+                }
+            }
+        }
 
-        // Create place for merge
-        String assembleDir = fileHandler.createUniqueTmpDirectory();
+        if (!mergeJarFiles)
+        {
+            for (Iterator<String> paths = entries.keySet().iterator(); paths.hasNext();)
+            {
+                String path = paths.next();
+                if (path.startsWith("WEB-INF/lib/")
+                    && path.indexOf('/', "WEB-INF/lib/".length()) == -1
+                    && path.toLowerCase().endsWith(".jar"))
+                {
+                    paths.remove();
+                }
+            }
+        }
+
+        for (File jarFile : this.jarFiles)
+        {
+            entries.put("WEB-INF/lib/" + jarFile.getName(), jarFile);
+        }
 
-        // Do actual merge
-        merge(assembleDir);
+        WebXml mergedWebXml = getWebXml();
+        ByteArrayOutputStream webXml = new ByteArrayOutputStream();
+        AbstractDescriptorIo.writeDescriptor(mergedWebXml, webXml, "UTF-8", true);
+        entries.put("WEB-INF/web.xml", webXml.toByteArray());
+        for (Descriptor descriptor : mergedWebXml.getVendorDescriptors())
+        {
+            ByteArrayOutputStream vendorXml = new ByteArrayOutputStream();
+            AbstractDescriptorIo.writeDescriptor(descriptor, vendorXml, "UTF-8", true);
+            entries.put("WEB-INF/" + descriptor.getFileName(), vendorXml.toByteArray());
+        }
 
-        // Create a jar file
-        new JarUtils().createJarFromDirectory(assembleDir, warFile);
+        // 2: Run the merge processors in memory
+        FileHandler fileHandler = FileHandlerFactory.createFileHandler();
+        for (ArchiveResourceMerger processor : this.mergeProcessors)
+        {
+            for (MergeWarFileDetails details : this.warFiles)
+            {
+                processor.addMergeItem(details.getWarFile());
+            }
 
-        // Delete temp directory.
-        fileHandler.delete(assembleDir);
+            InputStream merged = processor.merge();
+            if (merged != null)
+            {
+                ByteArrayOutputStream content = new ByteArrayOutputStream();
+                try
+                {
+                    fileHandler.copy(merged, content);
+                }
+                finally
+                {
+                    merged.close();
+                }
+                String path = processor.getResource().replace('\\', '/');
+                while (path.startsWith("/"))
+                {
+                    path = path.substring(1);
+                }
+                entries.put(path, content.toByteArray());
+            }
+        }
+
+        // 3: Write the merged WAR file, the limits being checked against the entries written
+        if (warFile.getParentFile() != null && !warFile.getParentFile().exists())
+        {
+            warFile.getParentFile().mkdirs();
+        }
+        if (entries.size() < MAX_STREAMED_ENTRIES)
+        {
+            try
+            {
+                writeEntries(entries, createOutputStream(warFile));
+                return;
+            }
+            catch (ZipException e)
+            {
+                // Needs ZIP64 extensions, created from a temporary directory below
+                warFile.delete();
+            }
+        }
+        storeUsingDirectory(entries, warFile);
+    }
+
+    /**
+     * @param warFile Merged WAR file.
+     * @return Stream writing the merged WAR file.
+     * @throws IOException If the WAR file cannot be created.
+     */
+    RawZipOutputStream createOutputStream(File warFile) throws IOException
+    {
+        return new RawZipOutputStream(new FileOutputStream(warFile));
+    }
+
+    /**
+     * Writes the entries of the merged WAR file.
+     * @param entries Entries of the merged WAR file, with as value either the
+     * {@link MergeWarFileDetails} to copy the entry from, the {@link File} to add or the content
+     * of the entry.
+     * @param out Stream to write the entries to, which will be closed.
+     * @throws IOException If reading or writing fails.
+     */
+    private void writeEntries(Map<String, Object> entries, RawZipOutputStream out)
+        throws IOException
+    {
+        FileHandler fileHandler = FileHandlerFactory.createFileHandler();
+        long now = System.currentTimeMillis();
+        Map<MergeWarFileDetails, RawZipFile> sources =
+            new HashMap<MergeWarFileDetails, RawZipFile>();
+        try
+        {
+            for (Map.Entry<String, Object> entry : entries.entrySet())
+            {
+                String path = entry.getKey();
+                Object source = entry.getValue();
+                if (source instanceof byte[])
+                {
+                    out.putNextEntry(path, now);
+                    out.write((byte[]) source);
+                    continue;
+                }
+
+                if (source instanceof MergeWarFileDetails)
+                {
+                    RawZipFile zipFile = getRawZipFile((MergeWarFileDetails) source, sources);
+                    RawZipFile.Entry zipEntry = zipFile != null ? zipFile.getEntry(path) : null;
+                    if (zipEntry != null)
+                    {
+                        zipFile.copyTo(zipEntry, out);
+                        continue;
+                    }
+                }
+
+                InputStream in = openEntry(path, source, fileHandler);
+                try
+                {
+                    out.putNextEntry(path, now);
+                    fileHandler.copy(in, out);
+                }
+                finally
+                {
+                    in.close();
+                }
+            }
+        }
+        finally
+        {
+            try
+            {
+                for (RawZipFile zipFile : sources.values())
+                {
+                    if (zipFile != null)
+                    {
+                        zipFile.close();
+                    }
+                }
+            }
+            finally
+            {
+                out.close();
+            }
+        }
+    }
+
+    /**
+     * @param path Path of the entry.
+     * @param source Source of the entry, either the {@link MergeWarFileDetails} to copy the entry
+     * from, the {@link File} to add or the content of the entry.
+     * @param fileHandler File handler.
+     * @return Stream reading the content of the entry.
+     * @throws IOException If the entry cannot be read.
+     */
+    private static InputStream openEntry(String path, Object source, FileHandler fileHandler)
+        throws IOException
+    {
+        if (source instanceof byte[])
+        {
+            return new ByteArrayInputStream((byte[]) source);
+        }
+        else if (source instanceof File)
+        {
+            return fileHandler.getInputStream(((File) source).getAbsolutePath());
+        }
+        return ((MergeWarFileDetails) source).getWarFile().getResource(path);
+    }
+
+    /**
+     * @param details WAR file details.
+     * @param sources Already opened WAR files, <code>null</code> values for the WAR files which
+     * cannot be read as they are stored.
+     * @return The WAR file opened for copying its entries as they are stored, <code>null</code>
+     * if the WAR file is not a local file or not supported.
+     * @throws IOException If reading the WAR file fails.
+     */
+    private RawZipFile getRawZipFile(MergeWarFileDetails details,
+        Map<MergeWarFileDetails, RawZipFile> sources) throws IOException
+    {
+        if (!sources.containsKey(details))
+        {
+            RawZipFile zipFile = null;
+            File localFile = getLocalFile(details.getWarFile());
+            if (localFile != null)
+            {
+                try
+                {
+                    zipFile = new RawZipFile(localFile);
+                }
+                catch (ZipException e)
+                {
+                    // Not supported, the entries will be read one by one
+                    zipFile = null;
+                }
+            }
+            sources.put(details, zipFile);
+        }
+        return sources.get(details);
+    }
+
+    /**
+     * @param warArchive WAR file.
+     * @return The WAR file if it is a local file, <code>null</code> otherwise.
+     */
+    private static File getLocalFile(WarArchive warArchive)
+    {
+        if (warArchive instanceof DefaultJarArchive)
+        {
+            return ((DefaultJarArchive) warArchive).getLocalFile();
+        }
+        return null;
+    }
+
+    /**
+     * Writes the entries of the merged WAR file in a temporary directory and creates the
+     * resulting WAR file from it. This is used for merged WAR files which would need ZIP64
+     * extensions.
+     * @param entries Entries of the merged WAR file, as for
+     * {@link #writeEntries(Map, RawZipOutputStream)}.
+     * @param warFile Resulting WAR file.
+     * @throws IOException If there was a problem reading or writing the WAR files
+     */
+    private void storeUsingDirectory(Map<String, Object> entries, File warFile)
+        throws IOException
+    {
+        FileHandler fileHandler = FileHandlerFactory.createFileHandler();
+
+        // Create place for merge
+        String assembleDir = fileHandler.createUniqueTmpDirectory();
+        try
+        {
+            for (Map.Entry<String, Object> entry : entries.entrySet())
+            {
+                String file = fileHandler.append(assembleDir, entry.getKey());
+                fileHandler.mkdirs(fileHandler.getParent(file));
+                InputStream in = openEntry(entry.getKey(), entry.getValue(), fileHandler);
+                OutputStream out = null;
+                try
+                {
+                    out = fileHandler.getOutputStream(file);
+                    fileHandler.copy(in, out);
+                }
+                finally
+                {
+                    in.close();
+                    if (out != null)
+                    {
+                        out.close();
+                    }
+                }
+            }
+
+            // Create a jar file
+            new JarUtils().createJarFromDirectory(assembleDir, warFile);
+        }
+        finally
+        {
+            // Delete temp directory.
+            fileHandler.delete(assembleDir);
+        }
     }
 
     /**
@@ -209,7 +507,7 @@ public class MergedWarArchive implements WarArchive
      */
     public void merge(String assembleDir) throws MergeException, IOException, JDOMException
     {
-        DefaultFileHandler fileHandler = new DefaultFileHandler();
+        FileHandler fileHandler = FileHandlerFactory.createFileHandler();
 
         // 1: Merge together the web XML items
         WebXml mergedWebXml = getWebXml();
@@ -245,7 +543,7 @@ public class MergedWarArchive implements WarArchive
      */
     private void copyJars(String assembleDir)
     {
-        FileHandler fileHandler = new DefaultFileHandler();
+        FileHandler fileHandler = FileHandlerFactory.createFileHandler();
 
         File f = new File(assembleDir);
         File webInfLib = new File(f, "WEB-INF/lib");
@@ -329,27 +329,14 @@ public class WebXmlMerger extends XmlMerger
     {
         int count = 0;
 
-        List<Element> srcItems = webXml.getTags(WebXmlType.MIME_MAPPING);
         List<Element> targetItems = theWebXml.getTags(WebXmlType.MIME_MAPPING);
 
         for (Element targetItem : targetItems)
         {
-            boolean foundItem = false;
-
             MimeMapping targetMimeMapping = (MimeMapping) targetItem;
 
-            for (Element srcItem : srcItems)
-            {
-                MimeMapping srcMimeMapping = (MimeMapping) srcItem;
-
-                if (targetMimeMapping.getExtension().equals(srcMimeMapping.getExtension()))
-                {
-                    foundItem = true;
-                    break;
-                }
-            }
-
-            if (!foundItem)
+            if (this.webXml.getTagsByKey(
+                WebXmlType.MIME_MAPPING, targetMimeMapping.getExtension()).isEmpty())
             {
                 MimeMapping mimeMappingElement = (MimeMapping) webXml.getDescriptorType().
                     getTagByName(WebXmlType.MIME_MAPPING).create();
@@ -359,7 +346,6 @@ public class WebXmlMerger extends XmlMerger
 
                 this.webXml.addElement(mimeMappingElement.getTag(), mimeMappingElement,
                     this.webXml.getRootElement());
-                this.webXml.addTag(mimeMappingElement);
             }
         }
 
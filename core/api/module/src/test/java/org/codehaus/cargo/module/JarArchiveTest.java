@@ -22,8 +22,13 @@
  */
 package org.codehaus.cargo.module;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.util.List;
+import java.util.UUID;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
@@ -179,6 +184,47 @@ public final class JarArchiveTest extends AbstractResourceTest
         assertEquals(0, resources.size());
     }
 
+    /**
+     * Verifies that the methods reading resources work on archives constructed from a stream.
+     * 
+     * @throws Exception If an unexpected error occurs
+     */
+    public void testStreamConstructedArchive() throws Exception
+    {
+        JarArchive jar = new DefaultJarArchive(
+            new FileInputStream(getResourcePath(PACKAGE_PATH + "test.jar")));
+        assertEquals("folder1/resourceOne.txt", jar.findResource("resourceOne.txt"));
+        assertEquals(6, jar.getResources("").size());
+        assertNotNull(jar.getResource("rootResource.txt"));
+        assertNull(jar.getResource("foo"));
+    }
+
+    /**
+     * Verifies that the index of the archive entries is rebuilt when the archive file changes.
+     * 
+     * @throws Exception If an unexpected error occurs
+     */
+    public void testArchiveChange() throws Exception
+    {
+        File jarFile = new File("target/" + UUID.randomUUID().toString() + ".jar");
+        try
+        {
+            createJar(jarFile, "folder/first.txt");
+            JarArchive jar = new DefaultJarArchive(jarFile.getPath());
+            assertEquals("folder/first.txt", jar.findResource("first.txt"));
+            assertNull(jar.findResource("second.txt"));
+
+            createJar(jarFile, "folder/first.txt", "second.txt");
+            jarFile.setLastModified(jarFile.lastModified() + 2000);
+            assertEquals("second.txt", jar.findResource("second.txt"));
+            assertContains(jar.getResource("second.txt"), "second.txt");
+        }
+        finally
+        {
+            jarFile.delete();
+        }
+    }
+
     /**
      * Verifies that the method <code>expandToPath()</code> works.
      * 
@@ -202,4 +248,30 @@ public final class JarArchiveTest extends AbstractResourceTest
         // Verify that the rootResource.txt file has been correctly expanded
         assertTrue(this.fsManager.resolveFile("ram:///test/rootResource.txt").exists());
     }
+
+    /**
+     * Creates a JAR file containing entries with their own name as content.
+     * 
+     * @param jarFile JAR file to create.
+     * @param entryNames Names of the entries.
+     * @throws IOException If anything goes wrong.
+     */
+    private void createJar(File jarFile, String... entryNames) throws IOException
+    {
+        jarFile.getParentFile().mkdirs();
+        ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(jarFile));
+        try
+        {
+            for (String entryName : entryNames)
+            {
+                zos.putNextEntry(new ZipEntry(entryName));
+                zos.write(entryName.getBytes("UTF-8"));
+                zos.closeEntry();
+            }
+        }
+        finally
+        {
+            zos.close();
+        }
+    }
 }
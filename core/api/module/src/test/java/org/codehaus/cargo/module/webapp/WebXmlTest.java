@@ -24,6 +24,7 @@ package org.codehaus.cargo.module.webapp;
 
 import java.io.ByteArrayInputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
@@ -1713,6 +1714,149 @@ public final class WebXmlTest extends AbstractDocumentBuilderTest
         assertEquals("MyEjb", m.getText());
     }
 
+    /**
+     * Tests that lookups see children of the root element replaced through the descriptor.
+     * 
+     * @throws Exception If an unexpected error occurs
+     */
+    public void testLookupAfterReplaceElement() throws Exception
+    {
+        String xml = WEBAPP_TEST_HEADER
+            + "  <servlet>"
+            + "    <servlet-name>s1</servlet-name>"
+            + "    <servlet-class>sclass1</servlet-class>"
+            + "  </servlet>"
+            + "  <servlet-mapping>"
+            + "    <servlet-name>s1</servlet-name>"
+            + "    <url-pattern>/s1</url-pattern>"
+            + "  </servlet-mapping>"
+            + "</web-app>";
+        WebXml webXml = WebXmlIo.parseWebXml(new ByteArrayInputStream(xml.getBytes("UTF-8")),
+            getEntityResolver());
+        assertTrue(WebXmlUtils.hasServlet(webXml, "s1"));
+
+        Element servlet = webXml.getTag(WebXmlType.SERVLET);
+        int index = webXml.getRootElement().indexOf(servlet);
+        Element replacement = createServletElement(webXml.getDescriptorType(), "s2", "sclass2");
+        assertSame(replacement, webXml.replaceElement(servlet, replacement));
+
+        assertEquals(index, webXml.getRootElement().indexOf(replacement));
+        assertNull(servlet.getParent());
+        assertFalse(WebXmlUtils.hasServlet(webXml, "s1"));
+        assertTrue(WebXmlUtils.hasServlet(webXml, "s2"));
+        assertSame(replacement, webXml.getTagByIdentifier(WebXmlType.SERVLET, "s2"));
+    }
+
+    /**
+     * Tests that lookups leave out elements removed from the root element or renamed in place
+     * without going through the descriptor.
+     * 
+     * @throws Exception If an unexpected error occurs
+     */
+    public void testLookupAfterInPlaceChanges() throws Exception
+    {
+        String xml = WEBAPP_TEST_HEADER
+            + "  <servlet>"
+            + "    <servlet-name>a</servlet-name>"
+            + "    <servlet-class>sclass1</servlet-class>"
+            + "  </servlet>"
+            + "  <servlet-mapping>"
+            + "    <servlet-name>b</servlet-name>"
+            + "    <url-pattern>/b</url-pattern>"
+            + "  </servlet-mapping>"
+            + "  <servlet-mapping>"
+            + "    <servlet-name>a</servlet-name>"
+            + "    <url-pattern>/a</url-pattern>"
+            + "  </servlet-mapping>"
+            + "</web-app>";
+        WebXml webXml = WebXmlIo.parseWebXml(new ByteArrayInputStream(xml.getBytes("UTF-8")),
+            getEntityResolver());
+        assertTrue(WebXmlUtils.hasServlet(webXml, "a"));
+        assertEquals(Collections.singletonList("/a"), WebXmlUtils.getServletMappings(webXml, "a"));
+        assertEquals(Collections.singletonList("/b"), WebXmlUtils.getServletMappings(webXml, "b"));
+
+        Element servlet = webXml.getTag(WebXmlType.SERVLET);
+        servlet.getChild(WebXmlType.SERVLET_NAME, servlet.getNamespace()).setText("c");
+        List<Element> servletMappings = webXml.getTags(WebXmlType.SERVLET_MAPPING);
+        webXml.getRootElement().removeContent(servletMappings.get(0));
+        Element servletMapping = servletMappings.get(1);
+        servletMapping.getChild(WebXmlType.SERVLET_NAME, servletMapping.getNamespace())
+            .setText("c");
+
+        assertFalse(WebXmlUtils.hasServlet(webXml, "a"));
+        assertNull(webXml.getTagByIdentifier(WebXmlType.SERVLET, "a"));
+        assertTrue(WebXmlUtils.getServletMappings(webXml, "a").isEmpty());
+        assertTrue(WebXmlUtils.getServletMappings(webXml, "b").isEmpty());
+    }
+
+    /**
+     * Tests that elements added to the descriptor are looked up in document order.
+     * 
+     * @throws Exception If an unexpected error occurs
+     */
+    public void testLookupAfterAddElementKeepsDocumentOrder() throws Exception
+    {
+        String xml = WEBAPP_TEST_HEADER
+            + "  <servlet>"
+            + "    <servlet-name>s1</servlet-name>"
+            + "    <servlet-class>sclass1</servlet-class>"
+            + "  </servlet>"
+            + "  <servlet-mapping>"
+            + "    <servlet-name>s1</servlet-name>"
+            + "    <url-pattern>/s1mapping1</url-pattern>"
+            + "  </servlet-mapping>"
+            + "  <mime-mapping>"
+            + "    <extension>txt</extension>"
+            + "    <mime-type>text/plain</mime-type>"
+            + "  </mime-mapping>"
+            + "  <servlet-mapping>"
+            + "    <servlet-name>s1</servlet-name>"
+            + "    <url-pattern>/s1mapping3</url-pattern>"
+            + "  </servlet-mapping>"
+            + "</web-app>";
+        WebXml webXml = WebXmlIo.parseWebXml(new ByteArrayInputStream(xml.getBytes("UTF-8")),
+            getEntityResolver());
+        assertEquals(2, WebXmlUtils.getServletMappings(webXml, "s1").size());
+
+        // Inserted before the mime mapping, hence between the existing servlet mappings
+        WebXmlUtils.addServletMapping(webXml, "s1", "/s1mapping2");
+        WebXmlUtils.addServlet(webXml, "s2", "sclass2");
+        WebXmlUtils.addServletMapping(webXml, "s2", "/s2mapping");
+
+        assertEquals(Arrays.asList("/s1mapping1", "/s1mapping2", "/s1mapping3"),
+            WebXmlUtils.getServletMappings(webXml, "s1"));
+        assertEquals(Collections.singletonList("/s2mapping"),
+            WebXmlUtils.getServletMappings(webXml, "s2"));
+    }
+
+    /**
+     * Tests that an element moved from a descriptor to another one can no longer be looked up in
+     * the original descriptor.
+     * 
+     * @throws Exception If an unexpected error occurs
+     */
+    public void testLookupAfterMovingElement() throws Exception
+    {
+        String xml = WEBAPP_TEST_HEADER
+            + "  <servlet>"
+            + "    <servlet-name>s1</servlet-name>"
+            + "    <servlet-class>sclass1</servlet-class>"
+            + "  </servlet>"
+            + "</web-app>";
+        WebXml webXml = WebXmlIo.parseWebXml(new ByteArrayInputStream(xml.getBytes("UTF-8")),
+            getEntityResolver());
+        WebXml otherWebXml = WebXmlIo.parseWebXml(
+            new ByteArrayInputStream((WEBAPP_TEST_HEADER + "</web-app>").getBytes("UTF-8")),
+            getEntityResolver());
+        assertTrue(WebXmlUtils.hasServlet(webXml, "s1"));
+        assertFalse(WebXmlUtils.hasServlet(otherWebXml, "s1"));
+
+        WebXmlUtils.addServlet(otherWebXml, WebXmlUtils.getServlet(webXml, "s1"));
+
+        assertFalse(WebXmlUtils.hasServlet(webXml, "s1"));
+        assertTrue(WebXmlUtils.hasServlet(otherWebXml, "s1"));
+    }
+
     // Private Methods ---------------------------------------------------------
 
     /**
@@ -0,0 +1,258 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus CARGO, copyright 2004-2011 Vincent Massol, 2012-2016 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.module.webapp.merge;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import org.codehaus.cargo.module.merge.MergeException;
+import org.codehaus.cargo.module.merge.MergeProcessor;
+import org.codehaus.cargo.module.webapp.DefaultWarArchive;
+import org.codehaus.cargo.util.AbstractTemporaryDirectoryTest;
+import org.codehaus.cargo.util.DefaultFileHandler;
+import org.codehaus.cargo.util.RawZipOutputStream;
+
+/**
+ * Unit tests for {@link MergedWarArchive#store(File)}.
+ */
+public class MergedWarArchiveTest extends AbstractTemporaryDirectoryTest
+{
+    /**
+     * Deployment descriptor of the test WAR files.
+     */
+    private static final String WEB_XML = "<web-app></web-app>";
+
+    /**
+     * Merge processor concatenating its merge items.
+     */
+    private static class ConcatenatingMergeProcessor implements MergeProcessor
+    {
+        /**
+         * Content of the merge items.
+         */
+        private ByteArrayOutputStream content = new ByteArrayOutputStream();
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void addMergeItem(Object mergeItem) throws MergeException
+        {
+            InputStream in = (InputStream) mergeItem;
+            try
+            {
+                try
+                {
+                    new DefaultFileHandler().copy(in, this.content);
+                }
+                finally
+                {
+                    in.close();
+                }
+            }
+            catch (IOException e)
+            {
+                throw new MergeException("Cannot read merge item", e);
+            }
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Object performMerge() throws MergeException
+        {
+            return new ByteArrayInputStream(this.content.toByteArray());
+        }
+    }
+
+    /**
+     * Test that the entries of the WAR files merged last take precedence.
+     * @throws Exception If anything goes wrong.
+     */
+    public void testLaterWarFilesTakePrecedence() throws Exception
+    {
+        MergedWarArchive merged = new MergedWarArchive();
+        merged.add(createWar("first.war", "index.jsp", "first", "first.jsp", "first"));
+        merged.add(createWar("second.war", "index.jsp", "second", "second.jsp", "second"));
+
+        File warFile = store(merged);
+
+        assertEquals("second", read(warFile, "index.jsp"));
+        assertEquals("first", read(warFile, "first.jsp"));
+        assertEquals("second", read(warFile, "second.jsp"));
+        assertNotNull(read(warFile, "WEB-INF/web.xml"));
+    }
+
+    /**
+     * Test that the JAR files of the merged WAR files are left out when JAR files are not merged,
+     * whereas the JAR files added to the merge are kept.
+     * @throws Exception If anything goes wrong.
+     */
+    public void testJarFilesAreNotMerged() throws Exception
+    {
+        File jarFile = getTemporaryFile("added.jar");
+        getFileHandler().writeTextFile(jarFile.getPath(), "added", "UTF-8");
+        MergedWarArchive merged = new MergedWarArchive();
+        merged.add(createWar("first.war", "WEB-INF/lib/first.jar", "first",
+            "WEB-INF/lib/nested/other.jar", "other"));
+        merged.addJar(jarFile);
+        merged.mergeJarFiles(false);
+
+        File warFile = store(merged);
+
+        assertNull(read(warFile, "WEB-INF/lib/first.jar"));
+        assertEquals("other", read(warFile, "WEB-INF/lib/nested/other.jar"));
+        assertEquals("added", read(warFile, "WEB-INF/lib/added.jar"));
+    }
+
+    /**
+     * Test that the outputs of the merge processors override the entries of the WAR files.
+     * @throws Exception If anything goes wrong.
+     */
+    public void testMergeProcessors() throws Exception
+    {
+        MergedWarArchive merged = new MergedWarArchive();
+        merged.add(createWar("first.war", "WEB-INF/merged.txt", "first", "a.txt", "a"));
+        merged.add(createWar("second.war", "WEB-INF/merged.txt", "second", "b.txt", "b"));
+        merged.addProcessor("WEB-INF/merged.txt", new ConcatenatingMergeProcessor());
+
+        File warFile = store(merged);
+
+        assertEquals("firstsecond", read(warFile, "WEB-INF/merged.txt"));
+        assertEquals("a", read(warFile, "a.txt"));
+    }
+
+    /**
+     * Test that a merged WAR file which cannot be streamed, for example as it would need ZIP64
+     * extensions, is created from a temporary directory instead.
+     * @throws Exception If anything goes wrong.
+     */
+    public void testFallbackToDirectory() throws Exception
+    {
+        MergedWarArchive merged = new MergedWarArchive()
+        {
+            @Override
+            RawZipOutputStream createOutputStream(File warFile) throws IOException
+            {
+                return new RawZipOutputStream(new FileOutputStream(warFile))
+                {
+                    @Override
+                    public void putNextEntry(String name, long time) throws IOException
+                    {
+                        throw new ZipException("ZIP64 archives are not supported");
+                    }
+                };
+            }
+        };
+        merged.add(createWar("first.war", "index.jsp", "first", "first.jsp", "first"));
+        merged.add(createWar("second.war", "index.jsp", "second", "second.jsp", "second"));
+        merged.addProcessor("index.jsp", new ConcatenatingMergeProcessor());
+
+        File warFile = store(merged);
+
+        assertEquals("firstsecond", read(warFile, "index.jsp"));
+        assertEquals("first", read(warFile, "first.jsp"));
+        assertEquals("second", read(warFile, "second.jsp"));
+        assertNotNull(read(warFile, "WEB-INF/web.xml"));
+    }
+
+    /**
+     * @param merged Merged WAR file.
+     * @return File the merged WAR file has been stored to.
+     * @throws Exception If anything goes wrong.
+     */
+    private File store(MergedWarArchive merged) throws Exception
+    {
+        File warFile = getTemporaryFile("merged.war");
+        merged.store(warFile);
+        return warFile;
+    }
+
+    /**
+     * @param name Name of the WAR file.
+     * @param entries Alternating entry names and contents, next to the deployment descriptor.
+     * @return The WAR file.
+     * @throws IOException If anything goes wrong.
+     */
+    private DefaultWarArchive createWar(String name, String... entries) throws IOException
+    {
+        List<String> contents = new ArrayList<String>();
+        contents.add("WEB-INF/web.xml");
+        contents.add(WEB_XML);
+        for (String entry : entries)
+        {
+            contents.add(entry);
+        }
+
+        File warFile = getTemporaryFile(name);
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(warFile));
+        try
+        {
+            for (int i = 0; i < contents.size(); i += 2)
+            {
+                out.putNextEntry(new ZipEntry(contents.get(i)));
+                out.write(contents.get(i + 1).getBytes("UTF-8"));
+                out.closeEntry();
+            }
+        }
+        finally
+        {
+            out.close();
+        }
+        return new DefaultWarArchive(warFile.getPath());
+    }
+
+    /**
+     * @param warFile WAR file.
+     * @param path Path of the entry.
+     * @return Content of the entry, <code>null</code> if it does not exist.
+     * @throws IOException If anything goes wrong.
+     */
+    private String read(File warFile, String path) throws IOException
+    {
+        ZipFile zipFile = new ZipFile(warFile);
+        try
+        {
+            ZipEntry entry = zipFile.getEntry(path);
+            if (entry == null)
+            {
+                return null;
+            }
+            ByteArrayOutputStream content = new ByteArrayOutputStream();
+            getFileHandler().copy(zipFile.getInputStream(entry), content);
+            return new String(content.toByteArray(), "UTF-8");
+        }
+        finally
+        {
+            zipFile.close();
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * ========================================================================
+ *
+ * Copyright 2003 The Apache Software Foundation. Code from this file 
+ * was originally imported from the Jakarta Cactus project.
+ *
+ * Codehaus CARGO, copyright 2004-2011 Vincent Massol, 2012-2016 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.module.webapp.merge;
+
+import java.io.ByteArrayInputStream;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.codehaus.cargo.module.webapp.WebXml;
+import org.codehaus.cargo.module.webapp.WebXmlIo;
+import org.codehaus.cargo.module.webapp.WebXmlUtils;
+
+/**
+ * Performance tests for {@link WebXmlMerger}, which are not part of the unit tests and run using
+ * the <code>performance-tests</code> profile.
+ */
+public final class WebXmlMergerPerformanceTest extends TestCase
+{
+    /**
+     * Tests the merging of descriptors with thousands of servlets and servlet mappings.
+     * 
+     * @throws Exception If an unexpected error occurs
+     */
+    public void testMergeLargeDescriptors() throws Exception
+    {
+        WebXml srcWebXml = WebXmlIo.parseWebXml(
+            new ByteArrayInputStream(createWebXml(0, 5000).getBytes("UTF-8")), null);
+        WebXml mergeWebXml = WebXmlIo.parseWebXml(
+            new ByteArrayInputStream(createWebXml(2500, 7500).getBytes("UTF-8")), null);
+        WebXmlMerger merger = new WebXmlMerger(srcWebXml);
+        merger.merge(mergeWebXml);
+
+        assertEquals(7500, WebXmlUtils.getServletNames(srcWebXml).size());
+        for (int i = 0; i < 7500; i += 499)
+        {
+            assertTrue(WebXmlUtils.hasServlet(srcWebXml, "s" + i));
+            List<String> servletMappings = WebXmlUtils.getServletMappings(srcWebXml, "s" + i);
+            assertEquals(1, servletMappings.size());
+            assertEquals("/s" + i, servletMappings.get(0));
+        }
+    }
+
+    /**
+     * Creates a descriptor with servlets and servlet mappings.
+     * 
+     * @param from Number of the first servlet.
+     * @param to Number of the last servlet, excluded.
+     * @return Descriptor.
+     */
+    private String createWebXml(int from, int to)
+    {
+        StringBuilder xml = new StringBuilder("<web-app>");
+        for (int i = from; i < to; i++)
+        {
+            xml.append("<servlet><servlet-name>s").append(i).append("</servlet-name>");
+            xml.append("<servlet-class>sclass").append(i).append("</servlet-class></servlet>");
+        }
+        for (int i = from; i < to; i++)
+        {
+            xml.append("<servlet-mapping><servlet-name>s").append(i).append("</servlet-name>");
+            xml.append("<url-pattern>/s").append(i).append("</url-pattern></servlet-mapping>");
+        }
+        xml.append("</web-app>");
+        return xml.toString();
+    }
+}
@@ -380,5 +380,4 @@ public final class WebXmlServletMergerTest extends AbstractDocumentBuilderTest
         assertEquals(1, servletMappings.size());
         assertEquals("/s1", servletMappings.get(0));
     }
-
 }
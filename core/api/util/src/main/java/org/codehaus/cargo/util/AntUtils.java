@@ -154,6 +154,12 @@ public class AntUtils
     public void addTokenToFilterChain(FilterChain filterChain, String key,
         String value)
     {
+        if (filterChain instanceof TokenFilterChain)
+        {
+            ((TokenFilterChain) filterChain).addToken(key, value);
+            return;
+        }
+
         ReplaceTokens replaceToken = new ReplaceTokens();
         ReplaceTokens.Token token = new ReplaceTokens.Token();
         token.setKey(key);
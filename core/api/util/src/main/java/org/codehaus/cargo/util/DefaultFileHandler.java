@@ -44,15 +44,6 @@ import java.util.Vector;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 
-import javax.xml.xpath.XPath;
-import javax.xml.xpath.XPathConstants;
-import javax.xml.xpath.XPathExpression;
-import javax.xml.xpath.XPathFactory;
-
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-
 import org.apache.tools.ant.BuildException;
 import org.apache.tools.ant.filters.util.ChainReaderHelper;
 import org.apache.tools.ant.taskdefs.Copy;
@@ -67,6 +58,11 @@ import org.codehaus.cargo.util.log.LoggedObject;
  */
 public class DefaultFileHandler extends LoggedObject implements FileHandler
 {
+    /**
+     * Size of the buffer used when exploding archives.
+     */
+    private static final int EXPLODE_BUFFER_SIZE = 64 * 1024;
+
     /**
      * Counter for creating unique temp directories.
      */
@@ -203,8 +199,6 @@ public class DefaultFileHandler extends LoggedObject implements FileHandler
                 {
                     // Ignored
                 }
-                fileIS = null;
-                System.gc();
             }
         }
     }
@@ -302,7 +296,7 @@ public class DefaultFileHandler extends LoggedObject implements FileHandler
             delete(exploded);
         }
 
-        byte[] buf = new byte[1024];
+        byte[] buf = new byte[EXPLODE_BUFFER_SIZE];
 
         JarFile archive = null;
         try
@@ -322,36 +316,14 @@ public class DefaultFileHandler extends LoggedObject implements FileHandler
 
                 mkdirs(getParent(dst));
 
-                InputStream in = null;
-                FileOutputStream out = null;
+                InputStream in = archive.getInputStream(j);
                 try
                 {
-                    in = archive.getInputStream(j);
-                    out = new FileOutputStream(dst);
-                    while (true)
-                    {
-                        int sz = in.read(buf);
-                        if (sz < 0)
-                        {
-                            break;
-                        }
-                        out.write(buf, 0, sz);
-                    }
+                    extractTo(in, dst, buf);
                 }
                 finally
                 {
-                    if (in != null)
-                    {
-                        in.close();
-                        in = null;
-                        System.gc();
-                    }
-                    if (out != null)
-                    {
-                        out.close();
-                        out = null;
-                        System.gc();
-                    }
+                    in.close();
                 }
             }
         }
@@ -372,12 +344,34 @@ public class DefaultFileHandler extends LoggedObject implements FileHandler
                 {
                     // Ignored
                 }
-                archive = null;
-                System.gc();
             }
         }
     }
 
+    /**
+     * Writes the content of an archive entry to a file.
+     * @param in Archive entry content.
+     * @param target File to write to.
+     * @param buf Buffer to use.
+     * @throws IOException If reading or writing fails.
+     */
+    private void extractTo(InputStream in, String target, byte[] buf) throws IOException
+    {
+        OutputStream out = new FileOutputStream(target);
+        try
+        {
+            int sz;
+            while ((sz = in.read(buf)) != -1)
+            {
+                out.write(buf, 0, sz);
+            }
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -511,63 +505,9 @@ public class DefaultFileHandler extends LoggedObject implements FileHandler
     private void replaceInXmlFile(String file, Map<XmlReplacementDetails, String> replacements)
         throws CargoException
     {
-        XmlUtils domUtils = new XmlUtils(this);
-        Document doc = domUtils.loadXmlFromFile(file);
-
-        try
-        {
-            XPathFactory xPathFactory = XPathFactory.newInstance();
-            XPath xPath = xPathFactory.newXPath();
-
-            for (Map.Entry<XmlReplacementDetails, String> replacement : replacements.entrySet())
-            {
-                String expression = replacement.getKey().getXpathExpression();
-                String attributeName = replacement.getKey().getAttributeName();
-
-                XPathExpression xPathExpr = xPath.compile(expression);
-
-                Node node = (Node) xPathExpr.evaluate(doc, XPathConstants.NODE);
-
-                if (node == null)
-                {
-                    String message = "Node " + expression + " not found in file " + file;
-
-                    if (replacement.getKey().isIgnoreIfNonExisting() == Boolean.TRUE)
-                    {
-                        getLogger().debug(message, this.getClass().getName());
-                        continue;
-                    }
-                    else
-                    {
-                        throw new CargoException(message);
-                    }
-                }
-
-                if (attributeName != null)
-                {
-                    Node attribute = node.getAttributes().getNamedItem(attributeName);
-
-                    if (attribute == null)
-                    {
-                        ((Element) node).setAttribute(attributeName, replacement.getValue());
-                    }
-                    else
-                    {
-                        attribute.setNodeValue(replacement.getValue());
-                    }
-                }
-                else
-                {
-                    node.setTextContent(replacement.getValue());
-                }
-            }
-        }
-        catch (Exception e)
-        {
-            throw new CargoException("Cannot modify XML document " + file, e);
-        }
-
-        domUtils.saveXml(doc, file);
+        XmlReplacer xmlReplacer = new XmlReplacer(this);
+        xmlReplacer.setLogger(getLogger());
+        xmlReplacer.replace(file, replacements);
     }
 
     /**
@@ -618,7 +558,11 @@ public class DefaultFileHandler extends LoggedObject implements FileHandler
                 delete(element.getPath());
             }
         }
-        pathAsFile.delete();
+        if (!pathAsFile.delete() && pathAsFile.exists()
+            && FileLockWorkaround.releaseFileLocks())
+        {
+            pathAsFile.delete();
+        }
     }
 
     /**
@@ -911,8 +855,6 @@ public class DefaultFileHandler extends LoggedObject implements FileHandler
             try
             {
                 writer.close();
-                writer = null;
-                System.gc();
             }
             catch (IOException ignored)
             {
@@ -0,0 +1,128 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus CARGO, copyright 2004-2011 Vincent Massol, 2012-2016 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Provides utility methods to compute SHA-256 digests of files, streams and strings.
+ */
+public final class DigestUtils
+{
+    /**
+     * Hexadecimal digits.
+     */
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /**
+     * Private to prevent unnecessary instantation.
+     */
+    private DigestUtils()
+    {
+        // Private to prevent unnecessary instantation
+    }
+
+    /**
+     * @return A new SHA-256 message digest.
+     */
+    public static MessageDigest newSha256()
+    {
+        try
+        {
+            return MessageDigest.getInstance("SHA-256");
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            throw new CargoException("SHA-256 is not supported by this JVM", e);
+        }
+    }
+
+    /**
+     * @param value String to digest, as UTF-8.
+     * @return Hexadecimal SHA-256 digest of the string.
+     */
+    public static String sha256Hex(String value)
+    {
+        try
+        {
+            return toHex(newSha256().digest(value.getBytes("UTF-8")));
+        }
+        catch (UnsupportedEncodingException e)
+        {
+            throw new CargoException("UTF-8 is not supported by this JVM", e);
+        }
+    }
+
+    /**
+     * @param file File to digest.
+     * @return Hexadecimal SHA-256 digest of the file's contents.
+     * @throws IOException If the file cannot be read.
+     */
+    public static String sha256Hex(File file) throws IOException
+    {
+        InputStream in = new FileInputStream(file);
+        try
+        {
+            return sha256Hex(in);
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    /**
+     * @param in Stream to digest, will be read until its end but not closed.
+     * @return Hexadecimal SHA-256 digest of the stream's contents.
+     * @throws IOException If the stream cannot be read.
+     */
+    public static String sha256Hex(InputStream in) throws IOException
+    {
+        MessageDigest digest = newSha256();
+        byte[] buffer = new byte[64 * 1024];
+        int read;
+        while ((read = in.read(buffer)) != -1)
+        {
+            digest.update(buffer, 0, read);
+        }
+        return toHex(digest.digest());
+    }
+
+    /**
+     * @param bytes Bytes to encode.
+     * @return Lower case hexadecimal representation of the bytes.
+     */
+    public static String toHex(byte[] bytes)
+    {
+        char[] result = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++)
+        {
+            result[i * 2] = HEX[(bytes[i] >> 4) & 0x0f];
+            result[i * 2 + 1] = HEX[bytes[i] & 0x0f];
+        }
+        return new String(result);
+    }
+}
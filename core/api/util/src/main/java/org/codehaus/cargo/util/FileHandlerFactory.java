@@ -0,0 +1,84 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus CARGO, copyright 2004-2011 Vincent Massol, 2012-2016 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.util;
+
+/**
+ * Creates the {@link FileHandler} used by Cargo. The implementation is selected using the
+ * {@link #FILE_HANDLER_PROPERTY} system property, which can be set to {@link #DEFAULT} (the
+ * {@link DefaultFileHandler}), {@link #NIO} (the {@link NioFileHandler}) or to the class name of
+ * any {@link FileHandler} implementation with a public no-argument constructor.
+ */
+public final class FileHandlerFactory
+{
+    /**
+     * System property used to select the {@link FileHandler} implementation.
+     */
+    public static final String FILE_HANDLER_PROPERTY = "cargo.filehandler";
+
+    /**
+     * Value of the {@link #FILE_HANDLER_PROPERTY} for the {@link DefaultFileHandler}.
+     */
+    public static final String DEFAULT = "default";
+
+    /**
+     * Value of the {@link #FILE_HANDLER_PROPERTY} for the {@link NioFileHandler}.
+     */
+    public static final String NIO = "nio";
+
+    /**
+     * Utility class, no instances.
+     */
+    private FileHandlerFactory()
+    {
+        // Nothing
+    }
+
+    /**
+     * @return A new instance of the {@link FileHandler} implementation selected using the
+     * {@link #FILE_HANDLER_PROPERTY} system property.
+     */
+    public static FileHandler createFileHandler()
+    {
+        String type = System.getProperty(FILE_HANDLER_PROPERTY, DEFAULT).trim();
+        if (type.isEmpty() || DEFAULT.equalsIgnoreCase(type))
+        {
+            return new DefaultFileHandler();
+        }
+        else if (NIO.equalsIgnoreCase(type))
+        {
+            return new NioFileHandler();
+        }
+
+        try
+        {
+            ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+            if (classLoader == null)
+            {
+                classLoader = FileHandlerFactory.class.getClassLoader();
+            }
+            return (FileHandler) Class.forName(type, true, classLoader).newInstance();
+        }
+        catch (Exception e)
+        {
+            throw new CargoException("Cannot create the file handler [" + type
+                + "] defined with the system property " + FILE_HANDLER_PROPERTY, e);
+        }
+    }
+}
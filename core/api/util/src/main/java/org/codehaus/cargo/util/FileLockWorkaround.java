@@ -0,0 +1,70 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus CARGO, copyright 2004-2011 Vincent Massol, 2012-2016 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.util;
+
+/**
+ * Opt-in workaround for file locks on Windows. On Windows, a file cannot be deleted as long as
+ * a stream or a memory mapping to it has not been released, which some libraries only do once
+ * garbage collected. When enabled with the {@link #PROPERTY} system property, Cargo runs the
+ * garbage collector and finalization before retrying an operation which failed because of such
+ * a lock.<br>
+ * Cargo itself closes all its streams deterministically, so this workaround is disabled by
+ * default and has no effect on other operating systems.
+ */
+public final class FileLockWorkaround
+{
+    /**
+     * System property enabling the workaround, <code>false</code> by default.
+     */
+    public static final String PROPERTY = "cargo.filelock.workaround";
+
+    /**
+     * Utility class, no instances.
+     */
+    private FileLockWorkaround()
+    {
+        // Nothing
+    }
+
+    /**
+     * @return <code>true</code> if the workaround is enabled and running on Windows.
+     */
+    public static boolean isEnabled()
+    {
+        return Boolean.getBoolean(PROPERTY)
+            && System.getProperty("os.name", "").startsWith("Windows");
+    }
+
+    /**
+     * Releases file locks held by unreachable objects, if the workaround is enabled.
+     * @return <code>true</code> if file locks have been released and the failed operation is
+     * worth retrying, <code>false</code> if the workaround is disabled.
+     */
+    public static boolean releaseFileLocks()
+    {
+        if (!isEnabled())
+        {
+            return false;
+        }
+        System.gc();
+        System.runFinalization();
+        return true;
+    }
+}
@@ -0,0 +1,535 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus CARGO, copyright 2004-2011 Vincent Massol, 2012-2016 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.tools.ant.DirectoryScanner;
+import org.apache.tools.ant.types.selectors.SelectorUtils;
+
+/**
+ * {@link FileHandler} copying files using NIO channels, so that the data is transferred by the
+ * operating system instead of going through small Java buffers. Directories are copied with
+ * several threads in parallel.<br>
+ * On Linux, directory trees can also be copied as reflinks or as hard links, see
+ * {@link #setLinkMode(String)}.<br>
+ * This file handler is selected with the {@link FileHandlerFactory#FILE_HANDLER_PROPERTY} system
+ * property.
+ */
+public class NioFileHandler extends DefaultFileHandler
+{
+    /**
+     * Link mode where files are always copied.
+     */
+    public static final String LINK_MODE_NONE = "none";
+
+    /**
+     * Link mode where directory trees are copied as reflinks (copy-on-write clones) on file
+     * systems supporting them, and copied otherwise.
+     */
+    public static final String LINK_MODE_REFLINK = "reflink";
+
+    /**
+     * Link mode where the files of directory trees are hard linked. As the source and the target
+     * files then share their content, files written through this file handler are replaced by a
+     * new file instead of being written in place. Files modified by other means must not be part
+     * of hard linked trees.
+     */
+    public static final String LINK_MODE_HARDLINK = "hardlink";
+
+    /**
+     * Buffer size used for streams which are not file streams.
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Maximum number of bytes transferred in one call, as some operating systems cannot transfer
+     * more than 2 GB at a time.
+     */
+    private static final long TRANSFER_SIZE = 64L * 1024 * 1024;
+
+    /**
+     * Link mode used when copying directories.
+     */
+    private String linkMode;
+
+    /**
+     * Number of threads used when copying directories.
+     */
+    private int threads;
+
+    /**
+     * Creates the file handler, which copies all files.
+     */
+    public NioFileHandler()
+    {
+        this(LINK_MODE_NONE);
+    }
+
+    /**
+     * @param linkMode Link mode used when copying directories.
+     */
+    public NioFileHandler(String linkMode)
+    {
+        setLinkMode(linkMode);
+        this.threads = Math.max(2, Math.min(8, Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * @return Link mode used when copying directories.
+     */
+    public String getLinkMode()
+    {
+        return this.linkMode;
+    }
+
+    /**
+     * @param linkMode Link mode used when copying directories on Linux, one of
+     * {@link #LINK_MODE_NONE}, {@link #LINK_MODE_REFLINK} or {@link #LINK_MODE_HARDLINK}.
+     */
+    public void setLinkMode(String linkMode)
+    {
+        if (!LINK_MODE_NONE.equals(linkMode) && !LINK_MODE_REFLINK.equals(linkMode)
+            && !LINK_MODE_HARDLINK.equals(linkMode))
+        {
+            throw new CargoException("Invalid link mode [" + linkMode + "], valid values are: "
+                + LINK_MODE_NONE + ", " + LINK_MODE_REFLINK + " and " + LINK_MODE_HARDLINK);
+        }
+        this.linkMode = linkMode;
+    }
+
+    /**
+     * @param threads Number of threads used when copying directories.
+     */
+    public void setThreads(int threads)
+    {
+        if (threads < 1)
+        {
+            throw new IllegalArgumentException("At least one thread is required");
+        }
+        this.threads = threads;
+    }
+
+    /**
+     * {@inheritDoc}. As with the {@link DefaultFileHandler}, when <code>overwrite</code> is
+     * <code>false</code> the target is only replaced if it is older than the source.
+     */
+    @Override
+    public void copyFile(String source, String target, boolean overwrite)
+    {
+        File sourceFile = new File(source).getAbsoluteFile();
+        File targetFile = new File(target).getAbsoluteFile();
+        if (!overwrite && targetFile.exists()
+            && targetFile.lastModified() >= sourceFile.lastModified())
+        {
+            return;
+        }
+
+        try
+        {
+            unlink(targetFile);
+            transfer(sourceFile, targetFile);
+        }
+        catch (IOException e)
+        {
+            throw new CargoException("Failed to copy source file [" + source + "] to ["
+                + target + "]", e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}. In {@link #LINK_MODE_HARDLINK} mode, an existing file is replaced by a new
+     * file, so that files it is hard linked to are left untouched. This also applies to text
+     * files written and to replacements in files, which are all written using this method.
+     */
+    @Override
+    public OutputStream getOutputStream(String file)
+    {
+        try
+        {
+            unlink(new File(file));
+        }
+        catch (IOException e)
+        {
+            throw new CargoException("Failed to open output stream for file [" + file + "]", e);
+        }
+        return super.getOutputStream(file);
+    }
+
+    /**
+     * {@inheritDoc}. Excludes are Ant patterns relative to the source directory, Ant's default
+     * excludes are applied as well.
+     */
+    @Override
+    public void copyDirectory(String source, String target, List<String> excludes)
+    {
+        File sourceDirectory = new File(source).getAbsoluteFile();
+        File targetDirectory = new File(target).getAbsoluteFile();
+        if (!sourceDirectory.isDirectory())
+        {
+            throw new CargoException("Failed to copy source directory [" + source + "] to ["
+                + target + "]: source is not a directory");
+        }
+        if (excludes.isEmpty() && link(sourceDirectory, targetDirectory))
+        {
+            return;
+        }
+
+        List<String> patterns = new ArrayList<String>(excludes);
+        patterns.addAll(Arrays.asList(DirectoryScanner.getDefaultExcludes()));
+        for (int i = 0; i < patterns.size(); i++)
+        {
+            String pattern = patterns.get(i).replace('/', File.separatorChar)
+                .replace('\\', File.separatorChar);
+            if (pattern.endsWith(File.separator))
+            {
+                pattern += "**";
+            }
+            patterns.set(i, pattern);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(this.threads);
+        try
+        {
+            List<Future<Void>> copies = new ArrayList<Future<Void>>();
+            copyDirectory(sourceDirectory, targetDirectory, "", patterns, executor, copies);
+            for (Future<Void> copy : copies)
+            {
+                copy.get();
+            }
+        }
+        catch (ExecutionException e)
+        {
+            throw new CargoException("Failed to copy source directory [" + source + "] to ["
+                + target + "]", e.getCause());
+        }
+        catch (IOException e)
+        {
+            throw new CargoException("Failed to copy source directory [" + source + "] to ["
+                + target + "]", e);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new CargoException("Interrupted while copying source directory [" + source
+                + "] to [" + target + "]", e);
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * {@inheritDoc}. File streams are transferred using their channels, other streams are copied
+     * using a 64 KB buffer.
+     */
+    @Override
+    public void copy(InputStream in, OutputStream out)
+    {
+        if (in instanceof FileInputStream && out instanceof FileOutputStream)
+        {
+            try
+            {
+                transfer(((FileInputStream) in).getChannel(),
+                    ((FileOutputStream) out).getChannel());
+            }
+            catch (IOException e)
+            {
+                throw new CargoException("Failed to copy input stream [" + in.toString()
+                    + "] to output stream [" + out.toString() + "]", e);
+            }
+        }
+
+        // Copies anything the channel transfer left
+        copy(in, out, BUFFER_SIZE);
+    }
+
+    /**
+     * Walks a source directory, creates the target directories and submits the file copies.
+     * @param sourceDirectory Source directory.
+     * @param targetDirectory Target directory.
+     * @param relativePath Path of the source directory relative to the copy root, with a
+     * trailing separator (empty for the root itself).
+     * @param excludes Normalized exclude patterns.
+     * @param executor Executor running the file copies.
+     * @param copies List to which the submitted file copies are added.
+     * @throws IOException If a directory cannot be read or created.
+     */
+    private void copyDirectory(File sourceDirectory, File targetDirectory, String relativePath,
+        List<String> excludes, ExecutorService executor, List<Future<Void>> copies)
+        throws IOException
+    {
+        File[] children = sourceDirectory.listFiles();
+        if (children == null)
+        {
+            throw new IOException("Cannot list directory [" + sourceDirectory + "]");
+        }
+        if (!isExcluded(relativePath, excludes))
+        {
+            mkdirs(targetDirectory);
+        }
+
+        for (final File child : children)
+        {
+            String childPath = relativePath + child.getName();
+            final File targetChild = new File(targetDirectory, child.getName());
+            if (child.isDirectory())
+            {
+                if (!isExcludedTree(childPath, excludes))
+                {
+                    copyDirectory(child, targetChild, childPath + File.separator, excludes,
+                        executor, copies);
+                }
+            }
+            else if (!isExcluded(childPath, excludes))
+            {
+                copies.add(executor.submit(new Callable<Void>()
+                {
+                    @Override
+                    public Void call() throws IOException
+                    {
+                        unlink(targetChild);
+                        transfer(child, targetChild);
+                        return null;
+                    }
+                }));
+            }
+        }
+    }
+
+    /**
+     * @param path Relative path, a trailing separator being ignored.
+     * @param excludes Normalized exclude patterns.
+     * @return <code>true</code> if <code>path</code> matches one of the exclude patterns.
+     */
+    private static boolean isExcluded(String path, List<String> excludes)
+    {
+        if (path.isEmpty())
+        {
+            return false;
+        }
+        String file = path;
+        if (file.endsWith(File.separator))
+        {
+            file = file.substring(0, file.length() - 1);
+        }
+        for (String exclude : excludes)
+        {
+            if (SelectorUtils.matchPath(exclude, file))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param path Relative path of a directory.
+     * @param excludes Normalized exclude patterns.
+     * @return <code>true</code> if the directory and everything below it is excluded.
+     */
+    private static boolean isExcludedTree(String path, List<String> excludes)
+    {
+        for (String exclude : excludes)
+        {
+            if (exclude.endsWith("**") && SelectorUtils.matchPath(exclude, path))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Copies a directory tree as reflinks or hard links, using the Linux <code>cp</code> command.
+     * @param sourceDirectory Source directory.
+     * @param targetDirectory Target directory.
+     * @return <code>true</code> if the directory tree has been copied, <code>false</code> if it
+     * has to be copied file by file.
+     */
+    private boolean link(File sourceDirectory, File targetDirectory)
+    {
+        if (LINK_MODE_NONE.equals(this.linkMode)
+            || !"Linux".equals(System.getProperty("os.name")))
+        {
+            return false;
+        }
+
+        try
+        {
+            mkdirs(targetDirectory);
+            ProcessBuilder processBuilder = new ProcessBuilder("cp", "-R", "-L", "-f",
+                LINK_MODE_HARDLINK.equals(this.linkMode) ? "-l" : "--reflink=auto",
+                sourceDirectory.getPath() + File.separator + ".", targetDirectory.getPath());
+            processBuilder.redirectErrorStream(true);
+            Process process = processBuilder.start();
+            process.getOutputStream().close();
+            String output = new String(readAll(process.getInputStream()));
+            int exitCode = process.waitFor();
+            if (exitCode == 0)
+            {
+                return true;
+            }
+            getLogger().debug("Cannot copy [" + sourceDirectory + "] with " + this.linkMode
+                + " links (exit code " + exitCode + "): " + output.trim(),
+                    this.getClass().getName());
+        }
+        catch (IOException e)
+        {
+            getLogger().debug("Cannot copy [" + sourceDirectory + "] with " + this.linkMode
+                + " links: " + e, this.getClass().getName());
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        return false;
+    }
+
+    /**
+     * In {@link #LINK_MODE_HARDLINK} mode, deletes an existing file which is about to be written,
+     * as it might be hard linked to another file.
+     * @param file File about to be written.
+     * @throws IOException If the file cannot be deleted.
+     */
+    private void unlink(File file) throws IOException
+    {
+        if (LINK_MODE_HARDLINK.equals(this.linkMode) && file.isFile() && !file.delete())
+        {
+            throw new IOException("Cannot delete file [" + file + "]");
+        }
+    }
+
+    /**
+     * @param in Input stream, closed once read.
+     * @return All bytes of <code>in</code>.
+     * @throws IOException If reading fails.
+     */
+    private static byte[] readAll(InputStream in) throws IOException
+    {
+        try
+        {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1024];
+            int length;
+            while ((length = in.read(buffer)) != -1)
+            {
+                bytes.write(buffer, 0, length);
+            }
+            return bytes.toByteArray();
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    /**
+     * Copies a file, creating the target's parent directory if needed.
+     * @param source Source file.
+     * @param target Target file.
+     * @throws IOException If copying fails.
+     */
+    private static void transfer(File source, File target) throws IOException
+    {
+        File parent = target.getParentFile();
+        if (parent != null)
+        {
+            mkdirs(parent);
+        }
+
+        FileInputStream in = new FileInputStream(source);
+        try
+        {
+            FileOutputStream out = new FileOutputStream(target);
+            try
+            {
+                FileChannel inChannel = in.getChannel();
+                FileChannel outChannel = out.getChannel();
+                transfer(inChannel, outChannel);
+                if (inChannel.position() < inChannel.size())
+                {
+                    throw new IOException("Source file [" + source + "] was only partially "
+                        + "copied to [" + target + "]");
+                }
+            }
+            finally
+            {
+                out.close();
+            }
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    /**
+     * Transfers the remaining bytes of a channel to another channel, and moves the position of
+     * the source channel accordingly.
+     * @param in Source channel.
+     * @param out Target channel.
+     * @throws IOException If transferring fails.
+     */
+    private static void transfer(FileChannel in, FileChannel out) throws IOException
+    {
+        long position = in.position();
+        long size = in.size();
+        while (position < size)
+        {
+            long transferred = in.transferTo(position, Math.min(TRANSFER_SIZE, size - position),
+                out);
+            if (transferred <= 0)
+            {
+                break;
+            }
+            position += transferred;
+        }
+        in.position(position);
+    }
+
+    /**
+     * @param directory Directory to create, with its parents.
+     * @throws IOException If the directory cannot be created.
+     */
+    private static void mkdirs(File directory) throws IOException
+    {
+        if (!directory.isDirectory() && !directory.mkdirs() && !directory.isDirectory())
+        {
+            throw new IOException("Cannot create directory [" + directory + "]");
+        }
+    }
+}
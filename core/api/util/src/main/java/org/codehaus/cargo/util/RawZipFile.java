@@ -0,0 +1,358 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus CARGO, copyright 2004-2011 Vincent Massol, 2012-2016 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipException;
+
+/**
+ * Reads the central directory of a ZIP file so that its entries can be copied to a
+ * {@link RawZipOutputStream} as they are stored, without being inflated and deflated again.<br>
+ * Encrypted and ZIP64 archives are not supported, and make the constructor throw a
+ * {@link ZipException}.
+ */
+public class RawZipFile
+{
+    /**
+     * Signature of the end of central directory record.
+     */
+    static final int END_SIGNATURE = 0x06054b50;
+
+    /**
+     * Signature of the ZIP64 end of central directory locator.
+     */
+    static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+
+    /**
+     * Signature of a central directory file header.
+     */
+    static final int CENTRAL_SIGNATURE = 0x02014b50;
+
+    /**
+     * Signature of a local file header.
+     */
+    static final int LOCAL_SIGNATURE = 0x04034b50;
+
+    /**
+     * General purpose flag telling that an entry is encrypted.
+     */
+    static final int FLAG_ENCRYPTED = 0x01;
+
+    /**
+     * General purpose flag telling that an entry name is encoded in UTF-8.
+     */
+    static final int FLAG_UTF8 = 0x800;
+
+    /**
+     * Size of the end of central directory record, without comment.
+     */
+    private static final int END_SIZE = 22;
+
+    /**
+     * Size of a central directory file header, without name, extra field and comment.
+     */
+    private static final int CENTRAL_SIZE = 46;
+
+    /**
+     * Size of a local file header, without name and extra field.
+     */
+    private static final int LOCAL_SIZE = 30;
+
+    /**
+     * Size of the buffer used to copy entries.
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Charset of the entry names.
+     */
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * Entry of a ZIP file, as described by the central directory.
+     */
+    public static final class Entry
+    {
+        /**
+         * Entry name.
+         */
+        private String name;
+
+        /**
+         * General purpose flags.
+         */
+        private int flags;
+
+        /**
+         * Compression method.
+         */
+        private int method;
+
+        /**
+         * Modification time, in MS-DOS format.
+         */
+        private long dosTime;
+
+        /**
+         * CRC-32 of the uncompressed data.
+         */
+        private long crc;
+
+        /**
+         * Compressed size.
+         */
+        private long compressedSize;
+
+        /**
+         * Uncompressed size.
+         */
+        private long size;
+
+        /**
+         * Offset of the local file header.
+         */
+        private long localHeaderOffset;
+
+        /**
+         * @return Entry name.
+         */
+        public String getName()
+        {
+            return this.name;
+        }
+
+        /**
+         * @return Compressed size.
+         */
+        public long getCompressedSize()
+        {
+            return this.compressedSize;
+        }
+
+        /**
+         * @return Uncompressed size.
+         */
+        public long getSize()
+        {
+            return this.size;
+        }
+    }
+
+    /**
+     * ZIP file.
+     */
+    private RandomAccessFile file;
+
+    /**
+     * Entries, by name and in central directory order.
+     */
+    private Map<String, Entry> entries = new LinkedHashMap<String, Entry>();
+
+    /**
+     * Opens a ZIP file and reads its central directory.
+     * @param zipFile ZIP file.
+     * @throws IOException If reading the file fails, or a {@link ZipException} if the ZIP file
+     * is invalid or not supported.
+     */
+    public RawZipFile(File zipFile) throws IOException
+    {
+        this.file = new RandomAccessFile(zipFile, "r");
+        boolean success = false;
+        try
+        {
+            readCentralDirectory();
+            success = true;
+        }
+        finally
+        {
+            if (!success)
+            {
+                this.file.close();
+            }
+        }
+    }
+
+    /**
+     * @return Entries, in central directory order.
+     */
+    public List<Entry> getEntries()
+    {
+        return Collections.unmodifiableList(new ArrayList<Entry>(this.entries.values()));
+    }
+
+    /**
+     * @param name Entry name.
+     * @return Entry with the given name, <code>null</code> if none.
+     */
+    public Entry getEntry(String name)
+    {
+        return this.entries.get(name);
+    }
+
+    /**
+     * Copies an entry, as it is stored, to a ZIP output stream.
+     * @param entry Entry to copy.
+     * @param out ZIP output stream.
+     * @throws IOException If reading or writing fails.
+     */
+    public void copyTo(Entry entry, RawZipOutputStream out) throws IOException
+    {
+        byte[] header = new byte[LOCAL_SIZE];
+        this.file.seek(entry.localHeaderOffset);
+        this.file.readFully(header);
+        if (getInt(header, 0) != LOCAL_SIGNATURE)
+        {
+            throw new ZipException("Invalid local file header for entry " + entry.name);
+        }
+        this.file.seek(entry.localHeaderOffset + LOCAL_SIZE + getShort(header, 26)
+            + getShort(header, 28));
+
+        out.putRawEntry(entry.name, entry.method, entry.dosTime, entry.crc,
+            entry.compressedSize, entry.size);
+        byte[] buffer = new byte[(int) Math.min(BUFFER_SIZE, Math.max(1,
+            entry.compressedSize))];
+        long remaining = entry.compressedSize;
+        while (remaining > 0)
+        {
+            int read = (int) Math.min(buffer.length, remaining);
+            this.file.readFully(buffer, 0, read);
+            out.write(buffer, 0, read);
+            remaining -= read;
+        }
+        out.closeEntry();
+    }
+
+    /**
+     * Closes the ZIP file.
+     * @throws IOException If closing fails.
+     */
+    public void close() throws IOException
+    {
+        this.file.close();
+    }
+
+    /**
+     * Reads the central directory.
+     * @throws IOException If reading fails or if the ZIP file is not supported.
+     */
+    private void readCentralDirectory() throws IOException
+    {
+        long length = this.file.length();
+        int tailLength = (int) Math.min(length, END_SIZE + 0xFFFF);
+        byte[] tail = new byte[tailLength];
+        this.file.seek(length - tailLength);
+        this.file.readFully(tail);
+
+        int end = -1;
+        for (int i = tailLength - END_SIZE; i >= 0; i--)
+        {
+            if (getInt(tail, i) == END_SIGNATURE)
+            {
+                end = i;
+                break;
+            }
+        }
+        if (end == -1)
+        {
+            throw new ZipException("End of central directory not found");
+        }
+        if (end >= 20 && getInt(tail, end - 20) == ZIP64_LOCATOR_SIGNATURE)
+        {
+            throw new ZipException("ZIP64 archives are not supported");
+        }
+
+        int count = getShort(tail, end + 10);
+        long centralSize = getInt(tail, end + 12) & 0xFFFFFFFFL;
+        long centralOffset = getInt(tail, end + 16) & 0xFFFFFFFFL;
+        if (centralOffset + centralSize > length)
+        {
+            throw new ZipException("Invalid central directory");
+        }
+
+        byte[] central = new byte[(int) centralSize];
+        this.file.seek(centralOffset);
+        this.file.readFully(central);
+
+        int position = 0;
+        for (int i = 0; i < count; i++)
+        {
+            if (position + CENTRAL_SIZE > central.length
+                || getInt(central, position) != CENTRAL_SIGNATURE)
+            {
+                throw new ZipException("Invalid central directory");
+            }
+            Entry entry = new Entry();
+            entry.flags = getShort(central, position + 8);
+            entry.method = getShort(central, position + 10);
+            entry.dosTime = getInt(central, position + 12) & 0xFFFFFFFFL;
+            entry.crc = getInt(central, position + 16) & 0xFFFFFFFFL;
+            entry.compressedSize = getInt(central, position + 20) & 0xFFFFFFFFL;
+            entry.size = getInt(central, position + 24) & 0xFFFFFFFFL;
+            int nameLength = getShort(central, position + 28);
+            int extraLength = getShort(central, position + 30);
+            int commentLength = getShort(central, position + 32);
+            entry.localHeaderOffset = getInt(central, position + 42) & 0xFFFFFFFFL;
+            entry.name = new String(central, position + CENTRAL_SIZE, nameLength, UTF8);
+
+            if ((entry.flags & FLAG_ENCRYPTED) != 0)
+            {
+                throw new ZipException("Encrypted entries are not supported: " + entry.name);
+            }
+            if (entry.compressedSize == 0xFFFFFFFFL || entry.size == 0xFFFFFFFFL
+                || entry.localHeaderOffset == 0xFFFFFFFFL)
+            {
+                throw new ZipException("ZIP64 archives are not supported");
+            }
+            if (!this.entries.containsKey(entry.name))
+            {
+                this.entries.put(entry.name, entry);
+            }
+            position += CENTRAL_SIZE + nameLength + extraLength + commentLength;
+        }
+    }
+
+    /**
+     * @param buffer Buffer.
+     * @param offset Offset.
+     * @return Little endian unsigned short at the given offset.
+     */
+    static int getShort(byte[] buffer, int offset)
+    {
+        return (buffer[offset] & 0xFF) | (buffer[offset + 1] & 0xFF) << 8;
+    }
+
+    /**
+     * @param buffer Buffer.
+     * @param offset Offset.
+     * @return Little endian int at the given offset.
+     */
+    static int getInt(byte[] buffer, int offset)
+    {
+        return getShort(buffer, offset) | getShort(buffer, offset + 2) << 16;
+    }
+}
@@ -0,0 +1,471 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus CARGO, copyright 2004-2011 Vincent Massol, 2012-2016 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.util;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+/**
+ * ZIP output stream which, in addition to entries deflated as they are written, accepts entries
+ * already compressed, for example copied from a {@link RawZipFile}. This avoids inflating and
+ * deflating again the content of an archive that is being rewritten.<br>
+ * Archives with more than 65534 entries or larger than 4 GB would need ZIP64 extensions, which
+ * are not supported; writing them makes this stream throw a {@link ZipException}.
+ */
+public class RawZipOutputStream extends OutputStream
+{
+    /**
+     * Signature of the data descriptor.
+     */
+    private static final int DATA_DESCRIPTOR_SIGNATURE = 0x08074b50;
+
+    /**
+     * General purpose flag telling that sizes and CRC follow the entry data.
+     */
+    private static final int FLAG_DATA_DESCRIPTOR = 0x08;
+
+    /**
+     * Version needed to extract: 2.0, for deflated entries and folders.
+     */
+    private static final int VERSION = 20;
+
+    /**
+     * Largest value which can be stored without ZIP64 extensions.
+     */
+    private static final long MAX_VALUE = 0xFFFFFFFFL;
+
+    /**
+     * Largest number of entries which can be stored without ZIP64 extensions.
+     */
+    private static final int MAX_ENTRIES = 0xFFFF;
+
+    /**
+     * Entry as recorded in the central directory.
+     */
+    private static final class Record
+    {
+        /**
+         * Encoded entry name.
+         */
+        private byte[] name;
+
+        /**
+         * General purpose flags.
+         */
+        private int flags;
+
+        /**
+         * Compression method.
+         */
+        private int method;
+
+        /**
+         * Modification time, in MS-DOS format.
+         */
+        private long dosTime;
+
+        /**
+         * CRC-32 of the uncompressed data.
+         */
+        private long crc;
+
+        /**
+         * Compressed size.
+         */
+        private long compressedSize;
+
+        /**
+         * Uncompressed size.
+         */
+        private long size;
+
+        /**
+         * Offset of the local file header.
+         */
+        private long offset;
+    }
+
+    /**
+     * Underlying stream.
+     */
+    private OutputStream out;
+
+    /**
+     * Number of bytes written to the underlying stream.
+     */
+    private long written;
+
+    /**
+     * Entries written so far.
+     */
+    private List<Record> records = new ArrayList<Record>();
+
+    /**
+     * Names of the entries written so far.
+     */
+    private Set<String> names = new HashSet<String>();
+
+    /**
+     * Current entry, <code>null</code> if none.
+     */
+    private Record current;
+
+    /**
+     * Whether the current entry is written as it is stored.
+     */
+    private boolean raw;
+
+    /**
+     * Number of bytes written for the current entry.
+     */
+    private long entryWritten;
+
+    /**
+     * Deflater for the entries deflated by this stream.
+     */
+    private Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+
+    /**
+     * CRC-32 of the current deflated entry.
+     */
+    private CRC32 crc = new CRC32();
+
+    /**
+     * Buffer for deflated data.
+     */
+    private byte[] deflateBuffer = new byte[8192];
+
+    /**
+     * @param out Stream to write the ZIP file to.
+     */
+    public RawZipOutputStream(OutputStream out)
+    {
+        this.out = new BufferedOutputStream(out, 64 * 1024);
+    }
+
+    /**
+     * Starts a new entry, which will be deflated as written.
+     * @param name Entry name.
+     * @param time Modification time of the entry.
+     * @throws IOException If writing fails.
+     */
+    public void putNextEntry(String name, long time) throws IOException
+    {
+        startEntry(name, ZipEntry.DEFLATED, toDosTime(time), FLAG_DATA_DESCRIPTOR);
+        this.raw = false;
+        this.crc.reset();
+        this.deflater.reset();
+        writeLocalHeader(this.current);
+    }
+
+    /**
+     * Starts a new entry whose content is written as it is stored, for example already
+     * compressed. Exactly <code>compressedSize</code> bytes must then be written.
+     * @param name Entry name.
+     * @param method Compression method.
+     * @param dosTime Modification time of the entry, in MS-DOS format.
+     * @param crc CRC-32 of the uncompressed data.
+     * @param compressedSize Size of the data to write.
+     * @param size Uncompressed size.
+     * @throws IOException If writing fails.
+     */
+    public void putRawEntry(String name, int method, long dosTime, long crc, long compressedSize,
+        long size) throws IOException
+    {
+        startEntry(name, method, dosTime, 0);
+        this.raw = true;
+        this.current.crc = crc;
+        this.current.compressedSize = compressedSize;
+        this.current.size = size;
+        writeLocalHeader(this.current);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void write(int b) throws IOException
+    {
+        write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException
+    {
+        if (this.current == null)
+        {
+            throw new ZipException("No current ZIP entry");
+        }
+        if (this.raw)
+        {
+            writeData(b, off, len);
+            this.entryWritten += len;
+        }
+        else if (len > 0)
+        {
+            this.crc.update(b, off, len);
+            this.current.size += len;
+            this.deflater.setInput(b, off, len);
+            while (!this.deflater.needsInput())
+            {
+                deflate();
+            }
+        }
+    }
+
+    /**
+     * Closes the current entry.
+     * @throws IOException If writing fails.
+     */
+    public void closeEntry() throws IOException
+    {
+        if (this.current == null)
+        {
+            return;
+        }
+        Record record = this.current;
+        this.current = null;
+
+        if (this.raw)
+        {
+            if (this.entryWritten != record.compressedSize)
+            {
+                throw new ZipException("Invalid size for entry "
+                    + new String(record.name, "UTF-8") + ": expected "
+                    + record.compressedSize + " bytes but got " + this.entryWritten);
+            }
+        }
+        else
+        {
+            this.deflater.finish();
+            while (!this.deflater.finished())
+            {
+                deflate();
+            }
+            record.compressedSize = this.entryWritten;
+            record.crc = this.crc.getValue();
+            checkLimit(record.size);
+            writeInt(DATA_DESCRIPTOR_SIGNATURE);
+            writeInt(record.crc);
+            writeInt(record.compressedSize);
+            writeInt(record.size);
+        }
+    }
+
+    /**
+     * Closes the current entry, writes the central directory and closes the underlying stream.
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() throws IOException
+    {
+        try
+        {
+            closeEntry();
+
+            long centralOffset = this.written;
+            for (Record record : this.records)
+            {
+                writeInt(RawZipFile.CENTRAL_SIGNATURE);
+                writeShort(VERSION);
+                writeShort(VERSION);
+                writeShort(record.flags);
+                writeShort(record.method);
+                writeInt(record.dosTime);
+                writeInt(record.crc);
+                writeInt(record.compressedSize);
+                writeInt(record.size);
+                writeShort(record.name.length);
+                // Extra field length, comment length, disk number, internal and external
+                // attributes
+                writeShort(0);
+                writeShort(0);
+                writeShort(0);
+                writeShort(0);
+                writeInt(0);
+                writeInt(record.offset);
+                writeData(record.name, 0, record.name.length);
+            }
+            long centralSize = this.written - centralOffset;
+            checkLimit(this.written);
+
+            writeInt(RawZipFile.END_SIGNATURE);
+            writeShort(0);
+            writeShort(0);
+            writeShort(this.records.size());
+            writeShort(this.records.size());
+            writeInt(centralSize);
+            writeInt(centralOffset);
+            writeShort(0);
+        }
+        finally
+        {
+            this.deflater.end();
+            this.out.close();
+        }
+    }
+
+    /**
+     * Closes the current entry, if any, and records a new one.
+     * @param name Entry name.
+     * @param method Compression method.
+     * @param dosTime Modification time of the entry, in MS-DOS format.
+     * @param flags General purpose flags.
+     * @throws IOException If the entry cannot be added.
+     */
+    private void startEntry(String name, int method, long dosTime, int flags) throws IOException
+    {
+        closeEntry();
+        if (!this.names.add(name))
+        {
+            throw new ZipException("Duplicate entry: " + name);
+        }
+        if (this.records.size() >= MAX_ENTRIES)
+        {
+            throw new ZipException("Too many entries, ZIP64 archives are not supported");
+        }
+        checkLimit(this.written);
+
+        Record record = new Record();
+        record.name = name.getBytes("UTF-8");
+        record.flags = flags;
+        if (record.name.length != name.length())
+        {
+            record.flags |= RawZipFile.FLAG_UTF8;
+        }
+        record.method = method;
+        record.dosTime = dosTime;
+        record.offset = this.written;
+        this.records.add(record);
+        this.current = record;
+        this.entryWritten = 0;
+    }
+
+    /**
+     * @param record Entry to write the local file header of.
+     * @throws IOException If writing fails.
+     */
+    private void writeLocalHeader(Record record) throws IOException
+    {
+        writeInt(RawZipFile.LOCAL_SIGNATURE);
+        writeShort(VERSION);
+        writeShort(record.flags);
+        writeShort(record.method);
+        writeInt(record.dosTime);
+        writeInt(record.crc);
+        writeInt(record.compressedSize);
+        writeInt(record.size);
+        writeShort(record.name.length);
+        writeShort(0);
+        writeData(record.name, 0, record.name.length);
+    }
+
+    /**
+     * Writes the data available from the deflater.
+     * @throws IOException If writing fails.
+     */
+    private void deflate() throws IOException
+    {
+        int length = this.deflater.deflate(this.deflateBuffer, 0, this.deflateBuffer.length);
+        if (length > 0)
+        {
+            writeData(this.deflateBuffer, 0, length);
+            this.entryWritten += length;
+        }
+    }
+
+    /**
+     * @param value Value which has to be stored without ZIP64 extensions.
+     * @throws ZipException If the value is too large.
+     */
+    private void checkLimit(long value) throws ZipException
+    {
+        if (value > MAX_VALUE)
+        {
+            throw new ZipException("Archive too large, ZIP64 archives are not supported");
+        }
+    }
+
+    /**
+     * @param b Data to write to the underlying stream.
+     * @param off Offset of the data.
+     * @param len Length of the data.
+     * @throws IOException If writing fails.
+     */
+    private void writeData(byte[] b, int off, int len) throws IOException
+    {
+        this.out.write(b, off, len);
+        this.written += len;
+    }
+
+    /**
+     * @param value Little endian short to write.
+     * @throws IOException If writing fails.
+     */
+    private void writeShort(int value) throws IOException
+    {
+        this.out.write(value & 0xFF);
+        this.out.write((value >>> 8) & 0xFF);
+        this.written += 2;
+    }
+
+    /**
+     * @param value Little endian int to write.
+     * @throws IOException If writing fails.
+     */
+    private void writeInt(long value) throws IOException
+    {
+        writeShort((int) (value & 0xFFFF));
+        writeShort((int) ((value >>> 16) & 0xFFFF));
+    }
+
+    /**
+     * @param time Time, in milliseconds since the epoch.
+     * @return Time in MS-DOS format.
+     */
+    static long toDosTime(long time)
+    {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(time);
+        int year = calendar.get(Calendar.YEAR);
+        if (year < 1980)
+        {
+            return (1 << 21) | (1 << 16);
+        }
+        long date = (year - 1980) << 9 | (calendar.get(Calendar.MONTH) + 1) << 5
+            | calendar.get(Calendar.DAY_OF_MONTH);
+        long dayTime = calendar.get(Calendar.HOUR_OF_DAY) << 11
+            | calendar.get(Calendar.MINUTE) << 5;
+        return date << 16 | dayTime | calendar.get(Calendar.SECOND) >> 1;
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus CARGO, copyright 2004-2011 Vincent Massol, 2012-2016 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.util;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.tools.ant.filters.ReplaceTokens;
+import org.apache.tools.ant.types.FilterChain;
+
+/**
+ * Ant {@link FilterChain} which also keeps track of the <code>@key@</code> tokens added to it
+ * using {@link #addToken(String, String)}, so that the filter chain can be compiled into a
+ * {@link TokenReplacer}.
+ */
+public class TokenFilterChain extends FilterChain
+{
+    /**
+     * Tokens added to the filter chain, in the order they were added.
+     */
+    private Map<String, String> tokens = new LinkedHashMap<String, String>();
+
+    /**
+     * Number of filters added using {@link #addToken(String, String)}.
+     */
+    private int tokenFilters;
+
+    /**
+     * Adds a token to the filter chain.
+     * @param key Token key.
+     * @param value Token value.
+     */
+    public synchronized void addToken(String key, String value)
+    {
+        ReplaceTokens replaceToken = new ReplaceTokens();
+        ReplaceTokens.Token token = new ReplaceTokens.Token();
+        token.setKey(key);
+        token.setValue(value);
+        replaceToken.addConfiguredToken(token);
+        addReplaceTokens(replaceToken);
+        this.tokenFilters++;
+
+        // As the filters run one after the other, the first filter for a given key wins
+        if (!this.tokens.containsKey(key))
+        {
+            this.tokens.put(key, value);
+        }
+    }
+
+    /**
+     * @return The tokens of this filter chain, or <code>null</code> if this filter chain cannot
+     * be replaced by a {@link TokenReplacer}: when filters have been added without using
+     * {@link #addToken(String, String)} or when a token value itself contains the token
+     * delimiter, in which case the result depends on the order in which filters run.
+     */
+    public synchronized Map<String, String> getTokens()
+    {
+        if (getFilterReaders().size() != this.tokenFilters)
+        {
+            return null;
+        }
+        for (String value : this.tokens.values())
+        {
+            if (value != null && value.indexOf(TokenReplacer.DELIMITER) != -1)
+            {
+                return null;
+            }
+        }
+        return Collections.unmodifiableMap(this.tokens);
+    }
+}
@@ -0,0 +1,308 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus CARGO, copyright 2004-2011 Vincent Massol, 2012-2016 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Map;
+
+/**
+ * Replaces <code>@key@</code> tokens in byte streams, giving the same result as an Ant
+ * {@link org.apache.tools.ant.types.FilterChain} with one
+ * {@link org.apache.tools.ant.filters.ReplaceTokens} filter per token but in a single pass and
+ * without decoding the content or changing its line endings.<br>
+ * All token keys are compiled into one trie: when a <code>@</code> is found, the following bytes
+ * are matched against the trie until the closing <code>@</code>. As a failed match resumes at
+ * the next <code>@</code>, each byte is looked at most twice whatever the number of tokens.<br>
+ * The content is processed as bytes, which is only possible for encodings where the
+ * <code>@</code> character is one byte which cannot be part of any other character, see
+ * {@link #isSupported(String)}.
+ */
+public class TokenReplacer
+{
+    /**
+     * Token delimiter.
+     */
+    public static final char DELIMITER = '@';
+
+    /**
+     * Size of the buffers used when reading.
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Node of the token trie.
+     */
+    private static final class Node
+    {
+        /**
+         * Child nodes, indexed by byte value.
+         */
+        private Node[] children;
+
+        /**
+         * Replacement if a token ends at this node, <code>null</code> otherwise.
+         */
+        private byte[] value;
+
+        /**
+         * @param b Byte.
+         * @return Child node for <code>b</code>, <code>null</code> if none.
+         */
+        private Node get(int b)
+        {
+            return this.children == null ? null : this.children[b & 0xFF];
+        }
+
+        /**
+         * @param b Byte.
+         * @return Child node for <code>b</code>, created if needed.
+         */
+        private Node getOrCreate(int b)
+        {
+            if (this.children == null)
+            {
+                this.children = new Node[256];
+            }
+            Node child = this.children[b & 0xFF];
+            if (child == null)
+            {
+                child = new Node();
+                this.children[b & 0xFF] = child;
+            }
+            return child;
+        }
+    }
+
+    /**
+     * Root of the token trie.
+     */
+    private Node root = new Node();
+
+    /**
+     * Number of tokens.
+     */
+    private int size;
+
+    /**
+     * @param tokens Tokens to replace, where the key is the token without its delimiters.
+     * @param encoding Encoding of the content, <code>null</code> for the platform encoding.
+     */
+    public TokenReplacer(Map<String, String> tokens, String encoding)
+    {
+        if (!isSupported(encoding))
+        {
+            throw new CargoException("Encoding [" + encoding + "] is not supported");
+        }
+        Charset charset = getCharset(encoding);
+        for (Map.Entry<String, String> token : tokens.entrySet())
+        {
+            if (token.getValue() == null || token.getKey().indexOf(DELIMITER) != -1)
+            {
+                continue;
+            }
+            Node node = this.root;
+            for (byte b : encode(token.getKey(), charset))
+            {
+                node = node.getOrCreate(b);
+            }
+            if (node.value == null)
+            {
+                node.value = encode(token.getValue(), charset);
+                this.size++;
+            }
+        }
+    }
+
+    /**
+     * @param encoding Encoding, <code>null</code> for the platform encoding.
+     * @return <code>true</code> if content in the given encoding can be processed as bytes.
+     */
+    public static boolean isSupported(String encoding)
+    {
+        Charset charset;
+        try
+        {
+            charset = getCharset(encoding);
+        }
+        catch (IllegalArgumentException e)
+        {
+            return false;
+        }
+        String name = charset.name();
+        return "UTF-8".equals(name) || "US-ASCII".equals(name) || name.startsWith("ISO-8859-")
+            || name.startsWith("windows-125");
+    }
+
+    /**
+     * @return Number of tokens.
+     */
+    public int size()
+    {
+        return this.size;
+    }
+
+    /**
+     * @param in Stream to search, read until its end but not closed.
+     * @return <code>true</code> if the stream contains at least one token.
+     * @throws IOException If reading fails.
+     */
+    public boolean containsTokens(InputStream in) throws IOException
+    {
+        return this.size > 0 && process(in, null) > 0;
+    }
+
+    /**
+     * Copies a stream, replacing all tokens.
+     * @param in Stream to read, not closed.
+     * @param out Stream to write to, not closed.
+     * @return Number of replaced tokens.
+     * @throws IOException If reading or writing fails.
+     */
+    public int replace(InputStream in, OutputStream out) throws IOException
+    {
+        return process(in, out);
+    }
+
+    /**
+     * Processes a stream.
+     * @param in Stream to read.
+     * @param out Stream to write to, <code>null</code> to stop at the first token found.
+     * @return Number of tokens found.
+     * @throws IOException If reading or writing fails.
+     */
+    private int process(InputStream in, OutputStream out) throws IOException
+    {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        // Bytes of the token being matched, starting with its opening delimiter
+        byte[] pending = new byte[256];
+        int pendingLength = 0;
+        Node node = null;
+        int found = 0;
+
+        int read;
+        while ((read = in.read(buffer)) != -1)
+        {
+            int i = 0;
+            while (i < read)
+            {
+                if (node == null)
+                {
+                    int start = i;
+                    while (i < read && buffer[i] != DELIMITER)
+                    {
+                        i++;
+                    }
+                    write(out, buffer, start, i - start);
+                    if (i < read)
+                    {
+                        node = this.root;
+                        pending[0] = DELIMITER;
+                        pendingLength = 1;
+                        i++;
+                    }
+                    continue;
+                }
+
+                byte b = buffer[i++];
+                if (b == DELIMITER)
+                {
+                    if (node.value != null)
+                    {
+                        found++;
+                        if (out == null)
+                        {
+                            return found;
+                        }
+                        out.write(node.value);
+                        node = null;
+                    }
+                    else
+                    {
+                        // Not a token, the closing delimiter might open the next one
+                        write(out, pending, 0, pendingLength);
+                        node = this.root;
+                        pendingLength = 1;
+                    }
+                    continue;
+                }
+
+                node = node.get(b);
+                if (node == null)
+                {
+                    write(out, pending, 0, pendingLength);
+                    write(out, buffer, i - 1, 1);
+                }
+                else
+                {
+                    if (pendingLength == pending.length)
+                    {
+                        byte[] grown = new byte[pending.length * 2];
+                        System.arraycopy(pending, 0, grown, 0, pendingLength);
+                        pending = grown;
+                    }
+                    pending[pendingLength++] = b;
+                }
+            }
+        }
+        if (node != null)
+        {
+            write(out, pending, 0, pendingLength);
+        }
+        return found;
+    }
+
+    /**
+     * @param out Stream to write to, <code>null</code> to ignore.
+     * @param bytes Bytes.
+     * @param offset Offset of the bytes to write.
+     * @param length Number of bytes to write.
+     * @throws IOException If writing fails.
+     */
+    private static void write(OutputStream out, byte[] bytes, int offset, int length)
+        throws IOException
+    {
+        if (out != null && length > 0)
+        {
+            out.write(bytes, offset, length);
+        }
+    }
+
+    /**
+     * @param encoding Encoding, <code>null</code> for the platform encoding.
+     * @return Charset for the encoding.
+     */
+    private static Charset getCharset(String encoding)
+    {
+        return encoding == null ? Charset.defaultCharset() : Charset.forName(encoding);
+    }
+
+    /**
+     * @param text Text.
+     * @param charset Charset.
+     * @return Encoded text.
+     */
+    private static byte[] encode(String text, Charset charset)
+    {
+        return text.getBytes(charset);
+    }
+}
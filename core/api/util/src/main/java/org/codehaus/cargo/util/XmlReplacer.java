@@ -0,0 +1,895 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus CARGO, copyright 2004-2011 Vincent Massol, 2012-2016 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.xml.namespace.NamespaceContext;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathExpression;
+import javax.xml.xpath.XPathExpressionException;
+import javax.xml.xpath.XPathFactory;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import org.codehaus.cargo.util.FileHandler.XmlReplacementDetails;
+import org.codehaus.cargo.util.log.LoggedObject;
+
+/**
+ * Performs the XML replacements of a {@link FileHandler}.<br>
+ * When all XPath expressions of a file are simple paths (such as
+ * <code>//server/socket-binding-group/socket-binding[@name='http']</code>), the file is
+ * rewritten in one streaming StAX pass without building a DOM. Otherwise, or if the document
+ * uses features the streaming pass does not handle (such as a DTD), the file is loaded as a DOM
+ * and the XPath expressions are evaluated; compiled XPath expressions are cached for the whole
+ * process and XML parsers and serializers are reused by each thread.
+ */
+public class XmlReplacer extends LoggedObject
+{
+    /**
+     * Maximum number of compiled XPath expressions kept in the cache.
+     */
+    private static final int XPATH_CACHE_SIZE = 1024;
+
+    /**
+     * Simple XPath expression step: an element name, optionally with an attribute predicate.
+     */
+    private static final Pattern STEP = Pattern.compile(
+        "([A-Za-z_][\\w.\\-:]*)(?:\\[@([A-Za-z_][\\w.\\-:]*)=(?:'([^']*)'|\"([^\"]*)\")\\])?");
+
+    /**
+     * XML declaration written when saving documents, as the DOM serializer does.
+     */
+    private static final String XML_DECLARATION =
+        "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>";
+
+    /**
+     * Compiled XPath expressions, by expression and namespace context.
+     */
+    private static final ConcurrentMap<XPathKey, XPathExpression> XPATH_CACHE =
+        new ConcurrentHashMap<XPathKey, XPathExpression>();
+
+    /**
+     * XPath compilers of each thread.
+     */
+    private static final ThreadLocal<XPath> XPATHS = new ThreadLocal<XPath>()
+    {
+        @Override
+        protected XPath initialValue()
+        {
+            return XPathFactory.newInstance().newXPath();
+        }
+    };
+
+    /**
+     * DOM builders of each thread.
+     */
+    private static final ThreadLocal<DocumentBuilder> DOCUMENT_BUILDERS =
+        new ThreadLocal<DocumentBuilder>()
+        {
+            @Override
+            protected DocumentBuilder initialValue()
+            {
+                DocumentBuilderFactory domFactory = DocumentBuilderFactory.newInstance();
+                // Do not load remote DTDS as remote servers sometimes become unreachable
+                try
+                {
+                    domFactory.setFeature(
+                        "http://apache.org/xml/features/nonvalidating/load-dtd-grammar", false);
+                    domFactory.setFeature(
+                        "http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
+                }
+                catch (ParserConfigurationException ignored)
+                {
+                    // Ignored
+                }
+                try
+                {
+                    return domFactory.newDocumentBuilder();
+                }
+                catch (ParserConfigurationException e)
+                {
+                    throw new CargoException("Cannot create XML DOM builder", e);
+                }
+            }
+        };
+
+    /**
+     * DOM serializers of each thread.
+     */
+    private static final ThreadLocal<Transformer> TRANSFORMERS = new ThreadLocal<Transformer>()
+    {
+        @Override
+        protected Transformer initialValue()
+        {
+            try
+            {
+                return TransformerFactory.newInstance().newTransformer();
+            }
+            catch (TransformerConfigurationException e)
+            {
+                throw new CargoException("Cannot create XML serializer", e);
+            }
+        }
+    };
+
+    /**
+     * StAX parser factory, <code>null</code> if the StAX implementation cannot be configured for
+     * the streaming pass.
+     */
+    private static final XMLInputFactory INPUT_FACTORY = createInputFactory();
+
+    /**
+     * Key of the compiled XPath expressions cache.
+     */
+    private static final class XPathKey
+    {
+        /**
+         * XPath expression.
+         */
+        private final String expression;
+
+        /**
+         * Namespace context, compared by identity.
+         */
+        private final NamespaceContext namespaceContext;
+
+        /**
+         * @param expression XPath expression.
+         * @param namespaceContext Namespace context, can be <code>null</code>.
+         */
+        private XPathKey(String expression, NamespaceContext namespaceContext)
+        {
+            this.expression = expression;
+            this.namespaceContext = namespaceContext;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean equals(Object object)
+        {
+            if (!(object instanceof XPathKey))
+            {
+                return false;
+            }
+            XPathKey other = (XPathKey) object;
+            return this.expression.equals(other.expression)
+                && this.namespaceContext == other.namespaceContext;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int hashCode()
+        {
+            return this.expression.hashCode() * 31
+                + System.identityHashCode(this.namespaceContext);
+        }
+    }
+
+    /**
+     * Step of a simple XPath expression.
+     */
+    private static final class Step
+    {
+        /**
+         * Element name.
+         */
+        private String name;
+
+        /**
+         * Name of the attribute of the predicate, <code>null</code> if none.
+         */
+        private String attributeName;
+
+        /**
+         * Value of the attribute of the predicate.
+         */
+        private String attributeValue;
+    }
+
+    /**
+     * Replacement being streamed.
+     */
+    private static final class StreamedReplacement
+    {
+        /**
+         * Replacement details.
+         */
+        private XmlReplacementDetails details;
+
+        /**
+         * Replacement value.
+         */
+        private String value;
+
+        /**
+         * Steps of the XPath expression.
+         */
+        private List<Step> steps;
+
+        /**
+         * Whether the path can start anywhere in the document (<code>//</code>).
+         */
+        private boolean anywhere;
+
+        /**
+         * Whether the replacement has been done.
+         */
+        private boolean done;
+    }
+
+    /**
+     * Open element while streaming.
+     */
+    private static final class OpenElement
+    {
+        /**
+         * Element name.
+         */
+        private String name;
+
+        /**
+         * Element attributes, in document order.
+         */
+        private Map<String, String> attributes;
+    }
+
+    /**
+     * File handler used to read and write files.
+     */
+    private FileHandler fileHandler;
+
+    /**
+     * @param fileHandler File handler used to read and write files.
+     */
+    public XmlReplacer(FileHandler fileHandler)
+    {
+        this.fileHandler = fileHandler;
+    }
+
+    /**
+     * Compiles an XPath expression, reusing the compiled expression if it has already been
+     * compiled with the same namespace context. As compiled expressions are not thread safe,
+     * callers must synchronize on the returned expression when evaluating it.
+     * @param expression XPath expression.
+     * @param namespaceContext Namespace context, can be <code>null</code>.
+     * @return Compiled XPath expression.
+     * @throws XPathExpressionException If the expression cannot be compiled.
+     */
+    public static XPathExpression compile(String expression, NamespaceContext namespaceContext)
+        throws XPathExpressionException
+    {
+        XPathKey key = new XPathKey(expression, namespaceContext);
+        XPathExpression compiled = XPATH_CACHE.get(key);
+        if (compiled == null)
+        {
+            XPath xPath = XPATHS.get();
+            xPath.reset();
+            if (namespaceContext != null)
+            {
+                xPath.setNamespaceContext(namespaceContext);
+            }
+            compiled = xPath.compile(expression);
+            if (XPATH_CACHE.size() >= XPATH_CACHE_SIZE)
+            {
+                XPATH_CACHE.clear();
+            }
+            XPathExpression existing = XPATH_CACHE.putIfAbsent(key, compiled);
+            if (existing != null)
+            {
+                compiled = existing;
+            }
+        }
+        return compiled;
+    }
+
+    /**
+     * Replaces using a map of XML replacements in a given file.
+     * @param file File to replace in.
+     * @param replacements Map containing XML replacements.
+     * @throws CargoException If anything fails, most notably if one of the replacements does not
+     * exist in the file.
+     */
+    public void replace(String file, Map<XmlReplacementDetails, String> replacements)
+        throws CargoException
+    {
+        List<StreamedReplacement> streamedReplacements = parse(replacements);
+        if (streamedReplacements != null && INPUT_FACTORY != null)
+        {
+            byte[] result;
+            try
+            {
+                result = stream(file, streamedReplacements);
+            }
+            catch (XMLStreamException e)
+            {
+                throw new CargoException("Cannot parse XML file " + file, e);
+            }
+            catch (IOException e)
+            {
+                throw new CargoException("Cannot modify XML file " + file, e);
+            }
+
+            if (result != null)
+            {
+                for (StreamedReplacement replacement : streamedReplacements)
+                {
+                    if (!replacement.done)
+                    {
+                        nodeNotFound(file, replacement.details);
+                    }
+                }
+                write(file, result);
+                return;
+            }
+            getLogger().debug("XML file " + file + " cannot be streamed, using a DOM",
+                this.getClass().getName());
+        }
+
+        replaceInDocument(file, replacements);
+    }
+
+    /**
+     * Replaces using a DOM.
+     * @param file File to replace in.
+     * @param replacements Map containing XML replacements.
+     */
+    private void replaceInDocument(String file, Map<XmlReplacementDetails, String> replacements)
+    {
+        Document doc = load(file);
+
+        try
+        {
+            for (Map.Entry<XmlReplacementDetails, String> replacement : replacements.entrySet())
+            {
+                String expression = replacement.getKey().getXpathExpression();
+                String attributeName = replacement.getKey().getAttributeName();
+
+                XPathExpression xPathExpr = compile(expression, null);
+                Node node;
+                synchronized (xPathExpr)
+                {
+                    node = (Node) xPathExpr.evaluate(doc, XPathConstants.NODE);
+                }
+
+                if (node == null)
+                {
+                    nodeNotFound(file, replacement.getKey());
+                    continue;
+                }
+
+                if (attributeName != null)
+                {
+                    Node attribute = node.getAttributes().getNamedItem(attributeName);
+
+                    if (attribute == null)
+                    {
+                        ((Element) node).setAttribute(attributeName, replacement.getValue());
+                    }
+                    else
+                    {
+                        attribute.setNodeValue(replacement.getValue());
+                    }
+                }
+                else
+                {
+                    node.setTextContent(replacement.getValue());
+                }
+            }
+        }
+        catch (CargoException e)
+        {
+            throw e;
+        }
+        catch (Exception e)
+        {
+            throw new CargoException("Cannot modify XML document " + file, e);
+        }
+
+        save(doc, file);
+    }
+
+    /**
+     * Handles a replacement which did not match any node.
+     * @param file File to replace in.
+     * @param details Replacement details.
+     * @throws CargoException If the replacement cannot be ignored.
+     */
+    private void nodeNotFound(String file, XmlReplacementDetails details) throws CargoException
+    {
+        String message = "Node " + details.getXpathExpression() + " not found in file " + file;
+
+        if (details.isIgnoreIfNonExisting() == Boolean.TRUE)
+        {
+            getLogger().debug(message, this.getClass().getName());
+        }
+        else
+        {
+            throw new CargoException("Cannot modify XML document " + file,
+                new CargoException(message));
+        }
+    }
+
+    /**
+     * @param file XML file to load.
+     * @return DOM of the file.
+     */
+    private Document load(String file)
+    {
+        if (!this.fileHandler.exists(file))
+        {
+            throw new CargoException("Cannot find file: " + file);
+        }
+        if (this.fileHandler.isDirectory(file))
+        {
+            throw new CargoException("The destination is a directory: " + file);
+        }
+
+        try
+        {
+            InputStream is = this.fileHandler.getInputStream(file);
+            try
+            {
+                DocumentBuilder builder = DOCUMENT_BUILDERS.get();
+                builder.reset();
+                return builder.parse(is);
+            }
+            finally
+            {
+                is.close();
+            }
+        }
+        catch (Exception e)
+        {
+            throw new CargoException("Cannot parse XML file " + file, e);
+        }
+    }
+
+    /**
+     * @param document DOM to save.
+     * @param file File to save to.
+     */
+    private void save(Document document, String file)
+    {
+        try
+        {
+            OutputStream os = this.fileHandler.getOutputStream(file);
+            try
+            {
+                Transformer transformer = TRANSFORMERS.get();
+                transformer.reset();
+                transformer.transform(new DOMSource(document), new StreamResult(os));
+            }
+            finally
+            {
+                os.close();
+            }
+        }
+        catch (Exception e)
+        {
+            throw new CargoException("Cannot modify XML file " + file, e);
+        }
+    }
+
+    /**
+     * @param file File to write.
+     * @param content Content to write.
+     */
+    private void write(String file, byte[] content)
+    {
+        try
+        {
+            OutputStream os = this.fileHandler.getOutputStream(file);
+            try
+            {
+                os.write(content);
+            }
+            finally
+            {
+                os.close();
+            }
+        }
+        catch (IOException e)
+        {
+            throw new CargoException("Cannot modify XML file " + file, e);
+        }
+    }
+
+    /**
+     * Parses the XPath expressions of the replacements as simple paths.
+     * @param replacements Map containing XML replacements.
+     * @return Replacements to stream, <code>null</code> if one of the XPath expressions is not a
+     * simple path.
+     */
+    private static List<StreamedReplacement> parse(
+        Map<XmlReplacementDetails, String> replacements)
+    {
+        List<StreamedReplacement> result = new ArrayList<StreamedReplacement>();
+        for (Map.Entry<XmlReplacementDetails, String> replacement : replacements.entrySet())
+        {
+            String expression = replacement.getKey().getXpathExpression().trim();
+            StreamedReplacement streamedReplacement = new StreamedReplacement();
+            streamedReplacement.details = replacement.getKey();
+            streamedReplacement.value = replacement.getValue();
+            streamedReplacement.steps = new ArrayList<Step>();
+
+            int position = 0;
+            if (expression.startsWith("//"))
+            {
+                streamedReplacement.anywhere = true;
+                position = 2;
+            }
+            else if (expression.startsWith("/"))
+            {
+                position = 1;
+            }
+            Matcher matcher = STEP.matcher(expression);
+            while (true)
+            {
+                if (!matcher.find(position) || matcher.start() != position)
+                {
+                    return null;
+                }
+                Step step = new Step();
+                step.name = matcher.group(1);
+                step.attributeName = matcher.group(2);
+                step.attributeValue =
+                    matcher.group(3) != null ? matcher.group(3) : matcher.group(4);
+                streamedReplacement.steps.add(step);
+
+                position = matcher.end();
+                if (position == expression.length())
+                {
+                    break;
+                }
+                else if (expression.charAt(position) != '/' || expression.startsWith("//",
+                    position))
+                {
+                    return null;
+                }
+                position++;
+            }
+            result.add(streamedReplacement);
+        }
+        return result;
+    }
+
+    /**
+     * Rewrites a file in one streaming pass.
+     * @param file File to replace in.
+     * @param replacements Replacements to do.
+     * @return New content of the file, <code>null</code> if the file cannot be streamed.
+     * @throws XMLStreamException If parsing fails.
+     * @throws IOException If reading or writing fails.
+     */
+    private byte[] stream(String file, List<StreamedReplacement> replacements)
+        throws XMLStreamException, IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Writer out = new OutputStreamWriter(bytes, "UTF-8");
+        List<OpenElement> stack = new ArrayList<OpenElement>();
+        // Depth at which the content is being skipped, as it gets replaced by a text
+        int skipDepth = -1;
+        boolean startTagOpen = false;
+
+        InputStream is = this.fileHandler.getInputStream(file);
+        try
+        {
+            XMLStreamReader reader = INPUT_FACTORY.createXMLStreamReader(is);
+            try
+            {
+                out.write(XML_DECLARATION);
+                while (reader.hasNext())
+                {
+                    int event = reader.next();
+                    if (event == XMLStreamConstants.DTD
+                        || event == XMLStreamConstants.ENTITY_REFERENCE)
+                    {
+                        return null;
+                    }
+                    if (startTagOpen && event != XMLStreamConstants.END_ELEMENT
+                        && event != XMLStreamConstants.END_DOCUMENT)
+                    {
+                        out.write('>');
+                        startTagOpen = false;
+                    }
+
+                    if (event == XMLStreamConstants.START_ELEMENT)
+                    {
+                        OpenElement element = new OpenElement();
+                        element.name = getName(reader.getPrefix(), reader.getLocalName());
+                        element.attributes = new LinkedHashMap<String, String>();
+                        for (int i = 0; i < reader.getAttributeCount(); i++)
+                        {
+                            element.attributes.put(getName(reader.getAttributePrefix(i),
+                                reader.getAttributeLocalName(i)), reader.getAttributeValue(i));
+                        }
+                        stack.add(element);
+
+                        String text = null;
+                        for (StreamedReplacement replacement : replacements)
+                        {
+                            if (replacement.done || !matches(replacement, stack))
+                            {
+                                continue;
+                            }
+                            if (skipDepth != -1)
+                            {
+                                // Nested in content being replaced, let the DOM decide
+                                return null;
+                            }
+                            replacement.done = true;
+                            if (replacement.details.getAttributeName() != null)
+                            {
+                                element.attributes.put(replacement.details.getAttributeName(),
+                                    replacement.value);
+                            }
+                            else
+                            {
+                                text = replacement.value;
+                            }
+                        }
+                        if (skipDepth != -1)
+                        {
+                            continue;
+                        }
+
+                        out.write('<');
+                        out.write(element.name);
+                        for (Map.Entry<String, String> attribute : element.attributes.entrySet())
+                        {
+                            out.write(' ');
+                            out.write(attribute.getKey());
+                            out.write("=\"");
+                            escape(out, attribute.getValue(), true);
+                            out.write('"');
+                        }
+                        startTagOpen = true;
+
+                        if (text != null)
+                        {
+                            if (!text.isEmpty())
+                            {
+                                out.write('>');
+                                startTagOpen = false;
+                                escape(out, text, false);
+                            }
+                            skipDepth = stack.size();
+                        }
+                    }
+                    else if (event == XMLStreamConstants.END_ELEMENT)
+                    {
+                        OpenElement element = stack.remove(stack.size() - 1);
+                        if (skipDepth != -1)
+                        {
+                            if (stack.size() >= skipDepth)
+                            {
+                                continue;
+                            }
+                            skipDepth = -1;
+                        }
+                        if (startTagOpen)
+                        {
+                            out.write("/>");
+                            startTagOpen = false;
+                        }
+                        else
+                        {
+                            out.write("</");
+                            out.write(element.name);
+                            out.write('>');
+                        }
+                    }
+                    else if (skipDepth != -1)
+                    {
+                        continue;
+                    }
+                    else if (event == XMLStreamConstants.CHARACTERS
+                        || event == XMLStreamConstants.SPACE)
+                    {
+                        escape(out, reader.getText(), false);
+                    }
+                    else if (event == XMLStreamConstants.CDATA)
+                    {
+                        out.write("<![CDATA[");
+                        out.write(reader.getText());
+                        out.write("]]>");
+                    }
+                    else if (event == XMLStreamConstants.COMMENT)
+                    {
+                        out.write("<!--");
+                        out.write(reader.getText());
+                        out.write("-->");
+                    }
+                    else if (event == XMLStreamConstants.PROCESSING_INSTRUCTION)
+                    {
+                        out.write("<?");
+                        out.write(reader.getPITarget());
+                        String data = reader.getPIData();
+                        if (data != null && !data.isEmpty())
+                        {
+                            out.write(' ');
+                            out.write(data);
+                        }
+                        out.write("?>");
+                    }
+                }
+            }
+            finally
+            {
+                reader.close();
+            }
+        }
+        finally
+        {
+            is.close();
+        }
+
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @param replacement Replacement.
+     * @param stack Open elements, the last one being the current element.
+     * @return <code>true</code> if the current element matches the path of the replacement.
+     */
+    private static boolean matches(StreamedReplacement replacement, List<OpenElement> stack)
+    {
+        int steps = replacement.steps.size();
+        int depth = stack.size();
+        if (depth < steps || !replacement.anywhere && depth != steps)
+        {
+            return false;
+        }
+        for (int i = 0; i < steps; i++)
+        {
+            Step step = replacement.steps.get(i);
+            OpenElement element = stack.get(depth - steps + i);
+            if (!step.name.equals(element.name))
+            {
+                return false;
+            }
+            if (step.attributeName != null
+                && !step.attributeValue.equals(element.attributes.get(step.attributeName)))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param prefix Prefix, can be <code>null</code> or empty.
+     * @param localName Local name.
+     * @return Qualified name.
+     */
+    private static String getName(String prefix, String localName)
+    {
+        if (prefix == null || prefix.isEmpty())
+        {
+            return localName;
+        }
+        return prefix + ":" + localName;
+    }
+
+    /**
+     * Writes escaped text.
+     * @param out Writer.
+     * @param text Text to escape.
+     * @param attribute Whether the text is an attribute value.
+     * @throws IOException If writing fails.
+     */
+    private static void escape(Writer out, String text, boolean attribute) throws IOException
+    {
+        for (int i = 0; i < text.length(); i++)
+        {
+            char c = text.charAt(i);
+            switch (c)
+            {
+                case '&':
+                    out.write("&amp;");
+                    break;
+                case '<':
+                    out.write("&lt;");
+                    break;
+                case '>':
+                    out.write("&gt;");
+                    break;
+                case '\r':
+                    out.write("&#13;");
+                    break;
+                case '"':
+                    out.write(attribute ? "&quot;" : "\"");
+                    break;
+                case '\n':
+                    out.write(attribute ? "&#10;" : "\n");
+                    break;
+                case '\t':
+                    out.write(attribute ? "&#9;" : "\t");
+                    break;
+                default:
+                    out.write(c);
+            }
+        }
+    }
+
+    /**
+     * @return StAX parser factory for the streaming pass, <code>null</code> if the StAX
+     * implementation cannot be configured for it.
+     */
+    private static XMLInputFactory createInputFactory()
+    {
+        try
+        {
+            XMLInputFactory factory = XMLInputFactory.newInstance();
+            // Names are matched as written in the document, as with the non namespace aware DOM
+            factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.FALSE);
+            factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+            factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.FALSE);
+            try
+            {
+                factory.setProperty(
+                    "http://java.sun.com/xml/stream/properties/report-cdata-event", Boolean.TRUE);
+            }
+            catch (IllegalArgumentException ignored)
+            {
+                // CDATA sections are then written as escaped text
+            }
+            return factory;
+        }
+        catch (RuntimeException e)
+        {
+            return null;
+        }
+    }
+}
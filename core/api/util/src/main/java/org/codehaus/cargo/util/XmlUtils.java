@@ -242,13 +242,7 @@ public class XmlUtils
                 {
                     // Ignored
                 }
-                finally
-                {
-                    is = null;
-                }
             }
-
-            System.gc();
         }
     }
 
@@ -285,13 +279,7 @@ public class XmlUtils
                 {
                     // Ignored
                 }
-                finally
-                {
-                    os = null;
-                }
             }
-
-            System.gc();
         }
     }
 
@@ -0,0 +1,93 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus CARGO, copyright 2004-2011 Vincent Massol, 2012-2016 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.util;
+
+import java.io.File;
+
+import junit.framework.TestCase;
+
+/**
+ * Helper {@link junit.framework.TestCase} that provides each test with an empty temporary
+ * directory, deleted once the test is over.
+ */
+public abstract class AbstractTemporaryDirectoryTest extends TestCase
+{
+    /**
+     * File handler.
+     */
+    private FileHandler fileHandler;
+
+    /**
+     * Temporary directory of the test.
+     */
+    private File temporaryDirectory;
+
+    /**
+     * Creates the temporary directory. {@inheritDoc}
+     * @throws Exception If anything goes wrong.
+     */
+    @Override
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        this.fileHandler = new DefaultFileHandler();
+        this.temporaryDirectory = File.createTempFile("cargo-test", null).getAbsoluteFile();
+        // Delete and then recreate temporary directory since File doesn't support creating a
+        // temporary directory
+        this.temporaryDirectory.delete();
+        this.temporaryDirectory.mkdir();
+    }
+
+    /**
+     * Deletes the temporary directory. {@inheritDoc}
+     * @throws Exception If anything goes wrong.
+     */
+    @Override
+    protected void tearDown() throws Exception
+    {
+        this.fileHandler.delete(this.temporaryDirectory.getPath());
+        super.tearDown();
+    }
+
+    /**
+     * @return The file handler.
+     */
+    protected FileHandler getFileHandler()
+    {
+        return this.fileHandler;
+    }
+
+    /**
+     * @return The temporary directory of the test.
+     */
+    protected File getTemporaryDirectory()
+    {
+        return this.temporaryDirectory;
+    }
+
+    /**
+     * @param path Path relative to the temporary directory.
+     * @return The file at that path in the temporary directory.
+     */
+    protected File getTemporaryFile(String path)
+    {
+        return new File(this.temporaryDirectory, path);
+    }
+}
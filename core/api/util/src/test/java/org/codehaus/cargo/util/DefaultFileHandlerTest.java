@@ -19,7 +19,10 @@
  */
 package org.codehaus.cargo.util;
 
+import java.io.FileOutputStream;
 import java.util.UUID;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 import junit.framework.TestCase;
 import org.apache.tools.ant.types.FilterChain;
@@ -190,4 +193,40 @@ public class DefaultFileHandlerTest extends TestCase
         assertTrue("File " + file + " does not contain: " + test, read.contains(test));
     }
 
+    /**
+     * Test exploding an archive, replacing any existing directory.
+     * @throws Exception If anything goes wrong.
+     */
+    public void testExplode() throws Exception
+    {
+        String random = UUID.randomUUID().toString();
+        String war = "target/" + random + ".war";
+        String exploded = "target/" + random;
+        ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(war));
+        try
+        {
+            zip.putNextEntry(new ZipEntry("WEB-INF/"));
+            zip.putNextEntry(new ZipEntry("WEB-INF/web.xml"));
+            zip.write("<web-app/>".getBytes("UTF-8"));
+            zip.putNextEntry(new ZipEntry("index.html"));
+            zip.write(new byte[100000]);
+            zip.closeEntry();
+        }
+        finally
+        {
+            zip.close();
+        }
+        this.fileHandler.mkdirs(exploded);
+        this.fileHandler.createFile(exploded + "/old.txt");
+
+        this.fileHandler.explode(war, exploded);
+
+        assertFalse(this.fileHandler.exists(exploded + "/old.txt"));
+        assertEquals("<web-app/>",
+            this.fileHandler.readTextFile(exploded + "/WEB-INF/web.xml", "UTF-8"));
+        assertEquals(100000, this.fileHandler.getSize(exploded + "/index.html"));
+        this.fileHandler.delete(exploded);
+        this.fileHandler.delete(war);
+    }
+
 }
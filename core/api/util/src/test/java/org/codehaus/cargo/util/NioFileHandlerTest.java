@@ -0,0 +1,181 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus CARGO, copyright 2004-2011 Vincent Massol, 2012-2016 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.util;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.UUID;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link NioFileHandler}.
+ */
+public class NioFileHandlerTest extends TestCase
+{
+    /**
+     * File handler.
+     */
+    private NioFileHandler fileHandler;
+
+    /**
+     * Working directory for the test.
+     */
+    private File workDir;
+
+    /**
+     * Creates the file handler and the working directory. {@inheritDoc}
+     * @throws Exception If anything goes wrong.
+     */
+    @Override
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        this.fileHandler = new NioFileHandler(NioFileHandler.LINK_MODE_NONE);
+        this.workDir = new File("target/" + UUID.randomUUID().toString()).getAbsoluteFile();
+        this.fileHandler.mkdirs(this.workDir.getPath());
+    }
+
+    /**
+     * Deletes the working directory. {@inheritDoc}
+     * @throws Exception If anything goes wrong.
+     */
+    @Override
+    protected void tearDown() throws Exception
+    {
+        this.fileHandler.delete(this.workDir.getPath());
+        System.clearProperty(FileHandlerFactory.FILE_HANDLER_PROPERTY);
+        super.tearDown();
+    }
+
+    /**
+     * Test copying a file, including to a non-existing directory.
+     */
+    public void testCopyFile()
+    {
+        String source = createFile("source.txt", "source");
+        String target = this.fileHandler.append(this.workDir.getPath(), "sub/dir/target.txt");
+
+        this.fileHandler.copyFile(source, target);
+        assertEquals("source", this.fileHandler.readTextFile(target, "UTF-8"));
+
+        this.fileHandler.writeTextFile(target, "newer", "UTF-8");
+        new File(target).setLastModified(new File(source).lastModified() + 10000);
+        this.fileHandler.copyFile(source, target, false);
+        assertEquals("newer", this.fileHandler.readTextFile(target, "UTF-8"));
+        this.fileHandler.copyFile(source, target, true);
+        assertEquals("source", this.fileHandler.readTextFile(target, "UTF-8"));
+    }
+
+    /**
+     * Test copying a directory with excludes and empty directories.
+     */
+    public void testCopyDirectory()
+    {
+        createFile("source/a.txt", "a");
+        createFile("source/lib/b.jar", "b");
+        createFile("source/logs/server.log", "log");
+        createFile("source/.svn/entries", "svn");
+        this.fileHandler.mkdirs(this.fileHandler.append(this.workDir.getPath(), "source/empty"));
+        String source = this.fileHandler.append(this.workDir.getPath(), "source");
+        String target = this.fileHandler.append(this.workDir.getPath(), "target");
+        this.fileHandler.setThreads(3);
+
+        this.fileHandler.copyDirectory(source, target, Arrays.asList("logs/**"));
+
+        assertEquals("a", this.fileHandler.readTextFile(target + "/a.txt", "UTF-8"));
+        assertEquals("b", this.fileHandler.readTextFile(target + "/lib/b.jar", "UTF-8"));
+        assertTrue(this.fileHandler.isDirectory(target + "/empty"));
+        assertFalse(this.fileHandler.exists(target + "/logs"));
+        assertFalse(this.fileHandler.exists(target + "/.svn"));
+    }
+
+    /**
+     * Test that files written after a hard linked copy do not change the files they were copied
+     * from.
+     */
+    public void testHardLinkedFilesAreNotWrittenInPlace()
+    {
+        String sourceFile = createFile("source/conf/server.xml", "original");
+        createFile("source/lib/a.jar", "a");
+        String source = this.fileHandler.append(this.workDir.getPath(), "source");
+        String target = this.fileHandler.append(this.workDir.getPath(), "target");
+        this.fileHandler.setLinkMode(NioFileHandler.LINK_MODE_HARDLINK);
+
+        this.fileHandler.copyDirectory(source, target);
+        String targetFile = target + "/conf/server.xml";
+        this.fileHandler.replaceInFile(targetFile,
+            Collections.singletonMap("original", "modified"), "UTF-8");
+        this.fileHandler.copyFile(sourceFile, target + "/lib/a.jar", true);
+
+        assertEquals("modified", this.fileHandler.readTextFile(targetFile, "UTF-8"));
+        assertEquals("original", this.fileHandler.readTextFile(sourceFile, "UTF-8"));
+        assertEquals("a", this.fileHandler.readTextFile(source + "/lib/a.jar", "UTF-8"));
+    }
+
+    /**
+     * Test copying file streams.
+     * @throws Exception If anything goes wrong.
+     */
+    public void testCopyStreams() throws Exception
+    {
+        String source = createFile("source.txt", "0123456789");
+        String target = this.fileHandler.append(this.workDir.getPath(), "target.txt");
+        InputStream in = this.fileHandler.getInputStream(source);
+        OutputStream out = this.fileHandler.getOutputStream(target);
+        try
+        {
+            assertEquals('0', in.read());
+            this.fileHandler.copy(in, out);
+        }
+        finally
+        {
+            in.close();
+            out.close();
+        }
+        assertEquals("123456789", this.fileHandler.readTextFile(target, "UTF-8"));
+    }
+
+    /**
+     * Test selecting the file handler with a system property.
+     */
+    public void testFileHandlerFactory()
+    {
+        assertEquals(DefaultFileHandler.class, FileHandlerFactory.createFileHandler().getClass());
+        System.setProperty(FileHandlerFactory.FILE_HANDLER_PROPERTY, FileHandlerFactory.NIO);
+        assertEquals(NioFileHandler.class, FileHandlerFactory.createFileHandler().getClass());
+    }
+
+    /**
+     * @param path Path relative to the working directory.
+     * @param content File content.
+     * @return Path of the created file.
+     */
+    private String createFile(String path, String content)
+    {
+        String file = this.fileHandler.append(this.workDir.getPath(), path);
+        this.fileHandler.mkdirs(this.fileHandler.getParent(file));
+        this.fileHandler.writeTextFile(file, content, "UTF-8");
+        return file;
+    }
+}
@@ -0,0 +1,226 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus CARGO, copyright 2004-2011 Vincent Massol, 2012-2016 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.UUID;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link RawZipOutputStream} and {@link RawZipFile}.
+ */
+public class RawZipOutputStreamTest extends TestCase
+{
+    /**
+     * File handler.
+     */
+    private FileHandler fileHandler;
+
+    /**
+     * Working directory for the test.
+     */
+    private File workDir;
+
+    /**
+     * Test content, compressible.
+     */
+    private byte[] text;
+
+    /**
+     * Test content, not compressible.
+     */
+    private byte[] binary;
+
+    /**
+     * Creates the working directory and the test content. {@inheritDoc}
+     * @throws Exception If anything goes wrong.
+     */
+    @Override
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        this.fileHandler = new DefaultFileHandler();
+        this.workDir = new File("target/" + UUID.randomUUID().toString()).getAbsoluteFile();
+        this.fileHandler.mkdirs(this.workDir.getPath());
+
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 10000; i++)
+        {
+            sb.append("line ").append(i).append('\n');
+        }
+        this.text = sb.toString().getBytes("UTF-8");
+        this.binary = new byte[100000];
+        new Random(1).nextBytes(this.binary);
+    }
+
+    /**
+     * Deletes the working directory. {@inheritDoc}
+     * @throws Exception If anything goes wrong.
+     */
+    @Override
+    protected void tearDown() throws Exception
+    {
+        this.fileHandler.delete(this.workDir.getPath());
+        super.tearDown();
+    }
+
+    /**
+     * Test copying entries as they are stored and adding deflated entries.
+     * @throws Exception If anything goes wrong.
+     */
+    public void testCopyAndAddEntries() throws Exception
+    {
+        File source = new File(this.workDir, "source.zip");
+        ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(source));
+        try
+        {
+            zos.putNextEntry(new ZipEntry("folder/"));
+            zos.closeEntry();
+            zos.putNextEntry(new ZipEntry("folder/text.txt"));
+            zos.write(this.text);
+            zos.closeEntry();
+            ZipEntry stored = new ZipEntry("folder/stored-\u00e9.bin");
+            stored.setMethod(ZipEntry.STORED);
+            stored.setSize(this.binary.length);
+            stored.setCompressedSize(this.binary.length);
+            CRC32 crc = new CRC32();
+            crc.update(this.binary);
+            stored.setCrc(crc.getValue());
+            zos.putNextEntry(stored);
+            zos.write(this.binary);
+            zos.closeEntry();
+        }
+        finally
+        {
+            zos.close();
+        }
+
+        File target = new File(this.workDir, "target.zip");
+        RawZipOutputStream out = new RawZipOutputStream(new FileOutputStream(target));
+        RawZipFile zipFile = new RawZipFile(source);
+        try
+        {
+            assertEquals(3, zipFile.getEntries().size());
+            for (RawZipFile.Entry entry : zipFile.getEntries())
+            {
+                zipFile.copyTo(entry, out);
+            }
+            out.putNextEntry("added/empty.txt", System.currentTimeMillis());
+            out.putNextEntry("added/text.txt", System.currentTimeMillis());
+            out.write(this.text);
+        }
+        finally
+        {
+            zipFile.close();
+            out.close();
+        }
+
+        ZipFile result = new ZipFile(target);
+        try
+        {
+            assertEquals(5, result.size());
+            assertTrue(result.getEntry("folder/").isDirectory());
+            assertTrue(Arrays.equals(this.text,
+                read(result.getInputStream(result.getEntry("folder/text.txt")))));
+            assertTrue(Arrays.equals(this.binary,
+                read(result.getInputStream(result.getEntry("folder/stored-\u00e9.bin")))));
+            assertEquals(0,
+                read(result.getInputStream(result.getEntry("added/empty.txt"))).length);
+            assertTrue(Arrays.equals(this.text,
+                read(result.getInputStream(result.getEntry("added/text.txt")))));
+            assertTrue(result.getEntry("added/text.txt").getCompressedSize() < this.text.length);
+        }
+        finally
+        {
+            result.close();
+        }
+
+        ZipInputStream zis = new ZipInputStream(new ByteArrayInputStream(
+            read(this.fileHandler.getInputStream(target.getPath()))));
+        try
+        {
+            int entries = 0;
+            while (zis.getNextEntry() != null)
+            {
+                read(zis);
+                entries++;
+            }
+            assertEquals(5, entries);
+        }
+        finally
+        {
+            zis.close();
+        }
+    }
+
+    /**
+     * Test that duplicate entries are refused.
+     * @throws Exception If anything goes wrong.
+     */
+    public void testDuplicateEntry() throws Exception
+    {
+        RawZipOutputStream out = new RawZipOutputStream(new ByteArrayOutputStream());
+        try
+        {
+            out.putNextEntry("entry.txt", System.currentTimeMillis());
+            out.putNextEntry("entry.txt", System.currentTimeMillis());
+            fail("No exception thrown");
+        }
+        catch (ZipException expected)
+        {
+            assertEquals("Duplicate entry: entry.txt", expected.getMessage());
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    /**
+     * @param in Input stream, which will not be closed.
+     * @return Content of the input stream.
+     * @throws IOException If anything goes wrong.
+     */
+    private byte[] read(InputStream in) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1)
+        {
+            bytes.write(buffer, 0, read);
+        }
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus CARGO, copyright 2004-2011 Vincent Massol, 2012-2016 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link TokenReplacer} and {@link TokenFilterChain}.
+ */
+public class TokenReplacerTest extends TestCase
+{
+    /**
+     * Tokens used by the tests.
+     */
+    private Map<String, String> tokens;
+
+    /**
+     * Creates the tokens. {@inheritDoc}
+     * @throws Exception If anything goes wrong.
+     */
+    @Override
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        this.tokens = new LinkedHashMap<String, String>();
+        this.tokens.put("cargo.servlet.port", "8080");
+        this.tokens.put("cargo.hostname", "h\u00e9te");
+        this.tokens.put("cargo", "C");
+    }
+
+    /**
+     * Test replacing tokens, keeping line endings and unknown tokens.
+     * @throws Exception If anything goes wrong.
+     */
+    public void testReplace() throws Exception
+    {
+        assertEquals("port=8080\r\nhost=h\u00e9te\n@unknown@ C\r\n",
+            replace("port=@cargo.servlet.port@\r\nhost=@cargo.hostname@\n@unknown@ @cargo@\r\n"));
+    }
+
+    /**
+     * Test the delimiter edge cases, which need to behave like Ant's ReplaceTokens.
+     * @throws Exception If anything goes wrong.
+     */
+    public void testDelimiters() throws Exception
+    {
+        assertEquals("@@C", replace("@@@cargo@"));
+        assertEquals("@xC@", replace("@x@cargo@@"));
+        assertEquals("mail@cargo", replace("mail@cargo"));
+        assertEquals("@cargo.servlet", replace("@cargo.servlet"));
+        assertEquals("", replace(""));
+    }
+
+    /**
+     * Test detecting whether a stream contains tokens.
+     * @throws Exception If anything goes wrong.
+     */
+    public void testContainsTokens() throws Exception
+    {
+        TokenReplacer replacer = new TokenReplacer(this.tokens, "UTF-8");
+        assertTrue(replacer.containsTokens(new ByteArrayInputStream(
+            "a @b@ @cargo@".getBytes("UTF-8"))));
+        assertFalse(replacer.containsTokens(new ByteArrayInputStream(
+            "a @b@ @cargo.port@".getBytes("UTF-8"))));
+    }
+
+    /**
+     * Test the tokens exposed by a {@link TokenFilterChain}.
+     */
+    public void testTokenFilterChain()
+    {
+        TokenFilterChain filterChain = new TokenFilterChain();
+        AntUtils antUtils = new AntUtils();
+        antUtils.addTokenToFilterChain(filterChain, "key", "first");
+        antUtils.addTokenToFilterChain(filterChain, "key", "second");
+        assertEquals("first", filterChain.getTokens().get("key"));
+
+        antUtils.addTokenToFilterChain(filterChain, "other", "a@b");
+        assertNull(filterChain.getTokens());
+
+        assertFalse(TokenReplacer.isSupported("UTF-16"));
+        assertTrue(TokenReplacer.isSupported("ISO-8859-1"));
+    }
+
+    /**
+     * @param text Text to replace the tokens in.
+     * @return Text with the tokens replaced.
+     * @throws Exception If anything goes wrong.
+     */
+    private String replace(String text) throws Exception
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new TokenReplacer(this.tokens, "UTF-8").replace(
+            new ByteArrayInputStream(text.getBytes("UTF-8")), out);
+        return new String(out.toByteArray(), "UTF-8");
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus CARGO, copyright 2004-2011 Vincent Massol, 2012-2016 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.codehaus.cargo.util.FileHandler.XmlReplacementDetails;
+
+/**
+ * Unit tests for {@link XmlReplacer}.
+ */
+public class XmlReplacerTest extends AbstractTemporaryDirectoryTest
+{
+    /**
+     * XML declaration of saved documents.
+     */
+    private static final String DECLARATION =
+        "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>";
+
+    /**
+     * Test that simple paths are replaced while keeping the rest of the document.
+     */
+    public void testStreamedReplacement()
+    {
+        String file = createFile("<!-- c --><server xmlns=\"urn:test\">\n"
+            + "  <group><binding name=\"http\" port=\"8080\"/>"
+            + "<binding name=\"a/b\" port=\"1\"/></group>\n"
+            + "  <ns:host ns:x=\"1\"><![CDATA[<x>]]> &amp; text<child/></ns:host>\n"
+            + "</server>");
+
+        Map<XmlReplacementDetails, String> replacements =
+            new LinkedHashMap<XmlReplacementDetails, String>();
+        replacements.put(new XmlReplacementDetails(
+            "//server/group/binding[@name='http']", "port", null), "9090");
+        replacements.put(new XmlReplacementDetails(
+            "/server/group/binding[@name=\"a/b\"]", "new", null), "\"x\"");
+        replacements.put(new XmlReplacementDetails("//ns:host", null, null), "a < b");
+        new XmlReplacer(getFileHandler()).replace(file, replacements);
+
+        assertEquals(DECLARATION + "<!-- c --><server xmlns=\"urn:test\">\n"
+            + "  <group><binding name=\"http\" port=\"9090\"/>"
+            + "<binding name=\"a/b\" port=\"1\" new=\"&quot;x&quot;\"/></group>\n"
+            + "  <ns:host ns:x=\"1\">a &lt; b</ns:host>\n"
+            + "</server>", getFileHandler().readTextFile(file, "UTF-8"));
+    }
+
+    /**
+     * Test that documents which cannot be streamed are replaced using a DOM.
+     */
+    public void testDocumentReplacement()
+    {
+        String file = createFile("<!DOCTYPE server [<!ENTITY e \"v\">]>"
+            + "<server><binding name=\"http\">&e;</binding></server>");
+
+        Map<XmlReplacementDetails, String> replacements =
+            new LinkedHashMap<XmlReplacementDetails, String>();
+        replacements.put(new XmlReplacementDetails("//binding[@name='http']", "port", null),
+            "9090");
+        new XmlReplacer(getFileHandler()).replace(file, replacements);
+
+        String content = getFileHandler().readTextFile(file, "UTF-8");
+        assertTrue(content, content.contains("port=\"9090\""));
+
+        replacements.clear();
+        replacements.put(new XmlReplacementDetails("//binding[1]", null, null), "text");
+        new XmlReplacer(getFileHandler()).replace(file, replacements);
+
+        content = getFileHandler().readTextFile(file, "UTF-8");
+        assertTrue(content, content.contains(">text</binding>"));
+    }
+
+    /**
+     * Test that non existing nodes fail unless they are to be ignored.
+     */
+    public void testNonExistingNode()
+    {
+        String file = createFile("<server/>");
+
+        Map<XmlReplacementDetails, String> replacements =
+            new LinkedHashMap<XmlReplacementDetails, String>();
+        replacements.put(new XmlReplacementDetails("//binding", "port", Boolean.TRUE), "1");
+        new XmlReplacer(getFileHandler()).replace(file, replacements);
+
+        replacements.clear();
+        replacements.put(new XmlReplacementDetails("//binding", "port", null), "1");
+        try
+        {
+            new XmlReplacer(getFileHandler()).replace(file, replacements);
+            fail("No exception thrown");
+        }
+        catch (CargoException expected)
+        {
+            assertEquals("Node //binding not found in file " + file,
+                expected.getCause().getMessage());
+        }
+    }
+
+    /**
+     * Test that compiled XPath expressions are cached.
+     * @throws Exception If anything goes wrong.
+     */
+    public void testCompiledExpressionIsCached() throws Exception
+    {
+        assertSame(XmlReplacer.compile("//server[1]", null),
+            XmlReplacer.compile("//server[1]", null));
+    }
+
+    /**
+     * @param content Content of the file.
+     * @return Path of the created file.
+     */
+    private String createFile(String content)
+    {
+        String file = getTemporaryFile("test.xml").getPath();
+        getFileHandler().writeTextFile(file, content, "UTF-8");
+        return file;
+    }
+}
@@ -258,9 +258,6 @@ public class GeronimoUtils
             {
                 // Ignored
             }
-
-            connector = null;
-            System.gc();
         }
 
         logger.debug("Returning bundle ID " + bundleId, this.getClass().getName());
@@ -320,9 +317,6 @@ public class GeronimoUtils
             {
                 // Ignored
             }
-
-            connector = null;
-            System.gc();
         }
     }
 
@@ -123,8 +123,6 @@ public class GlassFish4xInstalledLocalDeployer extends GlassFish3xInstalledLocal
         finally
         {
             existing.close();
-            existing = null;
-            System.gc();
         }
         passwordProperties.setProperty("AS_ADMIN_USERPASSWORD", password);
         
@@ -137,8 +135,6 @@ public class GlassFish4xInstalledLocalDeployer extends GlassFish3xInstalledLocal
         finally
         {
             tempFileStream.close();
-            tempFileStream = null;
-            System.gc();
         }
         return tempFile;
     }
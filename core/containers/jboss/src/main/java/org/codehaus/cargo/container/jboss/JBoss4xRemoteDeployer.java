@@ -45,8 +45,8 @@ import org.codehaus.cargo.container.property.ServletPropertySet;
 import org.codehaus.cargo.container.spi.deployer.AbstractRemoteDeployer;
 import org.codehaus.cargo.container.spi.deployer.DeployerWatchdog;
 import org.codehaus.cargo.util.CargoException;
-import org.codehaus.cargo.util.DefaultFileHandler;
 import org.codehaus.cargo.util.FileHandler;
+import org.codehaus.cargo.util.FileHandlerFactory;
 
 /**
  * Remote deployer that uses the JMX console to deploy to JBoss.
@@ -131,7 +131,7 @@ public class JBoss4xRemoteDeployer extends AbstractRemoteDeployer
         this.configuration = container.getConfiguration();
         this.connection = connection;
         this.deployableServerSocketAddress = buildSocketAddressForDeployableServer();
-        this.fileHandler = new DefaultFileHandler();
+        this.fileHandler = FileHandlerFactory.createFileHandler();
         this.fileServer = fileServer;
 
         // Set a timeout in order to avoid CARGO-859
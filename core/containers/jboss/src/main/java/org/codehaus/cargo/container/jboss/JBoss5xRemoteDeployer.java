@@ -110,10 +110,6 @@ public class JBoss5xRemoteDeployer extends AbstractRemoteDeployer
                     // Ignored
                 }
             }
-
-            deployerJarInputStream = null;
-            deployerJarOutputStream = null;
-            System.gc();
         }
 
         ClassLoader jBossConnectorClassLoader = null;
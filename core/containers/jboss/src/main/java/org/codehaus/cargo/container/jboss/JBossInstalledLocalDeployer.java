@@ -62,6 +62,15 @@ public class JBossInstalledLocalDeployer extends AbstractCopyingInstalledLocalDe
         }
     }
 
+    /**
+     * {@inheritDoc}. Deploying to JBoss only copies files, which can be done concurrently.
+     */
+    @Override
+    protected boolean isConcurrentDeploymentSupported()
+    {
+        return true;
+    }
+
     /**
      * {@inheritDoc}. We override the base implementation because JBoss requires that expanded WAR
      * directories to end with <code>.war</code> so we have to rename the expanded WAR directory.
@@ -29,6 +29,7 @@ import org.codehaus.cargo.container.configuration.LocalConfiguration;
 import org.codehaus.cargo.container.deployable.Deployable;
 import org.codehaus.cargo.container.deployable.DeployableType;
 import org.codehaus.cargo.container.deployable.WAR;
+import org.codehaus.cargo.container.internal.util.MethodCache;
 import org.codehaus.cargo.container.jetty.internal.AbstractJettyEmbeddedLocalContainer;
 import org.codehaus.cargo.container.jetty.internal.JettyExecutorThread;
 import org.codehaus.cargo.container.jetty.internal.JettyUtils;
@@ -77,6 +78,11 @@ public class Jetty6xEmbeddedLocalContainer extends AbstractJettyEmbeddedLocalCon
      */
     protected Method removeHandlerMethod;
 
+    /**
+     * Cache of the methods looked up in the classes of the embedded container.
+     */
+    private final MethodCache methodCache = new MethodCache();
+
     /**
      * {@inheritDoc}
      * @see AbstractJettyEmbeddedLocalContainer#AbstractJettyEmbeddedLocalContainer(org.codehaus.cargo.container.configuration.LocalConfiguration)
@@ -95,6 +101,14 @@ public class Jetty6xEmbeddedLocalContainer extends AbstractJettyEmbeddedLocalCon
         return ID;
     }
 
+    /**
+     * @return Cache of the methods looked up in the classes of the embedded container.
+     */
+    protected MethodCache getMethodCache()
+    {
+        return this.methodCache;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -117,9 +131,10 @@ public class Jetty6xEmbeddedLocalContainer extends AbstractJettyEmbeddedLocalCon
         if (this.defaultRealm != null)
         {
             Object securityHandler =
-                webapp.getClass().getMethod("getSecurityHandler", new Class[] {}).invoke(webapp,
-                    new Object[] {});
-            securityHandler.getClass().getMethod("setUserRealm", new Class[] {userRealmClass})
+                getMethodCache().getMethod(webapp.getClass(), "getSecurityHandler", new Class[] {})
+                    .invoke(webapp, new Object[] {});
+            getMethodCache().getMethod(securityHandler.getClass(), "setUserRealm",
+                new Class[] {userRealmClass})
                 .invoke(securityHandler, new Object[] {this.defaultRealm});
         }
     }
@@ -157,7 +172,7 @@ public class Jetty6xEmbeddedLocalContainer extends AbstractJettyEmbeddedLocalCon
         Class selectConnectorClass =
             getClassLoader().loadClass("org.mortbay.jetty.nio.SelectChannelConnector");
         Object connector = selectConnectorClass.newInstance();
-        selectConnectorClass.getMethod("setPort", new Class[] {int.class}).invoke(
+        getMethodCache().getMethod(selectConnectorClass, "setPort", new Class[] {int.class}).invoke(
             connector,
             new Object[] {new Integer(getConfiguration()
                 .getPropertyValue(ServletPropertySet.PORT))});
@@ -167,8 +182,8 @@ public class Jetty6xEmbeddedLocalContainer extends AbstractJettyEmbeddedLocalCon
         Object connectorArray =
             Array.newInstance(connectorClass, 1);
         Array.set(connectorArray, 0, connector);
-        getServer().getClass().getMethod("addConnector", new Class[] {connectorClass}).invoke(
-            getServer(), new Object[] {connector});
+        getMethodCache().getMethod(getServer().getClass(), "addConnector",
+            new Class[] {connectorClass}).invoke(getServer(), new Object[] {connector});
     }
 
     /**
@@ -201,18 +216,21 @@ public class Jetty6xEmbeddedLocalContainer extends AbstractJettyEmbeddedLocalCon
         Object handlerArray = Array.newInstance(handlerClass, 2);
         Array.set(handlerArray, 0, contextHandlers);
         Array.set(handlerArray, 1, defaultHandler);
-        handlers.getClass().getMethod("setHandlers", new Class[] {handlerArray.getClass()})
+        getMethodCache().getMethod(handlers.getClass(), "setHandlers",
+            new Class[] {handlerArray.getClass()})
             .invoke(handlers, new Object[] {handlerArray});
-        getServer().getClass().getMethod("setHandler", new Class[] {handlerClass}).invoke(
-            getServer(), new Object[] {handlers});
+        getMethodCache().getMethod(getServer().getClass(), "setHandler", new Class[] {handlerClass})
+            .invoke(getServer(), new Object[] {handlers});
 
         // Method to add a webappcontext to jetty
         addHandlerMethod =
-            contextHandlers.getClass().getMethod("addHandler", new Class[] {handlerClass});
+            getMethodCache().getMethod(contextHandlers.getClass(), "addHandler",
+                new Class[] {handlerClass});
 
         // Method to remove a webappcontext from jetty
         removeHandlerMethod =
-            contextHandlers.getClass().getMethod("removeHandler", new Class[] {handlerClass});
+            getMethodCache().getMethod(contextHandlers.getClass(), "removeHandler",
+                new Class[] {handlerClass});
     }
 
     /**
@@ -258,13 +276,14 @@ public class Jetty6xEmbeddedLocalContainer extends AbstractJettyEmbeddedLocalCon
         Object handler =
             getClassLoader().loadClass("org.mortbay.jetty.webapp.WebAppContext").newInstance();
 
-        handler.getClass().getMethod("setContextPath", new Class[] {String.class}).invoke(
-            handler, new Object[] {"/" + ((WAR) deployable).getContext()});
-        handler.getClass().getMethod("setWar", new Class[] {String.class}).invoke(handler,
-            new Object[] {deployable.getFile()});
-        handler.getClass().getMethod("setDefaultsDescriptor", String.class).invoke(handler,
-            getFileHandler().append(getConfiguration().getHome(), "etc/webdefault.xml"));
-        handler.getClass().getMethod("setExtraClasspath", String.class)
+        getMethodCache().getMethod(handler.getClass(), "setContextPath", new Class[] {String.class})
+            .invoke(handler, new Object[] {"/" + ((WAR) deployable).getContext()});
+        getMethodCache().getMethod(handler.getClass(), "setWar", new Class[] {String.class})
+            .invoke(handler, new Object[] {deployable.getFile()});
+        getMethodCache().getMethod(handler.getClass(), "setDefaultsDescriptor", String.class)
+            .invoke(handler,
+                getFileHandler().append(getConfiguration().getHome(), "etc/webdefault.xml"));
+        getMethodCache().getMethod(handler.getClass(), "setExtraClasspath", String.class)
             .invoke(handler, JettyUtils.getExtraClasspath((WAR) deployable, false));
 
         setDefaultRealm(handler);
@@ -285,10 +304,10 @@ public class Jetty6xEmbeddedLocalContainer extends AbstractJettyEmbeddedLocalCon
     {
         Object handler =
             getClassLoader().loadClass("org.mortbay.jetty.webapp.WebAppContext").newInstance();
-        handler.getClass().getMethod("setContextPath", new Class[] {String.class}).invoke(
-            handler, new Object[] {contextPath});
-        handler.getClass().getMethod("setWar", new Class[] {String.class}).invoke(handler,
-            new Object[] {war});
+        getMethodCache().getMethod(handler.getClass(), "setContextPath", new Class[] {String.class})
+            .invoke(handler, new Object[] {contextPath});
+        getMethodCache().getMethod(handler.getClass(), "setWar", new Class[] {String.class})
+            .invoke(handler, new Object[] {war});
 
         setDefaultRealm(handler);
 
@@ -309,10 +328,10 @@ public class Jetty6xEmbeddedLocalContainer extends AbstractJettyEmbeddedLocalCon
             throw new ContainerException("No Jetty instance to deploy to");
         }
         addHandlerMethod.invoke(contextHandlers, new Object[] {handler});
-        Method m = getServer().getClass().getMethod("isStarted", new Class[] {});
+        Method m = getMethodCache().getMethod(getServer().getClass(), "isStarted", new Class[] {});
         if (((Boolean) m.invoke(getServer(), null)).booleanValue())
         {
-            handlerClass.getMethod("start", new Class[] {}).invoke(handler, null);
+            getMethodCache().getMethod(handlerClass, "start", new Class[] {}).invoke(handler, null);
         }
     }
 
@@ -357,13 +376,13 @@ public class Jetty6xEmbeddedLocalContainer extends AbstractJettyEmbeddedLocalCon
 
             for (User user : getConfiguration().getUsers())
             {
-                this.defaultRealm.getClass().getMethod("put",
+                getMethodCache().getMethod(this.defaultRealm.getClass(), "put",
                     new Class[] {Object.class, Object.class}).invoke(this.defaultRealm,
                         new Object[] {user.getName(), user.getPassword()});
 
                 for (String role : user.getRoles())
                 {
-                    this.defaultRealm.getClass().getMethod("addUserToRole",
+                    getMethodCache().getMethod(this.defaultRealm.getClass(), "addUserToRole",
                         new Class[] {String.class, String.class}).invoke(this.defaultRealm,
                             new Object[] {user.getName(), role});
                 }
@@ -375,12 +394,13 @@ public class Jetty6xEmbeddedLocalContainer extends AbstractJettyEmbeddedLocalCon
             Array.set(userRealmsArray, 0, this.defaultRealm);
 
             // Add newly created realm to server
-            getServer().getClass().getMethod("setUserRealms",
+            getMethodCache().getMethod(getServer().getClass(), "setUserRealms",
                 new Class[] {userRealmsArray.getClass()}).invoke(getServer(),
                     new Object[] {userRealmsArray});
 
             Object[] realmlist =
-                (Object[]) getServer().getClass().getMethod("getUserRealms", new Class[] {})
+                (Object[]) getMethodCache().getMethod(getServer().getClass(), "getUserRealms",
+                    new Class[] {})
                     .invoke(getServer(), new Object[] {});
             getLogger().info(
                 "Added " + (realmlist == null ? "0" : String.valueOf(realmlist.length))
@@ -398,7 +418,8 @@ public class Jetty6xEmbeddedLocalContainer extends AbstractJettyEmbeddedLocalCon
         {
             super.createServerObject();
 
-            this.server.getClass().getMethod("setStopAtShutdown", new Class[] {boolean.class})
+            getMethodCache().getMethod(this.server.getClass(), "setStopAtShutdown",
+                new Class[] {boolean.class})
                 .invoke(this.server, new Object[] {Boolean.TRUE});
         }
     }
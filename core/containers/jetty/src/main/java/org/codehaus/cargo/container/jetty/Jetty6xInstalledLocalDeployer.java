@@ -119,11 +119,6 @@ public class Jetty6xInstalledLocalDeployer extends AbstractCopyingInstalledLocal
                 {
                     // Ignored
                 }
-                finally
-                {
-                    out = null;
-                    System.gc();
-                }
             }
         }
         else
@@ -76,9 +76,10 @@ public class Jetty7xEmbeddedLocalContainer extends Jetty6xEmbeddedLocalContainer
         if (this.defaultRealm != null)
         {
             Object securityHandler =
-                webapp.getClass().getMethod("getSecurityHandler", new Class[] {}).invoke(webapp,
-                    new Object[] {});
-            securityHandler.getClass().getMethod("setLoginService", new Class[] {userRealmClass})
+                getMethodCache().getMethod(webapp.getClass(), "getSecurityHandler", new Class[] {})
+                    .invoke(webapp, new Object[] {});
+            getMethodCache().getMethod(securityHandler.getClass(), "setLoginService",
+                new Class[] {userRealmClass})
                 .invoke(securityHandler, new Object[] {this.defaultRealm});
         }
     }
@@ -97,7 +98,7 @@ public class Jetty7xEmbeddedLocalContainer extends Jetty6xEmbeddedLocalContainer
         Class selectConnectorClass =
             getClassLoader().loadClass("org.eclipse.jetty.server.nio.SelectChannelConnector");
         Object connector = selectConnectorClass.newInstance();
-        selectConnectorClass.getMethod("setPort", new Class[] {int.class}).invoke(
+        getMethodCache().getMethod(selectConnectorClass, "setPort", new Class[] {int.class}).invoke(
             connector,
             new Object[] {new Integer(getConfiguration()
                 .getPropertyValue(ServletPropertySet.PORT))});
@@ -106,7 +107,8 @@ public class Jetty7xEmbeddedLocalContainer extends Jetty6xEmbeddedLocalContainer
         Class connectorClass = getClassLoader().loadClass("org.eclipse.jetty.server.Connector");
         Object connectorArray = Array.newInstance(connectorClass, 1);
         Array.set(connectorArray, 0, connector);
-        getServer().getClass().getMethod("addConnector", new Class[] {connectorClass})
+        getMethodCache().getMethod(getServer().getClass(), "addConnector",
+            new Class[] {connectorClass})
             .invoke(getServer(), new Object[] {connector});
     }
 
@@ -136,18 +138,21 @@ public class Jetty7xEmbeddedLocalContainer extends Jetty6xEmbeddedLocalContainer
         Object handlerArray = Array.newInstance(handlerClass, 2);
         Array.set(handlerArray, 0, contextHandlers);
         Array.set(handlerArray, 1, defaultHandler);
-        handlers.getClass().getMethod("setHandlers", new Class[] {handlerArray.getClass()})
+        getMethodCache().getMethod(handlers.getClass(), "setHandlers",
+            new Class[] {handlerArray.getClass()})
             .invoke(handlers, new Object[] {handlerArray});
-        getServer().getClass().getMethod("setHandler", new Class[] {handlerClass})
+        getMethodCache().getMethod(getServer().getClass(), "setHandler", new Class[] {handlerClass})
             .invoke(getServer(), new Object[] {handlers});
 
         // Method to add a webappcontext to jetty
         addHandlerMethod =
-            contextHandlers.getClass().getMethod("addHandler", new Class[] {handlerClass});
+            getMethodCache().getMethod(contextHandlers.getClass(), "addHandler",
+                new Class[] {handlerClass});
 
         // Method to remove a webappcontext from jetty
         removeHandlerMethod =
-            contextHandlers.getClass().getMethod("removeHandler", new Class[] {handlerClass});
+            getMethodCache().getMethod(contextHandlers.getClass(), "removeHandler",
+                new Class[] {handlerClass});
     }
 
     /**
@@ -159,13 +164,14 @@ public class Jetty7xEmbeddedLocalContainer extends Jetty6xEmbeddedLocalContainer
         Object handler =
             getClassLoader().loadClass("org.eclipse.jetty.webapp.WebAppContext").newInstance();
 
-        handler.getClass().getMethod("setContextPath", new Class[] {String.class}).invoke(
-            handler, new Object[] {"/" + ((WAR) deployable).getContext()});
-        handler.getClass().getMethod("setWar", new Class[] {String.class}).invoke(handler,
-            new Object[] {deployable.getFile()});
-        handler.getClass().getMethod("setDefaultsDescriptor", String.class).invoke(handler,
-            getFileHandler().append(getConfiguration().getHome(), "etc/webdefault.xml"));
-        handler.getClass().getMethod("setExtraClasspath", String.class)
+        getMethodCache().getMethod(handler.getClass(), "setContextPath", new Class[] {String.class})
+            .invoke(handler, new Object[] {"/" + ((WAR) deployable).getContext()});
+        getMethodCache().getMethod(handler.getClass(), "setWar", new Class[] {String.class})
+            .invoke(handler, new Object[] {deployable.getFile()});
+        getMethodCache().getMethod(handler.getClass(), "setDefaultsDescriptor", String.class)
+            .invoke(handler,
+                getFileHandler().append(getConfiguration().getHome(), "etc/webdefault.xml"));
+        getMethodCache().getMethod(handler.getClass(), "setExtraClasspath", String.class)
             .invoke(handler, JettyUtils.getExtraClasspath((WAR) deployable, false));
 
         setDefaultRealm(handler);
@@ -181,10 +187,10 @@ public class Jetty7xEmbeddedLocalContainer extends Jetty6xEmbeddedLocalContainer
     {
         Object handler =
             getClassLoader().loadClass("org.eclipse.jetty.webapp.WebAppContext").newInstance();
-        handler.getClass().getMethod("setContextPath", new Class[] {String.class}).invoke(
-            handler, new Object[] {contextPath});
-        handler.getClass().getMethod("setWar", new Class[] {String.class}).invoke(handler,
-            new Object[] {war});
+        getMethodCache().getMethod(handler.getClass(), "setContextPath", new Class[] {String.class})
+            .invoke(handler, new Object[] {contextPath});
+        getMethodCache().getMethod(handler.getClass(), "setWar", new Class[] {String.class})
+            .invoke(handler, new Object[] {war});
 
         setDefaultRealm(handler);
 
@@ -222,12 +228,13 @@ public class Jetty7xEmbeddedLocalContainer extends Jetty6xEmbeddedLocalContainer
                     credentialClass = getClassLoader()
                         .loadClass("org.eclipse.jetty.util.security.Credential");
                 }
-                Object credential = credentialClass.getMethod("getCredential", String.class)
+                Object credential = getMethodCache().getMethod(credentialClass, "getCredential",
+                    String.class)
                     .invoke(credentialClass, user.getPassword());
                 String[] roles = user.getRoles().toArray(new String[user.getRoles().size()]);
 
                 Method putUser =
-                    this.defaultRealm.getClass().getMethod("putUser",
+                    getMethodCache().getMethod(this.defaultRealm.getClass(), "putUser",
                         new Class[] {java.lang.String.class,
                             credentialClass, java.lang.String[].class});
                 putUser.invoke(this.defaultRealm,
@@ -259,7 +266,8 @@ public class Jetty7xEmbeddedLocalContainer extends Jetty6xEmbeddedLocalContainer
                 throw new ContainerException("Failed to create Jetty Server instance", e);
             }
 
-            this.server.getClass().getMethod("setStopAtShutdown", new Class[] {boolean.class})
+            getMethodCache().getMethod(this.server.getClass(), "setStopAtShutdown",
+                new Class[] {boolean.class})
                 .invoke(this.server, new Object[] {Boolean.TRUE});
         }
     }
@@ -23,6 +23,7 @@ import org.codehaus.cargo.container.ContainerException;
 import org.codehaus.cargo.container.EmbeddedLocalContainer;
 import org.codehaus.cargo.container.deployable.Deployable;
 import org.codehaus.cargo.container.deployable.DeployableType;
+import org.codehaus.cargo.container.internal.util.MethodCache;
 import org.codehaus.cargo.container.jetty.internal.AbstractJettyEmbeddedLocalDeployer;
 
 /**
@@ -76,7 +77,7 @@ public class Jetty7xEmbeddedLocalDeployer extends AbstractJettyEmbeddedLocalDepl
                 String[] virtualHosts = getVirtualHosts();
                 for (int i = 0; virtualHosts != null && i < virtualHosts.length; i++)
                 {
-                    webAppContextClass.getMethod("setVirtualHosts",
+                    getMethodCache().getMethod(webAppContextClass, "setVirtualHosts",
                         new Class[] {virtualHosts.getClass()}).invoke(webAppContext,
                             new Object[] {virtualHosts[i]});
                 }
@@ -84,13 +85,15 @@ public class Jetty7xEmbeddedLocalDeployer extends AbstractJettyEmbeddedLocalDepl
                 // check if extracting the war is wanted
                 if (getExtractWar() != null)
                 {
-                    webAppContextClass.getMethod("setExtractWAR", new Class[] {Boolean.TYPE})
+                    getMethodCache().getMethod(webAppContextClass, "setExtractWAR",
+                        new Class[] {Boolean.TYPE})
                         .invoke(webAppContext, new Object[] {getExtractWar()});
                 }
 
                 if (getCopyWebApp() != null)
                 {
-                    webAppContextClass.getMethod("setCopyDir", new Class[] {Boolean.TYPE})
+                    getMethodCache().getMethod(webAppContextClass, "setCopyDir",
+                        new Class[] {Boolean.TYPE})
                         .invoke(webAppContext, new Object[] {getCopyWebApp()});
                 }
 
@@ -98,7 +101,7 @@ public class Jetty7xEmbeddedLocalDeployer extends AbstractJettyEmbeddedLocalDepl
                 {
                     // check if user wants to invert the class loading
                     // hierarchy
-                    webAppContextClass.getMethod("setParentLoaderPriority",
+                    getMethodCache().getMethod(webAppContextClass, "setParentLoaderPriority",
                         new Class[] {Boolean.TYPE}).invoke(webAppContext,
                             new Object[] {getParentLoaderPriority()});
                 }
@@ -144,7 +147,8 @@ public class Jetty7xEmbeddedLocalDeployer extends AbstractJettyEmbeddedLocalDepl
         try
         {
             Object deployedWebAppContext = getDeployedWebAppContext(deployable);
-            webAppContextClass.getMethod("start", null).invoke(deployedWebAppContext, null);
+            getMethodCache().getMethod(webAppContextClass, "start", null)
+                .invoke(deployedWebAppContext, null);
         }
         catch (Exception e)
         {
@@ -161,11 +165,20 @@ public class Jetty7xEmbeddedLocalDeployer extends AbstractJettyEmbeddedLocalDepl
         try
         {
             Object deployedWebAppContext = getDeployedWebAppContext(deployable);
-            webAppContextClass.getMethod("stop", null).invoke(deployedWebAppContext, null);
+            getMethodCache().getMethod(webAppContextClass, "stop", null)
+                .invoke(deployedWebAppContext, null);
         }
         catch (Exception e)
         {
             throw new ContainerException("Failed to stop [" + deployable.getFile() + "]", e);
         }
     }
+
+    /**
+     * @return Cache of the methods looked up in the classes of the embedded container.
+     */
+    private MethodCache getMethodCache()
+    {
+        return ((Jetty7xEmbeddedLocalContainer) getContainer()).getMethodCache();
+    }
 }
@@ -192,8 +192,6 @@ public class Jetty7xStandaloneLocalConfiguration extends
         finally
         {
             mchangeCommonsWriter.close();
-            mchangeCommonsWriter = null;
-            System.gc();
         }
 
         InputStream c3p0Reader = getClass().getClassLoader().getResourceAsStream(
@@ -207,8 +205,6 @@ public class Jetty7xStandaloneLocalConfiguration extends
         finally
         {
             c3p0Writer.close();
-            c3p0Writer = null;
-            System.gc();
         }
 
         InstalledLocalContainer installedContainer = (InstalledLocalContainer) container;
@@ -51,6 +51,11 @@ public abstract class AbstractJettyEmbeddedLocalContainer
      */
     private String version;
 
+    /**
+     * Thread stopping the Jetty server.
+     */
+    private Thread stopThread;
+
     /**
      * {@inheritDoc}
      * @see AbstractEmbeddedLocalContainer#AbstractEmbeddedLocalContainer(org.codehaus.cargo.container.configuration.LocalConfiguration)
@@ -156,6 +161,22 @@ public abstract class AbstractJettyEmbeddedLocalContainer
         JettyExecutorThread jettyRunner = new JettyExecutorThread(getServer(), false);
         jettyRunner.setLogger(getLogger());
         jettyRunner.start();
+        this.stopThread = jettyRunner;
+    }
+
+    /**
+     * Waits for the thread stopping the Jetty server to finish. {@inheritDoc}
+     */
+    @Override
+    protected boolean waitForContainerExit(long deadline) throws InterruptedException
+    {
+        long remaining = deadline - System.currentTimeMillis();
+        if (this.stopThread == null || remaining <= 0)
+        {
+            return false;
+        }
+        this.stopThread.join(remaining);
+        return !this.stopThread.isAlive();
     }
 
     /**
@@ -46,4 +46,13 @@ public class Jo1xInstalledLocalDeployer extends AbstractCopyingInstalledLocalDep
         return getFileHandler().append(getContainer().getConfiguration().getHome(), "webapp/host");
     }
 
+    /**
+     * {@inheritDoc}. Deploying to jo! only copies files, which can be done concurrently.
+     */
+    @Override
+    protected boolean isConcurrentDeploymentSupported()
+    {
+        return true;
+    }
+
 }
@@ -42,8 +42,8 @@ import org.codehaus.cargo.container.deployable.DeployableType;
 import org.codehaus.cargo.container.deployable.WAR;
 import org.codehaus.cargo.container.jonas.JonasPropertySet;
 import org.codehaus.cargo.container.spi.deployer.AbstractRemoteDeployer;
-import org.codehaus.cargo.util.DefaultFileHandler;
 import org.codehaus.cargo.util.FileHandler;
+import org.codehaus.cargo.util.FileHandlerFactory;
 
 /**
  * Abstract base class for JOnAS remote deployment.
@@ -490,7 +490,7 @@ public abstract class AbstractJonasRemoteDeployer extends AbstractRemoteDeployer
 
         // Read file
         File file = new File(deployable.getFile());
-        FileHandler fileHandler = new DefaultFileHandler();
+        FileHandler fileHandler = FileHandlerFactory.createFileHandler();
         FileInputStream in = new FileInputStream(file);
         ByteArrayOutputStream out = new ByteArrayOutputStream();
         fileHandler.copy(in, out);
@@ -116,8 +116,6 @@ public class AbstractJonasStandaloneLocalConfiguration extends AbstractStandalon
             finally
             {
                 jonasPropertiesStream.close();
-                jonasPropertiesStream = null;
-                System.gc();
             }
             services = jonasProperties.getProperty("jonas.services");
         }
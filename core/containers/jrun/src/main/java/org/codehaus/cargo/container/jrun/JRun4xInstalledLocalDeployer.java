@@ -52,4 +52,13 @@ public class JRun4xInstalledLocalDeployer extends AbstractCopyingInstalledLocalD
         return getFileHandler().append(getContainer().getConfiguration().getHome(),
             "servers/" + serverName);
     }
+
+    /**
+     * {@inheritDoc}. Deploying to JRun only copies files, which can be done concurrently.
+     */
+    @Override
+    protected boolean isConcurrentDeploymentSupported()
+    {
+        return true;
+    }
 }
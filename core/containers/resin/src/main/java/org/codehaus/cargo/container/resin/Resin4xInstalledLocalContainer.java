@@ -117,8 +117,6 @@ public class Resin4xInstalledLocalContainer extends AbstractResinInstalledLocalC
                 {
                     // Ignored
                 }
-                jarStream = null;
-                System.gc();
             }
         }
 
@@ -45,4 +45,13 @@ public class ResinInstalledLocalDeployer extends AbstractCopyingInstalledLocalDe
     {
         return getFileHandler().append(getContainer().getConfiguration().getHome(), "webapps");
     }
+
+    /**
+     * {@inheritDoc}. Deploying to Resin only copies files, which can be done concurrently.
+     */
+    @Override
+    protected boolean isConcurrentDeploymentSupported()
+    {
+        return true;
+    }
 }
@@ -90,8 +90,6 @@ public class TomcatExistingLocalConfiguration extends AbstractExistingLocalConfi
             finally
             {
                 is.close();
-                is = null;
-                System.gc();
             }
 
             String expression = "//Server/Service/Engine/Host";
@@ -131,13 +129,7 @@ public class TomcatExistingLocalConfiguration extends AbstractExistingLocalConfi
                 {
                     // Ignored
                 }
-                finally
-                {
-                    is = null;
-                }
             }
-
-            System.gc();
         }
     }
 
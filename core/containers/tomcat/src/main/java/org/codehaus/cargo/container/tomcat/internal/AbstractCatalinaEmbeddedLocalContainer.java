@@ -178,6 +178,16 @@ public abstract class AbstractCatalinaEmbeddedLocalContainer extends AbstractEmb
         }
     }
 
+    /**
+     * Embedded Tomcat's stop method is synchronous, so the container has exited once it returned.
+     * {@inheritDoc}
+     */
+    @Override
+    protected boolean waitForContainerExit(long deadline)
+    {
+        return controller == null;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -24,6 +24,8 @@ package org.codehaus.cargo.container.tomcat.internal;
 
 import java.io.File;
 import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.jar.JarFile;
 import java.util.zip.ZipEntry;
 
@@ -160,23 +162,20 @@ public abstract class AbstractCatalinaInstalledLocalContainer extends
      * href="https://codehaus-cargo.atlassian.net/browse/CARGO-1337">CARGO-1337</a>. {@inheritDoc}
      */
     @Override
-    protected void waitForPortShutdown(int port, int connectTimeout, long deadline)
+    protected void waitForPortsShutdown(Set<Integer> ports, long deadline)
         throws InterruptedException
     {
-        int rmiPort = 0;
+        Set<Integer> checkedPorts = new TreeSet<Integer>(ports);
         try
         {
-            rmiPort = Integer.parseInt(
-                getConfiguration().getPropertyValue(GeneralPropertySet.RMI_PORT));
+            checkedPorts.remove(Integer.valueOf(
+                getConfiguration().getPropertyValue(GeneralPropertySet.RMI_PORT)));
         }
         catch (Throwable ignored)
         {
             // Ignored
         }
-        if (port != rmiPort)
-        {
-            super.waitForPortShutdown(port, connectTimeout, deadline);
-        }
+        super.waitForPortsShutdown(checkedPorts, deadline);
     }
 
     /**
@@ -85,6 +85,15 @@ public abstract class AbstractTomcatManagerDeployer extends AbstractRemoteDeploy
         return this.manager;
     }
 
+    /**
+     * {@inheritDoc}. The Tomcat manager supports concurrent deployments.
+     */
+    @Override
+    protected boolean isConcurrentDeploymentSupported()
+    {
+        return true;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -611,13 +611,7 @@ public class TomcatManager extends LoggedObject
                     }
 
                     String ha1 = this.username + ":" + realm + ":" + this.password;
-                    byte[] hash = md5.digest(ha1.getBytes("UTF-8"));
-                    StringBuilder sb = new StringBuilder();
-                    for (byte hashByte : hash)
-                    {
-                        sb.append(String.format("%02x", hashByte));
-                    }
-                    ha1 = sb.toString();
+                    ha1 = md5Hex(ha1);
 
                     String uri;
                     String uriPath = invokeURL.getPath();
@@ -641,13 +635,7 @@ public class TomcatManager extends LoggedObject
                         ha2 = "PUT";
                     }
                     ha2 += ":" + uri;
-                    hash = md5.digest(ha2.getBytes("UTF-8"));
-                    sb = new StringBuilder();
-                    for (byte hashByte : hash)
-                    {
-                        sb.append(String.format("%02x", hashByte));
-                    }
-                    ha2 = sb.toString();
+                    ha2 = md5Hex(ha2);
 
                     String nc = NONCE_COUNTER.count(nonce);
 
@@ -663,13 +651,7 @@ public class TomcatManager extends LoggedObject
                     {
                         ha3 = ha1 + ":" + nonce + ":" + ha2;
                     }
-                    hash = md5.digest(ha3.getBytes("UTF-8"));
-                    sb = new StringBuilder();
-                    for (byte hashByte : hash)
-                    {
-                        sb.append(String.format("%02x", hashByte));
-                    }
-                    ha3 = sb.toString();
+                    ha3 = md5Hex(ha3);
 
                     wwwAuthenticate = "Digest username=\"" + this.username + "\", "
                         + "realm=\"" + realm + "\", "
@@ -803,6 +785,28 @@ public class TomcatManager extends LoggedObject
         return "Basic " + new String(Base64.encodeBase64(buffer.toString().getBytes()));
     }
 
+    /**
+     * Computes the MD5 digest of a string, the digest being shared by all threads using this
+     * manager.
+     * @param value String to digest.
+     * @return Hexadecimal MD5 digest of <code>value</code>.
+     * @throws IOException If UTF-8 is not supported.
+     */
+    private String md5Hex(String value) throws IOException
+    {
+        byte[] hash;
+        synchronized (this.md5)
+        {
+            hash = this.md5.digest(value.getBytes("UTF-8"));
+        }
+        StringBuilder sb = new StringBuilder();
+        for (byte hashByte : hash)
+        {
+            sb.append(String.format("%02x", hashByte));
+        }
+        return sb.toString();
+    }
+
     /**
      * Reads all the data from the specified input stream and writes it to the specified output
      * stream. Both streams are also closed.
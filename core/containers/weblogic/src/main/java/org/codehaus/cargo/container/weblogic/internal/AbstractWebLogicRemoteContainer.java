@@ -35,8 +35,8 @@ import org.codehaus.cargo.container.spi.jvm.JvmLauncherFactory;
 import org.codehaus.cargo.container.spi.jvm.JvmLauncherRequest;
 import org.codehaus.cargo.container.weblogic.WebLogicPropertySet;
 import org.codehaus.cargo.util.CargoException;
-import org.codehaus.cargo.util.DefaultFileHandler;
 import org.codehaus.cargo.util.FileHandler;
+import org.codehaus.cargo.util.FileHandlerFactory;
 
 /**
  * Basic support for the WebLogic remote application server.
@@ -170,7 +170,7 @@ public abstract class AbstractWebLogicRemoteContainer extends AbstractRemoteCont
      */
     private FileHandler getFileHandler()
     {
-        return new DefaultFileHandler();
+        return FileHandlerFactory.createFileHandler();
     }
 
     /**
@@ -24,8 +24,8 @@ import java.util.Map;
 import org.codehaus.cargo.container.configuration.Configuration;
 import org.codehaus.cargo.container.configuration.script.AbstractScriptCommand;
 import org.codehaus.cargo.container.deployable.Deployable;
-import org.codehaus.cargo.util.DefaultFileHandler;
 import org.codehaus.cargo.util.FileHandler;
+import org.codehaus.cargo.util.FileHandlerFactory;
 
 /**
  * Implementation of deploying shared library configuration script command.
@@ -68,7 +68,7 @@ public class AddSharedLibraryToDeployableScriptCommand extends AbstractScriptCom
     @Override
     protected void addConfigurationScriptProperties(Map<String, String> propertiesMap)
     {
-        FileHandler fileHandler = new DefaultFileHandler();
+        FileHandler fileHandler = FileHandlerFactory.createFileHandler();
         propertiesMap.put("cargo.library.shared.id", fileHandler.getName(sharedLibraryPath));
         propertiesMap.put("cargo.deployable.id", deployable.getName());
     }
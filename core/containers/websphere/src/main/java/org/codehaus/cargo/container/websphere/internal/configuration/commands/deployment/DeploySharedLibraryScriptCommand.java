@@ -23,8 +23,8 @@ import java.util.Map;
 
 import org.codehaus.cargo.container.configuration.Configuration;
 import org.codehaus.cargo.container.configuration.script.AbstractScriptCommand;
-import org.codehaus.cargo.util.DefaultFileHandler;
 import org.codehaus.cargo.util.FileHandler;
+import org.codehaus.cargo.util.FileHandlerFactory;
 
 /**
  * Implementation of deploying shared library configuration script command.
@@ -60,7 +60,7 @@ public class DeploySharedLibraryScriptCommand extends AbstractScriptCommand
     @Override
     protected void addConfigurationScriptProperties(Map<String, String> propertiesMap)
     {
-        FileHandler fileHandler = new DefaultFileHandler();
+        FileHandler fileHandler = FileHandlerFactory.createFileHandler();
         propertiesMap.put("cargo.library.shared.path.absolute", sharedLibraryPath);
         propertiesMap.put("cargo.library.shared.id", fileHandler.getName(sharedLibraryPath));
     }
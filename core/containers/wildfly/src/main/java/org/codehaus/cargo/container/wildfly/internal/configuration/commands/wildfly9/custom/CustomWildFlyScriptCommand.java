@@ -20,8 +20,8 @@
 package org.codehaus.cargo.container.wildfly.internal.configuration.commands.wildfly9.custom;
 
 import org.codehaus.cargo.container.configuration.script.ScriptCommand;
-import org.codehaus.cargo.util.DefaultFileHandler;
 import org.codehaus.cargo.util.FileHandler;
+import org.codehaus.cargo.util.FileHandlerFactory;
 
 /**
  * Implementation of custom configuration script command.
@@ -50,7 +50,7 @@ public class CustomWildFlyScriptCommand implements ScriptCommand
     @Override
     public String readScript()
     {
-        FileHandler fileHandler = new DefaultFileHandler();
+        FileHandler fileHandler = FileHandlerFactory.createFileHandler();
         String customScript = fileHandler.readTextFile(resourcePath, "UTF-8");
         return customScript;
     }
@@ -26,6 +26,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Enumeration;
 import java.util.HashMap;
@@ -50,6 +51,7 @@ import org.codehaus.cargo.container.deployable.Deployable;
 import org.codehaus.cargo.container.deployer.DeployableMonitor;
 import org.codehaus.cargo.container.deployer.Deployer;
 import org.codehaus.cargo.container.installer.ZipURLInstaller;
+import org.codehaus.cargo.container.spi.deployer.AbstractDeployer;
 import org.codehaus.cargo.container.spi.deployer.DeployerWatchdog;
 import org.codehaus.cargo.container.spi.util.ContainerUtils;
 import org.codehaus.cargo.generic.ContainerFactory;
@@ -753,6 +755,8 @@ public class CargoTask extends Task
             Deployer deployer = deployerFactory.createDeployer(getContainer());
             deployer.setLogger(getLogger());
 
+            // Consecutive deployables without monitor are deployed as a batch
+            List<Deployable> batch = new ArrayList<Deployable>();
             for (DeployableElement deployableElement : getConfiguration().getDeployables())
             {
                 if (ACTION_UNDEPLOY.equalsIgnoreCase(getAction())
@@ -769,10 +773,12 @@ public class CargoTask extends Task
                 {
                     if (deployableMonitor == null)
                     {
-                        deployer.deploy(deployable);
+                        batch.add(deployable);
                     }
                     else
                     {
+                        deployBatch(deployer, batch);
+                        batch.clear();
                         deployer.deploy(deployable, deployableMonitor);
                     }
                 }
@@ -804,6 +810,28 @@ public class CargoTask extends Task
                         + "] for deployer");
                 }
             }
+
+            deployBatch(deployer, batch);
+        }
+    }
+
+    /**
+     * Deploys a batch of deployables without monitor, all at once if the deployer supports it.
+     * @param deployer Deployer.
+     * @param batch Deployables to deploy.
+     */
+    private void deployBatch(Deployer deployer, List<Deployable> batch)
+    {
+        if (batch.size() > 1 && deployer instanceof AbstractDeployer)
+        {
+            ((AbstractDeployer) deployer).deploy(batch);
+        }
+        else
+        {
+            for (Deployable deployable : batch)
+            {
+                deployer.deploy(deployable);
+            }
         }
     }
 
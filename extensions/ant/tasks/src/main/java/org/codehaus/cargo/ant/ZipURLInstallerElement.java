@@ -21,6 +21,7 @@ package org.codehaus.cargo.ant;
 
 import java.net.URL;
 
+import org.codehaus.cargo.container.installer.InstallationCache;
 import org.codehaus.cargo.container.installer.Proxy;
 import org.codehaus.cargo.container.installer.ZipURLInstaller;
 
@@ -49,6 +50,16 @@ public class ZipURLInstallerElement
      */
     private Proxy proxy;
 
+    /**
+     * Expected SHA-256 checksum of the zipped container installation file.
+     */
+    private String checksum;
+
+    /**
+     * Whether to install using the machine-wide installation cache.
+     */
+    private boolean useInstallationCache;
+
     /**
      * @param downloadDir the destination directory where the zipped container install will be
      * downloaded.
@@ -99,6 +110,40 @@ public class ZipURLInstallerElement
         return this.installURL;
     }
 
+    /**
+     * @param checksum Expected SHA-256 checksum of the zipped container installation file.
+     */
+    public void setChecksum(String checksum)
+    {
+        this.checksum = checksum;
+    }
+
+    /**
+     * @return Expected SHA-256 checksum of the zipped container installation file.
+     */
+    public String getChecksum()
+    {
+        return this.checksum;
+    }
+
+    /**
+     * @param useInstallationCache Whether to install using the machine-wide installation cache,
+     * configured using the <code>cargo.installs.cache.directory</code> and
+     * <code>cargo.installs.cache.maxSize</code> system properties.
+     */
+    public void setUseInstallationCache(boolean useInstallationCache)
+    {
+        this.useInstallationCache = useInstallationCache;
+    }
+
+    /**
+     * @return Whether to install using the machine-wide installation cache.
+     */
+    public boolean isUseInstallationCache()
+    {
+        return this.useInstallationCache;
+    }
+
     /**
      * @return proxy properties.
      */
@@ -132,6 +177,11 @@ public class ZipURLInstallerElement
         {
             installer.setProxy(getProxy());
         }
+        installer.setChecksum(getChecksum());
+        if (isUseInstallationCache())
+        {
+            installer.setInstallationCache(InstallationCache.getDefault());
+        }
         return installer;
     }
 }
@@ -19,15 +19,22 @@
  */
 package org.codehaus.cargo.tools.daemon;
 
+import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.StringReader;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.codehaus.cargo.container.InstalledLocalContainer;
 import org.codehaus.cargo.container.configuration.FileConfig;
@@ -36,8 +43,9 @@ import org.codehaus.cargo.container.configuration.StandaloneLocalConfiguration;
 import org.codehaus.cargo.container.deployable.Deployable;
 import org.codehaus.cargo.container.deployable.WAR;
 import org.codehaus.cargo.util.Base64;
-import org.codehaus.cargo.util.DefaultFileHandler;
+import org.codehaus.cargo.util.DigestUtils;
 import org.codehaus.cargo.util.FileHandler;
+import org.codehaus.cargo.util.FileHandlerFactory;
 import org.codehaus.cargo.util.XmlReplacement;
 import org.codehaus.cargo.util.log.LoggedObject;
 
@@ -52,6 +60,11 @@ public class DaemonClient extends LoggedObject
      */
     private static final String MANAGER_CHARSET = "UTF-8";
 
+    /**
+     * The chunk size used when streaming multipart requests.
+     */
+    private static final int CHUNK_SIZE = 64 * 1024;
+
     /**
      * The full URL of the Cargo daemon manager instance to use.
      */
@@ -75,7 +88,7 @@ public class DaemonClient extends LoggedObject
     /**
      * The file handler.
      */
-    private final FileHandler fileHandler = new DefaultFileHandler();
+    private final FileHandler fileHandler = FileHandlerFactory.createFileHandler();
 
     /**
      * The user agent name to use when communicating with Cargo daemon manager.
@@ -282,6 +295,8 @@ public class DaemonClient extends LoggedObject
             {
                 parameters.setParameter("containerAppend", "off");
             }
+
+            setupFileDigests(parameters);
         }
 
         invoke("start", parameters);
@@ -772,6 +787,103 @@ public class DaemonClient extends LoggedObject
         return "OK - INSTALLED".equals(response);
     }
 
+    /**
+     * Announces the files to upload with their SHA-256 digests and only keeps the files the daemon
+     * does not have yet, each of them being uploaded once. The installer ZIP file, which is
+     * already checked with {@link #installed(String)}, and directories are left as they are.
+     * 
+     * @param parameters The daemon parameters.
+     * @throws IOException If a file cannot be read or an I/O error occurs.
+     */
+    void setupFileDigests(DaemonParameters parameters) throws IOException
+    {
+        Map<String, String> digests = new HashMap<String, String>();
+        for (Map.Entry<String, String> file : parameters.getFiles().entrySet())
+        {
+            if (!"installerZipFileData".equals(file.getKey())
+                && !fileHandler.isDirectory(file.getValue()))
+            {
+                digests.put(file.getKey(), DigestUtils.sha256Hex(new File(file.getValue())));
+            }
+        }
+        if (digests.isEmpty())
+        {
+            return;
+        }
+
+        Set<String> missing;
+        try
+        {
+            missing = missing(new LinkedHashSet<String>(digests.values()));
+        }
+        catch (DaemonException e)
+        {
+            getLogger().debug("The daemon cannot tell which files it already has, uploading all "
+                + "files: " + e.getMessage(), this.getClass().getName());
+            return;
+        }
+
+        Set<String> uploaded = new HashSet<String>();
+        StringBuilder digestsJSON = new StringBuilder();
+        digestsJSON.append("{");
+        Iterator<Map.Entry<String, String>> files = parameters.getFiles().entrySet().iterator();
+        while (files.hasNext())
+        {
+            Map.Entry<String, String> file = files.next();
+            String digest = digests.get(file.getKey());
+            if (digest == null)
+            {
+                continue;
+            }
+
+            if (digestsJSON.length() > 1)
+            {
+                digestsJSON.append(",");
+            }
+            digestsJSON.append("\"" + file.getKey() + "\":\"" + digest + "\"");
+
+            if (!missing.contains(digest) || !uploaded.add(digest))
+            {
+                files.remove();
+            }
+        }
+        digestsJSON.append("}");
+
+        getLogger().info("Uploading " + uploaded.size() + " of " + digests.size()
+            + " files, the daemon already has the other ones", this.getClass().getName());
+        parameters.setParameter("fileDigests", digestsJSON.toString());
+    }
+
+    /**
+     * Asks the daemon which files it does not have yet.
+     * 
+     * @param digests The SHA-256 digests of the files
+     * @return the digests of the files to upload
+     * @throws DaemonException If a daemon exception occurs
+     * @throws IOException If an I/O error occurs
+     */
+    private Set<String> missing(Set<String> digests) throws DaemonException, IOException
+    {
+        DaemonParameters parameters = new DaemonParameters();
+
+        addListParameter(parameters, "digests", new ArrayList<String>(digests));
+
+        BufferedReader response =
+            new BufferedReader(new StringReader(invoke("missing", parameters)));
+        Set<String> missing = new HashSet<String>();
+        // The first line is the status line
+        response.readLine();
+        String digest;
+        while ((digest = response.readLine()) != null)
+        {
+            if (!digest.trim().isEmpty())
+            {
+                missing.add(digest.trim());
+            }
+        }
+        return missing;
+    }
+
     /**
      * Stops the container with the specified handle identifier.
      * 
@@ -836,8 +948,9 @@ public class DaemonClient extends LoggedObject
                 // can become too large and exceed the heap size, leading to a
                 // java.lang.OutOfMemoryError.
                 // This was fixed in JDK 1.5 by introducing a new setChunkedStreamingMode()
-                // method.
-                connection.setChunkedStreamingMode(0);
+                // method. Chunks are as large as the buffer files are written with, so that
+                // each buffer is sent as one chunk.
+                connection.setChunkedStreamingMode(CHUNK_SIZE);
             }
             else
             {
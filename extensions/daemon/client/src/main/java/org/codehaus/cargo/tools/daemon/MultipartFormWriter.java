@@ -42,6 +42,11 @@ public class MultipartFormWriter
      */
     private static final String PREFIX = "--";
 
+    /**
+     * Size of the buffer used when writing files.
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
     /**
      * The output stream to write to.
      */
@@ -159,7 +164,7 @@ public class MultipartFormWriter
         }
         out.writeBytes(NEWLINE);
         // write content
-        byte[] data = new byte[1024];
+        byte[] data = new byte[BUFFER_SIZE];
         int r = 0;
         while ((r = is.read(data, 0, data.length)) != -1)
         {
@@ -0,0 +1,169 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus CARGO, copyright 2004-2011 Vincent Massol, 2012-2016 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.tools.daemon;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.codehaus.cargo.util.AbstractTemporaryDirectoryTest;
+import org.codehaus.cargo.util.DigestUtils;
+
+/**
+ * Unit tests for the files uploaded by {@link DaemonClient}.
+ */
+public class DaemonClientTest extends AbstractTemporaryDirectoryTest
+{
+    /**
+     * Name of the first deployable in the start requests.
+     */
+    private static final String DEPLOYABLE0 = "deployableFileData_0";
+
+    /**
+     * Name of the second deployable in the start requests.
+     */
+    private static final String DEPLOYABLE1 = "deployableFileData_1";
+
+    /**
+     * Content of the deployables.
+     */
+    private static final String CONTENT = "deployable content";
+
+    /**
+     * Daemon client which answers the requests itself instead of sending them to a daemon.
+     */
+    private static class StubDaemonClient extends DaemonClient
+    {
+        /**
+         * Response to the {@code missing} request, {@code null} if the daemon does not know it.
+         */
+        private final String missingResponse;
+
+        /**
+         * Paths of the requests.
+         */
+        private final List<String> paths = new ArrayList<String>();
+
+        /**
+         * Creates the client.
+         * @param missingResponse Response to the {@code missing} request, {@code null} if the
+         * daemon does not know it.
+         * @throws IOException If the URL is invalid.
+         */
+        public StubDaemonClient(String missingResponse) throws IOException
+        {
+            super(new URL("http://localhost:18000/"));
+            this.missingResponse = missingResponse;
+        }
+
+        /**
+         * Answers the request with the response to the {@code missing} request. {@inheritDoc}
+         */
+        @Override
+        protected String invoke(String path, DaemonParameters parameters)
+            throws DaemonException, IOException
+        {
+            paths.add(path);
+            if (missingResponse == null)
+            {
+                throw new DaemonException("Not Found");
+            }
+            return missingResponse;
+        }
+
+        /**
+         * @return Paths of the requests.
+         */
+        public List<String> getPaths()
+        {
+            return paths;
+        }
+    }
+
+    /**
+     * Test that a file announced twice is uploaded once.
+     * @throws Exception If anything goes wrong.
+     */
+    public void testUploadDuplicateFileOnce() throws Exception
+    {
+        DaemonParameters parameters = createParameters();
+        String digest = DigestUtils.sha256Hex(new File(parameters.getFiles().get(DEPLOYABLE0)));
+        StubDaemonClient client = new StubDaemonClient("OK - MISSING\n" + digest + "\n");
+
+        client.setupFileDigests(parameters);
+
+        assertEquals(1, client.getPaths().size());
+        assertEquals("missing", client.getPaths().get(0));
+        assertEquals(1, parameters.getFiles().size());
+        String fileDigests = parameters.getParameters().get("fileDigests");
+        assertTrue(fileDigests, fileDigests.contains("\"" + DEPLOYABLE0 + "\":\"" + digest));
+        assertTrue(fileDigests, fileDigests.contains("\"" + DEPLOYABLE1 + "\":\"" + digest));
+    }
+
+    /**
+     * Test that the files the daemon already has are not uploaded.
+     * @throws Exception If anything goes wrong.
+     */
+    public void testSkipStoredFiles() throws Exception
+    {
+        DaemonParameters parameters = createParameters();
+        StubDaemonClient client = new StubDaemonClient("OK - MISSING\n");
+
+        client.setupFileDigests(parameters);
+
+        assertTrue(parameters.getFiles().isEmpty());
+        assertNotNull(parameters.getParameters().get("fileDigests"));
+    }
+
+    /**
+     * Test that all files are uploaded as before to a daemon which cannot tell which files it
+     * already has.
+     * @throws Exception If anything goes wrong.
+     */
+    public void testUploadAllFilesToOldDaemon() throws Exception
+    {
+        DaemonParameters parameters = createParameters();
+        StubDaemonClient client = new StubDaemonClient(null);
+
+        client.setupFileDigests(parameters);
+
+        assertEquals(2, parameters.getFiles().size());
+        assertNull(parameters.getParameters().get("fileDigests"));
+    }
+
+    /**
+     * Creates the parameters of a start request with two deployables having the same content.
+     * @return The parameters.
+     * @throws IOException If the deployables cannot be written.
+     */
+    private DaemonParameters createParameters() throws IOException
+    {
+        DaemonParameters parameters = new DaemonParameters();
+        for (String name : new String[] {DEPLOYABLE0, DEPLOYABLE1})
+        {
+            String file = getTemporaryFile(name + ".war").getPath();
+            getFileHandler().writeTextFile(file, CONTENT, "UTF-8");
+            parameters.setFile(name, file);
+        }
+        return parameters;
+    }
+}
@@ -0,0 +1,273 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus CARGO, copyright 2004-2011 Vincent Massol, 2012-2016 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.daemon;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Starts the autostart handles on a pool of worker threads. A handle is only started once the
+ * handles it depends on have been started, and handles ready at the same time are started by
+ * decreasing priority. A handle depending on a handle that could not be started is skipped.
+ */
+public class AutostartScheduler
+{
+    /**
+     * Status of a handle waiting to be started.
+     */
+    public static final String QUEUED = "QUEUED";
+
+    /**
+     * Status of a handle being started.
+     */
+    public static final String STARTING = "STARTING";
+
+    /**
+     * Starts a handle.
+     */
+    public interface Starter
+    {
+        /**
+         * Starts a handle. Failures are to be handled by the implementation.
+         * @param handle Handle to start.
+         * @return <code>true</code> if the handle has been started or did not need to be,
+         * <code>false</code> if it could not be started.
+         */
+        boolean start(Handle handle);
+
+        /**
+         * Called instead of {@link #start(Handle)} for a handle that is not started because one
+         * of the handles it depends on could not be started.
+         * @param handle Handle not started.
+         * @param dependency Identifier of the handle it depends on that could not be started.
+         */
+        void skip(Handle handle, String dependency);
+    }
+
+    /**
+     * Orders handles by decreasing priority.
+     */
+    private static final Comparator<Handle> PRIORITY_ORDER = new Comparator<Handle>()
+    {
+        @Override
+        public int compare(Handle handle1, Handle handle2)
+        {
+            return Integer.valueOf(handle2.getAutostartPriority()).compareTo(
+                handle1.getAutostartPriority());
+        }
+    };
+
+    /**
+     * Worker threads.
+     */
+    private ExecutorService executor;
+
+    /**
+     * Starter of the handles.
+     */
+    private Starter starter;
+
+    /**
+     * Handles waiting for their dependencies, indexed by handle id.
+     */
+    private Map<String, Handle> pending = new LinkedHashMap<String, Handle>();
+
+    /**
+     * Identifiers of the handles submitted to the worker threads.
+     */
+    private Set<String> submitted = new HashSet<String>();
+
+    /**
+     * Identifiers of the handles that could not be started or have been skipped, until they get
+     * scheduled again.
+     */
+    private Set<String> failed = new HashSet<String>();
+
+    /**
+     * Status of the queued or starting handles, indexed by handle id.
+     */
+    private Map<String, String> statuses = new HashMap<String, String>();
+
+    /**
+     * @param threads Number of worker threads.
+     * @param starter Starter of the handles.
+     */
+    public AutostartScheduler(int threads, Starter starter)
+    {
+        this.executor = Executors.newFixedThreadPool(Math.max(1, threads));
+        this.starter = starter;
+    }
+
+    /**
+     * Schedules handles to be started. Handles which are already queued or starting are ignored.
+     * A handle which could not be started before is given another chance, and so are the handles
+     * depending on it.
+     * @param handles Handles to start.
+     */
+    public synchronized void schedule(Collection<Handle> handles)
+    {
+        for (Handle handle : handles)
+        {
+            if (!this.statuses.containsKey(handle.getId()))
+            {
+                this.failed.remove(handle.getId());
+                this.pending.put(handle.getId(), handle);
+                this.statuses.put(handle.getId(), QUEUED);
+            }
+        }
+        submitReady();
+    }
+
+    /**
+     * @param handleId Handle id.
+     * @return {@link #QUEUED} or {@link #STARTING} if the handle is queued or starting,
+     * <code>null</code> otherwise.
+     */
+    public synchronized String getStatus(String handleId)
+    {
+        return this.statuses.get(handleId);
+    }
+
+    /**
+     * Stops the worker threads.
+     */
+    public void shutdown()
+    {
+        this.executor.shutdownNow();
+    }
+
+    /**
+     * Skips the pending handles depending on a handle that could not be started, and submits the
+     * pending handles whose dependencies are neither queued nor starting. If no handle is ready
+     * while nothing is starting, the dependencies are circular and all pending handles are
+     * submitted.
+     */
+    private synchronized void submitReady()
+    {
+        if (this.executor.isShutdown())
+        {
+            return;
+        }
+
+        List<Handle> ready = new ArrayList<Handle>();
+        boolean skipped;
+        do
+        {
+            skipped = false;
+            ready.clear();
+            for (Iterator<Handle> iterator = this.pending.values().iterator(); iterator.hasNext();)
+            {
+                Handle handle = iterator.next();
+                String failedDependency = null;
+                boolean dependenciesDone = true;
+                for (String dependency : handle.getAutostartDependencies())
+                {
+                    if (this.failed.contains(dependency))
+                    {
+                        failedDependency = dependency;
+                        break;
+                    }
+                    else if (this.statuses.containsKey(dependency))
+                    {
+                        dependenciesDone = false;
+                    }
+                }
+                if (failedDependency != null)
+                {
+                    // Its own dependents get skipped as well
+                    iterator.remove();
+                    this.statuses.remove(handle.getId());
+                    this.failed.add(handle.getId());
+                    this.starter.skip(handle, failedDependency);
+                    skipped = true;
+                }
+                else if (dependenciesDone)
+                {
+                    ready.add(handle);
+                }
+            }
+        }
+        while (skipped);
+        if (ready.isEmpty() && this.submitted.isEmpty())
+        {
+            ready.addAll(this.pending.values());
+        }
+
+        Collections.sort(ready, PRIORITY_ORDER);
+        for (final Handle handle : ready)
+        {
+            this.pending.remove(handle.getId());
+            this.submitted.add(handle.getId());
+            this.executor.submit(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    start(handle);
+                }
+            });
+        }
+    }
+
+    /**
+     * Starts a handle and then submits or skips the handles that were waiting for it.
+     * @param handle Handle to start.
+     */
+    private void start(Handle handle)
+    {
+        synchronized (this)
+        {
+            this.statuses.put(handle.getId(), STARTING);
+        }
+        boolean started = false;
+        try
+        {
+            started = this.starter.start(handle);
+        }
+        finally
+        {
+            synchronized (this)
+            {
+                if (started)
+                {
+                    this.failed.remove(handle.getId());
+                }
+                else
+                {
+                    this.failed.add(handle.getId());
+                }
+                this.statuses.remove(handle.getId());
+                this.submitted.remove(handle.getId());
+                submitReady();
+            }
+        }
+    }
+}
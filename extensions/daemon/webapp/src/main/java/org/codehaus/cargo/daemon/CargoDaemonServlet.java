@@ -20,8 +20,8 @@
 package org.codehaus.cargo.daemon;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.net.MalformedURLException;
 import java.net.URL;
@@ -33,6 +33,7 @@ import java.util.Map;
 import java.util.TreeMap;
 import java.util.TreeSet;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 
 import javax.servlet.ServletConfig;
@@ -55,6 +56,7 @@ import org.codehaus.cargo.container.deployable.WAR;
 import org.codehaus.cargo.container.installer.Installer;
 import org.codehaus.cargo.container.installer.ZipURLInstaller;
 import org.codehaus.cargo.daemon.file.FileManager;
+import org.codehaus.cargo.daemon.file.LogTailer;
 import org.codehaus.cargo.daemon.jvm.DaemonJvmLauncherFactory;
 import org.codehaus.cargo.daemon.properties.PropertyTable;
 import org.codehaus.cargo.daemon.request.StartRequest;
@@ -89,6 +91,29 @@ public class CargoDaemonServlet extends HttpServlet implements Runnable
      */
     private static final int INITIALAUTOSTARTTIMEOUT = 3;
 
+    /**
+     * Default number of threads starting the autostart handles, overridden with the
+     * <code>cargo.daemon.autostart.threads</code> system property.
+     */
+    private static final int AUTOSTARTTHREADS = 4;
+
+    /**
+     * Default maximum number of containers being launched at the same time, overridden with the
+     * <code>cargo.daemon.launches</code> system property.
+     */
+    private static final int LAUNCHES = 2;
+
+    /**
+     * The amount of milliseconds after which an idle log stream is sent a keep-alive comment,
+     * which also detects clients which went away.
+     */
+    private static final int LOGSTREAMKEEPALIVE = 15000;
+
+    /**
+     * The amount of bytes at the end of a log file shown when no offset is specified.
+     */
+    private static final long LOGTAIL = 1048576;
+
     /**
      * Serial version UUID.
      */
@@ -130,6 +155,16 @@ public class CargoDaemonServlet extends HttpServlet implements Runnable
      */
     private ScheduledThreadPoolExecutor scheduledExecutor = new ScheduledThreadPoolExecutor(1);
 
+    /**
+     * Starts the autostart handles.
+     */
+    private AutostartScheduler autostartScheduler;
+
+    /**
+     * Limits the number of containers being launched at the same time.
+     */
+    private Semaphore launchPermits;
+
     /**
      * Default index page.
      */
@@ -184,8 +219,6 @@ public class CargoDaemonServlet extends HttpServlet implements Runnable
         finally
         {
             reader.close();
-            reader = null;
-            System.gc();
         }
 
         this.indexPage = indexPageBuilder.toString();
@@ -200,12 +233,34 @@ public class CargoDaemonServlet extends HttpServlet implements Runnable
         try
         {
             handles = fileManager.loadHandleDatabase();
+            fileManager.collectBlobs(handles);
         }
         catch (IOException e)
         {
             // Ignore, we'll try again later
         }
 
+        launchPermits = new Semaphore(
+            Math.max(1, Integer.getInteger("cargo.daemon.launches", LAUNCHES)), true);
+        autostartScheduler = new AutostartScheduler(
+            Integer.getInteger("cargo.daemon.autostart.threads", AUTOSTARTTHREADS),
+            new AutostartScheduler.Starter()
+            {
+                @Override
+                public boolean start(Handle handle)
+                {
+                    return autostart(handle);
+                }
+
+                @Override
+                public void skip(Handle handle, String dependency)
+                {
+                    getServletContext().log("Not autostarting handle [" + handle
+                        + "] as the handle it depends on [" + dependency
+                        + "] could not be started");
+                }
+            });
+
         // Start background task for restarting webapps
         scheduledExecutor.scheduleAtFixedRate(
             this, INITIALAUTOSTARTTIMEOUT, AUTOSTARTTIMEOUT, TimeUnit.SECONDS);
@@ -215,6 +270,8 @@ public class CargoDaemonServlet extends HttpServlet implements Runnable
     public void destroy()
     {
         scheduledExecutor.shutdown();
+        autostartScheduler.shutdown();
+        fileManager.closeLogTailers();
         super.destroy();
     }
 
@@ -255,7 +312,8 @@ public class CargoDaemonServlet extends HttpServlet implements Runnable
                 if (startRequest == null)
                 {
                     // Use case: Create new / replace existing handleId with provided configuration
-                    startRequest = new StartRequest().parse(request);
+                    startRequest = new StartRequest().parse(request,
+                        fileManager.createUploadDirectory());
                     startRequest.setSave(true);
                 }
 
@@ -295,7 +353,8 @@ public class CargoDaemonServlet extends HttpServlet implements Runnable
                         if (delete)
                         {
                             handles.remove(handleId);
-                            fileManager.saveHandleDatabase(handles);
+                            fileManager.saveHandleRemoval(handles, handleId);
+                            fileManager.collectBlobs(handles);
                         }
 
                         if (container != null)
@@ -399,6 +458,10 @@ public class CargoDaemonServlet extends HttpServlet implements Runnable
                 response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, e.toString());
             }
         }
+        else if ("streamlog".equals(servletPath) || "streamcargolog".equals(servletPath))
+        {
+            streamLog(request, response, servletPath);
+        }
         else if ("installed".equals(servletPath))
         {
             String file = request.getParameter("file");
@@ -413,6 +476,30 @@ public class CargoDaemonServlet extends HttpServlet implements Runnable
                 response.getWriter().println("OK - NOTEXIST");
             }
         }
+        else if ("missing".equals(servletPath))
+        {
+            List<String> digests = new ArrayList<String>();
+            String digestsParameter = request.getParameter("digests");
+            if (digestsParameter != null && !digestsParameter.isEmpty())
+            {
+                Object parsedDigests = JSONValue.parse(digestsParameter);
+                if (!(parsedDigests instanceof JSONArray))
+                {
+                    throw new ServletException("Parameter digests is not a JSON array");
+                }
+                for (Object digest : (JSONArray) parsedDigests)
+                {
+                    digests.add(String.valueOf(digest));
+                }
+            }
+
+            response.setContentType("text/plain");
+            response.getWriter().println("OK - MISSING");
+            for (String digest : fileManager.getMissingBlobs(digests))
+            {
+                response.getWriter().println(digest);
+            }
+        }
         else if ("getHandles".equals(servletPath))
         {
             response.setContentType("text/plain");
@@ -468,12 +555,13 @@ public class CargoDaemonServlet extends HttpServlet implements Runnable
         List<String> configurationFiles = request.getStringList("configurationFiles", false);
         List<PropertyTable> deployableFiles = request.getPropertiesList("deployableFiles", false);
         List<PropertyTable> xmlReplacements = request.getPropertiesList("xmlReplacements", false);
-        InputStream installerZipInputStream = request.getFile("installerZipFileData", false);
+        File installerZipUploadedFile = request.getUploadedFile("installerZipFileData", false);
         List<String> extraFiles = request.getStringList("extraFiles", false);
         List<String> sharedFiles = request.getStringList("sharedFiles", false);
         List<String> extraClasspath = request.getStringList("extraClasspath", false);
         List<String> sharedClasspath = request.getStringList("sharedClasspath", false);
         List<String> additionalClasspath = request.getStringList("additionalClasspath", false);
+        PropertyTable fileDigests = request.getProperties("fileDigests", false);
 
         Handle handle;
         InstalledLocalContainer previousContainer = null;
@@ -586,9 +674,9 @@ public class CargoDaemonServlet extends HttpServlet implements Runnable
             container.setOutput(containerOutputFile);
             container.setAppend(containerAppend);
 
-            if (installerZipFile != null && installerZipInputStream != null)
+            if (installerZipFile != null && installerZipUploadedFile != null)
             {
-                fileManager.saveFile(installerZipFile, installerZipInputStream);
+                fileManager.moveFile(installerZipFile, installerZipUploadedFile);
             }
 
             if (installerZipUrl != null || installerZipFile != null)
@@ -603,17 +691,19 @@ public class CargoDaemonServlet extends HttpServlet implements Runnable
 
             if (request.isSave())
             {
-                saveConfigurationFiles(configurationFiles, handleId, request);
+                fileManager.saveBlobs(fileDigests, request);
+                saveConfigurationFiles(configurationFiles, handleId, fileDigests, request);
             }
 
             setupConfigurationFiles(handleId, configuration, configurationFileProperties, request);
-            setupDeployableFiles(handleId, containerId, deployableFiles, configuration, request);
+            setupDeployableFiles(handleId, containerId, deployableFiles, configuration,
+                fileDigests, request);
             if (container instanceof InstalledLocalContainer)
             {
                 if (request.isSave())
                 {
-                    saveExtraFiles(extraFiles, handleId, request);
-                    saveSharedFiles(sharedFiles, handleId, request);
+                    saveExtraFiles(extraFiles, handleId, fileDigests, request);
+                    saveSharedFiles(sharedFiles, handleId, fileDigests, request);
                 }
                 setupExtraClasspath((InstalledLocalContainer) container, extraClasspath, handleId);
                 setupSharedClasspath((InstalledLocalContainer) container, sharedClasspath,
@@ -631,7 +721,7 @@ public class CargoDaemonServlet extends HttpServlet implements Runnable
                 handle.setAutostart("on".equals(autostart) || "true".equals(autostart));
                 handle.addProperties(request.getParameters());
 
-                fileManager.saveHandleDatabase(handles);
+                fileManager.saveHandle(handles, handle);
             }
 
             if (previousContainer != null)
@@ -649,6 +739,7 @@ public class CargoDaemonServlet extends HttpServlet implements Runnable
                 }
             }
 
+            launchPermits.acquire();
             try
             {
                 container.start();
@@ -667,6 +758,10 @@ public class CargoDaemonServlet extends HttpServlet implements Runnable
 
                 throw t;
             }
+            finally
+            {
+                launchPermits.release();
+            }
         }
     }
 
@@ -700,10 +795,11 @@ public class CargoDaemonServlet extends HttpServlet implements Runnable
      * 
      * @param configurationFiles The configuration files.
      * @param handleId The handle id.
+     * @param fileDigests The SHA-256 digests of the uploaded files.
      * @param request The initial start request.
      */
     private void saveConfigurationFiles(List<String> configurationFiles, String handleId,
-        StartRequest request)
+        PropertyTable fileDigests, StartRequest request)
     {
         int i = 0;
 
@@ -714,8 +810,8 @@ public class CargoDaemonServlet extends HttpServlet implements Runnable
 
         for (String filename : configurationFiles)
         {
-            InputStream inputStream = request.getFile("configurationFileData_" + i, true);
-            fileManager.saveFile(handleId, filename, inputStream);
+            fileManager.saveWorkspaceFile(handleId, filename, "configurationFileData_" + i,
+                fileDigests, request, true);
 
             i++;
         }
@@ -726,9 +822,11 @@ public class CargoDaemonServlet extends HttpServlet implements Runnable
      * 
      * @param sharedFiles The shared classpath files.
      * @param handleId The handle id.
+     * @param fileDigests The SHA-256 digests of the uploaded files.
      * @param request The initial start request.
      */
-    private void saveSharedFiles(List<String> sharedFiles, String handleId, StartRequest request)
+    private void saveSharedFiles(List<String> sharedFiles, String handleId,
+        PropertyTable fileDigests, StartRequest request)
     {
         int i = 0;
 
@@ -739,8 +837,8 @@ public class CargoDaemonServlet extends HttpServlet implements Runnable
 
         for (String filename : sharedFiles)
         {
-            InputStream inputStream = request.getFile("sharedFileData_" + i, true);
-            fileManager.saveFile(handleId, filename, inputStream);
+            fileManager.saveWorkspaceFile(handleId, filename, "sharedFileData_" + i,
+                fileDigests, request, true);
 
             i++;
         }
@@ -751,9 +849,11 @@ public class CargoDaemonServlet extends HttpServlet implements Runnable
      * 
      * @param extraFiles The extra classpath files.
      * @param handleId The handle id.
+     * @param fileDigests The SHA-256 digests of the uploaded files.
      * @param request The initial start request.
      */
-    private void saveExtraFiles(List<String> extraFiles, String handleId, StartRequest request)
+    private void saveExtraFiles(List<String> extraFiles, String handleId,
+        PropertyTable fileDigests, StartRequest request)
     {
         int i = 0;
 
@@ -764,8 +864,8 @@ public class CargoDaemonServlet extends HttpServlet implements Runnable
 
         for (String filename : extraFiles)
         {
-            InputStream inputStream = request.getFile("extraFileData_" + i, true);
-            fileManager.saveFile(handleId, filename, inputStream);
+            fileManager.saveWorkspaceFile(handleId, filename, "extraFileData_" + i,
+                fileDigests, request, true);
 
             i++;
         }
@@ -876,11 +976,12 @@ public class CargoDaemonServlet extends HttpServlet implements Runnable
      * @param containerId The container identifier.
      * @param deployableFiles List of properties for deployable files.
      * @param configuration Reference to the configuration.
+     * @param fileDigests The SHA-256 digests of the uploaded files.
      * @param request The start request of the container.
      */
     private void setupDeployableFiles(String handleId, String containerId,
         List<PropertyTable> deployableFiles, LocalConfiguration configuration,
-        StartRequest request)
+        PropertyTable fileDigests, StartRequest request)
     {
         int i = 0;
 
@@ -889,9 +990,8 @@ public class CargoDaemonServlet extends HttpServlet implements Runnable
             DeployableType deployableType = DeployableType.toType(properties.get("type"));
             String filename = properties.get("filename", true);
 
-            String location =
-                fileManager.saveFile(handleId, filename,
-                    request.getFile("deployableFileData_" + i, false));
+            String location = fileManager.saveWorkspaceFile(handleId, filename,
+                "deployableFileData_" + i, fileDigests, request, false);
 
             Deployable deployable =
                 DEPLOYABLE_FACTORY.createDeployable(containerId, location, deployableType);
@@ -960,11 +1060,193 @@ public class CargoDaemonServlet extends HttpServlet implements Runnable
 
         for (Map.Entry<String, Handle> entry : this.handles.entrySet())
         {
-            result.put(entry.getKey(), entry.getValue().getContainerStatus().toString());
+            String status = autostartScheduler.getStatus(entry.getKey());
+            if (status == null)
+            {
+                status = entry.getValue().getContainerStatus().toString();
+            }
+            result.put(entry.getKey(), status);
         }
         return result;
     }
     
+    /**
+     * Streams a log file, see {@link #followLog(HttpServletRequest, HttpServletResponse, String)}.
+     * 
+     * @param request The servlet request
+     * @param response The servlet response
+     * @param servletPath Either streamlog or streamcargolog
+     * @throws IOException If the log file cannot be read, or the client went away
+     */
+    private void streamLog(HttpServletRequest request, HttpServletResponse response,
+        String servletPath) throws IOException
+    {
+        try
+        {
+            followLog(request, response, servletPath);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        catch (CargoDaemonException e)
+        {
+            getServletContext().log("Cannot stream log for server", e);
+            response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, e.toString());
+        }
+    }
+
+    /**
+     * Streams a log file as server-sent events, until the client goes away or the daemon stops.
+     * The log file is followed by a tailer shared with the other clients streaming it, each event
+     * carrying the position in the log file following its data as identifier so that clients
+     * reconnecting with a <code>Last-Event-ID</code> header resume where they left off.
+     * 
+     * @param request The servlet request
+     * @param response The servlet response
+     * @param servletPath Either streamlog or streamcargolog
+     * @throws IOException If the log file cannot be read, or the client went away
+     * @throws InterruptedException If interrupted while waiting for the log file to grow
+     */
+    private void followLog(HttpServletRequest request, HttpServletResponse response,
+        String servletPath) throws IOException, InterruptedException
+    {
+        String handleId = request.getParameter("handleId");
+        Handle handle = handles.get(handleId);
+        if (handle == null)
+        {
+            throw new CargoDaemonException("Handle id " + handleId + " not found.");
+        }
+
+        String logFilePath;
+        if ("streamlog".equals(servletPath))
+        {
+            logFilePath = handle.getContainerOutputPath();
+        }
+        else
+        {
+            logFilePath = handle.getContainerLogPath();
+        }
+        if (logFilePath == null)
+        {
+            throw new CargoDaemonException("Handle id " + handleId + " has no log file.");
+        }
+
+        Long offset = getLong(request.getHeader("Last-Event-ID"));
+        if (offset == null)
+        {
+            offset = getLong(request.getParameter("offset"));
+        }
+        if (offset == null)
+        {
+            offset = Math.max(0, fileManager.getFileSize(logFilePath) - LOGTAIL);
+        }
+
+        response.setContentType("text/event-stream");
+        response.setCharacterEncoding("UTF-8");
+        response.setHeader("Cache-Control", "no-cache");
+        ServletOutputStream outputStream = response.getOutputStream();
+        outputStream.print("retry: 1000\n\n");
+        outputStream.flush();
+
+        LogTailer.Subscription subscription = fileManager.subscribeLog(logFilePath, offset);
+        try
+        {
+            // Bytes of a character split between two chunks
+            byte[] pending = new byte[0];
+            long position = offset;
+            while (!subscription.isClosed())
+            {
+                LogTailer.Chunk chunk = subscription.take(LOGSTREAMKEEPALIVE);
+                if (chunk == null)
+                {
+                    outputStream.print(": keep-alive\n\n");
+                    outputStream.flush();
+                    continue;
+                }
+
+                byte[] data = chunk.getData();
+                if (chunk.getOffset() == position && pending.length > 0)
+                {
+                    byte[] joined = new byte[pending.length + data.length];
+                    System.arraycopy(pending, 0, joined, 0, pending.length);
+                    System.arraycopy(data, 0, joined, pending.length, data.length);
+                    data = joined;
+                }
+                position = chunk.getOffset() + chunk.getData().length;
+
+                int length = getUtf8Length(data);
+                pending = new byte[data.length - length];
+                System.arraycopy(data, length, pending, 0, pending.length);
+                if (length > 0)
+                {
+                    writeLogEvent(outputStream, new String(data, 0, length, "UTF-8"),
+                        position - pending.length);
+                }
+            }
+        }
+        finally
+        {
+            fileManager.unsubscribeLog(logFilePath, subscription);
+        }
+    }
+
+    /**
+     * Gets the length of the data without an incomplete UTF-8 character at its end.
+     * 
+     * @param data The data
+     * @return the length of the data up to its last complete character
+     */
+    private static int getUtf8Length(byte[] data)
+    {
+        int start = data.length - 1;
+        while (start > 0 && start > data.length - 4 && (data[start] & 0xC0) == 0x80)
+        {
+            start--;
+        }
+        if (start < 0 || (data[start] & 0xC0) != 0xC0)
+        {
+            return data.length;
+        }
+
+        int characterLength;
+        if ((data[start] & 0xE0) == 0xC0)
+        {
+            characterLength = 2;
+        }
+        else if ((data[start] & 0xF0) == 0xE0)
+        {
+            characterLength = 3;
+        }
+        else
+        {
+            characterLength = 4;
+        }
+        return data.length - start < characterLength ? start : data.length;
+    }
+
+    /**
+     * Writes a server-sent event with log data.
+     * 
+     * @param outputStream The output stream
+     * @param text The log data
+     * @param id The position in the log file following the log data
+     * @throws IOException If the client went away
+     */
+    private static void writeLogEvent(ServletOutputStream outputStream, String text, long id)
+        throws IOException
+    {
+        StringBuilder event = new StringBuilder();
+        event.append("id: ").append(id).append('\n');
+        for (String line : text.split("\r\n|\r|\n", -1))
+        {
+            event.append("data: ").append(line).append('\n');
+        }
+        event.append('\n');
+        outputStream.write(event.toString().getBytes("UTF-8"));
+        outputStream.flush();
+    }
+
     /**
      * Converts text to long if possible, otherwise returns 0
      * 
@@ -984,41 +1266,68 @@ public class CargoDaemonServlet extends HttpServlet implements Runnable
     }
 
     /**
-     * Background task to autostart containers if they are stopped.
+     * Background task to schedule the autostart of containers if they are stopped.
      */
     @Override
     public void run()
     {
+        if (this.handles == null)
+        {
+            return;
+        }
+
+        List<Handle> stoppedHandles = new ArrayList<Handle>();
         for (Map.Entry<String, Handle> entry : this.handles.entrySet())
         {
             Handle handle = entry.getValue();
 
-            if (handle == null)
+            if (handle != null && isAutostartNeeded(handle))
             {
-                continue;
+                stoppedHandles.add(handle);
             }
+        }
+        autostartScheduler.schedule(stoppedHandles);
+    }
+
+    /**
+     * @param handle Handle.
+     * @return <code>true</code> if the container of the handle is to be autostarted.
+     */
+    private boolean isAutostartNeeded(Handle handle)
+    {
+        return handle.isAutostart() && handle.getContainerStatus() == State.STOPPED
+            && !handle.isForceStop();
+    }
 
-            synchronized (handle) 
+    /**
+     * Autostarts the container of a handle, unless it has been started or forcibly stopped since
+     * it got scheduled.
+     * 
+     * @param handle Handle to start.
+     * @return <code>false</code> if the container could not be started.
+     */
+    private boolean autostart(Handle handle)
+    {
+        synchronized (handle)
+        {
+            if (isAutostartNeeded(handle))
             {
-                if (handle.isAutostart() && handle.getContainerStatus() == State.STOPPED
-                    && !handle.isForceStop())
-                {
-                    StartRequest startRequest = new StartRequest();
+                StartRequest startRequest = new StartRequest();
 
-                    startRequest.setParameters(handle.getProperties());
-                    try
-                    {
-                        startContainer(startRequest);
-                    }
-                    catch (Throwable e)
-                    {
-                        // Ignore
-                    }
+                startRequest.setParameters(handle.getProperties());
+                try
+                {
+                    startContainer(startRequest);
+                }
+                catch (Throwable e)
+                {
+                    getServletContext().log("Cannot autostart handle [" + handle + "]", e);
+                    return false;
                 }
             }
+            return true;
         }
     }
-    
 
     /**
      * Prints the log page header to the servlet output stream.
@@ -1114,7 +1423,21 @@ public class CargoDaemonServlet extends HttpServlet implements Runnable
                 + "      } else if (window.ActiveXObject) {\n"
                 + "        xmlHttpRequest = new ActiveXObject(\"Microsoft.XMLHTTP\");\n"
                 + "      }\n"
-                + "      if (xmlHttpRequest)\n"
+                + "      if (window.EventSource)\n"
+                + "      {\n"
+                + "        var eventSource = new EventSource(\"./stream"
+                + pageId.substring("view".length()) + "?handleId=\" + handleId "
+                + "+ \"&offset=\" + offset);\n"
+                + "        eventSource.onmessage = function(event)\n"
+                + "        {\n"
+                + "          var pre = document.createElement('pre');\n"
+                + "          var doscroll = shouldAutoscroll(logText);\n"
+                + "          pre.appendChild(document.createTextNode(event.data));\n"
+                + "          logText.appendChild(pre);\n"
+                + "          if (doscroll) scrollToBottom(logText);\n"
+                + "        }\n"
+                + "      }\n"
+                + "      else if (xmlHttpRequest)\n"
                 + "      {\n"
                 + "        xmlHttpRequest.onreadystatechange = function()\n"
                 + "        {\n"
@@ -19,6 +19,8 @@
  */
 package org.codehaus.cargo.daemon;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map.Entry;
 
 import org.codehaus.cargo.container.InstalledLocalContainer;
@@ -47,6 +49,16 @@ public class Handle
      */
     private static final String KEY_OUTPUTPATH = "outputpath";
 
+    /**
+     * The key representing the autostart priority.
+     */
+    private static final String KEY_AUTOSTART_PRIORITY = "autostartPriority";
+
+    /**
+     * The key representing the handles to autostart before this one.
+     */
+    private static final String KEY_AUTOSTART_DEPENDENCIES = "autostartDependencies";
+
     /**
      * The unique handle identifier of a container.
      */
@@ -207,6 +219,47 @@ public class Handle
         this.properties.put(KEY_OUTPUTPATH, logpath);
     }
 
+    /**
+     * @return the autostart priority, handles with a higher priority being started first. The
+     * default priority is 0.
+     */
+    public int getAutostartPriority()
+    {
+        String priority = this.properties.get(KEY_AUTOSTART_PRIORITY);
+        if (priority == null)
+        {
+            return 0;
+        }
+        try
+        {
+            return Integer.parseInt(priority.trim());
+        }
+        catch (NumberFormatException e)
+        {
+            return 0;
+        }
+    }
+
+    /**
+     * @return the identifiers of the handles to autostart before this one.
+     */
+    public List<String> getAutostartDependencies()
+    {
+        List<String> dependencies = new ArrayList<String>();
+        String value = this.properties.get(KEY_AUTOSTART_DEPENDENCIES);
+        if (value != null)
+        {
+            for (String dependency : value.split(","))
+            {
+                if (!dependency.trim().isEmpty())
+                {
+                    dependencies.add(dependency.trim());
+                }
+            }
+        }
+        return dependencies;
+    }
+
     /**
      * @return true if the container was forcibly stopped.
      */
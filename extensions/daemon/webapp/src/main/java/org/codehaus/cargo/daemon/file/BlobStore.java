@@ -0,0 +1,307 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus CARGO, copyright 2004-2011 Vincent Massol, 2012-2016 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.daemon.file;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+import org.codehaus.cargo.daemon.CargoDaemonException;
+import org.codehaus.cargo.util.FileHandler;
+
+/**
+ * Content-addressed store of the files uploaded to the daemon, each file being kept once under
+ * its SHA-256 digest. Files are added to the workspaces of the handles as hard links to the
+ * stored files where the file system allows it, and as copies otherwise. Linked files are read
+ * only, as writing to them would modify the stored file. Stored files no handle refers to anymore
+ * are removed by {@link #collect(Set)}.
+ */
+public class BlobStore
+{
+    /**
+     * Default time during which a file announced or uploaded by a client is kept even if no handle
+     * refers to it yet, as the request using it may still be in progress.
+     */
+    public static final long DEFAULT_GRACE_PERIOD = 60 * 60 * 1000L;
+
+    /**
+     * Format of a SHA-256 digest, as sent by the daemon client.
+     */
+    private static final Pattern DIGEST = Pattern.compile("[0-9a-f]{64}");
+
+    /**
+     * Time in milliseconds during which an announced or uploaded file is kept.
+     */
+    private long gracePeriod;
+
+    /**
+     * Time at which each file has last been announced or uploaded, indexed by digest.
+     */
+    private Map<String, Long> announced = new HashMap<String, Long>();
+
+    /**
+     * The directory of the store.
+     */
+    private File directory;
+
+    /**
+     * The file handler.
+     */
+    private FileHandler fileHandler;
+
+    /**
+     * @param directory The directory of the store.
+     * @param fileHandler The file handler.
+     */
+    public BlobStore(File directory, FileHandler fileHandler)
+    {
+        this(directory, fileHandler, DEFAULT_GRACE_PERIOD);
+    }
+
+    /**
+     * @param directory The directory of the store.
+     * @param fileHandler The file handler.
+     * @param gracePeriod Time in milliseconds during which an announced or uploaded file is kept
+     * even if no handle refers to it.
+     */
+    public BlobStore(File directory, FileHandler fileHandler, long gracePeriod)
+    {
+        this.directory = directory;
+        this.fileHandler = fileHandler;
+        this.gracePeriod = gracePeriod;
+    }
+
+    /**
+     * Gets the files which are not in the store. The files which are in the store are kept for the
+     * grace period, as the client will not upload them again.
+     * 
+     * @param digests SHA-256 digests of files.
+     * @return The digests of the files which are not in the store, in the same order.
+     */
+    public synchronized List<String> getMissing(Collection<String> digests)
+    {
+        List<String> missing = new ArrayList<String>();
+        long now = System.currentTimeMillis();
+        for (String digest : digests)
+        {
+            if (getBlob(digest).isFile())
+            {
+                this.announced.put(digest, now);
+            }
+            else if (!missing.contains(digest))
+            {
+                missing.add(digest);
+            }
+        }
+        return missing;
+    }
+
+    /**
+     * Adds a received file to the store. The file is moved to the store, and only once its digest
+     * has been verified so that the store never contains partially uploaded files.
+     * 
+     * @param digest The expected SHA-256 digest of the file.
+     * @param file The received file.
+     * @param fileDigest The SHA-256 digest computed while receiving the file.
+     */
+    public synchronized void put(String digest, File file, String fileDigest)
+    {
+        File blob = getBlob(digest);
+        if (!digest.equals(fileDigest))
+        {
+            throw new CargoDaemonException("Uploaded file has the SHA-256 digest [" + fileDigest
+                + "] instead of the announced [" + digest + "]");
+        }
+        this.announced.put(digest, System.currentTimeMillis());
+        if (blob.isFile())
+        {
+            return;
+        }
+
+        blob.getParentFile().mkdirs();
+        if (!file.renameTo(blob))
+        {
+            // Not on the same file system, copy through a temporary file in the store
+            File temporary = new File(this.directory, UUID.randomUUID().toString() + ".tmp");
+            try
+            {
+                fileHandler.copyFile(file.getPath(), temporary.getPath(), true);
+                if (!temporary.renameTo(blob) && !blob.isFile())
+                {
+                    throw new CargoDaemonException("Cannot move [" + temporary + "] to [" + blob
+                        + "]");
+                }
+            }
+            finally
+            {
+                temporary.delete();
+            }
+        }
+    }
+
+    /**
+     * Adds a stored file to a workspace. An existing target file is replaced, and not written to,
+     * as it may itself be linked to the store. A linked file shares the read only permissions of
+     * the stored file, so that whoever writes to the workspace file replaces it instead of writing
+     * to it; a copied file stays writable.
+     * 
+     * @param digest The SHA-256 digest of the file.
+     * @param target The target file.
+     */
+    public void link(String digest, String target)
+    {
+        File blob = getBlob(digest);
+        if (!blob.isFile())
+        {
+            throw new CargoDaemonException("No file with SHA-256 digest [" + digest
+                + "] has been uploaded");
+        }
+
+        blob.setReadOnly();
+        File targetFile = new File(target);
+        targetFile.delete();
+        targetFile.getAbsoluteFile().getParentFile().mkdirs();
+        if (!hardLink(blob, targetFile))
+        {
+            fileHandler.copyFile(blob.getPath(), target, true);
+        }
+    }
+
+    /**
+     * Removes the stored files which are not referenced, leaving alone the files announced or
+     * uploaded during the grace period. Files already added to workspaces are not affected, as
+     * they are either links or copies.
+     * 
+     * @param referenced SHA-256 digests of the files referenced by the handles.
+     * @return The number of removed files.
+     */
+    public synchronized int collect(Set<String> referenced)
+    {
+        long now = System.currentTimeMillis();
+        for (Iterator<Long> iterator = this.announced.values().iterator(); iterator.hasNext();)
+        {
+            if (now - iterator.next() >= this.gracePeriod)
+            {
+                iterator.remove();
+            }
+        }
+
+        int removed = 0;
+        File[] prefixes = this.directory.listFiles();
+        if (prefixes == null)
+        {
+            return removed;
+        }
+        for (File prefix : prefixes)
+        {
+            File[] blobs = prefix.listFiles();
+            if (blobs == null)
+            {
+                // Temporary file left behind by a crash while copying a file to the store
+                if (now - prefix.lastModified() >= this.gracePeriod && prefix.delete())
+                {
+                    removed++;
+                }
+                continue;
+            }
+            for (File blob : blobs)
+            {
+                String digest = blob.getName();
+                if (!referenced.contains(digest) && !this.announced.containsKey(digest)
+                    && blob.delete())
+                {
+                    removed++;
+                }
+            }
+            prefix.delete();
+        }
+        return removed;
+    }
+
+    /**
+     * @param digest SHA-256 digest of a file.
+     * @return The location of the file in the store.
+     */
+    private File getBlob(String digest)
+    {
+        if (digest == null || !DIGEST.matcher(digest).matches())
+        {
+            throw new CargoDaemonException("Invalid SHA-256 digest [" + digest + "]");
+        }
+        return new File(new File(this.directory, digest.substring(0, 2)), digest);
+    }
+
+    /**
+     * Hard links a file, using the <code>ln</code> command as hard links cannot be created with
+     * Java 6.
+     * 
+     * @param source The source file.
+     * @param target The link to create.
+     * @return <code>true</code> if the link has been created, <code>false</code> if the file has
+     * to be copied instead.
+     */
+    private static boolean hardLink(File source, File target)
+    {
+        if (File.separatorChar != '/')
+        {
+            return false;
+        }
+
+        try
+        {
+            ProcessBuilder processBuilder =
+                new ProcessBuilder("ln", source.getAbsolutePath(), target.getAbsolutePath());
+            processBuilder.redirectErrorStream(true);
+            Process process = processBuilder.start();
+            process.getOutputStream().close();
+            InputStream output = process.getInputStream();
+            try
+            {
+                while (output.read() != -1)
+                {
+                    // Discard the error message, the file then gets copied
+                }
+            }
+            finally
+            {
+                output.close();
+            }
+            return process.waitFor() == 0;
+        }
+        catch (IOException e)
+        {
+            return false;
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
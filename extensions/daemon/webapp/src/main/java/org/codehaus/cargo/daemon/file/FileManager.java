@@ -24,11 +24,25 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
+import org.codehaus.cargo.daemon.Handle;
 import org.codehaus.cargo.daemon.HandleDatabase;
-import org.codehaus.cargo.util.DefaultFileHandler;
+import org.codehaus.cargo.daemon.properties.PropertyTable;
+import org.codehaus.cargo.daemon.request.StartRequest;
 import org.codehaus.cargo.util.FileHandler;
+import org.codehaus.cargo.util.FileHandlerFactory;
+import org.json.simple.JSONValue;
 
 /**
  * File manager to deal with files and directories in the daemon workspace.
@@ -71,10 +85,36 @@ public class FileManager
      */
     private String handleRecordFile;
 
+    /**
+     * The journal of the handle record file.
+     */
+    private HandleJournal handleJournal;
+
+    /**
+     * The store of uploaded files.
+     */
+    private BlobStore blobStore;
+
+    /**
+     * The tailers of the streamed log files, with the log file path as key.
+     */
+    private final Map<String, LogTailer> logTailers = new HashMap<String, LogTailer>();
+
+    /**
+     * The polling tasks of the log tailers, with the log file path as key.
+     */
+    private final Map<String, ScheduledFuture<?>> logTailerTasks =
+        new HashMap<String, ScheduledFuture<?>>();
+
+    /**
+     * Polls the log tailers.
+     */
+    private ScheduledThreadPoolExecutor logTailerExecutor;
+
     /**
      * The file handler.
      */
-    private final FileHandler fileHandler = new DefaultFileHandler();
+    private final FileHandler fileHandler = FileHandlerFactory.createFileHandler();
 
     /**
      * Get the cargo home directory.
@@ -160,33 +200,60 @@ public class FileManager
     }
 
     /**
-     * @return The handle database loaded from disk.
-     * @throws IOException if error occurs
+     * @return The journal of the handle record file.
      */
-    public HandleDatabase loadHandleDatabase() throws IOException
+    private synchronized HandleJournal getHandleJournal()
     {
-        String file = getHandleDatabaseFile();
-        HandleDatabase database = new HandleDatabase();
-
-        if (fileHandler.exists(file))
+        if (handleJournal == null)
         {
-            database.load(fileHandler.getInputStream(file));
+            handleJournal = new HandleJournal(new File(getHandleDatabaseFile()));
         }
 
-        return database;
+        return handleJournal;
     }
 
     /**
-     * Save handle database to disk.
+     * @return The handle database loaded from disk.
+     * @throws IOException if error occurs
+     */
+    public HandleDatabase loadHandleDatabase() throws IOException
+    {
+        return getHandleJournal().load();
+    }
+
+    /**
+     * Save the whole handle database to disk.
      * 
      * @param database The handle database to save.
      * @throws IOException if error occurs.
      */
     public void saveHandleDatabase(HandleDatabase database) throws IOException
     {
-        String file = getHandleDatabaseFile();
+        getHandleJournal().compact(database);
+    }
+
+    /**
+     * Save a new or modified handle to disk.
+     * 
+     * @param database The handle database containing the handle.
+     * @param handle The handle to save.
+     * @throws IOException if error occurs.
+     */
+    public void saveHandle(HandleDatabase database, Handle handle) throws IOException
+    {
+        getHandleJournal().put(database, handle);
+    }
 
-        database.store(fileHandler.getOutputStream(file));
+    /**
+     * Save the removal of a handle to disk.
+     * 
+     * @param database The handle database the handle has been removed from.
+     * @param handleId The identifier of the removed handle.
+     * @throws IOException if error occurs.
+     */
+    public void saveHandleRemoval(HandleDatabase database, String handleId) throws IOException
+    {
+        getHandleJournal().remove(database, handleId);
     }
 
     /**
@@ -324,11 +391,210 @@ public class FileManager
     {
         String file = fileHandler.append(getWorkspaceDirectory(), relativeFile);
 
-        fileHandler.copy(inputStream, fileHandler.getOutputStream(file));
+        fileHandler.copy(inputStream, getReplacingOutputStream(file));
+
+        return file;
+    }
+
+    /**
+     * @return The store of uploaded files.
+     */
+    private synchronized BlobStore getBlobStore()
+    {
+        if (blobStore == null)
+        {
+            blobStore = new BlobStore(
+                new File(fileHandler.append(getCargoHomeDirectory(), "blobs")), fileHandler);
+        }
+
+        return blobStore;
+    }
+
+    /**
+     * Gets the uploaded files which are not stored yet.
+     * 
+     * @param digests The SHA-256 digests of the files
+     * @return the digests of the files which have to be uploaded
+     */
+    public List<String> getMissingBlobs(Collection<String> digests)
+    {
+        return getBlobStore().getMissing(digests);
+    }
+
+    /**
+     * Stores the files of a start request which are announced with their SHA-256 digest, so that
+     * they can then be added to the workspace from the store. A file announced several times is
+     * only uploaded once, and files the store already has are not uploaded at all.
+     * 
+     * @param fileDigests The SHA-256 digests of the files, with their name in the request as key
+     * @param request The start request
+     */
+    public void saveBlobs(PropertyTable fileDigests, StartRequest request)
+    {
+        for (Map.Entry<String, String> fileDigest : fileDigests.entrySet())
+        {
+            File file = request.getUploadedFile(fileDigest.getKey(), false);
+            if (file != null)
+            {
+                getBlobStore().put(fileDigest.getValue(), file,
+                    request.getUploadedFileDigest(fileDigest.getKey()));
+            }
+        }
+    }
+
+    /**
+     * Saves a file of a start request to the workspace directory of a container. Files announced
+     * with their SHA-256 digest are added from the store, as the client only uploads the files
+     * which are not stored yet.
+     * 
+     * @param handleId The handle identifier of a container
+     * @param relativeFile The relative filename
+     * @param name The name of the file in the start request
+     * @param fileDigests The SHA-256 digests of the files, with their name in the request as key
+     * @param request The start request
+     * @param required If required {@code true}, otherwise {@code false}
+     * @return path to the saved file
+     */
+    public String saveWorkspaceFile(String handleId, String relativeFile, String name,
+        PropertyTable fileDigests, StartRequest request, boolean required)
+    {
+        String digest = fileDigests.get(name);
+        if (request.isSave() && digest != null)
+        {
+            return saveFileFromBlob(handleId, relativeFile, digest);
+        }
+
+        File file = request.getUploadedFile(name, required);
+        if (file != null)
+        {
+            return moveFile(handleId, relativeFile, file);
+        }
+
+        return resolveWorkspacePath(handleId, relativeFile);
+    }
+
+    /**
+     * Adds a stored file to the workspace directory of a container.
+     * 
+     * @param handleId The handle identifier of a container
+     * @param relativeFile The relative filename
+     * @param digest The SHA-256 digest of the file
+     * @return path to the saved file
+     */
+    public String saveFileFromBlob(String handleId, String relativeFile, String digest)
+    {
+        String file = fileHandler.append(getWorkspaceDirectory(handleId), relativeFile);
+
+        getBlobStore().link(digest, file);
+
+        return file;
+    }
+
+    /**
+     * Removes the stored files which are not referenced by any handle of the database anymore.
+     * As this parses the file digests of every handle and lists the whole store, it is only done
+     * when the daemon starts and when a handle is removed, a replaced file being left in the
+     * store until then.
+     * 
+     * @param database The handle database
+     * @return the number of removed files
+     */
+    public int collectBlobs(HandleDatabase database)
+    {
+        Set<String> referenced = new HashSet<String>();
+        for (Map.Entry<String, Handle> handle : database.entrySet())
+        {
+            String fileDigests = handle.getValue().getProperties().get("fileDigests");
+            Object parsedDigests = fileDigests == null ? null : JSONValue.parse(fileDigests);
+            if (parsedDigests instanceof Map)
+            {
+                for (Object digest : ((Map<?, ?>) parsedDigests).values())
+                {
+                    referenced.add(String.valueOf(digest));
+                }
+            }
+        }
+
+        return getBlobStore().collect(referenced);
+    }
+
+    /**
+     * Opens a file for writing. An existing file is replaced rather than written to, as it may be
+     * a link to a stored file which must not be modified.
+     * 
+     * @param file The file path
+     * @return the output stream to the file
+     */
+    private OutputStream getReplacingOutputStream(String file)
+    {
+        fileHandler.delete(file);
+        return fileHandler.getOutputStream(file);
+    }
+
+    /**
+     * Creates a new directory to receive uploaded files in, on the same file system as the
+     * workspace so that the files can be moved to the workspace without being copied.
+     * 
+     * @return the upload directory
+     */
+    public File createUploadDirectory()
+    {
+        return new File(fileHandler.append(getCargoHomeDirectory(), "uploads"),
+            UUID.randomUUID().toString());
+    }
+
+    /**
+     * Moves a received file to a file relative to the workspace directory.
+     * 
+     * @param relativeFile The relative filename
+     * @param uploadedFile The received file
+     * @return path to the saved file
+     */
+    public String moveFile(String relativeFile, File uploadedFile)
+    {
+        String file = fileHandler.append(getWorkspaceDirectory(), relativeFile);
+
+        move(uploadedFile, file);
 
         return file;
     }
 
+    /**
+     * Moves a received file to a file relative to the workspace directory of a container.
+     * 
+     * @param handleId The handle identifier of a container
+     * @param relativeFile The relative filename
+     * @param uploadedFile The received file
+     * @return path to the saved file
+     */
+    public String moveFile(String handleId, String relativeFile, File uploadedFile)
+    {
+        String file = fileHandler.append(getWorkspaceDirectory(handleId), relativeFile);
+
+        move(uploadedFile, file);
+
+        return file;
+    }
+
+    /**
+     * Moves a file, copying it if it cannot be renamed.
+     * 
+     * @param source The file to move
+     * @param target The target file path
+     */
+    private void move(File source, String target)
+    {
+        File targetFile = new File(target);
+        // The target may be a link to a stored file, which must not be modified
+        fileHandler.delete(target);
+        targetFile.getAbsoluteFile().getParentFile().mkdirs();
+        if (!source.renameTo(targetFile))
+        {
+            fileHandler.copyFile(source.getPath(), target, true);
+            source.delete();
+        }
+    }
+
     /**
      * Saves the input stream to a file, relative to the workspace directory of a container.
      * 
@@ -343,7 +609,7 @@ public class FileManager
 
         if (inputStream != null)
         {
-            fileHandler.copy(inputStream, fileHandler.getOutputStream(file));
+            fileHandler.copy(inputStream, getReplacingOutputStream(file));
         }
 
         return file;
@@ -367,7 +633,7 @@ public class FileManager
                 fileHandler.append(getWorkspaceDirectory(handleId), relativeDirectory),
                 relativeFile);
 
-        fileHandler.copy(inputStream, fileHandler.getOutputStream(file));
+        fileHandler.copy(inputStream, getReplacingOutputStream(file));
 
         return file;
     }
@@ -540,4 +806,66 @@ public class FileManager
         return fileHandler.append(getConfigurationDirectory(handleId), relativePath);
     }
 
+    /**
+     * Subscribes to a log file, so that it is streamed as it grows. All subscriptions to a log
+     * file share the same tailer.
+     * 
+     * @param logFilePath The log file
+     * @param offset The position in the log file to start at
+     * @return the subscription, to close with {@link #unsubscribeLog}
+     */
+    public synchronized LogTailer.Subscription subscribeLog(String logFilePath, long offset)
+    {
+        LogTailer logTailer = logTailers.get(logFilePath);
+        if (logTailer == null)
+        {
+            if (logTailerExecutor == null)
+            {
+                logTailerExecutor = new ScheduledThreadPoolExecutor(1);
+            }
+            logTailer = new LogTailer(new File(logFilePath));
+            logTailers.put(logFilePath, logTailer);
+            logTailerTasks.put(logFilePath, logTailerExecutor.scheduleWithFixedDelay(logTailer,
+                0, REFRESH_TIME, TimeUnit.MILLISECONDS));
+        }
+
+        return logTailer.subscribe(offset);
+    }
+
+    /**
+     * Unsubscribes from a log file, closing its tailer if there are no subscriptions left.
+     * 
+     * @param logFilePath The log file
+     * @param subscription The subscription
+     */
+    public synchronized void unsubscribeLog(String logFilePath,
+        LogTailer.Subscription subscription)
+    {
+        LogTailer logTailer = logTailers.get(logFilePath);
+        if (logTailer != null && !logTailer.unsubscribe(subscription))
+        {
+            logTailerTasks.remove(logFilePath).cancel(false);
+            logTailers.remove(logFilePath);
+            logTailer.close();
+        }
+    }
+
+    /**
+     * Closes all log tailers, ending all log streams.
+     */
+    public synchronized void closeLogTailers()
+    {
+        for (LogTailer logTailer : logTailers.values())
+        {
+            logTailer.close();
+        }
+        logTailers.clear();
+        logTailerTasks.clear();
+        if (logTailerExecutor != null)
+        {
+            logTailerExecutor.shutdownNow();
+            logTailerExecutor = null;
+        }
+    }
+
 }
@@ -0,0 +1,427 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus CARGO, copyright 2004-2011 Vincent Massol, 2012-2016 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.daemon.file;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.Map;
+
+import org.codehaus.cargo.daemon.Handle;
+import org.codehaus.cargo.daemon.HandleDatabase;
+import org.codehaus.cargo.daemon.properties.PropertyTable;
+import org.json.simple.JSONObject;
+import org.json.simple.JSONValue;
+
+/**
+ * Persists the handle database as a snapshot file and an append-only journal of the handles
+ * changed since that snapshot. Each change only appends the changed handle to the journal, which
+ * is synchronized to disk before returning. Once the journal gets too long, it is compacted into
+ * a new snapshot, written to a temporary file which then replaces the previous snapshot; so that
+ * a crash never leaves a partially written database behind.<br>
+ * <br>
+ * The snapshot and the journal both carry a generation number, incremented by each compaction. A
+ * journal is only replayed onto the snapshot of the same generation, so that a crash between the
+ * replacement of the snapshot and the emptying of the journal does not replay the older journal
+ * onto the newer snapshot.
+ */
+public class HandleJournal
+{
+    /**
+     * Number of journal records after which the journal is compacted into a new snapshot.
+     */
+    private static final int COMPACTION_THRESHOLD = 1000;
+
+    /**
+     * Prefix of the comment line giving the generation of the snapshot.
+     */
+    private static final String SNAPSHOT_GENERATION = "#generation=";
+
+    /**
+     * Name of the property of the first journal record giving the generation of the journal.
+     */
+    private static final String JOURNAL_GENERATION = "generation";
+
+    /**
+     * Snapshot file.
+     */
+    private File snapshot;
+
+    /**
+     * Journal file.
+     */
+    private File journal;
+
+    /**
+     * Stream appending to the journal file, opened on the first change.
+     */
+    private FileOutputStream journalStream;
+
+    /**
+     * Number of records in the journal file.
+     */
+    private int journalRecords;
+
+    /**
+     * Generation of the snapshot file.
+     */
+    private long generation;
+
+    /**
+     * Generation of the journal file, <code>-1</code> if it does not exist.
+     */
+    private long journalGeneration = -1;
+
+    /**
+     * @param snapshot Snapshot file, the journal being kept next to it.
+     */
+    public HandleJournal(File snapshot)
+    {
+        this.snapshot = snapshot;
+        this.journal = new File(snapshot.getPath() + ".journal");
+    }
+
+    /**
+     * Loads the handle database from the snapshot and replays the journal. A record only partly
+     * written by a crash is skipped, the records appended after it still being replayed.
+     * @return The handle database.
+     * @throws IOException If the files cannot be read.
+     */
+    public synchronized HandleDatabase load() throws IOException
+    {
+        HandleDatabase database = new HandleDatabase();
+        File temporary = new File(this.snapshot.getPath() + ".tmp");
+        if (!this.snapshot.isFile() && temporary.isFile())
+        {
+            // A crash happened while replacing the snapshot, the temporary file being complete
+            if (!temporary.renameTo(this.snapshot))
+            {
+                throw new IOException("Cannot rename [" + temporary + "] to [" + this.snapshot
+                    + "]");
+            }
+        }
+        this.generation = 0;
+        if (this.snapshot.isFile())
+        {
+            InputStream in = new FileInputStream(this.snapshot);
+            try
+            {
+                database.load(in);
+            }
+            finally
+            {
+                in.close();
+            }
+            this.generation = readSnapshotGeneration();
+        }
+
+        this.journalRecords = 0;
+        this.journalGeneration = -1;
+        boolean torn = false;
+        if (this.journal.isFile())
+        {
+            BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(this.journal), "UTF-8"));
+            try
+            {
+                // Journals written before generations were introduced start with a record
+                String line = reader.readLine();
+                this.journalGeneration = 0;
+                Long lineGeneration = line == null ? null : parseJournalGeneration(line);
+                if (lineGeneration != null)
+                {
+                    this.journalGeneration = lineGeneration.longValue();
+                    line = reader.readLine();
+                }
+                if (this.journalGeneration == this.generation)
+                {
+                    for (; line != null; line = reader.readLine())
+                    {
+                        if (replay(database, line))
+                        {
+                            this.journalRecords++;
+                        }
+                        else
+                        {
+                            torn = true;
+                        }
+                    }
+                }
+            }
+            finally
+            {
+                reader.close();
+            }
+        }
+        if (torn)
+        {
+            // An incomplete record may lack its line end, which would make the next appended
+            // record unreadable as well
+            compact(database);
+        }
+        return database;
+    }
+
+    /**
+     * Records a new or modified handle.
+     * @param database The handle database, compacted if the journal gets too long.
+     * @param handle The handle.
+     * @throws IOException If the journal cannot be written.
+     */
+    public synchronized void put(HandleDatabase database, Handle handle) throws IOException
+    {
+        JSONObject properties = new JSONObject();
+        properties.putAll(handle.getProperties());
+        JSONObject record = new JSONObject();
+        record.put("id", handle.getId());
+        record.put("properties", properties);
+        append(database, record);
+    }
+
+    /**
+     * Records the removal of a handle.
+     * @param database The handle database, compacted if the journal gets too long.
+     * @param handleId The handle id.
+     * @throws IOException If the journal cannot be written.
+     */
+    public synchronized void remove(HandleDatabase database, String handleId) throws IOException
+    {
+        JSONObject record = new JSONObject();
+        record.put("id", handleId);
+        append(database, record);
+    }
+
+    /**
+     * Writes a new snapshot of the handle database, of the next generation, and starts a new
+     * journal for that generation.
+     * @param database The handle database.
+     * @throws IOException If the snapshot cannot be written.
+     */
+    public synchronized void compact(HandleDatabase database) throws IOException
+    {
+        long nextGeneration = this.generation + 1;
+        this.snapshot.getAbsoluteFile().getParentFile().mkdirs();
+        File temporary = new File(this.snapshot.getPath() + ".tmp");
+        FileOutputStream out = new FileOutputStream(temporary);
+        try
+        {
+            out.write((SNAPSHOT_GENERATION + nextGeneration + "\n").getBytes("ISO-8859-1"));
+            database.store(out);
+            out.flush();
+            out.getFD().sync();
+        }
+        finally
+        {
+            out.close();
+        }
+        if (!temporary.renameTo(this.snapshot))
+        {
+            // Some platforms cannot rename over an existing file; if a crash happens between the
+            // deletion and the renaming, the next load will use the temporary file.
+            if (!this.snapshot.delete() || !temporary.renameTo(this.snapshot))
+            {
+                throw new IOException("Cannot replace [" + this.snapshot + "] with ["
+                    + temporary + "]");
+            }
+        }
+
+        // From now on, the previous journal is ignored even if it cannot be emptied
+        this.generation = nextGeneration;
+        close();
+        openJournal();
+    }
+
+    /**
+     * Closes the journal file.
+     * @throws IOException If the journal cannot be closed.
+     */
+    public synchronized void close() throws IOException
+    {
+        if (this.journalStream != null)
+        {
+            this.journalStream.close();
+            this.journalStream = null;
+        }
+    }
+
+    /**
+     * Appends a record to the journal, then compacts the journal if it has got too long.
+     * @param database The handle database.
+     * @param record Record to append.
+     * @throws IOException If the journal cannot be written.
+     */
+    private void append(HandleDatabase database, JSONObject record) throws IOException
+    {
+        if (this.journalStream == null)
+        {
+            openJournal();
+        }
+        write(record);
+        this.journalRecords++;
+
+        if (this.journalRecords >= COMPACTION_THRESHOLD)
+        {
+            compact(database);
+        }
+    }
+
+    /**
+     * Opens the journal file for appending. A journal of another generation than the snapshot is
+     * replaced with an empty journal of the generation of the snapshot.
+     * @throws IOException If the journal cannot be opened.
+     */
+    private void openJournal() throws IOException
+    {
+        this.journal.getAbsoluteFile().getParentFile().mkdirs();
+        if (this.journalGeneration == this.generation)
+        {
+            this.journalStream = new FileOutputStream(this.journal, true);
+            return;
+        }
+
+        this.journalStream = new FileOutputStream(this.journal);
+        this.journalRecords = 0;
+        JSONObject header = new JSONObject();
+        header.put(JOURNAL_GENERATION, Long.valueOf(this.generation));
+        try
+        {
+            write(header);
+        }
+        catch (IOException e)
+        {
+            // Records must not be appended to a journal without its generation
+            close();
+            throw e;
+        }
+        this.journalGeneration = this.generation;
+    }
+
+    /**
+     * Writes a record to the journal file and synchronizes it to disk.
+     * @param record Record to write.
+     * @throws IOException If the journal cannot be written.
+     */
+    private void write(JSONObject record) throws IOException
+    {
+        this.journalStream.write((record.toJSONString() + "\n").getBytes("UTF-8"));
+        this.journalStream.flush();
+        this.journalStream.getFD().sync();
+    }
+
+    /**
+     * Reads the generation of the snapshot file, from the comment on its first line.
+     * @return Generation of the snapshot, <code>0</code> for a snapshot written before
+     * generations were introduced.
+     * @throws IOException If the snapshot cannot be read.
+     */
+    private long readSnapshotGeneration() throws IOException
+    {
+        String line;
+        BufferedReader reader = new BufferedReader(
+            new InputStreamReader(new FileInputStream(this.snapshot), "ISO-8859-1"));
+        try
+        {
+            line = reader.readLine();
+        }
+        finally
+        {
+            reader.close();
+        }
+
+        if (line == null || !line.startsWith(SNAPSHOT_GENERATION))
+        {
+            return 0;
+        }
+        try
+        {
+            return Long.parseLong(line.substring(SNAPSHOT_GENERATION.length()).trim());
+        }
+        catch (NumberFormatException e)
+        {
+            throw new IOException("Invalid generation in snapshot [" + this.snapshot + "]: "
+                + line);
+        }
+    }
+
+    /**
+     * Parses the record giving the generation of the journal.
+     * @param line First line of the journal.
+     * @return Generation of the journal, <code>null</code> if the line is not a generation record.
+     */
+    private static Long parseJournalGeneration(String line)
+    {
+        Object parsed = JSONValue.parse(line);
+        if (parsed instanceof JSONObject)
+        {
+            Object value = ((Map<?, ?>) parsed).get(JOURNAL_GENERATION);
+            if (value instanceof Number && !((Map<?, ?>) parsed).containsKey("id"))
+            {
+                return Long.valueOf(((Number) value).longValue());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Replays a journal record.
+     * @param database The handle database.
+     * @param line Journal record.
+     * @return <code>false</code> if the record is incomplete.
+     */
+    private static boolean replay(HandleDatabase database, String line)
+    {
+        Object parsed = JSONValue.parse(line);
+        if (!(parsed instanceof JSONObject))
+        {
+            return false;
+        }
+
+        Map<?, ?> record = (Map<?, ?>) parsed;
+        if (!(record.get("id") instanceof String))
+        {
+            return false;
+        }
+        String handleId = (String) record.get("id");
+        Object properties = record.get("properties");
+        if (properties instanceof Map)
+        {
+            PropertyTable handleProperties = new PropertyTable();
+            for (Map.Entry<?, ?> property : ((Map<?, ?>) properties).entrySet())
+            {
+                handleProperties.put(String.valueOf(property.getKey()),
+                    String.valueOf(property.getValue()));
+            }
+
+            Handle handle = new Handle();
+            handle.setId(handleId);
+            handle.setProperties(handleProperties);
+            database.put(handleId, handle);
+        }
+        else
+        {
+            database.remove(handleId);
+        }
+        return true;
+    }
+}
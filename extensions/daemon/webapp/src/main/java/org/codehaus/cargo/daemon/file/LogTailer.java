@@ -0,0 +1,535 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus CARGO, copyright 2004-2011 Vincent Massol, 2012-2016 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.daemon.file;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Follows a log file for all the clients streaming it. The log file is opened once, polled for
+ * new data which is read once with positional reads, and the new data is handed to every
+ * subscription.<br>
+ * Each subscription has a bounded queue: a subscription whose client does not keep up stops
+ * receiving data from the tailer, and instead catches up by reading the log file itself at its own
+ * position until it reaches the end of the file. Slow clients hence neither hold the other ones
+ * back nor make the daemon buffer an unbounded amount of data.<br>
+ * A log file which has been replaced, for example by a log rotation, is then followed from its
+ * start. As Java 6 cannot tell which file a path refers to, a replacement is recognized by the
+ * size of the file at the path, which differs from the size of the opened file as soon as either
+ * of them is written to; the first bytes of both files are only compared when the file at the
+ * path has been modified while the opened file has not grown.
+ */
+public class LogTailer implements Runnable
+{
+    /**
+     * Maximum size of the data read at once.
+     */
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    /**
+     * Maximum number of chunks queued for a subscription.
+     */
+    private static final int QUEUE_SIZE = 16;
+
+    /**
+     * Size of the beginning of the log file which identifies it.
+     */
+    private static final int HEAD_SIZE = 1024;
+
+    /**
+     * Data of the log file.
+     */
+    public static final class Chunk
+    {
+        /**
+         * Position of the data in the log file.
+         */
+        private final long offset;
+
+        /**
+         * The data.
+         */
+        private final byte[] data;
+
+        /**
+         * @param offset Position of the data in the log file.
+         * @param data The data.
+         */
+        private Chunk(long offset, byte[] data)
+        {
+            this.offset = offset;
+            this.data = data;
+        }
+
+        /**
+         * @return Position of the data in the log file.
+         */
+        public long getOffset()
+        {
+            return offset;
+        }
+
+        /**
+         * @return The data.
+         */
+        public byte[] getData()
+        {
+            return data;
+        }
+    }
+
+    /**
+     * Subscription of a client to the log file.
+     */
+    public final class Subscription
+    {
+        /**
+         * Chunks waiting to be sent to the client.
+         */
+        private final BlockingQueue<Chunk> queue = new LinkedBlockingQueue<Chunk>(QUEUE_SIZE);
+
+        /**
+         * Position in the log file following the data handed to the client.
+         */
+        private long end;
+
+        /**
+         * Whether the client reads the log file itself instead of receiving data from the tailer.
+         */
+        private boolean catchingUp = true;
+
+        /**
+         * Whether the subscription has been closed.
+         */
+        private volatile boolean closed;
+
+        /**
+         * Number of replacements of the log file the position refers to.
+         */
+        private int replacements = LogTailer.this.replacements;
+
+        /**
+         * @param offset Position in the log file to start at.
+         */
+        private Subscription(long offset)
+        {
+            this.end = offset;
+        }
+
+        /**
+         * Gets the next data of the log file, waiting for it if the client is up to date.
+         * 
+         * @param timeout Maximum time to wait for, in milliseconds.
+         * @return the next data, {@code null} if there is none yet.
+         * @throws IOException If the log file cannot be read.
+         * @throws InterruptedException If interrupted while waiting.
+         */
+        public Chunk take(long timeout) throws IOException, InterruptedException
+        {
+            Chunk chunk = queue.poll();
+            if (chunk != null)
+            {
+                return chunk;
+            }
+
+            long offset;
+            synchronized (this)
+            {
+                if (!catchingUp)
+                {
+                    offset = -1;
+                }
+                else
+                {
+                    if (end > size() || replacements != LogTailer.this.replacements)
+                    {
+                        // The log file has been truncated or replaced, start over
+                        end = 0;
+                        replacements = LogTailer.this.replacements;
+                    }
+                    offset = end;
+                }
+            }
+            if (offset == -1)
+            {
+                return queue.poll(timeout, TimeUnit.MILLISECONDS);
+            }
+
+            byte[] data = read(offset);
+            synchronized (this)
+            {
+                if (data.length != 0)
+                {
+                    end = offset + data.length;
+                    return new Chunk(offset, data);
+                }
+
+                // The client is up to date, let the tailer hand it the next data
+                catchingUp = false;
+            }
+            return queue.poll(timeout, TimeUnit.MILLISECONDS);
+        }
+
+        /**
+         * Makes the client read the log file itself, for example once the log file has been
+         * truncated or could not be read by the tailer.
+         */
+        private synchronized void catchUp()
+        {
+            catchingUp = true;
+        }
+
+        /**
+         * Hands data to the client.
+         * 
+         * @param chunk Data read by the tailer.
+         */
+        private synchronized void offer(Chunk chunk)
+        {
+            if (catchingUp || chunk.getOffset() + chunk.getData().length <= end)
+            {
+                return;
+            }
+
+            if (chunk.getOffset() != end || !queue.offer(chunk))
+            {
+                // Some data has been missed or the client is too slow
+                catchingUp = true;
+                return;
+            }
+            end = chunk.getOffset() + chunk.getData().length;
+        }
+
+        /**
+         * @return Whether the subscription has been closed.
+         */
+        public boolean isClosed()
+        {
+            return closed;
+        }
+    }
+
+    /**
+     * The log file.
+     */
+    private final File file;
+
+    /**
+     * The subscriptions.
+     */
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<Subscription>();
+
+    /**
+     * The opened log file.
+     */
+    private RandomAccessFile randomAccessFile;
+
+    /**
+     * Channel of the opened log file.
+     */
+    private FileChannel channel;
+
+    /**
+     * Beginning of the opened log file, which identifies it.
+     */
+    private byte[] head;
+
+    /**
+     * Size of the opened log file when last checked for a replacement.
+     */
+    private long checkedSize;
+
+    /**
+     * Modification time of the file at the path of the log file when last checked for a
+     * replacement.
+     */
+    private long checkedModified;
+
+    /**
+     * Number of times the log file has been found deleted or replaced.
+     */
+    private volatile int replacements;
+
+    /**
+     * Position in the log file up to which data has been handed to the subscriptions.
+     */
+    private long position = -1;
+
+    /**
+     * Number of replacements of the log file the position refers to.
+     */
+    private int positionReplacements;
+
+    /**
+     * @param file The log file.
+     */
+    public LogTailer(File file)
+    {
+        this.file = file;
+    }
+
+    /**
+     * Subscribes to the log file.
+     * 
+     * @param offset Position in the log file to start at.
+     * @return the subscription.
+     */
+    public Subscription subscribe(long offset)
+    {
+        Subscription subscription = new Subscription(offset);
+        subscriptions.add(subscription);
+        return subscription;
+    }
+
+    /**
+     * Unsubscribes from the log file.
+     * 
+     * @param subscription The subscription.
+     * @return whether there are subscriptions left.
+     */
+    public boolean unsubscribe(Subscription subscription)
+    {
+        subscription.closed = true;
+        subscriptions.remove(subscription);
+        return !subscriptions.isEmpty();
+    }
+
+    /**
+     * Reads the data appended to the log file and hands it to the subscriptions.
+     */
+    @Override
+    public void run()
+    {
+        try
+        {
+            long size = size();
+            if (position == -1 || size < position || positionReplacements != replacements)
+            {
+                // First poll, or the log file has been truncated or replaced
+                positionReplacements = replacements;
+                if (position != -1)
+                {
+                    for (Subscription subscription : subscriptions)
+                    {
+                        subscription.catchUp();
+                    }
+                }
+                position = size;
+                return;
+            }
+
+            while (position < size)
+            {
+                byte[] data = read(position);
+                if (data.length == 0)
+                {
+                    break;
+                }
+                Chunk chunk = new Chunk(position, data);
+                for (Subscription subscription : subscriptions)
+                {
+                    subscription.offer(chunk);
+                }
+                position += data.length;
+            }
+        }
+        catch (IOException e)
+        {
+            // Let the subscriptions read the log file themselves, and reopen it on the next poll
+            synchronized (this)
+            {
+                closeChannel();
+            }
+            position = -1;
+            for (Subscription subscription : subscriptions)
+            {
+                subscription.catchUp();
+            }
+        }
+    }
+
+    /**
+     * Closes the log file and all subscriptions.
+     */
+    public synchronized void close()
+    {
+        for (Subscription subscription : subscriptions)
+        {
+            subscription.closed = true;
+        }
+        subscriptions.clear();
+        closeChannel();
+    }
+
+    /**
+     * @return The size of the log file, reopening it if it has been replaced.
+     * @throws IOException If the log file cannot be opened.
+     */
+    private synchronized long size() throws IOException
+    {
+        if (channel != null && isReplaced())
+        {
+            closeChannel();
+            replacements++;
+        }
+        if (channel == null)
+        {
+            if (!file.isFile())
+            {
+                return 0;
+            }
+            checkedModified = file.lastModified();
+            randomAccessFile = new RandomAccessFile(file, "r");
+            channel = randomAccessFile.getChannel();
+            checkedSize = channel.size();
+            head = new byte[0];
+        }
+        return channel.size();
+    }
+
+    /**
+     * Tells whether the log file has been deleted or replaced by a new one since it got opened.
+     * The opened file only grows, so a file at the path whose size is not between the sizes of
+     * the opened file before and after getting it is another file. Otherwise, the beginning of
+     * the files is only compared if the file at the path has been modified while the opened file
+     * kept its size.
+     * 
+     * @return {@code true} if the file at the path of the log file is not the opened file.
+     * @throws IOException If the log file cannot be read.
+     */
+    private boolean isReplaced() throws IOException
+    {
+        long size = channel.size();
+        long length = file.length();
+        long modified = file.lastModified();
+        if (length < size || length > channel.size())
+        {
+            return true;
+        }
+
+        boolean suspect = modified != checkedModified && size == checkedSize;
+        checkedSize = size;
+        checkedModified = modified;
+        return suspect && !hasSameHead();
+    }
+
+    /**
+     * Compares the beginning of the opened file with the beginning of the file at its path.
+     * 
+     * @return {@code true} if the file at the path exists and starts like the opened file.
+     * @throws IOException If the log file cannot be read.
+     */
+    private boolean hasSameHead() throws IOException
+    {
+        if (head.length < HEAD_SIZE && head.length < channel.size())
+        {
+            ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(HEAD_SIZE, channel.size()));
+            while (buffer.hasRemaining() && channel.read(buffer, buffer.position()) > 0)
+            {
+                // Read until the buffer is full
+            }
+            head = Arrays.copyOf(buffer.array(), buffer.position());
+        }
+
+        RandomAccessFile current;
+        try
+        {
+            current = new RandomAccessFile(file, "r");
+        }
+        catch (FileNotFoundException e)
+        {
+            return false;
+        }
+        try
+        {
+            if (current.length() < head.length)
+            {
+                return false;
+            }
+            byte[] currentHead = new byte[head.length];
+            current.readFully(currentHead);
+            return Arrays.equals(head, currentHead);
+        }
+        finally
+        {
+            current.close();
+        }
+    }
+
+    /**
+     * Reads the log file.
+     * 
+     * @param offset Position to read at.
+     * @return the data read, at most {@link #CHUNK_SIZE} bytes.
+     * @throws IOException If the log file cannot be read.
+     */
+    private synchronized byte[] read(long offset) throws IOException
+    {
+        if (channel == null)
+        {
+            size();
+        }
+        if (channel == null || channel.size() <= offset)
+        {
+            return new byte[0];
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(CHUNK_SIZE);
+        int read = channel.read(buffer, offset);
+        if (read <= 0)
+        {
+            return new byte[0];
+        }
+        byte[] data = new byte[read];
+        buffer.flip();
+        buffer.get(data);
+        return data;
+    }
+
+    /**
+     * Closes the opened log file.
+     */
+    private void closeChannel()
+    {
+        if (randomAccessFile != null)
+        {
+            try
+            {
+                randomAccessFile.close();
+            }
+            catch (IOException ignored)
+            {
+                // Ignored
+            }
+        }
+        randomAccessFile = null;
+        channel = null;
+    }
+}
@@ -34,14 +34,14 @@ import com.sun.jna.platform.win32.Kernel32;
 import com.sun.jna.platform.win32.WinNT.HANDLE;
 
 import org.apache.tools.ant.types.Commandline;
-import org.codehaus.cargo.container.spi.jvm.JvmLauncher;
 import org.codehaus.cargo.container.spi.jvm.JvmLauncherException;
+import org.codehaus.cargo.container.spi.jvm.WaitableJvmLauncher;
 
 /**
  * A JVM launcher that launches a new Process, that can be forcibly killed if needed.
  *
  */
-class DaemonJvmLauncher implements JvmLauncher
+class DaemonJvmLauncher implements WaitableJvmLauncher
 {
     /**
      * The working directory.
@@ -547,6 +547,37 @@ class DaemonJvmLauncher implements JvmLauncher
             throw new JvmLauncherException("Failed waiting for process to end", e);
         }
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean waitFor(long millis) throws InterruptedException
+    {
+        Process launched = this.process;
+        if (launched == null)
+        {
+            return false;
+        }
+
+        long deadline = System.currentTimeMillis() + millis;
+        while (true)
+        {
+            try
+            {
+                launched.exitValue();
+                return true;
+            }
+            catch (IllegalThreadStateException stillRunning)
+            {
+                if (System.currentTimeMillis() >= deadline)
+                {
+                    return false;
+                }
+                Thread.sleep(10);
+            }
+        }
+    }
  
     /**
      * Forcefully kill the launched process using platform specific methods.
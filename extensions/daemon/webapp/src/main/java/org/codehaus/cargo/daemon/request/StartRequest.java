@@ -19,8 +19,16 @@
  */
 package org.codehaus.cargo.daemon.request;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -29,12 +37,15 @@ import java.util.Map;
 
 import javax.servlet.http.HttpServletRequest;
 
-import org.apache.commons.fileupload.FileItem;
+import org.apache.commons.fileupload.FileItemIterator;
+import org.apache.commons.fileupload.FileItemStream;
 import org.apache.commons.fileupload.FileUploadException;
-import org.apache.commons.fileupload.disk.DiskFileItemFactory;
+import org.apache.commons.fileupload.ParameterParser;
 import org.apache.commons.fileupload.servlet.ServletFileUpload;
+import org.apache.commons.fileupload.util.Streams;
 import org.codehaus.cargo.daemon.CargoDaemonException;
 import org.codehaus.cargo.daemon.properties.PropertyTable;
+import org.codehaus.cargo.util.DigestUtils;
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
 import org.json.simple.JSONValue;
@@ -44,15 +55,40 @@ import org.json.simple.JSONValue;
  */
 public class StartRequest
 {
+    /**
+     * Size of the buffer used when receiving files.
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Charset of the form fields which do not declare any, as for HTTP.
+     */
+    private static final String DEFAULT_CHARSET = "ISO-8859-1";
+
     /**
      * The parameters.
      */
     private PropertyTable parameters;
 
     /**
-     * The files.
+     * The received files.
+     */
+    private Map<String, File> files = new HashMap<String, File>();
+
+    /**
+     * The SHA-256 digests of the received files.
+     */
+    private Map<String, String> fileDigests = new HashMap<String, String>();
+
+    /**
+     * The directory the files are received in.
+     */
+    private File uploadDirectory;
+
+    /**
+     * Number of files received so far, used to name them in the upload directory.
      */
-    private Map<String, FileItem> files;
+    private int receivedFiles = 0;
 
     /**
      * Tells if this request needs to be saved.
@@ -60,51 +96,134 @@ public class StartRequest
     private boolean save = false;
 
     /**
-     * Parses the servlet request.
+     * Parses the servlet request. The request is streamed: each file is written once, to the
+     * upload directory, and hashed while it is being received, so that it can then be moved to
+     * its final location without being copied nor read again.
      * 
      * @param request The servlet request.
+     * @param uploadDirectory The directory to receive files in, which should be on the same file
+     * system as the workspace. It is deleted by {@link #cleanup()}.
      * @return the StartRequest
      */
-    @SuppressWarnings("unchecked")
-    public StartRequest parse(HttpServletRequest request)
+    public StartRequest parse(HttpServletRequest request, File uploadDirectory)
     {
-        ServletFileUpload servletFileUpload = new ServletFileUpload(new DiskFileItemFactory());
-
         parameters = new PropertyTable();
-        files = new HashMap<String, FileItem>();
+        this.uploadDirectory = uploadDirectory;
 
         if (ServletFileUpload.isMultipartContent(request))
         {
-            List<FileItem> fileItems;
             try
             {
-                fileItems = servletFileUpload.parseRequest(request);
-
-                for (FileItem item : fileItems)
+                FileItemIterator iterator = new ServletFileUpload().getItemIterator(request);
+                while (iterator.hasNext())
                 {
+                    FileItemStream item = iterator.next();
                     String fieldName = item.getFieldName();
                     if (item.isFormField())
                     {
-                        if (item.getString() != null && !item.getString().isEmpty())
+                        String value = readFormField(item);
+                        if (!value.isEmpty())
                         {
-                            parameters.put(fieldName, item.getString());
+                            parameters.put(fieldName, value);
                         }
                     }
                     else
                     {
-                        files.put(fieldName, item);
+                        receiveFile(fieldName, item.openStream());
                     }
                 }
             }
             catch (FileUploadException e)
             {
+                cleanup();
+                throw new CargoDaemonException(e);
+            }
+            catch (IOException e)
+            {
+                cleanup();
                 throw new CargoDaemonException(e);
             }
+            catch (RuntimeException e)
+            {
+                cleanup();
+                throw e;
+            }
         }
 
         return this;
     }
 
+    /**
+     * Reads the value of a form field, in the charset declared by its content type.
+     * 
+     * @param item The form field.
+     * @return the value of the form field
+     * @throws IOException If the form field cannot be read.
+     */
+    private static String readFormField(FileItemStream item) throws IOException
+    {
+        ByteArrayOutputStream value = new ByteArrayOutputStream();
+        Streams.copy(item.openStream(), value, true);
+
+        ParameterParser parser = new ParameterParser();
+        parser.setLowerCaseNames(true);
+        Map<?, ?> contentTypeParameters = parser.parse(item.getContentType(), ';');
+        String charset = (String) contentTypeParameters.get("charset");
+        if (charset == null)
+        {
+            charset = DEFAULT_CHARSET;
+        }
+        try
+        {
+            return value.toString(charset);
+        }
+        catch (UnsupportedEncodingException e)
+        {
+            return value.toString();
+        }
+    }
+
+    /**
+     * Receives a file into the upload directory, computing its SHA-256 digest on the way. The
+     * file is registered before being written, so that {@link #cleanup()} deletes it even if it
+     * is only partially received.
+     * 
+     * @param fieldName The field name of the file.
+     * @param inputStream The file contents, closed once read.
+     * @throws IOException If the file cannot be received.
+     */
+    private void receiveFile(String fieldName, InputStream inputStream) throws IOException
+    {
+        uploadDirectory.mkdirs();
+        // The field name comes from the client, do not use it as a file name
+        File file = new File(uploadDirectory, String.valueOf(receivedFiles++));
+        File previousFile = files.put(fieldName, file);
+        if (previousFile != null)
+        {
+            // The same field has been sent again, the last file wins
+            previousFile.delete();
+            fileDigests.remove(fieldName);
+        }
+        MessageDigest digest = DigestUtils.newSha256();
+        OutputStream out = new DigestOutputStream(new FileOutputStream(file), digest);
+        try
+        {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = inputStream.read(buffer)) != -1)
+            {
+                out.write(buffer, 0, read);
+            }
+        }
+        finally
+        {
+            inputStream.close();
+            out.close();
+        }
+
+        fileDigests.put(fieldName, DigestUtils.toHex(digest.digest()));
+    }
+
     /**
      * Gets a parameters from the request.
      * 
@@ -253,28 +372,15 @@ public class StartRequest
      */
     public InputStream getFile(String name, boolean required)
     {
-        try
+        File file = getUploadedFile(name, required);
+        if (file == null)
         {
-            InputStream inputStream = null;
-
-            if (files != null)
-            {
-                FileItem item = files.get(name);
-                if (item != null)
-                {
-                    inputStream = item.getInputStream();
-                }
-            }
-
-            if (inputStream == null)
-            {
-                if (required)
-                {
-                    throw new CargoDaemonException("Parameter " + name + " is required.");
-                }
-            }
+            return null;
+        }
 
-            return inputStream;
+        try
+        {
+            return new FileInputStream(file);
         }
         catch (IOException e)
         {
@@ -282,6 +388,37 @@ public class StartRequest
         }
     }
 
+    /**
+     * Gets the received file with key name {@code name}. The file can be moved elsewhere, as it
+     * would otherwise be deleted by {@link #cleanup()}.
+     * 
+     * @param name The key name.
+     * @param required If required {@code true}, otherwise {@code false}
+     * @return the received file
+     */
+    public File getUploadedFile(String name, boolean required)
+    {
+        File file = files.get(name);
+
+        if (file == null && required)
+        {
+            throw new CargoDaemonException("Parameter " + name + " is required.");
+        }
+
+        return file;
+    }
+
+    /**
+     * Gets the SHA-256 digest of the received file with key name {@code name}.
+     * 
+     * @param name The key name.
+     * @return the digest of the file, {@code null} if no such file has been received
+     */
+    public String getUploadedFileDigest(String name)
+    {
+        return fileDigests.get(name);
+    }
+
     /**
      * Cleans up the temporary data associated with this request.
      */
@@ -289,12 +426,17 @@ public class StartRequest
     {
         try
         {
-            for (FileItem item : files.values())
+            for (File file : files.values())
+            {
+                file.delete();
+            }
+            if (uploadDirectory != null)
             {
-                item.delete();
+                uploadDirectory.delete();
             }
 
             files.clear();
+            fileDigests.clear();
             parameters.clear();
         }
         catch (Throwable t)
@@ -0,0 +1,241 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus CARGO, copyright 2004-2011 Vincent Massol, 2012-2016 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.daemon;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.codehaus.cargo.daemon.properties.PropertyTable;
+
+/**
+ * Unit tests for {@link AutostartScheduler}.
+ */
+public class AutostartSchedulerTest extends TestCase
+{
+    /**
+     * Maximum time to wait for the scheduled handles to be started, in milliseconds.
+     */
+    private static final long TIMEOUT = 10000;
+
+    /**
+     * Starter recording the handles started and skipped.
+     */
+    private static final class RecordingStarter implements AutostartScheduler.Starter
+    {
+        /**
+         * Identifiers of the handles which cannot be started.
+         */
+        private final Set<String> failing = Collections.synchronizedSet(new HashSet<String>());
+
+        /**
+         * Events, in order: the identifier of each handle started or failed, and
+         * <code>skip:</code> followed by the identifier of each handle skipped.
+         */
+        private final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean start(Handle handle)
+        {
+            this.events.add(handle.getId());
+            return !this.failing.contains(handle.getId());
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void skip(Handle handle, String dependency)
+        {
+            this.events.add("skip:" + handle.getId());
+        }
+    }
+
+    /**
+     * Starter of the scheduler under test.
+     */
+    private RecordingStarter starter;
+
+    /**
+     * Scheduler under test, with a single worker thread so that handles start one at a time.
+     */
+    private AutostartScheduler scheduler;
+
+    /**
+     * Creates the scheduler. {@inheritDoc}
+     * @throws Exception If anything goes wrong.
+     */
+    @Override
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        this.starter = new RecordingStarter();
+        this.scheduler = new AutostartScheduler(1, this.starter);
+    }
+
+    /**
+     * Stops the worker thread of the scheduler. {@inheritDoc}
+     * @throws Exception If anything goes wrong.
+     */
+    @Override
+    protected void tearDown() throws Exception
+    {
+        this.scheduler.shutdown();
+        super.tearDown();
+    }
+
+    /**
+     * Test that handles without dependencies are started by decreasing priority.
+     * @throws Exception If anything goes wrong.
+     */
+    public void testStartByPriority() throws Exception
+    {
+        List<Handle> handles = Arrays.asList(createHandle("low", -1), createHandle("default", 0),
+            createHandle("high", 10));
+        this.scheduler.schedule(handles);
+        awaitScheduled(handles);
+
+        assertEquals(Arrays.asList("high", "default", "low"), this.starter.events);
+    }
+
+    /**
+     * Test that a handle is only started once the handles it depends on have been started, even
+     * if it has a higher priority.
+     * @throws Exception If anything goes wrong.
+     */
+    public void testStartDependenciesFirst() throws Exception
+    {
+        List<Handle> handles = Arrays.asList(createHandle("web", 10, "db", "cache"),
+            createHandle("db", 0), createHandle("cache", 5, "db"), createHandle("other", 1));
+        this.scheduler.schedule(handles);
+        awaitScheduled(handles);
+
+        List<String> events = this.starter.events;
+        assertEquals(4, events.size());
+        assertTrue(events.indexOf("db") < events.indexOf("cache"));
+        assertTrue(events.indexOf("cache") < events.indexOf("web"));
+    }
+
+    /**
+     * Test that the handles depending, directly or not, on a handle that could not be started are
+     * skipped, while the other handles are still started.
+     * @throws Exception If anything goes wrong.
+     */
+    public void testSkipDependentsOfFailedHandle() throws Exception
+    {
+        this.starter.failing.add("db");
+        List<Handle> handles = Arrays.asList(createHandle("db", 0),
+            createHandle("cache", 0, "db"), createHandle("web", 0, "cache"),
+            createHandle("other", 0));
+        this.scheduler.schedule(handles);
+        awaitScheduled(handles);
+
+        List<String> events = this.starter.events;
+        assertEquals(new HashSet<String>(Arrays.asList("db", "other", "skip:cache", "skip:web")),
+            new HashSet<String>(events));
+        assertTrue(events.indexOf("skip:cache") < events.indexOf("skip:web"));
+    }
+
+    /**
+     * Test that handles with circular dependencies are all started anyway, by decreasing
+     * priority.
+     * @throws Exception If anything goes wrong.
+     */
+    public void testStartCircularDependencies() throws Exception
+    {
+        List<Handle> handles = Arrays.asList(createHandle("a", 0, "b"),
+            createHandle("b", 5, "a"));
+        this.scheduler.schedule(handles);
+        awaitScheduled(handles);
+
+        assertEquals(Arrays.asList("b", "a"), this.starter.events);
+    }
+
+    /**
+     * Test that a handle which could not be started is given another chance when scheduled
+     * again, and that the handles depending on it then wait for it instead of being skipped.
+     * @throws Exception If anything goes wrong.
+     */
+    public void testRequeueFailedHandle() throws Exception
+    {
+        this.starter.failing.add("db");
+        List<Handle> handles = Arrays.asList(createHandle("db", 0),
+            createHandle("web", 0, "db"));
+        this.scheduler.schedule(handles);
+        awaitScheduled(handles);
+        assertEquals(Arrays.asList("db", "skip:web"), this.starter.events);
+
+        this.starter.failing.clear();
+        this.starter.events.clear();
+        this.scheduler.schedule(handles);
+        awaitScheduled(handles);
+        assertEquals(Arrays.asList("db", "web"), this.starter.events);
+    }
+
+    /**
+     * Creates a handle.
+     * @param id Handle id.
+     * @param priority Autostart priority.
+     * @param dependencies Identifiers of the handles to start before this one.
+     * @return The handle.
+     */
+    private static Handle createHandle(String id, int priority, String... dependencies)
+    {
+        PropertyTable properties = new PropertyTable();
+        properties.put("autostartPriority", String.valueOf(priority));
+        StringBuilder value = new StringBuilder();
+        for (String dependency : dependencies)
+        {
+            value.append(dependency).append(',');
+        }
+        properties.put("autostartDependencies", value.toString());
+        Handle handle = new Handle();
+        handle.setId(id);
+        handle.setProperties(properties);
+        return handle;
+    }
+
+    /**
+     * Waits until none of the handles is queued or starting anymore.
+     * @param handles Scheduled handles.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    private void awaitScheduled(List<Handle> handles) throws InterruptedException
+    {
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        for (Handle handle : handles)
+        {
+            while (this.scheduler.getStatus(handle.getId()) != null)
+            {
+                assertTrue("Handle " + handle.getId() + " has not been started",
+                    System.currentTimeMillis() < deadline);
+                Thread.sleep(10);
+            }
+        }
+    }
+}
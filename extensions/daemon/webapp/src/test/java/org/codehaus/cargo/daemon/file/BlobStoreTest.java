@@ -0,0 +1,138 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus CARGO, copyright 2004-2011 Vincent Massol, 2012-2016 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.daemon.file;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import org.codehaus.cargo.util.AbstractTemporaryDirectoryTest;
+
+/**
+ * Unit tests for {@link BlobStore}.
+ */
+public class BlobStoreTest extends AbstractTemporaryDirectoryTest
+{
+    /**
+     * A SHA-256 digest.
+     */
+    private static final String DIGEST1 =
+        "0000000000000000000000000000000000000000000000000000000000000001";
+
+    /**
+     * Another SHA-256 digest.
+     */
+    private static final String DIGEST2 =
+        "0000000000000000000000000000000000000000000000000000000000000002";
+
+    /**
+     * Directory of the store under test.
+     */
+    private File storeDir;
+
+    /**
+     * Chooses the directory of the store. {@inheritDoc}
+     * @throws Exception If anything goes wrong.
+     */
+    @Override
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        this.storeDir = getTemporaryFile("blobs");
+    }
+
+    /**
+     * Test that only the stored files which are not referenced are removed.
+     * @throws Exception If anything goes wrong.
+     */
+    public void testCollectUnreferencedFiles() throws Exception
+    {
+        BlobStore store = new BlobStore(this.storeDir, getFileHandler(), 0);
+        store.put(DIGEST1, createFile("file1", "content 1"), DIGEST1);
+        store.put(DIGEST2, createFile("file2", "content 2"), DIGEST2);
+        String target = getTemporaryFile("workspace/file2").getPath();
+        store.link(DIGEST2, target);
+
+        assertEquals(1, store.collect(new HashSet<String>(Arrays.asList(DIGEST1))));
+        assertEquals(Arrays.asList(DIGEST2), store.getMissing(Arrays.asList(DIGEST1, DIGEST2)));
+        assertEquals("content 2", getFileHandler().readTextFile(target, "UTF-8"));
+
+        assertEquals(1, store.collect(Collections.<String>emptySet()));
+        assertFalse(new File(this.storeDir, DIGEST1.substring(0, 2)).exists());
+    }
+
+    /**
+     * Test that the files announced or uploaded during the grace period are not removed.
+     * @throws Exception If anything goes wrong.
+     */
+    public void testKeepFilesDuringGracePeriod() throws Exception
+    {
+        BlobStore store = new BlobStore(this.storeDir, getFileHandler());
+        store.put(DIGEST1, createFile("file1", "content 1"), DIGEST1);
+
+        assertEquals(0, store.collect(Collections.<String>emptySet()));
+        assertTrue(store.getMissing(Arrays.asList(DIGEST1)).isEmpty());
+    }
+
+    /**
+     * Test that replacing a file added to a workspace leaves the stored file unchanged.
+     * @throws Exception If anything goes wrong.
+     */
+    public void testReplaceLinkedFile() throws Exception
+    {
+        BlobStore store = new BlobStore(this.storeDir, getFileHandler());
+        store.put(DIGEST1, createFile("file1", "content 1"), DIGEST1);
+        store.put(DIGEST2, createFile("file2", "content 2"), DIGEST2);
+        String target = getTemporaryFile("workspace/file").getPath();
+        store.link(DIGEST1, target);
+        store.link(DIGEST2, target);
+
+        assertEquals("content 2", getFileHandler().readTextFile(target, "UTF-8"));
+        String stored = new File(new File(this.storeDir, DIGEST1.substring(0, 2)), DIGEST1)
+            .getPath();
+        assertEquals("content 1", getFileHandler().readTextFile(stored, "UTF-8"));
+    }
+
+    /**
+     * Creates a file in the working directory.
+     * @param name File name.
+     * @param content File content.
+     * @return The file.
+     * @throws IOException If the file cannot be written.
+     */
+    private File createFile(String name, String content) throws IOException
+    {
+        File file = getTemporaryFile(name);
+        file.getParentFile().mkdirs();
+        FileOutputStream out = new FileOutputStream(file);
+        try
+        {
+            out.write(content.getBytes("UTF-8"));
+        }
+        finally
+        {
+            out.close();
+        }
+        return file;
+    }
+}
@@ -0,0 +1,278 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus CARGO, copyright 2004-2011 Vincent Massol, 2012-2016 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.daemon.file;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
+
+import org.codehaus.cargo.daemon.Handle;
+import org.codehaus.cargo.daemon.HandleDatabase;
+import org.codehaus.cargo.daemon.properties.PropertyTable;
+import org.codehaus.cargo.daemon.request.StartRequest;
+import org.codehaus.cargo.util.AbstractTemporaryDirectoryTest;
+import org.codehaus.cargo.util.DigestUtils;
+
+/**
+ * Unit tests for the files of start requests saved by {@link FileManager}.
+ */
+public class FileManagerTest extends AbstractTemporaryDirectoryTest
+{
+    /**
+     * Boundary of the multipart start requests.
+     */
+    private static final String BOUNDARY = "FileManagerTestBoundary";
+
+    /**
+     * Name of the first deployable in the start requests.
+     */
+    private static final String DEPLOYABLE0 = "deployableFileData_0";
+
+    /**
+     * Name of the second deployable in the start requests.
+     */
+    private static final String DEPLOYABLE1 = "deployableFileData_1";
+
+    /**
+     * Content of the deployables.
+     */
+    private static final String CONTENT = "deployable content";
+
+    /**
+     * Value of the {@code cargo.home} system property before the test.
+     */
+    private String cargoHome;
+
+    /**
+     * File manager under test.
+     */
+    private FileManager fileManager;
+
+    /**
+     * Uses the working directory as daemon home. {@inheritDoc}
+     * @throws Exception If anything goes wrong.
+     */
+    @Override
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        this.cargoHome = System.getProperty("cargo.home");
+        System.setProperty("cargo.home", getTemporaryFile("home").getAbsolutePath());
+        this.fileManager = new FileManager();
+    }
+
+    /**
+     * Restores the daemon home. {@inheritDoc}
+     * @throws Exception If anything goes wrong.
+     */
+    @Override
+    protected void tearDown() throws Exception
+    {
+        if (this.cargoHome == null)
+        {
+            System.clearProperty("cargo.home");
+        }
+        else
+        {
+            System.setProperty("cargo.home", this.cargoHome);
+        }
+        super.tearDown();
+    }
+
+    /**
+     * Test that a file announced twice in a start request is uploaded once and added twice to
+     * the workspace from the store.
+     * @throws Exception If anything goes wrong.
+     */
+    public void testSaveDuplicateFileUploadedOnce() throws Exception
+    {
+        String digest = DigestUtils.sha256Hex(new ByteArrayInputStream(CONTENT.getBytes("UTF-8")));
+        Map<String, String> files = new LinkedHashMap<String, String>();
+        files.put(DEPLOYABLE0, CONTENT);
+        StartRequest request = createStartRequest(
+            "{\"" + DEPLOYABLE0 + "\":\"" + digest + "\",\"" + DEPLOYABLE1 + "\":\"" + digest
+                + "\"}", files);
+        try
+        {
+            PropertyTable fileDigests = request.getProperties("fileDigests", false);
+            this.fileManager.saveBlobs(fileDigests, request);
+            String file0 = this.fileManager.saveWorkspaceFile("handle", "app0.war", DEPLOYABLE0,
+                fileDigests, request, false);
+            String file1 = this.fileManager.saveWorkspaceFile("handle", "app1.war", DEPLOYABLE1,
+                fileDigests, request, false);
+
+            assertEquals(CONTENT, getFileHandler().readTextFile(file0, "UTF-8"));
+            assertEquals(CONTENT, getFileHandler().readTextFile(file1, "UTF-8"));
+            assertTrue(this.fileManager.getMissingBlobs(Arrays.asList(digest)).isEmpty());
+        }
+        finally
+        {
+            request.cleanup();
+        }
+    }
+
+    /**
+     * Test that the files of a saved handle are found again once the daemon restarts, both when
+     * the handle is restarted with its saved properties and when it is started again with files
+     * the client does not upload as the store already has them.
+     * @throws Exception If anything goes wrong.
+     */
+    public void testRestartSavedHandleFromStore() throws Exception
+    {
+        String digest = DigestUtils.sha256Hex(new ByteArrayInputStream(CONTENT.getBytes("UTF-8")));
+        String fileDigestsJSON = "{\"" + DEPLOYABLE0 + "\":\"" + digest + "\"}";
+        Map<String, String> files = new LinkedHashMap<String, String>();
+        files.put(DEPLOYABLE0, CONTENT);
+        StartRequest request = createStartRequest(fileDigestsJSON, files);
+        try
+        {
+            PropertyTable fileDigests = request.getProperties("fileDigests", false);
+            this.fileManager.saveBlobs(fileDigests, request);
+            this.fileManager.saveWorkspaceFile("handle", "app.war", DEPLOYABLE0, fileDigests,
+                request, false);
+
+            Handle handle = new Handle();
+            handle.setId("handle");
+            handle.addProperties(request.getParameters());
+            this.fileManager.saveHandle(new HandleDatabase(), handle);
+        }
+        finally
+        {
+            request.cleanup();
+        }
+
+        FileManager restarted = new FileManager();
+        HandleDatabase handles = restarted.loadHandleDatabase();
+        restarted.collectBlobs(handles);
+        assertTrue(restarted.getMissingBlobs(Arrays.asList(digest)).isEmpty());
+
+        StartRequest saved = new StartRequest();
+        saved.setParameters(handles.get("handle").getProperties());
+        String file = restarted.saveWorkspaceFile("handle", "app.war", DEPLOYABLE0,
+            saved.getProperties("fileDigests", false), saved, false);
+        assertEquals(CONTENT, getFileHandler().readTextFile(file, "UTF-8"));
+
+        StartRequest replaced =
+            createStartRequest(fileDigestsJSON, new LinkedHashMap<String, String>());
+        try
+        {
+            PropertyTable fileDigests = replaced.getProperties("fileDigests", false);
+            restarted.saveBlobs(fileDigests, replaced);
+            getFileHandler().delete(file);
+            file = restarted.saveWorkspaceFile("handle", "app.war", DEPLOYABLE0, fileDigests,
+                replaced, false);
+            assertEquals(CONTENT, getFileHandler().readTextFile(file, "UTF-8"));
+        }
+        finally
+        {
+            replaced.cleanup();
+        }
+    }
+
+    /**
+     * Creates a start request to save, as sent by the daemon client.
+     * @param fileDigestsJSON The SHA-256 digests of the announced files.
+     * @param files The uploaded files, with their content.
+     * @return The parsed start request.
+     * @throws IOException If the request cannot be written.
+     */
+    private StartRequest createStartRequest(String fileDigestsJSON, Map<String, String> files)
+        throws IOException
+    {
+        StringBuilder body = new StringBuilder();
+        body.append("--" + BOUNDARY + "\r\n");
+        body.append("Content-Disposition: form-data; name=\"fileDigests\"\r\n\r\n");
+        body.append(fileDigestsJSON + "\r\n");
+        for (Map.Entry<String, String> file : files.entrySet())
+        {
+            body.append("--" + BOUNDARY + "\r\n");
+            body.append("Content-Disposition: form-data; name=\"" + file.getKey()
+                + "\"; filename=\"" + file.getKey() + "\"\r\n");
+            body.append("Content-Type: application/octet-stream\r\n\r\n");
+            body.append(file.getValue() + "\r\n");
+        }
+        body.append("--" + BOUNDARY + "--\r\n");
+
+        StartRequest request = new StartRequest().parse(
+            createServletRequest(body.toString().getBytes("UTF-8")),
+            this.fileManager.createUploadDirectory());
+        request.setSave(true);
+        return request;
+    }
+
+    /**
+     * Creates a multipart POST servlet request.
+     * @param body The body of the request.
+     * @return The servlet request.
+     */
+    private HttpServletRequest createServletRequest(final byte[] body)
+    {
+        final InputStream in = new ByteArrayInputStream(body);
+        final ServletInputStream servletIn = new ServletInputStream()
+        {
+            @Override
+            public int read() throws IOException
+            {
+                return in.read();
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int length) throws IOException
+            {
+                return in.read(buffer, offset, length);
+            }
+        };
+
+        return (HttpServletRequest) Proxy.newProxyInstance(getClass().getClassLoader(),
+            new Class<?>[] {HttpServletRequest.class}, new InvocationHandler()
+            {
+                public Object invoke(Object proxy, Method method, Object[] args)
+                {
+                    String name = method.getName();
+                    if ("getMethod".equals(name))
+                    {
+                        return "POST";
+                    }
+                    else if ("getContentType".equals(name))
+                    {
+                        return "multipart/form-data; boundary=" + BOUNDARY;
+                    }
+                    else if ("getContentLength".equals(name))
+                    {
+                        return body.length;
+                    }
+                    else if ("getInputStream".equals(name))
+                    {
+                        return servletIn;
+                    }
+                    return null;
+                }
+            });
+    }
+}
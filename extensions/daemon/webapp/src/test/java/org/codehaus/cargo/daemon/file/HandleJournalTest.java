@@ -0,0 +1,268 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus CARGO, copyright 2004-2011 Vincent Massol, 2012-2016 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.daemon.file;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.codehaus.cargo.daemon.Handle;
+import org.codehaus.cargo.daemon.HandleDatabase;
+import org.codehaus.cargo.daemon.properties.PropertyTable;
+import org.codehaus.cargo.util.AbstractTemporaryDirectoryTest;
+
+/**
+ * Unit tests for {@link HandleJournal}.
+ */
+public class HandleJournalTest extends AbstractTemporaryDirectoryTest
+{
+    /**
+     * Number of handles of the concurrent start and stop test.
+     */
+    private static final int CONCURRENT_HANDLES = 1000;
+
+    /**
+     * Number of threads of the concurrent start and stop test.
+     */
+    private static final int CONCURRENT_THREADS = 8;
+
+    /**
+     * Snapshot file of the journal under test.
+     */
+    private File snapshot;
+
+    /**
+     * Chooses the snapshot file of the journal. {@inheritDoc}
+     * @throws Exception If anything goes wrong.
+     */
+    @Override
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        this.snapshot = getTemporaryFile("handles.properties");
+    }
+
+    /**
+     * Test that new, modified and removed handles are replayed from the journal.
+     * @throws Exception If anything goes wrong.
+     */
+    public void testReplayJournal() throws Exception
+    {
+        HandleJournal journal = new HandleJournal(this.snapshot);
+        HandleDatabase database = journal.load();
+        put(journal, database, "a", "started");
+        put(journal, database, "b", "started");
+        put(journal, database, "a", "stopped");
+        database.remove("b");
+        journal.remove(database, "b");
+        journal.close();
+
+        assertFalse(this.snapshot.isFile());
+        HandleDatabase loaded = new HandleJournal(this.snapshot).load();
+        assertEquals(1, loaded.entrySet().size());
+        assertEquals("stopped", loaded.get("a").getProperties().get("state"));
+        assertNull(loaded.get("b"));
+    }
+
+    /**
+     * Test that a torn journal record is skipped without losing the records written after it.
+     * @throws Exception If anything goes wrong.
+     */
+    public void testSkipTornRecord() throws Exception
+    {
+        HandleJournal journal = new HandleJournal(this.snapshot);
+        HandleDatabase database = journal.load();
+        put(journal, database, "a", "started");
+        journal.close();
+        appendToJournal("{\"id\":\"b\",\"prop\n");
+        journal = new HandleJournal(this.snapshot);
+        database = journal.load();
+        put(journal, database, "c", "started");
+        journal.close();
+        appendToJournal("{\"id\":\"d\"\n");
+        appendToJournal("{\"id\":\"a\",\"properties\":{\"state\":\"stopped\"}}\n");
+
+        journal = new HandleJournal(this.snapshot);
+        HandleDatabase loaded = journal.load();
+        assertEquals(2, loaded.entrySet().size());
+        assertEquals("stopped", loaded.get("a").getProperties().get("state"));
+        assertEquals("started", loaded.get("c").getProperties().get("state"));
+
+        // The torn records have been compacted away, so new records can be appended
+        put(journal, loaded, "e", "started");
+        journal.close();
+        assertEquals(3, new HandleJournal(this.snapshot).load().entrySet().size());
+    }
+
+    /**
+     * Test that a snapshot left as a temporary file by a crash during compaction is used.
+     * @throws Exception If anything goes wrong.
+     */
+    public void testLoadTemporarySnapshot() throws Exception
+    {
+        HandleJournal journal = new HandleJournal(this.snapshot);
+        HandleDatabase database = journal.load();
+        put(journal, database, "a", "started");
+        journal.compact(database);
+        journal.close();
+        assertTrue(this.snapshot.renameTo(new File(this.snapshot.getPath() + ".tmp")));
+
+        HandleDatabase loaded = new HandleJournal(this.snapshot).load();
+        assertTrue(this.snapshot.isFile());
+        assertEquals("started", loaded.get("a").getProperties().get("state"));
+    }
+
+    /**
+     * Test that a journal left behind by a crash between the replacement of the snapshot and the
+     * emptying of the journal is not replayed onto the newer snapshot.
+     * @throws Exception If anything goes wrong.
+     */
+    public void testIgnoreJournalOfPreviousGeneration() throws Exception
+    {
+        HandleJournal journal = new HandleJournal(this.snapshot);
+        HandleDatabase database = journal.load();
+        put(journal, database, "a", "started");
+        put(journal, database, "b", "started");
+        String journalFile = this.snapshot.getPath() + ".journal";
+        String staleJournalFile = getTemporaryFile("stale.journal").getPath();
+        getFileHandler().copyFile(journalFile, staleJournalFile);
+        put(journal, database, "a", "stopped");
+        database.remove("b");
+        journal.remove(database, "b");
+        journal.compact(database);
+        journal.close();
+        getFileHandler().copyFile(staleJournalFile, journalFile, true);
+
+        journal = new HandleJournal(this.snapshot);
+        HandleDatabase loaded = journal.load();
+        assertEquals(1, loaded.entrySet().size());
+        assertEquals("stopped", loaded.get("a").getProperties().get("state"));
+        assertNull(loaded.get("b"));
+
+        // The stale journal gets replaced by a journal of the current generation
+        put(journal, loaded, "c", "started");
+        journal.close();
+        loaded = new HandleJournal(this.snapshot).load();
+        assertEquals(2, loaded.entrySet().size());
+        assertNull(loaded.get("b"));
+        assertEquals("started", loaded.get("c").getProperties().get("state"));
+    }
+
+    /**
+     * Test concurrent start and stop requests on {@value #CONCURRENT_HANDLES} handles, checking
+     * that the journal gets compacted and no change is lost.
+     * @throws Exception If anything goes wrong.
+     */
+    public void testConcurrentStartStop() throws Exception
+    {
+        final HandleJournal journal = new HandleJournal(this.snapshot);
+        final HandleDatabase database = journal.load();
+        ExecutorService executor = Executors.newFixedThreadPool(CONCURRENT_THREADS);
+        List<Future<Void>> futures = new ArrayList<Future<Void>>();
+        try
+        {
+            for (int i = 0; i < CONCURRENT_THREADS; i++)
+            {
+                final int thread = i;
+                futures.add(executor.submit(new Callable<Void>()
+                {
+                    @Override
+                    public Void call() throws Exception
+                    {
+                        for (int h = thread; h < CONCURRENT_HANDLES; h += CONCURRENT_THREADS)
+                        {
+                            put(journal, database, "handle" + h, "started");
+                            put(journal, database, "handle" + h, "stopped");
+                            if (h % 2 == 0)
+                            {
+                                put(journal, database, "handle" + h, "started");
+                            }
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> future : futures)
+            {
+                future.get();
+            }
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+        journal.close();
+
+        assertTrue(this.snapshot.isFile());
+        HandleDatabase loaded = new HandleJournal(this.snapshot).load();
+        assertEquals(CONCURRENT_HANDLES, loaded.entrySet().size());
+        for (Map.Entry<String, Handle> handle : loaded.entrySet())
+        {
+            int h = Integer.parseInt(handle.getKey().substring("handle".length()));
+            assertEquals(handle.getKey(), h % 2 == 0 ? "started" : "stopped",
+                handle.getValue().getProperties().get("state"));
+        }
+    }
+
+    /**
+     * Puts a handle in the database and records it in the journal.
+     * @param journal Handle journal.
+     * @param database Handle database.
+     * @param handleId Handle id.
+     * @param state Value of the <code>state</code> property of the handle.
+     * @throws IOException If the journal cannot be written.
+     */
+    private static void put(HandleJournal journal, HandleDatabase database, String handleId,
+        String state) throws IOException
+    {
+        PropertyTable properties = new PropertyTable();
+        properties.put("state", state);
+        Handle handle = new Handle();
+        handle.setId(handleId);
+        handle.setProperties(properties);
+        database.put(handleId, handle);
+        journal.put(database, handle);
+    }
+
+    /**
+     * Appends raw content to the journal file, as a crash would have left it.
+     * @param content Content to append.
+     * @throws IOException If the journal cannot be written.
+     */
+    private void appendToJournal(String content) throws IOException
+    {
+        FileOutputStream out = new FileOutputStream(this.snapshot.getPath() + ".journal", true);
+        try
+        {
+            out.write(content.getBytes("UTF-8"));
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,227 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus CARGO, copyright 2004-2011 Vincent Massol, 2012-2016 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.daemon.file;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.codehaus.cargo.util.AbstractTemporaryDirectoryTest;
+
+/**
+ * Unit tests for {@link LogTailer}.
+ */
+public class LogTailerTest extends AbstractTemporaryDirectoryTest
+{
+    /**
+     * Timeout when waiting for data, in milliseconds.
+     */
+    private static final long TIMEOUT = 10;
+
+    /**
+     * Size of the data appended at once by the slow subscriber test, more than the queue of a
+     * subscription holds.
+     */
+    private static final int LARGE_APPEND_SIZE = 2 * 1024 * 1024;
+
+    /**
+     * Log file.
+     */
+    private File log;
+
+    /**
+     * Chooses the log file to follow. {@inheritDoc}
+     * @throws Exception If anything goes wrong.
+     */
+    @Override
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        this.log = getTemporaryFile("container.log");
+    }
+
+    /**
+     * Test that data appended to the log file is handed to an up to date subscription.
+     * @throws Exception If anything goes wrong.
+     */
+    public void testFollowAppendedData() throws Exception
+    {
+        write("first\n", false);
+        LogTailer tailer = new LogTailer(this.log);
+        try
+        {
+            tailer.run();
+            LogTailer.Subscription subscription = tailer.subscribe(0);
+            assertChunk(0, "first\n", subscription.take(TIMEOUT));
+            assertNull(subscription.take(TIMEOUT));
+
+            write("second\n", true);
+            tailer.run();
+            assertChunk(6, "second\n", subscription.take(TIMEOUT));
+        }
+        finally
+        {
+            tailer.close();
+        }
+    }
+
+    /**
+     * Test that a log file replaced by a longer one is followed from its start.
+     * @throws Exception If anything goes wrong.
+     */
+    public void testFollowReplacedLogFile() throws Exception
+    {
+        write("first\n", false);
+        LogTailer tailer = new LogTailer(this.log);
+        try
+        {
+            tailer.run();
+            LogTailer.Subscription subscription = tailer.subscribe(0);
+            assertChunk(0, "first\n", subscription.take(TIMEOUT));
+            assertNull(subscription.take(TIMEOUT));
+
+            assertTrue(this.log.delete());
+            write("replacement, longer\n", false);
+            tailer.run();
+            assertChunk(0, "replacement, longer\n", subscription.take(TIMEOUT));
+            assertNull(subscription.take(TIMEOUT));
+        }
+        finally
+        {
+            tailer.close();
+        }
+    }
+
+    /**
+     * Test that a log file replaced by one starting with the same bytes is followed from its start
+     * once the files differ in size.
+     * @throws Exception If anything goes wrong.
+     */
+    public void testFollowReplacedLogFileWithSameHead() throws Exception
+    {
+        StringBuilder header = new StringBuilder();
+        while (header.length() < 2048)
+        {
+            header.append("Same header line\n");
+        }
+        write(header + "first\n", false);
+        LogTailer tailer = new LogTailer(this.log);
+        try
+        {
+            tailer.run();
+            LogTailer.Subscription subscription = tailer.subscribe(header.length());
+            assertChunk(header.length(), "first\n", subscription.take(TIMEOUT));
+            assertNull(subscription.take(TIMEOUT));
+
+            assertTrue(this.log.delete());
+            write(header + "replacement\n", false);
+            tailer.run();
+            LogTailer.Chunk chunk = subscription.take(TIMEOUT);
+            assertNotNull(chunk);
+            assertEquals(0, chunk.getOffset());
+        }
+        finally
+        {
+            tailer.close();
+        }
+    }
+
+    /**
+     * Test that a subscription whose client does not keep up with the tailer catches up by reading
+     * the log file itself, without missing nor repeating any data.
+     * @throws Exception If anything goes wrong.
+     */
+    public void testSlowSubscriberCatchesUp() throws Exception
+    {
+        write("start\n", false);
+        LogTailer tailer = new LogTailer(this.log);
+        try
+        {
+            tailer.run();
+            LogTailer.Subscription subscription = tailer.subscribe(0);
+            assertChunk(0, "start\n", subscription.take(TIMEOUT));
+            assertNull(subscription.take(TIMEOUT));
+
+            StringBuilder appended = new StringBuilder();
+            for (int line = 0; appended.length() < LARGE_APPEND_SIZE; line++)
+            {
+                appended.append("line ").append(line).append('\n');
+            }
+            write(appended.toString(), true);
+            // The queue of the subscription fills up, so the tailer does not wait for the client
+            tailer.run();
+
+            StringBuilder received = new StringBuilder();
+            long offset = "start\n".length();
+            for (LogTailer.Chunk chunk = subscription.take(TIMEOUT); chunk != null;
+                chunk = subscription.take(TIMEOUT))
+            {
+                assertEquals(offset, chunk.getOffset());
+                received.append(new String(chunk.getData(), "UTF-8"));
+                offset += chunk.getData().length;
+            }
+            assertEquals(appended.length(), received.length());
+            assertEquals(appended.toString(), received.toString());
+
+            // Once caught up, the subscription receives the data from the tailer again
+            write("end\n", true);
+            tailer.run();
+            assertChunk(offset, "end\n", subscription.take(TIMEOUT));
+        }
+        finally
+        {
+            tailer.close();
+        }
+    }
+
+    /**
+     * Asserts the content of a chunk of the log file.
+     * @param offset Expected offset.
+     * @param data Expected data.
+     * @param chunk Chunk to check.
+     * @throws IOException If the data cannot be decoded.
+     */
+    private static void assertChunk(long offset, String data, LogTailer.Chunk chunk)
+        throws IOException
+    {
+        assertNotNull(chunk);
+        assertEquals(offset, chunk.getOffset());
+        assertEquals(data, new String(chunk.getData(), "UTF-8"));
+    }
+
+    /**
+     * Writes to the log file.
+     * @param content Content to write.
+     * @param append Whether to append to the log file.
+     * @throws IOException If the log file cannot be written.
+     */
+    private void write(String content, boolean append) throws IOException
+    {
+        FileOutputStream out = new FileOutputStream(this.log, append);
+        try
+        {
+            out.write(content.getBytes("UTF-8"));
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+}
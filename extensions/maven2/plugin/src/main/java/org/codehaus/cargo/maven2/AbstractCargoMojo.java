@@ -65,8 +65,8 @@ import org.codehaus.cargo.maven2.deployer.DeployableMonitorFactory;
 import org.codehaus.cargo.maven2.log.MavenLogger;
 import org.codehaus.cargo.maven2.util.CargoProject;
 import org.codehaus.cargo.maven2.util.EmbeddedContainerArtifactResolver;
-import org.codehaus.cargo.util.DefaultFileHandler;
 import org.codehaus.cargo.util.FileHandler;
+import org.codehaus.cargo.util.FileHandlerFactory;
 import org.codehaus.cargo.util.log.FileLogger;
 import org.codehaus.cargo.util.log.LogLevel;
 import org.codehaus.cargo.util.log.Logger;
@@ -90,7 +90,7 @@ public abstract class AbstractCargoMojo extends AbstractCommonMojo
     /**
      * File utility class.
      */
-    private FileHandler fileHandler = new DefaultFileHandler();
+    private FileHandler fileHandler = FileHandlerFactory.createFileHandler();
 
     /**
      * Configures a Cargo {@link org.codehaus.cargo.container.configuration.Configuration}. See the
@@ -206,6 +206,14 @@ public abstract class AbstractCargoMojo extends AbstractCommonMojo
      */
     private Settings settings;
 
+    /**
+     * Maven build session, in which the embedded containers' classpaths are shared.
+     * 
+     * @parameter property="session"
+     * @readonly
+     */
+    private Object session;
+
     /**
      * Cargo plugin version.
      * 
@@ -711,12 +719,13 @@ public abstract class AbstractCargoMojo extends AbstractCommonMojo
                 + "for the container, skipping as this won't kill anyway...", e);
         }
 
+        EmbeddedContainerArtifactResolver resolver = null;
+        ClassLoader classLoader = null;
         if (getContainerElement().getType() == ContainerType.EMBEDDED)
         {
-            EmbeddedContainerArtifactResolver resolver =
-                new EmbeddedContainerArtifactResolver(this.artifactResolver, this.localRepository,
-                    this.repositories, this.artifactFactory);
-            ClassLoader classLoader = resolver.resolveDependencies(
+            resolver = new EmbeddedContainerArtifactResolver(this.artifactResolver,
+                this.localRepository, this.repositories, this.artifactFactory, this.session);
+            classLoader = resolver.resolveDependencies(
                 getContainerElement().getContainerId(),
                     getCargoProject().getEmbeddedClassLoader());
             getCargoProject().setEmbeddedClassLoader(classLoader);
@@ -742,6 +751,10 @@ public abstract class AbstractCargoMojo extends AbstractCommonMojo
         container = getContainerElement().createContainer(configuration,
             logger, getCargoProject(), artifactFactory, artifactResolver, localRepository,
             repositories, settings);
+        if (resolver != null)
+        {
+            resolver.bind(classLoader, container);
+        }
 
         return container;
     }
@@ -156,6 +156,9 @@ public abstract class AbstractDeployerMojo extends AbstractCargoMojo
             }
         }
 
+        List<org.codehaus.cargo.container.deployable.Deployable> deployables =
+            new ArrayList<org.codehaus.cargo.container.deployable.Deployable>();
+        List<DeployableMonitor> monitors = new ArrayList<DeployableMonitor>();
         for (Deployable deployableElement : deployableElements)
         {
             org.codehaus.cargo.container.deployable.Deployable deployable =
@@ -163,7 +166,8 @@ public abstract class AbstractDeployerMojo extends AbstractCargoMojo
             DeployableMonitor monitor = createDeployableMonitor(container, deployableElement,
                     deployable);
 
-            performDeployerActionOnSingleDeployable(deployer, deployable, monitor);
+            deployables.add(deployable);
+            monitors.add(monitor);
         }
 
         // Perform deployment action on the autodeployable (if any).
@@ -176,10 +180,32 @@ public abstract class AbstractDeployerMojo extends AbstractCargoMojo
             {
                 // Deployable monitor is always null here because if the user has explicitly
                 // specified deployable then the auto deployable has already been deployed...
-                performDeployerActionOnSingleDeployable(deployer,
-                    createAutoDeployDeployable(container), null);
+                deployables.add(createAutoDeployDeployable(container));
+                monitors.add(null);
             }
         }
+
+        performDeployerActionOnDeployables(deployer, deployables, monitors);
+    }
+
+    /**
+     * Perform a deployer action on several deployables. This implementation performs the action
+     * on each of them using <code>performDeployerActionOnSingleDeployable</code>.
+     * @param deployer Deployer.
+     * @param deployables Deployables.
+     * @param monitors Deployable monitors, in the same order as the <code>deployables</code>. A
+     * deployable without monitor has a <code>null</code> monitor.
+     */
+    protected void performDeployerActionOnDeployables(
+        org.codehaus.cargo.container.deployer.Deployer deployer,
+        List<org.codehaus.cargo.container.deployable.Deployable> deployables,
+        List<DeployableMonitor> monitors)
+    {
+        for (int i = 0; i < deployables.size(); i++)
+        {
+            performDeployerActionOnSingleDeployable(deployer, deployables.get(i),
+                monitors.get(i));
+        }
     }
 
     /**
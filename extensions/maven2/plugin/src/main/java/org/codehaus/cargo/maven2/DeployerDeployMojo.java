@@ -19,6 +19,11 @@
  */
 package org.codehaus.cargo.maven2;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import org.codehaus.cargo.container.spi.deployer.AbstractDeployer;
+
 /**
  * Deploy a deployable to a container.
  * 
@@ -27,6 +32,60 @@ package org.codehaus.cargo.maven2;
  */
 public class DeployerDeployMojo extends AbstractDeployerMojo
 {
+    /**
+     * Deploys the deployables in the order given. Consecutive deployables without monitor are
+     * deployed as a batch, the deployables that have a monitor one at a time. {@inheritDoc}
+     */
+    @Override
+    protected void performDeployerActionOnDeployables(
+        org.codehaus.cargo.container.deployer.Deployer deployer,
+        List<org.codehaus.cargo.container.deployable.Deployable> deployables,
+        List<org.codehaus.cargo.container.deployer.DeployableMonitor> monitors)
+    {
+        List<org.codehaus.cargo.container.deployable.Deployable> batch =
+            new ArrayList<org.codehaus.cargo.container.deployable.Deployable>();
+        for (int i = 0; i < deployables.size(); i++)
+        {
+            if (monitors.get(i) == null)
+            {
+                batch.add(deployables.get(i));
+            }
+            else
+            {
+                deployBatch(deployer, batch);
+                batch.clear();
+                performDeployerActionOnSingleDeployable(deployer, deployables.get(i),
+                    monitors.get(i));
+            }
+        }
+        deployBatch(deployer, batch);
+    }
+
+    /**
+     * Deploys a batch of deployables without monitor, all at once if the deployer supports it.
+     * @param deployer Deployer.
+     * @param batch Deployables to deploy.
+     */
+    private void deployBatch(org.codehaus.cargo.container.deployer.Deployer deployer,
+        List<org.codehaus.cargo.container.deployable.Deployable> batch)
+    {
+        if (batch.size() > 1 && deployer instanceof AbstractDeployer)
+        {
+            getLog().debug("Deploying " + batch.size() + " deployables ...");
+            ((AbstractDeployer) deployer).deploy(batch);
+        }
+        else
+        {
+            for (org.codehaus.cargo.container.deployable.Deployable deployable : batch)
+            {
+                performDeployerActionOnSingleDeployable(deployer, deployable, null);
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
     @Override
     protected void performDeployerActionOnSingleDeployable(
         org.codehaus.cargo.container.deployer.Deployer deployer,
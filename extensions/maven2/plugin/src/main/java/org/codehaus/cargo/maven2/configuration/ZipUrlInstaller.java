@@ -22,6 +22,7 @@ package org.codehaus.cargo.maven2.configuration;
 import java.io.File;
 import java.net.URL;
 
+import org.codehaus.cargo.container.installer.InstallationCache;
 import org.codehaus.cargo.container.installer.Proxy;
 import org.codehaus.cargo.container.installer.ZipURLInstaller;
 
@@ -56,6 +57,16 @@ public class ZipUrlInstaller
      */
     private Proxy proxy;
 
+    /**
+     * Expected SHA-256 checksum of the zipped container installation file.
+     */
+    private String checksum;
+
+    /**
+     * Whether to install using the machine-wide installation cache.
+     */
+    private boolean useInstallationCache;
+
     /**
      * @param downloadDir the destination directory where the zipped container install will be
      * downloaded.
@@ -106,6 +117,40 @@ public class ZipUrlInstaller
         return this.url;
     }
 
+    /**
+     * @param checksum Expected SHA-256 checksum of the zipped container installation file.
+     */
+    public void setChecksum(String checksum)
+    {
+        this.checksum = checksum;
+    }
+
+    /**
+     * @return Expected SHA-256 checksum of the zipped container installation file.
+     */
+    public String getChecksum()
+    {
+        return this.checksum;
+    }
+
+    /**
+     * @param useInstallationCache Whether to install using the machine-wide installation cache,
+     * configured using the <code>cargo.installs.cache.directory</code> and
+     * <code>cargo.installs.cache.maxSize</code> system properties.
+     */
+    public void setUseInstallationCache(boolean useInstallationCache)
+    {
+        this.useInstallationCache = useInstallationCache;
+    }
+
+    /**
+     * @return Whether to install using the machine-wide installation cache.
+     */
+    public boolean isUseInstallationCache()
+    {
+        return this.useInstallationCache;
+    }
+
     /**
      * @return Proxy properties.
      */
@@ -145,6 +190,11 @@ public class ZipUrlInstaller
         {
             installer.setProxy(getProxy());
         }
+        installer.setChecksum(getChecksum());
+        if (isUseInstallationCache())
+        {
+            installer.setInstallationCache(InstallationCache.getDefault());
+        }
         return installer;
     }
 
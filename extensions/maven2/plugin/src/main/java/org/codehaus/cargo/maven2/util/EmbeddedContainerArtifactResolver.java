@@ -19,18 +19,22 @@
  */
 package org.codehaus.cargo.maven2.util;
 
+import java.lang.ref.WeakReference;
 import java.net.URL;
 import java.net.URLClassLoader;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.WeakHashMap;
 
 import org.apache.maven.artifact.Artifact;
 import org.apache.maven.artifact.factory.ArtifactFactory;
 import org.apache.maven.artifact.repository.ArtifactRepository;
 import org.apache.maven.artifact.resolver.ArtifactResolver;
 import org.apache.maven.plugin.MojoExecutionException;
+import org.codehaus.cargo.container.Container;
 import org.codehaus.cargo.container.internal.util.JdkUtils;
 
 /**
@@ -38,6 +42,14 @@ import org.codehaus.cargo.container.internal.util.JdkUtils;
  */
 public class EmbeddedContainerArtifactResolver
 {
+    /**
+     * Embedded container {@link ClassLoader}s created during each build session, indexed by
+     * container id and resolved artifacts. The build session is weakly referenced, so that the
+     * {@link ClassLoader}s are released once the session ends.
+     */
+    private static final Map<Object, Map<String, List<PooledClassLoader>>> SESSION_CLASSLOADERS =
+        new WeakHashMap<Object, Map<String, List<PooledClassLoader>>>();
+
     /**
      * Artifact resolver.
      */
@@ -58,6 +70,12 @@ public class EmbeddedContainerArtifactResolver
      */
     private ArtifactFactory artifactFactory;
 
+    /**
+     * Build session the embedded container {@link ClassLoader}s are shared in, <code>null</code>
+     * if they should not be shared.
+     */
+    private Object session;
+
     /**
      * Map of embedded container dependencies.
      */
@@ -98,6 +116,32 @@ public class EmbeddedContainerArtifactResolver
         }
     }
 
+    /**
+     * Embedded container {@link ClassLoader} of a build session, with the container using it.
+     */
+    private static class PooledClassLoader
+    {
+        /**
+         * Embedded container {@link ClassLoader}.
+         */
+        private ClassLoader classLoader;
+
+        /**
+         * Container the {@link ClassLoader} has been bound to, <code>null</code> if it has been
+         * handed out but not bound yet.
+         */
+        private WeakReference<Container> container;
+
+        /**
+         * Save all attributes.
+         * @param classLoader Embedded container {@link ClassLoader}.
+         */
+        public PooledClassLoader(ClassLoader classLoader)
+        {
+            this.classLoader = classLoader;
+        }
+    }
+
     /**
      * Save all attributes.
      * @param artifactResolver Artifact resolver.
@@ -108,11 +152,28 @@ public class EmbeddedContainerArtifactResolver
     public EmbeddedContainerArtifactResolver(ArtifactResolver artifactResolver,
         ArtifactRepository localRepository, List<ArtifactRepository> repositories,
         ArtifactFactory artifactFactory)
+    {
+        this(artifactResolver, localRepository, repositories, artifactFactory, null);
+    }
+
+    /**
+     * Save all attributes.
+     * @param artifactResolver Artifact resolver.
+     * @param localRepository Local repository.
+     * @param repositories List of repositories to look in.
+     * @param artifactFactory Artifact factory.
+     * @param session Build session in which to share the embedded container
+     * {@link ClassLoader}s, <code>null</code> to create new ones at each resolution.
+     */
+    public EmbeddedContainerArtifactResolver(ArtifactResolver artifactResolver,
+        ArtifactRepository localRepository, List<ArtifactRepository> repositories,
+        ArtifactFactory artifactFactory, Object session)
     {
         this.artifactResolver = artifactResolver;
         this.localRepository = localRepository;
         this.repositories = repositories;
         this.artifactFactory = artifactFactory;
+        this.session = session;
 
         List<Dependency> jetty4xDependencies = new ArrayList<Dependency>();
         jetty4xDependencies.add(new Dependency("ant", "ant", "1.6.4"));
@@ -358,7 +419,12 @@ public class EmbeddedContainerArtifactResolver
     }
 
     /**
-     * Resolve dependencies.
+     * Resolve dependencies. If a build session has been given and there is no <code>parent</code>,
+     * a {@link ClassLoader} created by an earlier resolution of the same container id and artifacts
+     * in that session is reused, so that the container classes are only loaded once. As the
+     * container classes hold static and JMX state, a {@link ClassLoader} is only reused once the
+     * container it has been bound to using {@link #bind(ClassLoader, Container)} has stopped;
+     * containers running at the same time always get different {@link ClassLoader}s.
      * @param containerId Container id.
      * @param parent Parent {@link ClassLoader}.
      * @return {@link ClassLoader} with the resolved dependencies and given <code>parent</code>.
@@ -367,14 +433,13 @@ public class EmbeddedContainerArtifactResolver
     public ClassLoader resolveDependencies(String containerId, ClassLoader parent)
         throws MojoExecutionException
     {
-        URLClassLoader classloader;
-
         List<Dependency> dependencies = this.containerDependencies.get(containerId);
         if (dependencies == null)
         {
             return null;
         }
 
+        URL[] urlArray;
         try
         {
             List<URL> urls = new ArrayList<URL>(dependencies.size() + 1);
@@ -393,21 +458,101 @@ public class EmbeddedContainerArtifactResolver
                 urls.add(JdkUtils.getToolsJar().toURI().toURL());
             }
 
-            URL[] urlArray = (URL[]) urls.toArray(new URL[urls.size()]);
-            if (parent == null)
+            urlArray = (URL[]) urls.toArray(new URL[urls.size()]);
+        }
+        catch (Exception e)
+        {
+            throw new MojoExecutionException("Failed to resolve dependency", e);
+        }
+
+        if (parent != null)
+        {
+            return new URLClassLoader(urlArray, parent);
+        }
+        else if (this.session == null)
+        {
+            return new URLClassLoader(urlArray);
+        }
+
+        StringBuilder key = new StringBuilder(containerId);
+        for (URL url : urlArray)
+        {
+            key.append('\n');
+            key.append(url.toExternalForm());
+        }
+
+        synchronized (SESSION_CLASSLOADERS)
+        {
+            Map<String, List<PooledClassLoader>> classloaders =
+                SESSION_CLASSLOADERS.get(this.session);
+            if (classloaders == null)
+            {
+                classloaders = new HashMap<String, List<PooledClassLoader>>();
+                SESSION_CLASSLOADERS.put(this.session, classloaders);
+            }
+            List<PooledClassLoader> pool = classloaders.get(key.toString());
+            if (pool == null)
             {
-                classloader = new URLClassLoader(urlArray);
+                pool = new ArrayList<PooledClassLoader>(1);
+                classloaders.put(key.toString(), pool);
             }
-            else
+            for (Iterator<PooledClassLoader> iterator = pool.iterator(); iterator.hasNext();)
             {
-                classloader = new URLClassLoader(urlArray, parent);
+                PooledClassLoader pooled = iterator.next();
+                if (pooled.container != null)
+                {
+                    Container container = pooled.container.get();
+                    if (container == null)
+                    {
+                        // The container is gone without us knowing whether it has stopped
+                        iterator.remove();
+                    }
+                    else if (container.getState().isStopped())
+                    {
+                        pooled.container = null;
+                        return pooled.classLoader;
+                    }
+                }
             }
+            PooledClassLoader pooled = new PooledClassLoader(new URLClassLoader(urlArray));
+            pool.add(pooled);
+            return pooled.classLoader;
         }
-        catch (Exception e)
+    }
+
+    /**
+     * Binds a {@link ClassLoader} returned by {@link #resolveDependencies(String, ClassLoader)} to
+     * the container using it, so that the {@link ClassLoader} is only reused once that container
+     * has stopped. Until bound, a {@link ClassLoader} is considered in use.
+     * @param classLoader {@link ClassLoader} returned by
+     * {@link #resolveDependencies(String, ClassLoader)}.
+     * @param container Container using the {@link ClassLoader}.
+     */
+    public void bind(ClassLoader classLoader, Container container)
+    {
+        if (this.session == null)
         {
-            throw new MojoExecutionException("Failed to resolve dependency", e);
+            return;
         }
 
-        return classloader;
+        synchronized (SESSION_CLASSLOADERS)
+        {
+            Map<String, List<PooledClassLoader>> classloaders =
+                SESSION_CLASSLOADERS.get(this.session);
+            if (classloaders != null)
+            {
+                for (List<PooledClassLoader> pool : classloaders.values())
+                {
+                    for (PooledClassLoader pooled : pool)
+                    {
+                        if (pooled.classLoader == classLoader)
+                        {
+                            pooled.container = new WeakReference<Container>(container);
+                            return;
+                        }
+                    }
+                }
+            }
+        }
     }
 }
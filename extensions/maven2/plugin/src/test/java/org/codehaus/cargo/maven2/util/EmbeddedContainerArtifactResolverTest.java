@@ -0,0 +1,122 @@
+/*
+ * ========================================================================
+ *
+ * Codehaus CARGO, copyright 2004-2011 Vincent Massol, 2012-2016 Ali Tokmen.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ========================================================================
+ */
+package org.codehaus.cargo.maven2.util;
+
+import java.io.File;
+import java.util.ArrayList;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.factory.ArtifactFactory;
+import org.apache.maven.artifact.repository.ArtifactRepository;
+import org.apache.maven.artifact.resolver.ArtifactResolver;
+import org.codehaus.cargo.container.State;
+import org.codehaus.cargo.container.stub.EmbeddedLocalContainerStub;
+import org.jmock.Mock;
+import org.jmock.MockObjectTestCase;
+
+/**
+ * Unit tests for {@link EmbeddedContainerArtifactResolver}.
+ */
+public class EmbeddedContainerArtifactResolverTest extends MockObjectTestCase
+{
+    /**
+     * Build session.
+     */
+    private Object session;
+
+    /**
+     * Creates the build session. {@inheritDoc}
+     * @throws Exception If anything goes wrong.
+     */
+    @Override
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        this.session = new Object();
+    }
+
+    /**
+     * Test that a class loader is only reused once the container using it has stopped.
+     * @throws Exception If anything goes wrong.
+     */
+    public void testClassLoaderReusedOnceContainerStopped() throws Exception
+    {
+        EmbeddedContainerArtifactResolver resolver = createResolver(this.session);
+        ClassLoader first = resolver.resolveDependencies("jetty6x", null);
+        EmbeddedLocalContainerStub firstContainer = new EmbeddedLocalContainerStub();
+        firstContainer.setState(State.STARTED);
+        resolver.bind(first, firstContainer);
+
+        ClassLoader second = resolver.resolveDependencies("jetty6x", null);
+        assertNotSame("Running containers should not share class loaders", first, second);
+        resolver.bind(second, new EmbeddedLocalContainerStub());
+
+        firstContainer.setState(State.STOPPED);
+        assertSame(first, createResolver(this.session).resolveDependencies("jetty6x", null));
+    }
+
+    /**
+     * Test that a class loader not bound to any container yet is not reused.
+     * @throws Exception If anything goes wrong.
+     */
+    public void testUnboundClassLoaderNotReused() throws Exception
+    {
+        EmbeddedContainerArtifactResolver resolver = createResolver(this.session);
+        ClassLoader first = resolver.resolveDependencies("jetty6x", null);
+        assertNotSame(first, resolver.resolveDependencies("jetty6x", null));
+    }
+
+    /**
+     * Test that class loaders are neither shared across build sessions nor without a session.
+     * @throws Exception If anything goes wrong.
+     */
+    public void testClassLoaderNotSharedAcrossSessions() throws Exception
+    {
+        EmbeddedContainerArtifactResolver resolver = createResolver(this.session);
+        ClassLoader first = resolver.resolveDependencies("jetty6x", null);
+        EmbeddedLocalContainerStub container = new EmbeddedLocalContainerStub();
+        container.setState(State.STOPPED);
+        resolver.bind(first, container);
+
+        assertNotSame(first, createResolver(new Object()).resolveDependencies("jetty6x", null));
+        assertNotSame(first, createResolver(null).resolveDependencies("jetty6x", null));
+    }
+
+    /**
+     * Creates a resolver resolving all artifacts to the same file.
+     * @param buildSession Build session, <code>null</code> if none.
+     * @return Resolver.
+     */
+    private EmbeddedContainerArtifactResolver createResolver(Object buildSession)
+    {
+        Mock mockArtifact = mock(Artifact.class);
+        mockArtifact.stubs().method("getFile").will(returnValue(new File("container.jar")));
+        Mock mockArtifactFactory = mock(ArtifactFactory.class);
+        mockArtifactFactory.stubs().method("createArtifact").will(
+            returnValue(mockArtifact.proxy()));
+        Mock mockArtifactResolver = mock(ArtifactResolver.class);
+        mockArtifactResolver.stubs().method("resolve");
+
+        return new EmbeddedContainerArtifactResolver(
+            (ArtifactResolver) mockArtifactResolver.proxy(), null,
+            new ArrayList<ArtifactRepository>(), (ArtifactFactory) mockArtifactFactory.proxy(),
+            buildSession);
+    }
+}